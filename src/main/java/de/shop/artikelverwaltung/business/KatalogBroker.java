@@ -22,8 +22,10 @@ import de.shop.artikelverwaltung.domain.Artikel_;
 import de.shop.util.Strings;
 import de.shop.util.interceptor.Log;
 import de.shop.util.persistence.DefaultEM;
+import de.shop.util.persistence.KeysetStream;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
@@ -34,6 +36,7 @@ import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 
+import static de.shop.util.Constants.STREAM_CHUNK_SIZE;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
 import static java.util.Optional.ofNullable;
@@ -93,6 +96,28 @@ public class KatalogBroker {
         return artikel.isEmpty() ? empty() : of(artikel);
     }
     
+    /**
+     * Verfuegbare Artikel, deren Bezeichnung einen Suchbegriff enthaelt, abschnittsweise lesen.
+     * Vor dem Lesen eines weiteren Abschnitts wird der Persistenzkontext geleert.
+     * @param bezeichnung Suchbegriff oder null fuer alle verfuegbaren Artikel
+     * @return Stream mit den gefundenen Artikeln nach aufsteigender ID
+     */
+    public Stream<Artikel> streamByBezeichnung(String bezeichnung) {
+        final String pattern = Strings.isNullOrEmpty(bezeichnung) ? "%" : "%" + bezeichnung + "%";
+        return KeysetStream.of(lastId -> {
+                                   if (lastId > 0) {
+                                       em.clear();
+                                   }
+                                   return em.createNamedQuery(Artikel.BY_BEZ_AFTER_ID, Artikel.class)
+                                            .setParameter(Artikel.PARAM_BEZEICHNUNG, pattern)
+                                            .setParameter(Artikel.PARAM_LAST_ID, lastId)
+                                            .setMaxResults(STREAM_CHUNK_SIZE)
+                                            .getResultList();
+                               },
+                               Artikel::getId,
+                               STREAM_CHUNK_SIZE);
+    }
+    
     /**
      * Artikel mit exakter Bezeichnung suchen
      * @param bezeichnung Die genaue Bezeichnung des gesuchten Artikels
@@ -63,6 +63,13 @@ import static java.util.logging.Level.FINEST;
                         + " WHERE    a.bezeichnung LIKE :" + Artikel.PARAM_BEZEICHNUNG
                         + "          AND a.ausgesondert = FALSE"
                         + " ORDER BY a.id ASC"),
+    @NamedQuery(name  = Artikel.BY_BEZ_AFTER_ID,
+                query = "SELECT      a"
+                        + " FROM     Artikel a"
+                        + " WHERE    a.bezeichnung LIKE :" + Artikel.PARAM_BEZEICHNUNG
+                        + "          AND a.ausgesondert = FALSE"
+                        + "          AND a.id > :" + Artikel.PARAM_LAST_ID
+                        + " ORDER BY a.id ASC"),
     @NamedQuery(name  = Artikel.BY_BEZ_EXAKT,
                 query = "SELECT      a"
                         + " FROM     Artikel a"
@@ -85,10 +92,12 @@ public class Artikel extends AbstractVersionedAuditable {
     private static final String PREFIX = "Artikel."; 
     public static final String VERFUEGBAR = PREFIX + "verfuegbar";
     public static final String BY_BEZ = PREFIX + "byBez";
+    public static final String BY_BEZ_AFTER_ID = PREFIX + "byBezAfterId";
     public static final String BY_BEZ_EXAKT = PREFIX + "byBezExakt";
     public static final String NICHT_BESTELLT = PREFIX + "nichtBestellt";
     
     public static final String PARAM_BEZEICHNUNG = "bezeichnung";
+    public static final String PARAM_LAST_ID = "lastId";
 
     @Id
     @GeneratedValue
@@ -27,11 +27,13 @@ import de.shop.artikelverwaltung.domain.Artikel;
 import de.shop.util.ShopRuntimeException;
 import de.shop.util.Strings;
 import de.shop.util.rest.REST;
+import de.shop.util.rest.StreamingListWriter;
 import de.shop.util.rest.UriHelper;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.util.List;
 import java.util.Optional;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -41,6 +43,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
@@ -80,6 +83,7 @@ public class KatalogResource {
     
     private KatalogBroker katalogBroker;
     private UriHelper uriHelper;
+    private Instance<StreamingListWriter> streamingListWriterInstance;
 
     /**
      * Public Default-Konstruktor f&uuml;r JAX-RS
@@ -92,12 +96,16 @@ public class KatalogResource {
      * Package-private Konstruktor mit "Constructor Injection" f&uuml;r CDI
      * @param katalogBroker zu injizierendes Objekt f&uuml;r KatalogBroker
      * @param uriHelper zu injizierendes Objekt f&uuml;r UriHelper
+     * @param streamingListWriterInstance zu injizierendes Instance-Objekt f&uuml;r StreamingListWriter
      */
     @Inject
-    KatalogResource(KatalogBroker katalogBroker, UriHelper uriHelper) {
+    KatalogResource(KatalogBroker katalogBroker,
+                    UriHelper uriHelper,
+                    Instance<StreamingListWriter> streamingListWriterInstance) {
         super();
         this.katalogBroker = katalogBroker;
         this.uriHelper = uriHelper;
+        this.streamingListWriterInstance = streamingListWriterInstance;
     }
 
     /**
@@ -162,6 +170,33 @@ public class KatalogResource {
                        .build();
     }
     
+    /**
+     * Mit der URI /katalog/stream alle verfuegbaren Artikel elementweise als JSON-Array oder XML-Dokument ermitteln
+     * @param bezeichnung Artikelbezeichnung oder null, um alle verfuegbaren Artikel zu suchen
+     * @param request von JAX-RS injiziertes Objekt zu Request
+     * @return Response mit den Artikeldaten als Stream
+     */
+    @GET
+    @Path("/stream")
+    @ApiOperation(value = "Artikel anhand der Bezeichnung als Stream ermitteln",
+                  response = Artikel.class,
+                  responseContainer = "List")
+    @ApiResponses({
+        @ApiResponse(code = 200, message = "OK", response = Artikel.class),
+        @ApiResponse(code = 406, message = "Nur JSON und XML werden unterst\u00FCtzt")
+    })
+    public Response stream(@QueryParam(BEZEICHNUNG_QUERY_PARAM)
+                           @ApiParam(value = "Die Bezeichnung der gesuchten Artikel")
+                           String bezeichnung,
+                           @Context
+                           Request request) {
+        // Artikel haben keine strukturellen Links
+        return streamingListWriterInstance.get().ok(katalogBroker.streamByBezeichnung(bezeichnung),
+                                                    Artikel.class,
+                                                    a -> { },
+                                                    request);
+    }
+    
     
     //--------------------------------------------------------------------------
     // Methoden fuer URIs und Links
@@ -25,6 +25,7 @@ import de.shop.kundenverwaltung.business.KundenBroker;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.util.interceptor.Log;
 import de.shop.util.persistence.DefaultEM;
+import de.shop.util.persistence.KeysetStream;
 import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.util.Collections;
@@ -32,6 +33,7 @@ import java.util.List;
 import java.util.Optional;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.enterprise.context.Dependent;
 import javax.enterprise.event.Event;
 import javax.enterprise.inject.Instance;
@@ -49,6 +51,7 @@ import org.jboss.weld.experimental.ExperimentalEvent;
 import static de.shop.bestellverwaltung.domain.Bestellung.GRAPH_LIEFERUNGEN;
 import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.MIT_BESTELLUNGEN;
 import static de.shop.util.Constants.LOADGRAPH;
+import static de.shop.util.Constants.STREAM_CHUNK_SIZE;
 import static java.math.BigDecimal.ZERO;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
@@ -141,6 +144,48 @@ public class BestellungenBroker {
         final List<Bestellung> bestellungen = query.getResultList();
         return bestellungen.isEmpty() ? empty() : of(bestellungen);
     }
+    
+    /**
+     * Bestellungen zu einem gegebenen Kunden seitenweise nach aufsteigenden IDs suchen ("Keyset Pagination").
+     * @param <K> abgeleitete Klasse von AbstractKunde
+     * @param kunde Der gegebene Kunde
+     * @param lastId ID der letzten Bestellung der vorherigen Seite bzw. 0 fuer die erste Seite
+     * @param maxResults Maximale Anzahl der Bestellungen
+     * @return Die gefundenen Bestellungen mit einer ID groesser als lastId
+     */
+    public <K extends AbstractKunde> Optional<List<Bestellung>> findBestellungenByKunde(K kunde,
+                                                                                        long lastId,
+                                                                                        int maxResults) {
+        if (kunde == null) {
+            return empty();
+        }
+        
+        final List<Bestellung> bestellungen = em.createNamedQuery(Bestellung.BY_KUNDEID_AFTER_ID, Bestellung.class)
+                                                .setParameter(Bestellung.PARAM_KUNDEID, kunde.getId())
+                                                .setParameter(Bestellung.PARAM_LAST_ID, lastId)
+                                                .setMaxResults(maxResults)
+                                                .getResultList();
+        return bestellungen.isEmpty() ? empty() : of(bestellungen);
+    }
+    
+    /**
+     * Alle Bestellungen zu einem gegebenen Kunden nach aufsteigenden IDs abschnittsweise lesen.
+     * Vor dem Lesen eines weiteren Abschnitts wird der Persistenzkontext geleert.
+     * @param <K> abgeleitete Klasse von AbstractKunde
+     * @param kunde Der gegebene Kunde
+     * @return Stream mit den Bestellungen des Kunden
+     */
+    public <K extends AbstractKunde> Stream<Bestellung> streamBestellungenByKunde(K kunde) {
+        return KeysetStream.of(lastId -> {
+                                   if (lastId > 0) {
+                                       em.clear();
+                                   }
+                                   return findBestellungenByKunde(kunde, lastId, STREAM_CHUNK_SIZE)
+                                          .orElse(Collections.emptyList());
+                               },
+                               Bestellung::getId,
+                               STREAM_CHUNK_SIZE);
+    }
 
 
     /**
@@ -228,6 +273,14 @@ public class BestellungenBroker {
         bestellung.setGesamtbetrag(gesamtbetrag);
         
         em.persist(bestellung);
+        
+        // Umsatz usw. beim Kunden durch 1 UPDATE-Anweisung fortschreiben, ohne die Versionsnummer zu erhoehen
+        final int maxAnzahl = bestellung.getBestellpositionen()
+                                        .stream()
+                                        .mapToInt(Bestellposition::getAnzahl)
+                                        .max()
+                                        .orElse(0);
+        kundenBrokerInstance.get().addBestellung(kundeDb.getId(), gesamtbetrag, maxAnzahl, bestellung.getErzeugt());
 
         // FIXME Java EE 8: Event statt ExperimentalEvent
         ((ExperimentalEvent<Bestellung>) event.get()).fireAsync(bestellung);
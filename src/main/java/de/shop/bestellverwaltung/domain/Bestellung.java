@@ -84,7 +84,13 @@ import static javax.persistence.FetchType.EAGER;
     @NamedQuery(name  = Bestellung.BY_KUNDEID,
                 query = "SELECT b"
                         + " FROM   Bestellung b"
-                        + " WHERE  b.kunde.id = :" + Bestellung.PARAM_KUNDEID)
+                        + " WHERE  b.kunde.id = :" + Bestellung.PARAM_KUNDEID),
+    @NamedQuery(name  = Bestellung.BY_KUNDEID_AFTER_ID,
+                query = "SELECT b"
+                        + " FROM   Bestellung b"
+                        + " WHERE  b.kunde.id = :" + Bestellung.PARAM_KUNDEID
+                        + "        AND b.id > :" + Bestellung.PARAM_LAST_ID
+                        + " ORDER BY b.id")
 })
 @NamedEntityGraphs({
     @NamedEntityGraph(name = Bestellung.GRAPH_LIEFERUNGEN,
@@ -96,8 +102,10 @@ public class Bestellung extends AbstractVersionedAuditable {
     
     private static final String PREFIX = "Bestellung.";
     public static final String BY_KUNDEID = PREFIX + "byKundeId";
+    public static final String BY_KUNDEID_AFTER_ID = PREFIX + "byKundeIdAfterId";
     
     public static final String PARAM_KUNDEID = "kundeId";
+    public static final String PARAM_LAST_ID = "lastId";
     
     public static final String GRAPH_LIEFERUNGEN = PREFIX + "lieferungen";
 
@@ -35,11 +35,13 @@ import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.kundenverwaltung.rest.KundenResource;
 import de.shop.util.ShopRuntimeException;
 import de.shop.util.rest.REST;
+import de.shop.util.rest.StreamingListWriter;
 import de.shop.util.rest.UriHelper;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
@@ -48,6 +50,8 @@ import java.util.logging.Logger;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.ws.rs.BeanParam;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
@@ -55,9 +59,11 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import org.picketlink.authorization.annotations.RolesAllowed;
@@ -69,8 +75,12 @@ import static de.shop.iam.domain.RolleType.MITARBEITER_STRING;
 import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.MIT_BESTELLUNGEN;
 import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.NUR_KUNDE;
 import static de.shop.util.Constants.ADD_LINK;
+import static de.shop.util.Constants.CURSOR_QUERY_PARAM;
 import static de.shop.util.Constants.FIRST_LINK;
 import static de.shop.util.Constants.LAST_LINK;
+import static de.shop.util.Constants.LIMIT_QUERY_PARAM;
+import static de.shop.util.Constants.MAX_PAGE_SIZE;
+import static de.shop.util.Constants.NEXT_LINK;
 import static de.shop.util.Constants.SELF_LINK;
 import static java.util.logging.Level.FINER;
 import static java.util.logging.Level.FINEST;
@@ -107,11 +117,13 @@ public class BestellungenResource {
     private Instance<KatalogBroker> katalogBrokerInstance;
     private Instance<KundenBroker> kundenBrokerInstance;
     private Instance<IdentityAccessManagement> iamInstance;
+    private Instance<StreamingListWriter> streamingListWriterInstance;
     
     static {
         try {
             FIND_BY_ID = BestellungenResource.class.getMethod("findById", long.class, UriInfo.class);
-            FIND_BY_KUNDE_ID = BestellungenResource.class.getMethod("findByKundeId", long.class, UriInfo.class);
+            FIND_BY_KUNDE_ID = BestellungenResource.class.getMethod("findByKundeId", long.class, Integer.class,
+                                                                    String.class, UriInfo.class);
         } catch (NoSuchMethodException | SecurityException e) {
             throw new ShopRuntimeException(e);
         }
@@ -131,18 +143,21 @@ public class BestellungenResource {
      * @param katalogBrokerInstance zu injizierendes Instance-Objekt f&uuml;r KatalogBroker
      * @param kundenBrokerInstance zu injizierendes Instance-Objekt f&uuml;r KundenBroker
      * @param iamInstance zu injizierendes Instance-Objekt f&uuml;r IdentityAccessManagement
+     * @param streamingListWriterInstance zu injizierendes Instance-Objekt f&uuml;r StreamingListWriter
      */
     @Inject
     BestellungenResource(BestellungenBroker bestellungenBroker,
                          UriHelper uriHelper,
                          Instance<KatalogBroker> katalogBrokerInstance,
                          Instance<KundenBroker> kundenBrokerInstance,
-                         Instance<IdentityAccessManagement> iamInstance) {
+                         Instance<IdentityAccessManagement> iamInstance,
+                         Instance<StreamingListWriter> streamingListWriterInstance) {
         super();
         this.bestellungenBroker = bestellungenBroker;
         this.katalogBrokerInstance = katalogBrokerInstance;
         this.kundenBrokerInstance = kundenBrokerInstance;
         this.iamInstance = iamInstance;
+        this.streamingListWriterInstance = streamingListWriterInstance;
         this.uriHelper = uriHelper;
     }
 
@@ -184,8 +199,12 @@ public class BestellungenResource {
     
     
     /**
-     * Mit der URI kunden/{id}/bestellungen die Bestellungen zu eine Kunden ermitteln
+     * Mit der URI kunden/{id}/bestellungen die Bestellungen zu eine Kunden ermitteln.
+     * Mit den Query-Parametern limit und cursor werden die Bestellungen seitenweise ermittelt,
+     * wobei der Link "next" auf die naechste Seite verweist.
      * @param kundeId ID des Kunden
+     * @param limit Max. Anzahl Bestellungen pro Seite oder null
+     * @param cursor Cursor aus dem Link "next" der vorherigen Seite oder null
      * @param uriInfo von JAX-RS injiziertes Objekt zu UriInfo
      * @return Objekt mit Bestellungsdaten, falls die ID vorhanden ist
      */
@@ -197,10 +216,20 @@ public class BestellungenResource {
                   responseContainer = "List")
     @ApiResponses({
         @ApiResponse(code = 200, message = "OK", response = Bestellung.class),
+        @ApiResponse(code = 400, message = "Ung\u00FCltiger Cursor"),
         @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
         @ApiResponse(code = 404, message = "Es gibt keine Bestellungen zur angegebenen Kundennummer")
     })
-    public Response findByKundeId(@PathParam(KUNDEN_ID_PATH_PARAM) long kundeId, @Context UriInfo uriInfo) {
+    public Response findByKundeId(@PathParam(KUNDEN_ID_PATH_PARAM)
+                                  long kundeId,
+                                  @QueryParam(LIMIT_QUERY_PARAM)
+                                  @Min(value = 1, message = "{pagination.limit.min}")
+                                  @Max(value = MAX_PAGE_SIZE, message = "{pagination.limit.max}")
+                                  Integer limit,
+                                  @QueryParam(CURSOR_QUERY_PARAM)
+                                  String cursor,
+                                  @Context
+                                  UriInfo uriInfo) {
         final IdentityAccessManagement iam = iamInstance.get();
         
         final Optional<? extends AbstractKunde> kundeOpt = kundenBrokerInstance.get().findById(kundeId, NUR_KUNDE);
@@ -211,6 +240,10 @@ public class BestellungenResource {
         
         final AbstractKunde kunde = kundeOpt.get();
         iam.checkSameIdentity(kunde.getLoginname());
+        if (limit != null || cursor != null) {
+            return findByKunde(kunde, limit, cursor, uriInfo);
+        }
+        
         final Optional<List<Bestellung>> bestellungenOpt = bestellungenBroker.findBestellungenByKunde(kunde,
                                                                                                       NUR_BESTELLUNG);
         
@@ -226,6 +259,88 @@ public class BestellungenResource {
                        .build();
     }
     
+    /**
+     * Mit der URI /bestellungen/kunde/{id}/stream alle Bestellungen eines Kunden elementweise
+     * als JSON-Array oder XML-Dokument ermitteln.
+     * @param kundeId ID des Kunden
+     * @param uriInfo von JAX-RS injiziertes Objekt zu UriInfo
+     * @param request von JAX-RS injiziertes Objekt zu Request
+     * @return Response mit den Bestellungen als Stream
+     */
+    @GET
+    @Path("/kunde/{" + KUNDEN_ID_PATH_PARAM + ":[1-9]\\d*}/stream")
+    @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING, KUNDE_STRING })
+    @ApiOperation(value = "Bestellungen zur angegebenen Kundennummer als Stream ermitteln",
+                  response = Bestellung.class,
+                  responseContainer = "List")
+    @ApiResponses({
+        @ApiResponse(code = 200, message = "OK", response = Bestellung.class),
+        @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
+        @ApiResponse(code = 404, message = "Es gibt keinen Kunden zur angegebenen Kundennummer"),
+        @ApiResponse(code = 406, message = "Nur JSON und XML werden unterst\u00FCtzt")
+    })
+    public Response streamByKundeId(@PathParam(KUNDEN_ID_PATH_PARAM) long kundeId,
+                                    @Context UriInfo uriInfo,
+                                    @Context Request request) {
+        final IdentityAccessManagement iam = iamInstance.get();
+        
+        final Optional<? extends AbstractKunde> kundeOpt = kundenBrokerInstance.get().findById(kundeId, NUR_KUNDE);
+        if (!kundeOpt.isPresent()) {
+            iam.checkAdminMitarbeiter();
+            return Response.status(NOT_FOUND).build();
+        }
+        
+        final AbstractKunde kunde = kundeOpt.get();
+        iam.checkSameIdentity(kunde.getLoginname());
+        return streamingListWriterInstance.get().ok(bestellungenBroker.streamBestellungenByKunde(kunde),
+                                                    Bestellung.class,
+                                                    bestellung -> setStructuralLinks(bestellung, uriInfo),
+                                                    request);
+    }
+    
+    /**
+     * Bestellungen zu einem Kunden seitenweise ermitteln ("Keyset Pagination")
+     * @param kunde Der Kunde
+     * @param limit Max. Anzahl Bestellungen pro Seite oder null
+     * @param cursor Cursor der vorherigen Seite oder null fuer die erste Seite
+     * @param uriInfo von JAX-RS injiziertes Objekt zu UriInfo
+     * @return Response mit den Bestellungen der Seite und ggf. dem Link "next"
+     */
+    private Response findByKunde(AbstractKunde kunde, Integer limit, String cursor, UriInfo uriInfo) {
+        final Optional<Long> lastIdOpt = uriHelper.decodeCursor(cursor);
+        if (!lastIdOpt.isPresent()) {
+            return Response.status(BAD_REQUEST).build();
+        }
+        
+        // Eine Bestellung mehr lesen, um festzustellen, ob es eine naechste Seite gibt
+        final int maxResults = limit == null ? MAX_PAGE_SIZE : limit;
+        final Optional<List<Bestellung>> bestellungenOpt = bestellungenBroker.findBestellungenByKunde(kunde,
+                                                                                                      lastIdOpt.get(),
+                                                                                                      maxResults + 1);
+        if (!bestellungenOpt.isPresent()) {
+            return Response.status(NOT_FOUND).build();
+        }
+        
+        final List<Bestellung> gefundeneBestellungen = bestellungenOpt.get();
+        final boolean hasNext = gefundeneBestellungen.size() > maxResults;
+        final List<Bestellung> bestellungen = hasNext
+                                              ? new ArrayList<>(gefundeneBestellungen.subList(0, maxResults))
+                                              : gefundeneBestellungen;
+        bestellungen.forEach(bestellung -> setStructuralLinks(bestellung, uriInfo));
+        
+        final List<Link> links = new ArrayList<>(Arrays.asList(getTransitionalLinks(bestellungen, kunde, uriInfo)));
+        if (hasNext) {
+            final long lastId = bestellungen.get(bestellungen.size() - 1).getId();
+            links.add(Link.fromUri(uriHelper.getNextUri(lastId, uriInfo))
+                          .rel(NEXT_LINK)
+                          .build());
+        }
+        
+        return Response.ok(new GenericEntity<List<Bestellung>>(bestellungen) {})   //NOSONAR
+                       .links(links.toArray(new Link[links.size()]))
+                       .build();
+    }
+    
     /**
      * Mit der URI /bestellungen eine neue Bestellung anlegen
      * @param bestellung die neue Bestellung
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.iam.business;
+
+/**
+ * Zaehler fuer die Anfragen an das IAM-System (PicketLink) im aktuellen Thread, d.h. i.a. pro Request.
+ * Der Zaehler wird z.B. durch IamQueryFilter zu Beginn eines REST-Requests zurueckgesetzt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public final class IamQueryCounter {
+    private static final ThreadLocal<int[]> COUNTER = ThreadLocal.withInitial(() -> new int[1]);
+    
+    private IamQueryCounter() {
+    }
+    
+    /**
+     * Den Zaehler fuer den aktuellen Thread auf 0 setzen
+     */
+    public static void reset() {
+        COUNTER.get()[0] = 0;
+    }
+    
+    /**
+     * Eine weitere Anfrage an das IAM-System zaehlen
+     */
+    static void increment() {
+        COUNTER.get()[0]++;
+    }
+    
+    /**
+     * @return Anzahl der Anfragen an das IAM-System seit dem letzten Zuruecksetzen
+     */
+    public static int get() {
+        return COUNTER.get()[0];
+    }
+}
@@ -27,6 +27,8 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -35,6 +37,7 @@ import java.util.Set;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.Dependent;
+import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import org.apache.deltaspike.security.api.authorization.AccessDeniedException;
@@ -52,6 +55,7 @@ import org.picketlink.idm.model.basic.Role;
 import org.picketlink.idm.model.basic.User;
 import org.picketlink.idm.query.RelationshipQuery;
 
+import static de.shop.iam.domain.IdentityVO.normalizeEmail;
 import static de.shop.iam.domain.RolleType.ADMIN;
 import static de.shop.iam.domain.RolleType.ADMIN_STRING;
 import static de.shop.iam.domain.RolleType.KUNDE;
@@ -69,6 +73,7 @@ import static java.util.Optional.empty;
 import static java.util.Optional.of;
 import static java.util.logging.Level.FINEST;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 import static org.picketlink.idm.model.basic.BasicModel.getRole;
 import static org.picketlink.idm.model.basic.BasicModel.getUser;
 import static org.picketlink.idm.model.basic.BasicModel.grantRole;
@@ -96,11 +101,16 @@ public class IdentityAccessManagement {
     private static final String EINGELOGGT_IN_DER_ROLLE = "Eingeloggt in der Rolle: ";
 
     private static final Map<RolleType, Role> ROLLEN = new EnumMap<>(RolleType.class);
+    
+    // Max. Anzahl Loginnamen pro Anfrage bei findIdentitiesByLoginnamen()
+    private static final int IDENTITY_BATCH_SIZE = 500;
 
     
     IdentityManager identityManager;
     RelationshipManager relationshipManager;
     Identity identity;
+    Instance<IdentityPrefixIndex> identityPrefixIndexInstance;
+    Instance<IdentityEmailIndex> identityEmailIndexInstance;
     
     // FIXME ab PicketLink 2.7.0 enthaelt @PicketLink auch das Target PARAMETER und kann bei "Constructor Injection" genutzt werden
     @Inject
@@ -108,11 +118,15 @@ public class IdentityAccessManagement {
     EntityManager em;
 
     @Inject
-    IdentityAccessManagement(IdentityManager identityManager, RelationshipManager relationshipManager, Identity identity) {
+    IdentityAccessManagement(IdentityManager identityManager, RelationshipManager relationshipManager, Identity identity,
+                             Instance<IdentityPrefixIndex> identityPrefixIndexInstance,
+                             Instance<IdentityEmailIndex> identityEmailIndexInstance) {
         super();
         this.identityManager = identityManager;
         this.relationshipManager = relationshipManager;
         this.identity = identity;
+        this.identityPrefixIndexInstance = identityPrefixIndexInstance;
+        this.identityEmailIndexInstance = identityEmailIndexInstance;
     }
 
     @PostConstruct
@@ -138,10 +152,83 @@ public class IdentityAccessManagement {
             return empty();
         }
         
+        IamQueryCounter.increment();
         final User user = getUser(identityManager, loginname);
         return user == null ? empty() : of(new IdentityVO(user));
     }
     
+    /**
+     * Zu mehreren Loginnamen die passenden User ermitteln. Statt einer Anfrage pro Loginname wird
+     * je IDENTITY_BATCH_SIZE Loginnamen nur 1 Anfrage an PicketLink abgesetzt.
+     * @param loginnamen Loginnamen
+     * @return Map mit dem Loginnamen als Key und der Identity als Wert
+     */
+    public Map<String, IdentityVO> findIdentitiesByLoginnamen(Collection<String> loginnamen) {
+        if (loginnamen == null || loginnamen.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        
+        final List<String> loginnamenList = loginnamen.stream()
+                                                      .filter(l -> !isNullOrEmpty(l))
+                                                      .distinct()
+                                                      .collect(toList());
+        final Map<String, IdentityVO> identities = new HashMap<>(loginnamenList.size() * 2);
+        for (int i = 0; i < loginnamenList.size(); i += IDENTITY_BATCH_SIZE) {
+            final Object[] chunk = loginnamenList.subList(i, Math.min(i + IDENTITY_BATCH_SIZE, loginnamenList.size()))
+                                                 .toArray();
+            IamQueryCounter.increment();
+            // Mehrere Werte fuer einen Parameter werden durch PicketLink als IN-Praedikat umgesetzt
+            identityManager.createIdentityQuery(User.class)
+                           .setParameter(User.LOGIN_NAME, chunk)
+                           .getResultList()
+                           .forEach(user -> identities.put(user.getLoginName(), new IdentityVO(user)));
+        }
+        
+        if (LOGGER.isLoggable(FINEST)) {
+            LOGGER.finest("Anzahl Loginnamen: " + loginnamenList.size() + ", gefundene Identities: " + identities.size());
+        }
+        return identities;
+    }
+    
+    
+    /**
+     * Zu mehreren Emailadressen diejenigen ermitteln, die bereits bei einem User verwendet werden.
+     * Die Abfrage erfolgt in Bloecken von max. IDENTITY_BATCH_SIZE Emailadressen.
+     * @param emails Emailadressen
+     * @return Menge der bereits verwendeten Emailadressen, normalisiert durch IdentityVO.normalizeEmail()
+     */
+    public Set<String> findVorhandeneEmails(Collection<String> emails) {
+        if (emails == null || emails.isEmpty()) {
+            return Collections.emptySet();
+        }
+        
+        final List<String> emailsList = emails.stream()
+                                              .filter(e -> !isNullOrEmpty(e))
+                                              .distinct()
+                                              .collect(toList());
+        final IdentityEmailIndex identityEmailIndex = identityEmailIndexInstance.get();
+        if (identityEmailIndex.isLoaded()) {
+            return emailsList.stream()
+                             .filter(e -> identityEmailIndex.findLoginname(e).isPresent())
+                             .map(IdentityVO::normalizeEmail)
+                             .collect(toSet());
+        }
+        
+        final Set<String> vorhanden = new HashSet<>();
+        for (int i = 0; i < emailsList.size(); i += IDENTITY_BATCH_SIZE) {
+            final Object[] chunk = emailsList.subList(i, Math.min(i + IDENTITY_BATCH_SIZE, emailsList.size()))
+                                             .toArray();
+            IamQueryCounter.increment();
+            identityManager.createIdentityQuery(User.class)
+                           .setParameter(User.EMAIL, chunk)
+                           .getResultList()
+                           .forEach(user -> {
+                               identityEmailIndex.put(user.getEmail(), user.getLoginName());
+                               vorhanden.add(normalizeEmail(user.getEmail()));
+                           });
+        }
+        return vorhanden;
+    }
     
     /**
      * Suche nach Loginnamen mit dem gleichen Praefix
@@ -150,6 +237,12 @@ public class IdentityAccessManagement {
      */
     @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
     public List<String> findLoginnamenByPrefix(String loginnamePrefix) {
+        final IdentityPrefixIndex identityPrefixIndex = identityPrefixIndexInstance.get();
+        if (identityPrefixIndex.isLoaded()) {
+            return identityPrefixIndex.findLoginnamen(loginnamePrefix, MAX_AUTOCOMPLETE);
+        }
+        
+        IamQueryCounter.increment();
         return em.createNamedQuery(FIND_LOGINNAMEN_BY_PREFIX, StringIam.class)
                  .setParameter(PARAM_LOGINNAME_PREFIX, loginnamePrefix + '%')
                  .setMaxResults(MAX_AUTOCOMPLETE)
@@ -166,6 +259,7 @@ public class IdentityAccessManagement {
      */
     @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
     public Optional<List<String>> findEmailByLoginname(String loginname) {
+        IamQueryCounter.increment();
         final List<String> email = em.createNamedQuery(FIND_EMAIL, StringIam.class)
                                      .setParameter(PARAM_LOGINNAME, loginname)
                                      .setMaxResults(MAX_AUTOCOMPLETE)
@@ -186,6 +280,7 @@ public class IdentityAccessManagement {
             return empty();
         }
         
+        IamQueryCounter.increment();
         // TODO Migration PicketLink 2.6.x -> 2.7.0
         //final IdentityQueryBuilder builder = identityManager.getQueryBuilder();
         //final Condition condition = builder.equal(User.LAST_NAME, nachname);
@@ -207,6 +302,12 @@ public class IdentityAccessManagement {
      */
     @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
     public List<String> findNachnamenByPrefix(String nachnamePrefix) {
+        final IdentityPrefixIndex identityPrefixIndex = identityPrefixIndexInstance.get();
+        if (identityPrefixIndex.isLoaded()) {
+            return identityPrefixIndex.findNachnamen(nachnamePrefix, MAX_AUTOCOMPLETE);
+        }
+        
+        IamQueryCounter.increment();
         return em.createNamedQuery(FIND_NACHNAMEN_BY_PREFIX, StringIam.class)
                  .setParameter(PARAM_NACHNAME_PREFIX, nachnamePrefix + '%')
                  .setMaxResults(MAX_AUTOCOMPLETE)
@@ -226,6 +327,7 @@ public class IdentityAccessManagement {
             return empty();
         }
         
+        IamQueryCounter.increment();
         // TODO Migration PicketLink 2.6.x -> 2.7.0
         //final IdentityQueryBuilder builder = identityManager.getQueryBuilder();
         //final Condition condition = builder.equal(User.LAST_NAME, nachname);
@@ -240,6 +342,32 @@ public class IdentityAccessManagement {
         return loginnamen.isEmpty() ? empty() : of(loginnamen);
     }
     
+    /**
+     * Den Loginnamen zu einer Emailadresse ermitteln. Ist der Index fuer Emailadressen aufgebaut, wird die
+     * PicketLink-DB nicht abgefragt; andernfalls wird ein gefundener User in den Index uebernommen.
+     * @param email Emailadresse, Gross-/Kleinschreibung wird ignoriert
+     * @return Loginname des Users mit der Emailadresse oder Optional.empty()
+     */
+    public Optional<String> findLoginnameByEmail(String email) {
+        if (Strings.isNullOrEmpty(email)) {
+            return empty();
+        }
+        
+        final IdentityEmailIndex identityEmailIndex = identityEmailIndexInstance.get();
+        final Optional<String> loginname = identityEmailIndex.findLoginname(email);
+        if (loginname.isPresent() || identityEmailIndex.isLoaded()) {
+            return loginname;
+        }
+        
+        final Optional<List<IdentityVO>> identities = findIdentitiesByEmail(email);
+        if (!identities.isPresent()) {
+            return empty();
+        }
+        final String result = identities.get().get(0).getLoginname();
+        identityEmailIndex.put(email, result);
+        return of(result);
+    }
+    
     /**
      * Zu einer Email die passenden User ermitteln
      * @param email Email
@@ -250,6 +378,7 @@ public class IdentityAccessManagement {
             return empty();
         }
         
+        IamQueryCounter.increment();
         // TODO Migration PicketLink 2.6.x -> 2.7.0
         //final IdentityQueryBuilder builder = identityManager.getQueryBuilder();
         //final Condition condition = builder.equal(User.EMAIL, email);
@@ -281,27 +410,36 @@ public class IdentityAccessManagement {
         if (!Strings.isNullOrEmpty(password)) {
             identityManager.updateCredential(user, new Password(password));
         }
+        identityPrefixIndexInstance.get().add(user.getLoginName(), user.getLastName());
+        identityEmailIndexInstance.get().add(user.getEmail(), user.getLoginName());
 
         return identity;
     }
 
     public void updateIdentity(IdentityVO identity) {
+        IamQueryCounter.increment();
         final User user = getUser(identityManager, identity.getLoginname());
         if (!identity.equalsUser(user)) {
             if (LOGGER.isLoggable(FINEST)) {
                 LOGGER.finest("Das User-Objekt muss aktualisiert werden");
             }
+            final String nachnameAlt = user.getLastName();
+            final String emailAlt = user.getEmail();
             identity.updateUser(user);
             if (LOGGER.isLoggable(FINEST)) {
                 LOGGER.finest("Der IdentityManager fuehrt mit dem aktualisierten User-Objekt ein Update durch");
             }
             identityManager.update(user);
+            identityPrefixIndexInstance.get().updateNachname(nachnameAlt, user.getLastName());
+            identityEmailIndexInstance.get().update(emailAlt, user.getEmail(), user.getLoginName());
         }
     }
     
     public void removeIdentity(IdentityVO identity) {
-        final IdentityType user = getUser(identityManager, identity.getLoginname());
+        final User user = getUser(identityManager, identity.getLoginname());
         identityManager.remove(user);
+        identityPrefixIndexInstance.get().remove(user.getLoginName(), user.getLastName());
+        identityEmailIndexInstance.get().remove(user.getEmail(), user.getLoginName());
     }
     
     public Optional<List<RolleType>> findRollen(String loginname) {
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.iam.business;
+
+import de.shop.util.persistence.AfterCommit;
+import java.lang.invoke.MethodHandles;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import org.picketlink.idm.model.basic.User;
+
+import static de.shop.iam.domain.IdentityVO.normalizeEmail;
+import static java.util.Optional.empty;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Hash-Index von der normalisierten Emailadresse zum Loginnamen, damit die Pruefung auf eine bereits
+ * verwendete Emailadresse und die Suche nach Kunden per Emailadresse ohne Abfrage der PicketLink-DB auskommen.
+ * Solange der Index nicht aufgebaut ist, werden gefundene Eintraege beim Lesen uebernommen ("Read Through").
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class IdentityEmailIndex {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    private final ConcurrentHashMap<String, String> loginnamen = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+    
+    @Inject
+    private AfterCommit afterCommit;
+    
+    /**
+     * Den Index mit allen vorhandenen Usern neu aufbauen, z.B. beim Start der Anwendung.
+     * @param users Alle User aus dem IAM-System
+     */
+    public void rebuild(Collection<User> users) {
+        loginnamen.clear();
+        users.forEach(u -> put(u.getEmail(), u.getLoginName()));
+        loaded = true;
+        LOGGER.info("Index fuer Emailadressen aufgebaut: " + loginnamen.size() + " Emailadressen");
+    }
+    
+    /**
+     * @return true, falls der Index vollstaendig aufgebaut wurde, d.h. ein fehlender Eintrag ist aussagekraeftig
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    /**
+     * Den Loginnamen zu einer Emailadresse ermitteln.
+     * @param email Emailadresse, Gross-/Kleinschreibung und fuehrende/folgende Leerzeichen werden ignoriert
+     * @return Loginname oder Optional.empty()
+     */
+    public Optional<String> findLoginname(String email) {
+        final String key = normalizeEmail(email);
+        return key == null ? empty() : ofNullable(loginnamen.get(key));
+    }
+    
+    /**
+     * Einen bereits gespeicherten Eintrag uebernehmen, z.B. nach einer Abfrage der PicketLink-DB.
+     * @param email Emailadresse
+     * @param loginname zugehoeriger Loginname
+     */
+    public void put(String email, String loginname) {
+        final String key = normalizeEmail(email);
+        if (key == null || loginname == null) {
+            return;
+        }
+        // Bei mehrfach verwendeten Emailadressen (nur bei Usern ohne Kundendaten moeglich) bleibt der 1. Eintrag
+        loginnamen.putIfAbsent(key, loginname);
+    }
+    
+    /**
+     * Einen neuen User nach dem Commit eintragen.
+     * @param email Emailadresse des neuen Users
+     * @param loginname Loginname des neuen Users
+     */
+    public void add(String email, String loginname) {
+        afterCommit.run(() -> put(email, loginname));
+    }
+    
+    /**
+     * Eine geaenderte Emailadresse nach dem Commit aktualisieren.
+     * @param emailAlt Bisherige Emailadresse
+     * @param emailNeu Neue Emailadresse
+     * @param loginname Loginname des Users
+     */
+    public void update(String emailAlt, String emailNeu, String loginname) {
+        if (Objects.equals(normalizeEmail(emailAlt), normalizeEmail(emailNeu))) {
+            return;
+        }
+        afterCommit.run(() -> {
+            removeEntry(emailAlt, loginname);
+            put(emailNeu, loginname);
+        });
+    }
+    
+    /**
+     * Einen geloeschten User nach dem Commit austragen.
+     * @param email Emailadresse des geloeschten Users
+     * @param loginname Loginname des geloeschten Users
+     */
+    public void remove(String email, String loginname) {
+        afterCommit.run(() -> removeEntry(email, loginname));
+    }
+    
+    private void removeEntry(String email, String loginname) {
+        final String key = normalizeEmail(email);
+        if (key != null) {
+            loginnamen.remove(key, loginname);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.iam.business;
+
+import de.shop.util.persistence.AfterCommit;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Logger;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import org.picketlink.idm.model.basic.User;
+
+import static java.util.logging.Level.FINER;
+
+/**
+ * Praefix-Index fuer Nachnamen und Loginnamen, damit das Autovervollstaendigen ohne
+ * <code>LIKE</code>-Abfrage in der PicketLink-DB auskommt. Wie bei der DB-Abfrage wird Gross-/Kleinschreibung
+ * beim Vergleich ignoriert.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class IdentityPrefixIndex {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    private final SortedPrefixes nachnamen = new SortedPrefixes();
+    private final SortedPrefixes loginnamen = new SortedPrefixes();
+    private volatile boolean loaded;
+    
+    @Inject
+    private AfterCommit afterCommit;
+    
+    /**
+     * Den Index mit allen vorhandenen Usern neu aufbauen, z.B. beim Start der Anwendung.
+     * @param users Alle User aus dem IAM-System
+     */
+    public void rebuild(Collection<User> users) {
+        nachnamen.clear();
+        loginnamen.clear();
+        users.forEach(u -> {
+            nachnamen.add(u.getLastName());
+            loginnamen.add(u.getLoginName());
+        });
+        loaded = true;
+        LOGGER.info("Praefix-Index fuer Nachnamen und Loginnamen aufgebaut: " + users.size() + " User");
+    }
+    
+    /**
+     * @return true, falls der Index aufgebaut wurde
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    /**
+     * Nachnamen mit dem gleichen Praefix ermitteln.
+     * @param prefix Praefix, Gross-/Kleinschreibung wird ignoriert
+     * @param maxResults maximale Anzahl an Nachnamen
+     * @return Liste der Nachnamen
+     */
+    public List<String> findNachnamen(String prefix, int maxResults) {
+        return nachnamen.find(prefix, maxResults);
+    }
+    
+    /**
+     * Loginnamen mit dem gleichen Praefix ermitteln.
+     * @param prefix Praefix, Gross-/Kleinschreibung wird ignoriert
+     * @param maxResults maximale Anzahl an Loginnamen
+     * @return Liste der Loginnamen
+     */
+    public List<String> findLoginnamen(String prefix, int maxResults) {
+        return loginnamen.find(prefix, maxResults);
+    }
+    
+    /**
+     * Einen neuen User nach dem Commit eintragen.
+     * @param loginname Loginname des neuen Users
+     * @param nachname Nachname des neuen Users
+     */
+    public void add(String loginname, String nachname) {
+        afterCommit.run(() -> {
+            loginnamen.add(loginname);
+            nachnamen.add(nachname);
+        });
+    }
+    
+    /**
+     * Einen geaenderten Nachnamen nach dem Commit aktualisieren.
+     * @param nachnameAlt Bisheriger Nachname
+     * @param nachnameNeu Neuer Nachname
+     */
+    public void updateNachname(String nachnameAlt, String nachnameNeu) {
+        if (Objects.equals(nachnameAlt, nachnameNeu)) {
+            return;
+        }
+        afterCommit.run(() -> {
+            nachnamen.remove(nachnameAlt);
+            nachnamen.add(nachnameNeu);
+        });
+    }
+    
+    /**
+     * Einen geloeschten User nach dem Commit austragen.
+     * @param loginname Loginname des geloeschten Users
+     * @param nachname Nachname des geloeschten Users
+     */
+    public void remove(String loginname, String nachname) {
+        afterCommit.run(() -> {
+            loginnamen.remove(loginname);
+            nachnamen.remove(nachname);
+        });
+    }
+    
+    /**
+     * Sortierte Werte mit Haeufigkeit: ein Nachname bleibt enthalten, solange es noch einen User dazu gibt.
+     * Der Schluessel beginnt mit dem Wert in Grossbuchstaben, so dass alle Werte zu einem Praefix
+     * einen zusammenhaengenden Bereich bilden.
+     */
+    private static final class SortedPrefixes {
+        private static final char TRENNER = '\u0000';
+        private static final char MAX_CHAR = '\uFFFF';
+        
+        private final ConcurrentSkipListMap<String, Integer> werte = new ConcurrentSkipListMap<>();
+        
+        private static String fold(String str) {
+            return str.toUpperCase(Locale.ROOT);
+        }
+        
+        private static String key(String wert) {
+            return fold(wert) + TRENNER + wert;
+        }
+        
+        void add(String wert) {
+            if (wert == null || wert.isEmpty()) {
+                return;
+            }
+            werte.merge(key(wert), 1, Integer::sum);
+        }
+        
+        void remove(String wert) {
+            if (wert == null || wert.isEmpty()) {
+                return;
+            }
+            werte.computeIfPresent(key(wert), (k, anzahl) -> anzahl <= 1 ? null : anzahl - 1);
+        }
+        
+        void clear() {
+            werte.clear();
+        }
+        
+        List<String> find(String prefix, int maxResults) {
+            if (prefix == null) {
+                return Collections.emptyList();
+            }
+            final String von = fold(prefix);
+            final ConcurrentNavigableMap<String, Integer> bereich = werte.subMap(von, true, von + MAX_CHAR, true);
+            final List<String> result = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : bereich.entrySet()) {
+                if (result.size() >= maxResults) {
+                    break;
+                }
+                final String key = entry.getKey();
+                result.add(key.substring(key.indexOf(TRENNER) + 1));
+            }
+            
+            if (LOGGER.isLoggable(FINER)) {
+                LOGGER.finer("find: " + prefix + " -> " + result);
+            }
+            return result;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 import java.util.Random;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
@@ -83,6 +84,12 @@ public class PicketLinkInitializer {
     @PicketLink
     private EntityManager em;                                          //NOSONAR
     
+    @Inject
+    private IdentityPrefixIndex identityPrefixIndex;
+    
+    @Inject
+    private IdentityEmailIndex identityEmailIndex;
+    
     @PostConstruct
     public void create() {
         LOGGER.info("Creating groups, roles and users ...");
@@ -95,6 +102,10 @@ public class PicketLinkInitializer {
         createUsers(identityMgr, relationshipMgr);
         
         LOGGER.info("Groups, roles and users created");
+        
+        final List<User> users = identityMgr.createIdentityQuery(User.class).getResultList();
+        identityPrefixIndex.rebuild(users);
+        identityEmailIndex.rebuild(users);
     }
     
     //--------------------------------------------------------------------------
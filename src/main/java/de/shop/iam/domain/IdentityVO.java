@@ -21,6 +21,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.wordnik.swagger.annotations.ApiModelProperty;
 import java.lang.invoke.MethodHandles;
 import java.util.Date;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.logging.Logger;
 import javax.persistence.Column;
@@ -48,12 +49,12 @@ public class IdentityVO {
     
     private static final int LOGINNAME_LENGTH_MAX = 32;
     private static final int PASSWORD_LENGTH_MAX = 88;
-    private static final int VORNAME_LENGTH_MAX = 32;
+    public static final int VORNAME_LENGTH_MAX = 32;
     public static final int NACHNAME_LENGTH_MAX = 32;
     private static final String NAME_PATTERN = "[A-Z\u00C4\u00D6\u00DC][a-z\u00E4\u00F6\u00FC\u00DF]+";
     private static final String PREFIX_ADEL = "(o'|von|von der|von und zu|van)?";
     public static final String NACHNAME_PATTERN = PREFIX_ADEL + NAME_PATTERN + "(-" + NAME_PATTERN + ")?";
-    private static final int EMAIL_LENGTH_MAX = 64;
+    public static final int EMAIL_LENGTH_MAX = 64;
     public static final String EMAIL_PATTERN = "[\\w.%-]+@[\\w.%-]+\\.[A-Za-z]{2,4}";
 
     @Column(nullable = false, unique = true)
@@ -117,6 +118,15 @@ public class IdentityVO {
         setValues(identity);
     }
 
+    /**
+     * Eine Emailadresse fuer Vergleiche normalisieren: ohne fuehrende/folgende Leerzeichen und in Kleinbuchstaben.
+     * @param email Emailadresse oder null
+     * @return normalisierte Emailadresse oder null
+     */
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.trim().toLowerCase(Locale.ROOT);
+    }
+
     @AssertTrue(message = "{identity.password.notEqual}")
     @XmlTransient
     @JsonIgnore
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.iam.rest;
+
+import de.shop.iam.business.IamQueryCounter;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.logging.Logger;
+import javax.annotation.Priority;
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+import static java.util.logging.Level.FINER;
+import static javax.interceptor.Interceptor.Priority.APPLICATION;
+
+/**
+ * Anzahl der Anfragen an das IAM-System pro REST-Request im Header "X-IAM-Queries" zurueckliefern,
+ * z.B. um bei Listen zu ueberpruefen, dass die Identities gebuendelt geladen werden.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Provider
+@ApplicationScoped
+@Priority(APPLICATION)
+public class IamQueryFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    public static final String IAM_QUERIES_HEADER = "X-IAM-Queries";
+    
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    @Override
+    public void filter(ContainerRequestContext requestCtx) throws IOException {
+        IamQueryCounter.reset();
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestCtx, ContainerResponseContext responseCtx) throws IOException {
+        final int anzahl = IamQueryCounter.get();
+        responseCtx.getHeaders().putSingle(IAM_QUERIES_HEADER, anzahl);
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("<Response> Anfragen an das IAM-System: " + anzahl + " fuer " + requestCtx.getUriInfo().getAbsolutePath());
+        }
+    }
+}
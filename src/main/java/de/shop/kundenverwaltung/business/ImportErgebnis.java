@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import static javax.xml.bind.annotation.XmlAccessType.FIELD;
+
+/**
+ * Ergebnis eines Massenimports von Kunden: Anzahl der Zeilen, Fehler pro Zeile und Durchsatz.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@XmlRootElement
+@XmlAccessorType(FIELD)
+public class ImportErgebnis {
+    // Obergrenze fuer die gemeldeten Fehler, damit fehlerhafte Dateien den Speicher nicht fuellen
+    private static final int MAX_FEHLER = 1000;
+    
+    private long zeilen;
+    private long importiert;
+    private long anzahlFehler;
+    private final List<Fehler> fehler = new ArrayList<>();
+    private long dauerMillis;
+    private long zeilenProSekunde;
+    
+    public ImportErgebnis() {
+        super();
+    }
+    
+    void addZeile() {
+        zeilen++;
+    }
+    
+    void addImportiert(int anzahl) {
+        importiert += anzahl;
+    }
+    
+    void addFehler(long zeile, String meldung) {
+        anzahlFehler++;
+        if (fehler.size() < MAX_FEHLER) {
+            fehler.add(new Fehler(zeile, meldung));
+        }
+    }
+    
+    void setDauerMillis(long dauerMillis) {
+        this.dauerMillis = dauerMillis;
+        zeilenProSekunde = dauerMillis == 0 ? zeilen : zeilen * 1000 / dauerMillis;
+    }
+    
+    public long getZeilen() {
+        return zeilen;
+    }
+    
+    public long getImportiert() {
+        return importiert;
+    }
+    
+    public long getAnzahlFehler() {
+        return anzahlFehler;
+    }
+    
+    public List<Fehler> getFehler() {
+        return Collections.unmodifiableList(fehler);
+    }
+    
+    public long getDauerMillis() {
+        return dauerMillis;
+    }
+    
+    public long getZeilenProSekunde() {
+        return zeilenProSekunde;
+    }
+    
+    @Override
+    public String toString() {
+        return "ImportErgebnis {zeilen=" + zeilen + ", importiert=" + importiert + ", anzahlFehler=" + anzahlFehler
+               + ", dauerMillis=" + dauerMillis + ", zeilenProSekunde=" + zeilenProSekunde + '}';
+    }
+    
+    /**
+     * Fehler zu einer Zeile der Importdatei.
+     */
+    @XmlAccessorType(FIELD)
+    public static class Fehler {
+        private long zeile;
+        private String meldung;
+        
+        public Fehler() {
+            super();
+        }
+        
+        Fehler(long zeile, String meldung) {
+            super();
+            this.zeile = zeile;
+            this.meldung = meldung;
+        }
+        
+        public long getZeile() {
+            return zeile;
+        }
+        
+        public String getMeldung() {
+            return meldung;
+        }
+        
+        @Override
+        public String toString() {
+            return "Fehler {zeile=" + zeile + ", meldung=" + meldung + '}';
+        }
+    }
+}
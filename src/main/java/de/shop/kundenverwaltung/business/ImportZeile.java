@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import de.shop.kundenverwaltung.domain.AbstractKunde;
+import java.util.function.Supplier;
+
+/**
+ * Eine gelesene Zeile einer Importdatei: entweder ein Kunde oder ein Fehler beim Einlesen.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public final class ImportZeile {
+    private final long nr;
+    private final AbstractKunde kunde;
+    private final Supplier<? extends AbstractKunde> kundeFactory;
+    private final String fehler;
+    
+    private ImportZeile(long nr, Supplier<? extends AbstractKunde> kundeFactory, String fehler) {
+        this.nr = nr;
+        this.kundeFactory = kundeFactory;
+        this.kunde = kundeFactory == null ? null : kundeFactory.get();
+        this.fehler = fehler;
+    }
+    
+    /**
+     * @param nr Zeilennummer in der Importdatei
+     * @param kundeFactory Erzeugt den Kunden aus der eingelesenen Zeile; wird sofort einmal aufgerufen, so dass
+     *                     Fehler beim Umwandeln an den Aufrufer weitergereicht werden
+     * @return Eine fehlerfrei gelesene Zeile
+     */
+    public static ImportZeile of(long nr, Supplier<? extends AbstractKunde> kundeFactory) {
+        return new ImportZeile(nr, kundeFactory, null);
+    }
+    
+    /**
+     * @param nr Zeilennummer in der Importdatei
+     * @param fehler Meldung zum Fehler beim Einlesen
+     * @return Eine Zeile, die nicht eingelesen werden konnte
+     */
+    public static ImportZeile fehler(long nr, String fehler) {
+        return new ImportZeile(nr, null, fehler);
+    }
+    
+    public long getNr() {
+        return nr;
+    }
+    
+    public AbstractKunde getKunde() {
+        return kunde;
+    }
+    
+    /**
+     * Den Kunden erneut aus der eingelesenen Zeile erzeugen, z.B. nach dem Rollback einer Transaktion:
+     * das bisherige Objekt hat dann bereits eine generierte ID, Version und Zeitstempel.
+     * @return Ein neues, noch nicht persistentes Objekt fuer den Kunden
+     */
+    public AbstractKunde neuerKunde() {
+        return kundeFactory.get();
+    }
+    
+    public String getFehler() {
+        return fehler;
+    }
+    
+    @Override
+    public String toString() {
+        return "ImportZeile {nr=" + nr + ", kunde=" + kunde + ", fehler=" + fehler + '}';
+    }
+}
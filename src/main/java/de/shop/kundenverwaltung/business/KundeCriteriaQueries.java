@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import de.shop.kundenverwaltung.domain.AbstractKunde;
+import de.shop.kundenverwaltung.domain.AbstractKunde_;
+import de.shop.kundenverwaltung.domain.GeschlechtType;
+import de.shop.kundenverwaltung.domain.Privatkunde;
+import de.shop.kundenverwaltung.domain.Privatkunde_;
+import de.shop.util.persistence.DefaultEM;
+import java.lang.invoke.MethodHandles;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import static java.util.logging.Level.FINER;
+
+/**
+ * Die Criteria Queries fuer die Suche nach Kunden mit mehreren Suchkriterien werden einmalig beim Start
+ * aufgebaut und als Named Queries registriert, so dass bei einer Suche keine Query mehr erstellt und
+ * uebersetzt werden muss. Fuer die 3 optionalen Kriterien gibt es 2^3 Kombinationen.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class KundeCriteriaQueries {
+    public static final String PARAM_SEIT_VON = "seitVon";
+    public static final String PARAM_SEIT_BIS = "seitBis";
+    public static final String PARAM_GESCHLECHT = "geschlecht";
+    public static final String PARAM_MIN_BEST_MENGE = "minBestMenge";
+    
+    // Grenzen, falls beim Zeitraum fuer "seit" nur eine Seite angegeben ist
+    public static final Date SEIT_MIN = Date.from(LocalDate.of(1900, 1, 1).atStartOfDay(ZoneOffset.UTC).toInstant());
+    public static final Date SEIT_MAX = Date.from(LocalDate.of(9999, 12, 31).atStartOfDay(ZoneOffset.UTC).toInstant());
+    
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    private static final String PREFIX = "AbstractKunde.byCriteria.";
+    private static final int SEIT = 1;
+    private static final int GESCHLECHT = 2;
+    private static final int MIN_BEST_MENGE = 4;
+    private static final int ANZAHL_KOMBINATIONEN = 8;
+    
+    @Inject
+    @DefaultEM
+    private EntityManager em;
+    
+    // Beim Start instanziieren, damit die Named Queries vor der ersten Suche registriert sind
+    @SuppressWarnings("unused")
+    private void onStartup(@Observes @Initialized(ApplicationScoped.class) Object ignored) {
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("onStartup: " + this);
+        }
+    }
+    
+    @PostConstruct
+    private void register() {
+        final EntityManagerFactory emf = em.getEntityManagerFactory();
+        for (int kombination = 1; kombination < ANZAHL_KOMBINATIONEN; kombination++) {
+            emf.addNamedQuery(getName(kombination), em.createQuery(createCriteriaQuery(kombination)));
+        }
+        LOGGER.info((ANZAHL_KOMBINATIONEN - 1) + " Named Queries fuer die Suche nach Kunden mit Suchkriterien registriert");
+    }
+    
+    /**
+     * Name der Named Query zu den vorhandenen Suchkriterien ermitteln.
+     * @param seit true, falls nach dem Zeitraum fuer "seit" gesucht wird
+     * @param geschlecht true, falls nach dem Geschlecht gesucht wird
+     * @param minBestMenge true, falls nach einer Mindestbestellmenge gesucht wird
+     * @return Name der Named Query
+     */
+    public String getName(boolean seit, boolean geschlecht, boolean minBestMenge) {
+        final int kombination = (seit ? SEIT : 0) | (geschlecht ? GESCHLECHT : 0) | (minBestMenge ? MIN_BEST_MENGE : 0);
+        if (kombination == 0) {
+            throw new IllegalArgumentException("Mindestens ein Suchkriterium ist erforderlich");
+        }
+        return getName(kombination);
+    }
+    
+    private static String getName(int kombination) {
+        return PREFIX + kombination;
+    }
+    
+    // SELECT k
+    // FROM   AbstractKunde k
+    // WHERE  k.seit BETWEEN :seitVon AND :seitBis
+    //        AND TREAT(k AS Privatkunde).geschlecht = :geschlecht
+    //        AND k.maxBestellmenge > :minBestMenge
+    // ORDER BY k.id
+    private CriteriaQuery<AbstractKunde> createCriteriaQuery(int kombination) {
+        final CriteriaBuilder builder = em.getCriteriaBuilder();
+        final CriteriaQuery<AbstractKunde> criteriaQuery = builder.createQuery(AbstractKunde.class);
+        final Root<AbstractKunde> kundeRoot = criteriaQuery.from(AbstractKunde.class);
+        final List<Predicate> preds = new ArrayList<>();
+        
+        if ((kombination & SEIT) != 0) {
+            preds.add(builder.between(kundeRoot.get(AbstractKunde_.seit),
+                                      builder.parameter(Date.class, PARAM_SEIT_VON),
+                                      builder.parameter(Date.class, PARAM_SEIT_BIS)));
+        }
+        
+        if ((kombination & GESCHLECHT) != 0) {
+            // Geschlecht gibt es nur bei der abgeleiteten Klasse Privatkunde
+            final Root<Privatkunde> pk = builder.treat(kundeRoot, Privatkunde.class);
+            preds.add(builder.equal(pk.get(Privatkunde_.geschlecht),
+                                    builder.parameter(GeschlechtType.class, PARAM_GESCHLECHT)));
+        }
+        
+        if ((kombination & MIN_BEST_MENGE) != 0) {
+            // Indizierte Spalte mit der groessten Anzahl je Bestellposition statt Subquery ueber alle Bestellpositionen
+            preds.add(builder.gt(kundeRoot.get(AbstractKunde_.maxBestellmenge),
+                                 builder.parameter(Integer.class, PARAM_MIN_BEST_MENGE)));
+        }
+        
+        return criteriaQuery.where(preds.toArray(new Predicate[preds.size()]))
+                            .orderBy(builder.asc(kundeRoot.get(AbstractKunde_.id)));
+    }
+}
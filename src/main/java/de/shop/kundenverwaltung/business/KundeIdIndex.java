@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import de.shop.kundenverwaltung.domain.AbstractKunde;
+import de.shop.util.persistence.AfterCommit;
+import de.shop.util.persistence.DefaultEM;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+
+import static java.util.logging.Level.FINER;
+
+/**
+ * Praefix-Index fuer die IDs aller Kunden, damit beim Autovervollstaendigen nicht bei jedem Tastendruck
+ * die Tabelle mit <code>CONCAT('', k.id) LIKE ...</code> vollstaendig durchsucht werden muss.
+ * Die IDs werden in einem sortierten Array gehalten: zu einem dezimalen Praefix gehoeren die
+ * Intervalle [praefix * 10^k, (praefix + 1) * 10^k - 1], die jeweils per binaerer Suche gefunden werden.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class KundeIdIndex {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    private static final long[] EMPTY = {};
+    private static final int MAX_DIGITS = String.valueOf(Long.MAX_VALUE).length();
+    
+    // Copy-on-write: Lesezugriffe ohne Sperre, Aenderungen ersetzen das Array unter der Sperre
+    private volatile long[] ids = EMPTY;
+    private volatile boolean loaded;
+    private final Object lock = new Object();
+    
+    @Inject
+    @DefaultEM
+    private EntityManager em;
+    
+    @Inject
+    private AfterCommit afterCommit;
+    
+    @SuppressWarnings("unused")
+    private void onStartup(@Observes @Initialized(ApplicationScoped.class) Object ignored) {
+        rebuild();
+    }
+    
+    /**
+     * Den Index mit allen IDs aus der DB neu aufbauen.
+     */
+    public void rebuild() {
+        // Die Sperre wird waehrend der Abfrage gehalten, damit zwischenzeitlich abgeschlossene
+        // Transaktionen ihre Aenderungen erst danach eintragen und nicht verloren gehen
+        synchronized (lock) {
+            final List<Long> alleIds = em.createNamedQuery(AbstractKunde.ALL_IDS, Long.class)
+                                         .getResultList();
+            ids = alleIds.stream()
+                         .mapToLong(Long::longValue)
+                         .sorted()
+                         .distinct()
+                         .toArray();
+            loaded = true;
+        }
+        LOGGER.info("ID-Index fuer Kunden aufgebaut: " + ids.length + " IDs");
+    }
+    
+    /**
+     * @return true, falls der Index beim Start aufgebaut wurde
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+    
+    /**
+     * IDs zu einem dezimalen Praefix in aufsteigender Reihenfolge ermitteln.
+     * @param idPrefix Praefix der ID als String
+     * @param maxResults maximale Anzahl an IDs
+     * @return Liste der passenden IDs; leere Liste, falls es keine gibt
+     */
+    public List<Long> findByPrefix(String idPrefix, int maxResults) {
+        if (idPrefix == null || idPrefix.isEmpty() || idPrefix.length() > MAX_DIGITS
+            || idPrefix.charAt(0) == '0' || !idPrefix.chars().allMatch(Character::isDigit)) {
+            return Collections.emptyList();
+        }
+        final long prefix;
+        try {
+            prefix = Long.parseLong(idPrefix);
+        } catch (NumberFormatException e) {
+            return Collections.emptyList();
+        }
+        
+        final long[] snapshot = ids;
+        if (snapshot.length == 0) {
+            return Collections.emptyList();
+        }
+        final long maxId = snapshot[snapshot.length - 1];
+        
+        // Die Intervalle sind disjunkt und aufsteigend, so dass das Ergebnis nach ID sortiert ist
+        final List<Long> result = new ArrayList<>();
+        long untergrenze = prefix;
+        long breite = 1;
+        while (untergrenze <= maxId && result.size() < maxResults) {
+            final long obergrenze = untergrenze + breite - 1;
+            int pos = insertionPoint(snapshot, untergrenze);
+            while (pos < snapshot.length && snapshot[pos] <= obergrenze && result.size() < maxResults) {
+                result.add(snapshot[pos]);
+                pos++;
+            }
+            
+            try {
+                untergrenze = Math.multiplyExact(untergrenze, 10);
+                breite = Math.multiplyExact(breite, 10);
+            } catch (ArithmeticException e) {
+                break;
+            }
+        }
+        
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("findByPrefix: " + idPrefix + " -> " + result);
+        }
+        return result;
+    }
+    
+    /**
+     * Eine neue ID nach erfolgreichem Commit der aktuellen Transaktion eintragen.
+     * @param id Die neue ID
+     */
+    public void add(long id) {
+        afterCommit.run(() -> insert(id));
+    }
+    
+    /**
+     * Eine ID nach erfolgreichem Commit der aktuellen Transaktion austragen.
+     * @param id Die zu entfernende ID
+     */
+    public void remove(long id) {
+        afterCommit.run(() -> delete(id));
+    }
+    
+    private void insert(long id) {
+        synchronized (lock) {
+            final long[] alt = ids;
+            final int pos = Arrays.binarySearch(alt, id);
+            if (pos >= 0) {
+                return;
+            }
+            final int einfuegen = -pos - 1;
+            final long[] neu = new long[alt.length + 1];
+            System.arraycopy(alt, 0, neu, 0, einfuegen);
+            neu[einfuegen] = id;
+            System.arraycopy(alt, einfuegen, neu, einfuegen + 1, alt.length - einfuegen);
+            ids = neu;
+        }
+    }
+    
+    private void delete(long id) {
+        synchronized (lock) {
+            final long[] alt = ids;
+            final int pos = Arrays.binarySearch(alt, id);
+            if (pos < 0) {
+                return;
+            }
+            final long[] neu = new long[alt.length - 1];
+            System.arraycopy(alt, 0, neu, 0, pos);
+            System.arraycopy(alt, pos + 1, neu, pos, alt.length - pos - 1);
+            ids = neu;
+        }
+    }
+    
+    private static int insertionPoint(long[] array, long key) {
+        final int pos = Arrays.binarySearch(array, key);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+}
@@ -17,47 +17,68 @@
 
 package de.shop.kundenverwaltung.business;
 
-import de.shop.bestellverwaltung.domain.Bestellposition;
-import de.shop.bestellverwaltung.domain.Bestellposition_;
-import de.shop.bestellverwaltung.domain.Bestellung;
-import de.shop.bestellverwaltung.domain.Bestellung_;
 import de.shop.bestellverwaltung.domain.Warenkorbposition;
 import de.shop.iam.business.IdentityAccessManagement;
 import de.shop.iam.domain.IdentityVO;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.kundenverwaltung.domain.AbstractKunde_;
+import de.shop.kundenverwaltung.domain.Firmenkunde;
 import de.shop.kundenverwaltung.domain.GeschlechtType;
+import de.shop.kundenverwaltung.domain.HobbyType;
+import de.shop.kundenverwaltung.domain.KundeListener;
+import de.shop.kundenverwaltung.domain.KundePatch;
+import de.shop.kundenverwaltung.domain.KundenSegment;
 import de.shop.kundenverwaltung.domain.Privatkunde;
-import de.shop.kundenverwaltung.domain.Privatkunde_;
+import de.shop.kundenverwaltung.soap.IdentitySoapVO;
+import de.shop.kundenverwaltung.soap.PrivatkundeVO;
 import de.shop.util.NoMimeTypeException;
 import de.shop.util.Strings;
 import de.shop.util.interceptor.Log;
+import de.shop.util.persistence.AbstractAuditable_;
+import de.shop.util.persistence.AbstractVersionedAuditable_;
+import de.shop.util.persistence.AfterCommit;
 import de.shop.util.persistence.ConcurrentDeletedException;
 import de.shop.util.persistence.DefaultEM;
 import de.shop.util.persistence.File;
+import de.shop.util.persistence.FileContent;
+import de.shop.util.persistence.FileContentBroker;
 import de.shop.util.persistence.FileHelper;
+import de.shop.util.persistence.KeysetStream;
 import de.shop.util.persistence.MimeType;
+import de.shop.util.persistence.Upload;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 import java.util.logging.Logger;
 import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.enterprise.context.Dependent;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import javax.persistence.Cache;
 import javax.persistence.EntityGraph;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Join;
-import javax.persistence.criteria.Path;
-import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.CriteriaUpdate;
 import javax.persistence.criteria.Root;
+import org.hibernate.SQLQuery;
 
 import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.MIT_BESTELLUNGEN;
 import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.NUR_KUNDE;
@@ -65,6 +86,7 @@ import static de.shop.kundenverwaltung.domain.AbstractKunde.GRAPH_BESTELLUNGEN;
 import static de.shop.kundenverwaltung.domain.AbstractKunde.GRAPH_REKLAMATIONEN;
 import static de.shop.util.Constants.LOADGRAPH;
 import static de.shop.util.Constants.MAX_AUTOCOMPLETE;
+import static de.shop.util.Constants.STREAM_CHUNK_SIZE;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
 import static java.util.Optional.ofNullable;
@@ -94,21 +116,39 @@ public class KundenBroker {
     
     private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
     
+    // Query Space fuer das Fortschreiben der Bestellungen, der von keiner Entity verwendet wird
+    private static final String QUERY_SPACE_BESTELLUNGEN = "kunde_bestellungen";
+    
     private final EntityManager em;
     private final Instance<IdentityAccessManagement> iamInstance;
     private final Instance<FileHelper> fileHelperInstance;
     private final Instance<ManagedExecutorService> managedExecutorServiceInstance;
+    private final Instance<KundeIdIndex> kundeIdIndexInstance;
+    private final Instance<KundeCriteriaQueries> kundeCriteriaQueriesInstance;
+    private final Instance<KundenStatistik> kundenStatistikInstance;
+    private final Instance<FileContentBroker> fileContentBrokerInstance;
+    private final Instance<AfterCommit> afterCommitInstance;
     
     @Inject
     KundenBroker(@DefaultEM EntityManager em,
                  Instance<IdentityAccessManagement> iamInstance,
                  Instance<FileHelper> fileHelperInstance,
-                 Instance<ManagedExecutorService> managedExecutorServiceInstance) {
+                 Instance<ManagedExecutorService> managedExecutorServiceInstance,
+                 Instance<KundeIdIndex> kundeIdIndexInstance,
+                 Instance<KundeCriteriaQueries> kundeCriteriaQueriesInstance,
+                 Instance<KundenStatistik> kundenStatistikInstance,
+                 Instance<FileContentBroker> fileContentBrokerInstance,
+                 Instance<AfterCommit> afterCommitInstance) {
         super();
         this.em = em;
         this.iamInstance = iamInstance;
         this.fileHelperInstance = fileHelperInstance;
         this.managedExecutorServiceInstance = managedExecutorServiceInstance;
+        this.kundeIdIndexInstance = kundeIdIndexInstance;
+        this.kundeCriteriaQueriesInstance = kundeCriteriaQueriesInstance;
+        this.kundenStatistikInstance = kundenStatistikInstance;
+        this.fileContentBrokerInstance = fileContentBrokerInstance;
+        this.afterCommitInstance = afterCommitInstance;
     }
     
     /**
@@ -152,6 +192,13 @@ public class KundenBroker {
         if (Strings.isNullOrEmpty(idPrefix)) {
             return Collections.emptyList();
         }
+        
+        final KundeIdIndex kundeIdIndex = kundeIdIndexInstance.get();
+        if (kundeIdIndex.isLoaded()) {
+            return kundeIdIndex.findByPrefix(idPrefix, Integer.MAX_VALUE);
+        }
+        
+        // Fallback, solange der Index noch nicht aufgebaut ist
         return em.createNamedQuery(AbstractKunde.IDS_BY_PREFIX, Long.class)
                  .setParameter(AbstractKunde.PARAM_KUNDE_ID_PREFIX, idPrefix + '%')
                  .getResultList();
@@ -163,10 +210,22 @@ public class KundenBroker {
      * @return Liste mit Kunden mit passender ID
      */
     public List<AbstractKunde> findByIdPrefix(long id) {
-        return em.createNamedQuery(AbstractKunde.BY_ID_PREFIX, AbstractKunde.class)
-                 .setParameter(AbstractKunde.PARAM_KUNDE_ID_PREFIX, String.valueOf(id) + '%')
-                 .setMaxResults(MAX_AUTOCOMPLETE)
-                 .getResultList();
+        final KundeIdIndex kundeIdIndex = kundeIdIndexInstance.get();
+        if (kundeIdIndex.isLoaded()) {
+            final List<Long> ids = kundeIdIndex.findByPrefix(String.valueOf(id), MAX_AUTOCOMPLETE);
+            if (ids.isEmpty()) {
+                return Collections.emptyList();
+            }
+            return findWithIdentities(() -> em.createNamedQuery(AbstractKunde.BY_IDS, AbstractKunde.class)
+                                              .setParameter(AbstractKunde.PARAM_KUNDE_IDS, ids)
+                                              .getResultList());
+        }
+        
+        // Fallback, solange der Index noch nicht aufgebaut ist
+        return findWithIdentities(() -> em.createNamedQuery(AbstractKunde.BY_ID_PREFIX, AbstractKunde.class)
+                                          .setParameter(AbstractKunde.PARAM_KUNDE_ID_PREFIX, String.valueOf(id) + '%')
+                                          .setMaxResults(MAX_AUTOCOMPLETE)
+                                          .getResultList());
     }
     
     /**
@@ -204,6 +263,58 @@ public class KundenBroker {
         return of(kunde);
     }
     
+    /**
+     * Den Kunden zu einer Emailadresse suchen. Der Loginname wird im Index fuer Emailadressen nachgeschlagen,
+     * so dass nur der Kunde selbst aus der DB gelesen wird.
+     * @param email Die Emailadresse, Gross-/Kleinschreibung wird ignoriert
+     * @param fetch Angabe, welche referenzierten Objekte mitgeladen werden sollen
+     * @return Der gefundene Kunde oder Optional.empty()
+     */
+    public Optional<AbstractKunde> findByEmail(String email, FetchType fetch) {
+        final Optional<String> loginname = iamInstance.get().findLoginnameByEmail(email);
+        return loginname.isPresent() ? findByLoginname(loginname.get(), fetch) : empty();
+    }
+    
+    /**
+     * Nur den Loginnamen zu einer Kunden-ID suchen, ohne den Kunden und seine Identity zu laden.
+     * @param kundeId Die ID des Kunden
+     * @return Der Loginname oder Optional.empty(), falls es keinen Kunden zur ID gibt
+     */
+    public Optional<String> findLoginnameById(long kundeId) {
+        final List<String> loginnamen = em.createNamedQuery(AbstractKunde.LOGINNAME_BY_ID, String.class)
+                                          .setParameter(AbstractKunde.PARAM_KUNDE_ID, kundeId)
+                                          .getResultList();
+        return loginnamen.isEmpty() ? empty() : of(loginnamen.get(0));
+    }
+    
+    /**
+     * Eine Suche nach Kunden ausfuehren und die Identities der gefundenen Kunden gebuendelt laden,
+     * statt fuer jeden Kunden einzeln im Listener fuer @PostLoad.
+     * @param query die auszufuehrende Suche
+     * @param <K> Privatkunde oder Firmenkunde
+     * @return Liste der gefundenen Kunden einschliesslich Identity
+     */
+    private <K extends AbstractKunde> List<K> findWithIdentities(Supplier<List<K>> query) {
+        final List<K> kunden = KundeListener.deferLoadIdentity(query);
+        final List<String> loginnamen = kunden.stream()
+                                              .filter(k -> k.getIdentity() == null)
+                                              .map(AbstractKunde::getLoginname)
+                                              .collect(toList());
+        if (loginnamen.isEmpty()) {
+            return kunden;
+        }
+        
+        final Map<String, IdentityVO> identities = iamInstance.get().findIdentitiesByLoginnamen(loginnamen);
+        setIdentities(kunden, identities);
+        return kunden;
+    }
+    
+    private static void setIdentities(List<? extends AbstractKunde> kunden, Map<String, IdentityVO> identities) {
+        kunden.stream()
+              .filter(k -> k.getIdentity() == null)
+              .forEach(k -> k.setIdentity(identities.get(k.getLoginname())));
+    }
+    
     private void setEntityGraph(TypedQuery<AbstractKunde> query, FetchType fetch) {
         EntityGraph<?> entityGraph;
         switch (fetch) {
@@ -259,10 +370,44 @@ public class KundenBroker {
                                                 : em.createNamedQuery(AbstractKunde.ALL,
                                                                       AbstractKunde.class);
         setEntityGraph(query, fetch);
-        final List<AbstractKunde> kunden = query.getResultList();
+        final List<AbstractKunde> kunden = findWithIdentities(query::getResultList);
+        return kunden.isEmpty() ? empty() : of(kunden);
+    }
+    
+    /**
+     * Kunden seitenweise nach aufsteigenden IDs ermitteln ("Keyset Pagination"), so dass unabhaengig
+     * von der Tabellengroesse nur eine begrenzte Anzahl Kunden gelesen wird.
+     * @param fetch Angabe, welche Objekte mitgeladen werden sollen, z.B. Bestellungen.
+     * @param lastId ID des letzten Kunden der vorherigen Seite bzw. 0 fuer die erste Seite
+     * @param maxResults Maximale Anzahl der Kunden
+     * @return Liste der Kunden mit einer ID groesser als lastId
+     */
+    public Optional<List<AbstractKunde>> findAll(FetchType fetch, long lastId, int maxResults) {
+        final TypedQuery<AbstractKunde> query = em.createNamedQuery(AbstractKunde.ALL_AFTER_ID, AbstractKunde.class)
+                                                  .setParameter(AbstractKunde.PARAM_LAST_ID, lastId)
+                                                  .setMaxResults(maxResults);
+        setEntityGraph(query, fetch);
+        final List<AbstractKunde> kunden = findWithIdentities(query::getResultList);
         return kunden.isEmpty() ? empty() : of(kunden);
     }
     
+    /**
+     * Alle Kunden nach aufsteigenden IDs abschnittsweise lesen, z.B. fuer einen Export.
+     * Vor dem Lesen eines weiteren Abschnitts wird der Persistenzkontext geleert.
+     * @param fetch Angabe, welche Objekte mitgeladen werden sollen, z.B. Bestellungen.
+     * @return Stream mit allen Kunden
+     */
+    public Stream<AbstractKunde> streamAll(FetchType fetch) {
+        return KeysetStream.of(lastId -> {
+                                   if (lastId > 0) {
+                                       em.clear();
+                                   }
+                                   return findAll(fetch, lastId, STREAM_CHUNK_SIZE).orElse(Collections.emptyList());
+                               },
+                               AbstractKunde::getId,
+                               STREAM_CHUNK_SIZE);
+    }
+    
 
     /**
      * Kunden mit gleichem Nachnamen suchen.
@@ -271,49 +416,136 @@ public class KundenBroker {
      * @return Liste der gefundenen Kunden oder NotFoundException
      */
     public Optional<List<AbstractKunde>> findByNachname(String nachname, FetchType fetch) {
-        final Optional<List<String>> loginnamenOpt = iamInstance.get().findLoginnamenByNachname(nachname);
-        if (!loginnamenOpt.isPresent()) {
+        if (Strings.isNullOrEmpty(nachname)) {
             return empty();
         }
         
-        // SELECT k
-        // FROM   AbstractKunde k
-        // WHERE  k.loginname = ? OR k.loginname = ? OR ...
-        final CriteriaBuilder builder = em.getCriteriaBuilder();
-        final CriteriaQuery<AbstractKunde> criteriaQuery = builder.createQuery(AbstractKunde.class);
-        final Root<AbstractKunde> kundeRoot = criteriaQuery.from(AbstractKunde.class);
-        
-        final Path<String> loginnamePath = kundeRoot.get(AbstractKunde_.loginname);
-        Predicate pred;
-        final List<String> loginnamen = loginnamenOpt.get();
-        if (loginnamen.size() == 1) {
-            // Genau 1 id: kein OR notwendig
-            pred = builder.equal(loginnamePath, loginnamen.get(0));
-        } else {
-            // Mind. 2x id, durch OR verknuepft
-            final Predicate[] equals = loginnamen.stream()
-                                                 .map(id -> builder.equal(loginnamePath, id))
-                                                 .collect(toList())
-                                                 .toArray(new Predicate[loginnamen.size()]);
-            pred = builder.or(equals);
-        }
-        criteriaQuery.where(pred);
-
-        final TypedQuery<AbstractKunde> query = em.createQuery(criteriaQuery);
+        // Der Nachname ist in der Tabelle kunde gespiegelt: 1 indizierte Abfrage statt OR je Loginname
+        final TypedQuery<AbstractKunde> query = em.createNamedQuery(AbstractKunde.BY_NACHNAME, AbstractKunde.class)
+                                                  .setParameter(AbstractKunde.PARAM_KUNDE_NACHNAME, nachname);
+        setEntityGraph(query, fetch);
+        final List<AbstractKunde> kunden = findWithIdentities(query::getResultList);
+        return kunden.isEmpty() ? empty() : of(kunden);
+    }
+    
+    /**
+     * Kunden mit gleichem Nachnamen seitenweise nach aufsteigenden IDs suchen.
+     * @param nachname Der gemeinsame Nachname der gesuchten Kunden
+     * @param fetch Angabe, welche Objekte mitgeladen werden sollen, z.B. Bestellungen
+     * @param lastId ID des letzten Kunden der vorherigen Seite bzw. 0 fuer die erste Seite
+     * @param maxResults Maximale Anzahl der Kunden
+     * @return Liste der gefundenen Kunden mit einer ID groesser als lastId
+     */
+    public Optional<List<AbstractKunde>> findByNachname(String nachname, FetchType fetch, long lastId, int maxResults) {
+        if (Strings.isNullOrEmpty(nachname)) {
+            return empty();
+        }
+        
+        final TypedQuery<AbstractKunde> query = em.createNamedQuery(AbstractKunde.BY_NACHNAME_AFTER_ID, AbstractKunde.class)
+                                                  .setParameter(AbstractKunde.PARAM_KUNDE_NACHNAME, nachname)
+                                                  .setParameter(AbstractKunde.PARAM_LAST_ID, lastId)
+                                                  .setMaxResults(maxResults);
         setEntityGraph(query, fetch);
-        final List<AbstractKunde> kunden = query.getResultList();
+        final List<AbstractKunde> kunden = findWithIdentities(query::getResultList);
         return kunden.isEmpty() ? empty() : of(kunden);
     }
     
+    /**
+     * Privatkunden zu gegebenen IDs als Projektion fuer SOAP suchen: Statt der Entities samt aller
+     * Bestellungen werden nur die benoetigten Spalten und die IDs der Bestellungen geladen.
+     * @param ids IDs der gesuchten Privatkunden
+     * @return Liste der gefundenen Privatkunden aufsteigend nach ID; IDs von Firmenkunden werden ignoriert
+     */
+    public List<PrivatkundeVO> findPrivatkundenVOByIds(Collection<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        final List<Long> distinctIds = ids.stream()
+                                          .distinct()
+                                          .sorted()
+                                          .collect(toList());
+        final List<PrivatkundeVO> privatkunden = new ArrayList<>(distinctIds.size());
+        // IN-Listen begrenzen, damit die Anzahl der Bind-Parameter je Abfrage beschraenkt bleibt
+        for (int i = 0; i < distinctIds.size(); i += STREAM_CHUNK_SIZE) {
+            final List<Long> chunk = distinctIds.subList(i, Math.min(i + STREAM_CHUNK_SIZE, distinctIds.size()));
+            privatkunden.addAll(vervollstaendigen(em.createNamedQuery(Privatkunde.PROJEKTION_BY_IDS,
+                                                                      PrivatkundeVO.class)
+                                                    .setParameter(AbstractKunde.PARAM_KUNDE_IDS, chunk)
+                                                    .getResultList()));
+        }
+        return privatkunden;
+    }
+    
+    /**
+     * Privatkunden mit gleichem Nachnamen als Projektion fuer SOAP suchen.
+     * @param nachname Der gemeinsame Nachname der gesuchten Privatkunden
+     * @return Liste der gefundenen Privatkunden aufsteigend nach ID
+     */
+    public List<PrivatkundeVO> findPrivatkundenVOByNachname(String nachname) {
+        if (Strings.isNullOrEmpty(nachname)) {
+            return Collections.emptyList();
+        }
+        
+        return vervollstaendigen(em.createNamedQuery(Privatkunde.PROJEKTION_BY_NACHNAME, PrivatkundeVO.class)
+                                   .setParameter(AbstractKunde.PARAM_KUNDE_NACHNAME, nachname)
+                                   .getResultList());
+    }
+    
+    /**
+     * Hobbys, IDs der Bestellungen und Identities fuer projizierte Privatkunden mit je 1 Abfrage nachladen.
+     * @param privatkunden Privatkunden aus einer Projektion
+     * @return Die uebergebenen, vervollstaendigten Privatkunden
+     */
+    private List<PrivatkundeVO> vervollstaendigen(List<PrivatkundeVO> privatkunden) {
+        if (privatkunden.isEmpty()) {
+            return privatkunden;
+        }
+        
+        final List<Long> ids = privatkunden.stream()
+                                           .map(PrivatkundeVO::getId)
+                                           .collect(toList());
+        
+        final Map<Long, Set<HobbyType>> hobbys = new HashMap<>();
+        em.createNamedQuery(Privatkunde.HOBBYS_BY_IDS, Object[].class)
+          .setParameter(AbstractKunde.PARAM_KUNDE_IDS, ids)
+          .getResultList()
+          .forEach(row -> hobbys.computeIfAbsent((Long) row[0], id -> EnumSet.noneOf(HobbyType.class))
+                                .add((HobbyType) row[1]));
+        
+        final Map<Long, List<Long>> bestellungenIds = new HashMap<>();
+        em.createNamedQuery(AbstractKunde.BESTELLUNGEN_IDS_BY_IDS, Object[].class)
+          .setParameter(AbstractKunde.PARAM_KUNDE_IDS, ids)
+          .getResultList()
+          .forEach(row -> bestellungenIds.computeIfAbsent((Long) row[0], id -> new ArrayList<>())
+                                         .add((Long) row[1]));
+        
+        final List<String> loginnamen = privatkunden.stream()
+                                                    .map(PrivatkundeVO::getLoginname)
+                                                    .collect(toList());
+        final Map<String, IdentityVO> identities = iamInstance.get().findIdentitiesByLoginnamen(loginnamen);
+        
+        privatkunden.forEach(pk -> {
+            pk.setHobbys(hobbys.getOrDefault(pk.getId(), Collections.emptySet()));
+            pk.setBestellungenIds(bestellungenIds.getOrDefault(pk.getId(), Collections.emptyList()));
+            final IdentityVO identity = identities.get(pk.getLoginname());
+            if (identity != null) {
+                pk.setIdentity(new IdentitySoapVO(identity));
+            }
+        });
+        return privatkunden;
+    }
+    
     /**
      * Kunden suchen, die seit einem bestimmten Datum Kunde sind.
      * @param seit Das Datum
      * @return Liste der gefundenen Kunden oder NotFoundException
      */
     public Optional<List<AbstractKunde>> findBySeit(Date seit) {
-        final List<AbstractKunde> kunden = em.createNamedQuery(AbstractKunde.BY_SEIT, AbstractKunde.class)
-                                             .setParameter(AbstractKunde.PARAM_KUNDE_SEIT, seit)
-                                             .getResultList();
+        final List<AbstractKunde> kunden = findWithIdentities(() -> em.createNamedQuery(AbstractKunde.BY_SEIT,
+                                                                                         AbstractKunde.class)
+                                                                       .setParameter(AbstractKunde.PARAM_KUNDE_SEIT, seit)
+                                                                       .getResultList());
         return kunden.isEmpty() ? empty() : of(kunden);
     }
     
@@ -323,9 +555,10 @@ public class KundenBroker {
      * @return Liste der gefundenen Kunden oder NotFoundException
      */
     public Optional<List<Privatkunde>> findByGeschlecht(GeschlechtType geschlecht) {
-        final List<Privatkunde> kunden = em.createNamedQuery(Privatkunde.FIND_BY_GESCHLECHT, Privatkunde.class)
-                                           .setParameter(Privatkunde.PARAM_GESCHLECHT, geschlecht)
-                                           .getResultList();
+        final List<Privatkunde> kunden = findWithIdentities(() -> em.createNamedQuery(Privatkunde.FIND_BY_GESCHLECHT,
+                                                                                       Privatkunde.class)
+                                                                     .setParameter(Privatkunde.PARAM_GESCHLECHT, geschlecht)
+                                                                     .getResultList());
         return kunden.isEmpty() ? empty() : of(kunden);
     }
     
@@ -334,9 +567,9 @@ public class KundenBroker {
      * @return Liste der gefundenen Kunden
      */
     public Optional<List<AbstractKunde>> findPrivatkundenFirmenkunden() {
-        final List<AbstractKunde> kunden = em.createNamedQuery(AbstractKunde.PRIVATKUNDEN_FIRMENKUNDEN,
-                                                               AbstractKunde.class)
-                                                       .getResultList();
+        final List<AbstractKunde> kunden = findWithIdentities(() -> em.createNamedQuery(AbstractKunde.PRIVATKUNDEN_FIRMENKUNDEN,
+                                                                                         AbstractKunde.class)
+                                                                       .getResultList());
         return kunden.isEmpty() ? empty() : of(kunden);
     }
 
@@ -346,23 +579,7 @@ public class KundenBroker {
      * @return Die gefundenen Kunden oder NotFoundException
      */
     public Optional<List<AbstractKunde>> findByMindestBestellmenge(int mindestBestellmenge) {
-        // SELECT DISTINCT k
-        // FROM   AbstractKunde k
-        //        JOIN k.bestellungen b
-        //        JOIN b.bestellpositionen bp
-        // WHERE  bp.anzahl >= ?
-        
-        final CriteriaBuilder builder = em.getCriteriaBuilder();
-        final CriteriaQuery<AbstractKunde> criteriaQuery = builder.createQuery(AbstractKunde.class);
-        final Root<AbstractKunde> kundeRoot = criteriaQuery.from(AbstractKunde.class);
-
-        final Join<AbstractKunde, Bestellung> b = kundeRoot.join(AbstractKunde_.bestellungen);
-        final Join<Bestellung, Bestellposition> bp = b.join(Bestellung_.bestellpositionen);
-        criteriaQuery.where(builder.gt(bp.<Integer>get(Bestellposition_.anzahl), mindestBestellmenge))
-                     .distinct(true);
-        
-        final List<AbstractKunde> kunden = em.createQuery(criteriaQuery).getResultList();
-        return kunden.isEmpty() ? empty() : of(kunden);
+        return findByCriteria(null, null, null, mindestBestellmenge);
     }
     
     /**
@@ -375,47 +592,44 @@ public class KundenBroker {
     public Optional<List<AbstractKunde>> findByCriteria(Date seit,
                                                         GeschlechtType geschlecht,
                                                         Integer minBestMenge) {
-        // SELECT DISTINCT k
-        // FROM   AbstractKunde [Privatkunde] k
-        // WHERE  email = ? AND nachname = ? AND seit = ? and geschlecht = ?
-        
-        final CriteriaBuilder builder = em.getCriteriaBuilder();
-        final CriteriaQuery<AbstractKunde> criteriaQuery = builder.createQuery(AbstractKunde.class);
-        final Root<AbstractKunde> kundeRoot = criteriaQuery.from(AbstractKunde.class);
-        
-        Predicate pred = null;
-
-        if (seit != null) {
-            final Path<Date> seitPath = kundeRoot.get(AbstractKunde_.seit);
-            pred = builder.equal(seitPath, seit);
-        }
-        if (minBestMenge != null) {
-            final Path<Integer> anzahlPath = kundeRoot.join(AbstractKunde_.bestellungen)
-                                                      .join(Bestellung_.bestellpositionen)
-                                                      .get(Bestellposition_.anzahl);
-            final Predicate tmpPred = builder.gt(anzahlPath, minBestMenge);
-            pred = pred == null ? tmpPred : builder.and(pred, tmpPred);
+        return findByCriteria(seit, seit, geschlecht, minBestMenge);
+    }
+    
+    /**
+     * Kunden mit einem Zeitraum fuer "seit" und weiteren optionalen Kriterien suchen.
+     * Zu jeder Kombination der Kriterien gibt es eine beim Start registrierte Named Query.
+     * @param seitVon Beginn des Zeitraums fuer "seit" oder null
+     * @param seitBis Ende des Zeitraums fuer "seit" oder null
+     * @param geschlecht Geschlecht oder null
+     * @param minBestMenge Mindestbestellmenge oder null
+     * @return Liste der gefundenen Kunden
+     */
+    public Optional<List<AbstractKunde>> findByCriteria(Date seitVon,
+                                                        Date seitBis,
+                                                        GeschlechtType geschlecht,
+                                                        Integer minBestMenge) {
+        final boolean mitSeit = seitVon != null || seitBis != null;
+        if (!mitSeit && geschlecht == null && minBestMenge == null) {
+            return findAll(NUR_KUNDE, OrderByType.ID);
         }
         
+        final String queryName = kundeCriteriaQueriesInstance.get().getName(mitSeit, geschlecht != null, minBestMenge != null);
+        final TypedQuery<AbstractKunde> query = em.createNamedQuery(queryName, AbstractKunde.class);
+        if (mitSeit) {
+            query.setParameter(KundeCriteriaQueries.PARAM_SEIT_VON, seitVon == null ? KundeCriteriaQueries.SEIT_MIN : seitVon)
+                 .setParameter(KundeCriteriaQueries.PARAM_SEIT_BIS, seitBis == null ? KundeCriteriaQueries.SEIT_MAX : seitBis);
+        }
         if (geschlecht != null) {
-            // Geschlecht gibt es nur bei der abgeleiteten Klasse Privatkunde
-            final Root<Privatkunde> pk = builder.treat(kundeRoot, Privatkunde.class);
-            final Path<GeschlechtType> geschlechtPath = pk.get(Privatkunde_.geschlecht);
-            final Predicate tmpPred = builder.equal(geschlechtPath, geschlecht);
-            pred = pred == null ? tmpPred : builder.and(pred, tmpPred);
+            query.setParameter(KundeCriteriaQueries.PARAM_GESCHLECHT, geschlecht);
+        }
+        if (minBestMenge != null) {
+            query.setParameter(KundeCriteriaQueries.PARAM_MIN_BEST_MENGE, minBestMenge);
         }
-        
-        criteriaQuery.where(pred)
-                     .distinct(true);
-        
-        final TypedQuery<AbstractKunde> query = em.createQuery(criteriaQuery);
         if (LOGGER.isLoggable(FINEST)) {
-            LOGGER.finest("Criteria Query: " + query.unwrap(org.hibernate.Query.class).getQueryString());
-            // EclipseLink statt Hibernate:
-            //LOGGER.finest("Criteria Query: " + query.unwrap(JpaQuery.class).getDatabaseQuery().getSQLString();   //NOSONAR
+            LOGGER.finest("Named Query: " + queryName);
         }
         
-        final List<AbstractKunde> kunden = query.getResultList();
+        final List<AbstractKunde> kunden = findWithIdentities(query::getResultList);
         return kunden.isEmpty() ? empty() : of(kunden);
     }
 
@@ -454,22 +668,14 @@ public class KundenBroker {
             em.detach(tmpKunde.get());
         }
         
-        // Gibt es ein anderes Objekt mit gleicher Email-Adresse?
+        // Gibt es ein anderes Objekt mit gleicher Email-Adresse? Nachschlagen im Index statt Abfrage im IAM-System
         final String email = identity.getEmail();
         final String loginname = identity.getLoginname();
         final IdentityAccessManagement iam = iamInstance.get();
-        final Optional<List<IdentityVO>> identities = iam.findIdentitiesByEmail(email);
-        if (identities.isPresent()) {
-            // Email bereits verwendet: gleicher oder anderer User
-            final Optional<IdentityVO> tmpIdentityOpt = identities.get()
-                                                                  .stream()
-                                                                  .filter(tmpIdentity -> !Objects.equals(tmpIdentity.getLoginname(), loginname))
-                                                                  .findAny();
-            
-            if (tmpIdentityOpt.isPresent()) {
-                // Emailadresse bei einem anderen User verwendet
-                throw new EmailExistsException(email);
-            }
+        final Optional<String> loginnameEmail = iam.findLoginnameByEmail(email);
+        if (loginnameEmail.isPresent() && !Objects.equals(loginnameEmail.get(), loginname)) {
+            // Emailadresse bei einem anderen User verwendet
+            throw new EmailExistsException(email);
         }
 
         // Bei merge() wird wegen der optimistischen Synchronisation der Kundendatensatz gelesen, um die Versionsnummer zu erhalten.
@@ -477,13 +683,159 @@ public class KundenBroker {
         // Deshalb muessen die Identity-Werte zuerst gespeichert werden, bevor der Kundendatensatz aktualisiert wird.
         // Ausserdem wird ein Listener fuer PreUpdate (oder PostUpdate) erst am TRANSAKTIONSENDE aufgerufen, wenn das Commit durchgefuehrt wird.
         iam.updateIdentity(kunde.getIdentity());
+        kunde.copyIdentityAttributes();
         
         // ggf. OptimisticLockException
         final K result = em.merge(kunde);
         
         return of(result);
     }
+    
+    /**
+     * Einen vorhandenen Kunden partiell aktualisieren: Es werden nur die geaenderten Spalten durch 1 UPDATE-Anweisung
+     * mit Pruefung der Versionsnummer geschrieben, ohne den Kunden vorher zu laden. Das IAM-System wird nur dann
+     * abgefragt und aktualisiert, wenn sich Nachname, Vorname, Email oder Adresse aendern.
+     * @param kundeId Die ID des zu aktualisierenden Kunden
+     * @param loginname Der Loginname des zu aktualisierenden Kunden
+     * @param patch Die geaenderten Werte einschliesslich der bisherigen Versionsnummer
+     * @return Die neue Versionsnummer
+     */
+    public int update(long kundeId, String loginname, KundePatch patch) {
+        final IdentityAccessManagement iam = patch.isIdentityGeaendert() ? iamInstance.get() : null;
+        final String email = patch.getEmail();
+        if (email != null) {
+            // Gibt es einen anderen User mit gleicher Email-Adresse?
+            final Optional<String> loginnameEmail = iam.findLoginnameByEmail(email);
+            if (loginnameEmail.isPresent() && !Objects.equals(loginnameEmail.get(), loginname)) {
+                throw new EmailExistsException(email);
+            }
+        }
+        
+        // Bei einem Bulk-Update werden keine Listener aufgerufen: das bisherige Segment fuer die Statistik
+        // vorab ermitteln, i.d.R. aus dem 2nd-Level-Cache
+        final KundenSegment segmentAlt = patch.getKategorie() == null
+                                         ? null
+                                         : KundeListener.deferLoadIdentity(() -> {
+                                             final AbstractKunde kunde = em.find(AbstractKunde.class, kundeId);
+                                             if (kunde == null) {
+                                                 return null;
+                                             }
+                                             em.detach(kunde);
+                                             return kunde.toSegment();
+                                         });
+        
+        final int versionAlt = patch.getVersion();
+        final CriteriaBuilder builder = em.getCriteriaBuilder();
+        final CriteriaUpdate<AbstractKunde> update = builder.createCriteriaUpdate(AbstractKunde.class);
+        final Root<AbstractKunde> k = update.from(AbstractKunde.class);
+        if (patch.getKategorie() != null) {
+            update.set(k.get(AbstractKunde_.kategorie), patch.getKategorie());
+        }
+        if (patch.getRabatt() != null) {
+            update.set(k.get(AbstractKunde_.rabatt), patch.getRabatt());
+        }
+        if (patch.getSeit() != null) {
+            update.set(k.get(AbstractKunde_.seit), patch.getSeit());
+        }
+        if (patch.getNewsletter() != null) {
+            update.set(k.get(AbstractKunde_.newsletter), patch.getNewsletter());
+        }
+        if (patch.getBemerkungen() != null) {
+            update.set(k.get(AbstractKunde_.bemerkungen), patch.getBemerkungen());
+        }
+        // Nachname und Email werden fuer die indizierte Suche in der Tabelle fuer die Kunden gespiegelt
+        if (patch.getNachname() != null) {
+            update.set(k.get(AbstractKunde_.nachname), patch.getNachname());
+        }
+        if (email != null) {
+            update.set(k.get(AbstractKunde_.email), IdentityVO.normalizeEmail(email));
+        }
+        // Auch bei Aenderungen nur im IAM-System wird die Versionsnummer erhoeht, damit parallele Aenderungen
+        // erkannt werden. Listener fuer @PreUpdate werden bei einem Bulk-Update nicht aufgerufen.
+        update.set(k.get(AbstractVersionedAuditable_.version), builder.sum(k.get(AbstractVersionedAuditable_.version), 1))
+              .set(k.get(AbstractAuditable_.aktualisiert), new Date())
+              .where(builder.equal(k.get(AbstractKunde_.id), kundeId),
+                     builder.equal(k.get(AbstractVersionedAuditable_.version), versionAlt));
+        
+        if (em.createQuery(update).executeUpdate() == 0) {
+            if (!findLoginnameById(kundeId).isPresent()) {
+                throw new ConcurrentDeletedException(kundeId);
+            }
+            throw new OptimisticLockException("Kunde " + kundeId + " mit Version " + versionAlt + " wurde bereits geaendert");
+        }
+        
+        if (segmentAlt != null) {
+            final KundenSegment segmentNeu = new KundenSegment(segmentAlt.getArt(), patch.getKategorie(),
+                                                               segmentAlt.getGeschlecht(), segmentAlt.getFamilienstand());
+            kundenStatistikInstance.get().move(segmentAlt, segmentNeu);
+        }
+        
+        if (iam != null) {
+            final IdentityVO identity = iam.findIdentityByLoginname(loginname)
+                                           .orElseThrow(() -> new ConcurrentDeletedException(kundeId));
+            patch.applyTo(identity);
+            iam.updateIdentity(identity);
+        }
+        
+        return versionAlt + 1;
+    }
 
+    /**
+     * Umsatz, Anzahl der Bestellungen, Zeitpunkt der letzten Bestellung und die groesste Anzahl in einer
+     * Bestellposition eines Kunden durch 1 UPDATE-Anweisung fortschreiben.
+     * Die Versionsnummer des Kunden bleibt unveraendert, damit parallele Aenderungen am Kunden nicht scheitern.
+     * @param kundeId Die ID des Kunden
+     * @param betrag Der Gesamtbetrag der neuen Bestellung
+     * @param maxAnzahl Die groesste Anzahl in einer Bestellposition der neuen Bestellung
+     * @param zeitpunkt Der Zeitpunkt der neuen Bestellung
+     */
+    public void addBestellung(long kundeId, BigDecimal betrag, int maxAnzahl, Date zeitpunkt) {
+        final Query query = em.createNamedQuery(AbstractKunde.ADD_BESTELLUNG)
+                              .setParameter(AbstractKunde.PARAM_BETRAG, betrag == null ? BigDecimal.ZERO : betrag)
+                              .setParameter(AbstractKunde.PARAM_ZEITPUNKT, zeitpunkt)
+                              .setParameter(AbstractKunde.PARAM_MENGE, maxAnzahl)
+                              .setParameter(AbstractKunde.PARAM_KUNDE_ID, kundeId);
+        // Bei einem Bulk-UPDATE invalidiert Hibernate die gesamte Cache-Region fuer Privat- und Firmenkunden
+        // sowie den Query-Cache, und das bei jeder Bestellung. Mit einem eigenen Query Space, den keine Entity
+        // verwendet, bleiben Regionen und Query-Cache unberuehrt; stattdessen wird nur der betroffene Kunde aus dem
+        // L2C entfernt. Gecachte Queries ueber Umsatz oder Anzahl der Bestellungen gibt es nicht.
+        query.unwrap(SQLQuery.class).addSynchronizedQuerySpace(QUERY_SPACE_BESTELLUNGEN);
+        final int anzahl = query.executeUpdate();
+        final Cache cache = em.getEntityManagerFactory().getCache();
+        evict(cache, kundeId);
+        // Ohne die Entity im Query Space entfernt Hibernate den Kunden nach dem Commit nicht erneut: ein paralleles
+        // findById() vor dem Commit kann die alten Werte wieder in den L2C laden
+        afterCommitInstance.get().run(() -> evict(cache, kundeId));
+        if (anzahl == 0) {
+            LOGGER.warning("addBestellung: Kein Kunde mit der ID " + kundeId);
+        }
+    }
+    
+    // Nur den einen Kunden aus dem L2C entfernen; gecacht werden Privat- und Firmenkunden (@Cacheable)
+    private static void evict(Cache cache, long kundeId) {
+        cache.evict(Privatkunde.class, kundeId);
+        cache.evict(Firmenkunde.class, kundeId);
+    }
+    
+    /**
+     * Umsatz, Anzahl der Bestellungen und Zeitpunkt der letzten Bestellung fuer alle Kunden nachtragen,
+     * bei denen diese Werte noch nicht gesetzt sind.
+     * @return Anzahl der nachgetragenen Kunden
+     */
+    public int bestellungenNachtragen() {
+        return em.createNamedQuery(AbstractKunde.BESTELLUNGEN_NACHTRAGEN)
+                 .executeUpdate();
+    }
+    
+    /**
+     * Die groesste Anzahl in einer Bestellposition fuer alle Kunden nachtragen, bei denen sie noch nicht gesetzt ist.
+     * @return Anzahl der nachgetragenen Kunden
+     */
+    public int bestellmengeNachtragen() {
+        return em.createNamedQuery(AbstractKunde.BESTELLMENGE_NACHTRAGEN)
+                 .executeUpdate();
+    }
+    
     /**
      * Einen Kunden loeschen
      * @param <K> Privatkunde oder Firmenkunde
@@ -517,7 +869,10 @@ public class KundenBroker {
             throw new KundeDeleteWarenkorbException(kunde, warenkorb);
         }
 
-        // Kundendaten loeschen
+        // Kundendaten loeschen: die Datei wird kaskadierend geloescht, ihr Inhalt spaeter aufgeraeumt
+        if (kunde.getFile() != null) {
+            fileContentBrokerInstance.get().referenzEntfernen(kunde.getFile().getContent());
+        }
         em.remove(kunde);
     }
 
@@ -530,32 +885,46 @@ public class KundenBroker {
      * @return Das Kundenobjekt
      */
     public <K extends AbstractKunde> K setFile(K kunde, byte[] bytes) {
-        final MimeType mimeType = fileHelperInstance.get().getMimeType(bytes);
-        setFile(kunde, bytes, mimeType);
+        if (bytes == null) {
+            LOGGER.warning("setFile: kunde=" + kunde + ", 0 (!) bytes");
+            throw new NoMimeTypeException();
+        }
+        return setFile(kunde, new ByteArrayInputStream(bytes));
+    }
+    
+    /**
+     * Einem Kunden eine hochgeladene Datei ohne MIME Type (bei RESTful WS) zuordnen. Die Datei wird mit einem
+     * Puffer fester Groesse zunaechst in eine temporaere Datei und von dort in die DB gestreamt.
+     * @param <K> Primvatkunde oder Firmenkunde
+     * @param kunde Das Kundenobjekt fuer die hochgeladene Datei
+     * @param inputStream Der Datenstrom der hochgeladenen Datei
+     * @return Das Kundenobjekt
+     */
+    public <K extends AbstractKunde> K setFile(K kunde, InputStream inputStream) {
+        try (final Upload upload = fileHelperInstance.get().spool(inputStream)) {
+            setFile(kunde, upload, upload.getMimeType());
+        }
         return kunde;
     }
     
     /**
-     * Einem Kunden eine hochgeladene Datei zuordnen
+     * Einem Kunden eine bereits in eine temporaere Datei hochgeladene Datei zuordnen.
+     * Die temporaere Datei wird dabei uebernommen; der Aufrufer muss den Upload trotzdem schliessen.
      * @param <K> Privatkunde oder Firmenkunde
      * @param kunde Der betroffene Kunde
-     * @param bytes Das Byte-Array der hochgeladenen Datei
+     * @param upload Die hochgeladene Datei
      * @param mimeTypeStr Der MIME-Type als String
      * @return Das Kundenobjekt
      */
-    public <K extends AbstractKunde> K setFile(K kunde, byte[] bytes, String mimeTypeStr) {
-        final MimeType mimeType = MimeType.build(mimeTypeStr);
-        setFile(kunde, bytes, mimeType);
+    public <K extends AbstractKunde> K setFile(K kunde, Upload upload, String mimeTypeStr) {
+        final MimeType mimeType = mimeTypeStr == null ? upload.getMimeType() : MimeType.build(mimeTypeStr);
+        setFile(kunde, upload, mimeType);
         return kunde;
     }
     
-    private <K extends AbstractKunde> void setFile(K kunde, byte[] bytes, MimeType mimeType) {
+    private <K extends AbstractKunde> void setFile(K kunde, Upload upload, MimeType mimeType) {
         if (LOGGER.isLoggable(FINER)) {
-            if (bytes == null) {
-                LOGGER.warning("setFile: kunde=" + kunde + ", 0 (!) bytes, mimeType=" + mimeType);
-            } else {
-                LOGGER.finer("setFile: kunde=" + kunde + ", bytes=" + bytes.length + ", mimeType=" + mimeType);
-            }
+            LOGGER.finer("setFile: kunde=" + kunde + ", upload=" + upload + ", mimeType=" + mimeType);
         }
 
         if (mimeType == null) {
@@ -565,27 +934,39 @@ public class KundenBroker {
         final FileHelper fileHelper = fileHelperInstance.get();
         final String filename = fileHelper.getFilename(kunde.getClass(), kunde.getId(), mimeType);
         
+        // Ein bereits bekannter Inhalt wird nur referenziert und nicht erneut abgespeichert
+        final FileContentBroker fileContentBroker = fileContentBrokerInstance.get();
+        final FileContent content = fileContentBroker.findOrCreate(upload);
+        
         // Gibt es noch kein (Multimedia-) File
         File file = kunde.getFile();
         if (file == null) {
-            file = new File(bytes, filename, mimeType);
+            file = new File(content, filename, mimeType);
             if (LOGGER.isLoggable(FINEST)) {
                 LOGGER.finest("Neue Datei " + file);
             }
+            // Zuerst die Referenz zaehlen: ein inzwischen aufgeraeumter Inhalt wird vor dem INSERT erkannt
+            fileContentBroker.referenzHinzufuegen(content);
             kunde.setFile(file);
             em.persist(file);
         } else {
-            file.set(bytes, filename, mimeType);
+            final FileContent alterContent = file.getContent();
+            file.set(content, filename, mimeType);
             if (LOGGER.isLoggable(FINEST)) {
                 LOGGER.finest("Ueberschreiben der Datei " + file);
             }
             em.merge(kunde);
             em.merge(file);
+            if (!content.equals(alterContent)) {
+                fileContentBroker.referenzHinzufuegen(content);
+                fileContentBroker.referenzEntfernen(alterContent);
+            }
         }
 
-        // Hochgeladenes Bild/Video/Audio in einem parallelen Thread als Datei fuer die Web-Anwendung abspeichern
-        final File newFile = kunde.getFile();
-        managedExecutorServiceInstance.get().execute(() -> fileHelper.store(newFile));
+        // Hochgeladenes Bild/Video/Audio vor dem Commit als Inhalt abspeichern: nur Verschieben, kein Kopieren.
+        // Die Datei fuer die Web-Anwendung wird nach dem Commit im Hintergrund verlinkt.
+        fileContentBroker.abspeichern(upload);
+        fileContentBroker.abspeichernNachCommit(kunde.getFile());
     }
 
     private <K extends AbstractKunde> boolean hasBestellungen(K kunde) {
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import de.shop.iam.business.IdentityAccessManagement;
+import de.shop.iam.domain.IdentityVO;
+import de.shop.kundenverwaltung.domain.AbstractKunde;
+import de.shop.util.interceptor.Log;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.Dependent;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import static de.shop.util.Constants.IMPORT_BATCH_SIZE;
+import static java.util.logging.Level.FINER;
+import static java.util.logging.Level.WARNING;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Massenimport von Kunden: Die Zeilen werden blockweise verarbeitet. Pro Block werden die Kunden parallel
+ * validiert, Loginnamen und Emailadressen mengenorientiert im IAM-System geprueft und die Kunden in einer
+ * eigenen Transaktion gespeichert.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Dependent
+@Log
+public class KundenImportBroker {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    private final RegistrierungBroker registrierungBroker;
+    private final Instance<IdentityAccessManagement> iamInstance;
+    private final Instance<Validator> validatorInstance;
+    private final Instance<ManagedExecutorService> managedExecutorServiceInstance;
+    
+    @Inject
+    KundenImportBroker(RegistrierungBroker registrierungBroker,
+                       Instance<IdentityAccessManagement> iamInstance,
+                       Instance<Validator> validatorInstance,
+                       Instance<ManagedExecutorService> managedExecutorServiceInstance) {
+        super();
+        this.registrierungBroker = registrierungBroker;
+        this.iamInstance = iamInstance;
+        this.validatorInstance = validatorInstance;
+        this.managedExecutorServiceInstance = managedExecutorServiceInstance;
+    }
+    
+    /**
+     * Kunden aus den eingelesenen Zeilen importieren.
+     * @param zeilen Iterator ueber die eingelesenen Zeilen, die erst bei Bedarf gelesen werden
+     * @return Ergebnis mit Anzahl der importierten Kunden und den Fehlern pro Zeile
+     */
+    public ImportErgebnis importKunden(Iterator<ImportZeile> zeilen) {
+        final long start = System.nanoTime();
+        final ImportErgebnis ergebnis = new ImportErgebnis();
+        
+        // Loginnamen und Emailadressen der bereits importierten Zeilen, um Duplikate innerhalb der Datei zu erkennen
+        final Set<String> loginnamenImport = new HashSet<>();
+        final Set<String> emailsImport = new HashSet<>();
+        
+        final List<ImportZeile> block = new ArrayList<>(IMPORT_BATCH_SIZE);
+        while (zeilen.hasNext()) {
+            final ImportZeile zeile = zeilen.next();
+            ergebnis.addZeile();
+            if (zeile.getFehler() != null) {
+                ergebnis.addFehler(zeile.getNr(), zeile.getFehler());
+                continue;
+            }
+            block.add(zeile);
+            if (block.size() == IMPORT_BATCH_SIZE) {
+                importBlock(block, loginnamenImport, emailsImport, ergebnis);
+                block.clear();
+            }
+        }
+        if (!block.isEmpty()) {
+            importBlock(block, loginnamenImport, emailsImport, ergebnis);
+        }
+        
+        ergebnis.setDauerMillis((System.nanoTime() - start) / 1_000_000);
+        LOGGER.info("Massenimport beendet: " + ergebnis);
+        return ergebnis;
+    }
+    
+    private void importBlock(List<ImportZeile> block, Set<String> loginnamenImport, Set<String> emailsImport,
+                             ImportErgebnis ergebnis) {
+        final List<String> violations = validate(block);
+        
+        // Mengenorientierte Pruefung im IAM-System statt 2 Abfragen pro Kunde
+        final List<IdentityVO> identities = block.stream()
+                                                 .map(z -> z.getKunde().getIdentity())
+                                                 .filter(i -> i != null)
+                                                 .collect(toList());
+        final IdentityAccessManagement iam = iamInstance.get();
+        final Map<String, IdentityVO> vorhandeneLoginnamen =
+            iam.findIdentitiesByLoginnamen(identities.stream().map(IdentityVO::getLoginname).collect(toList()));
+        final Set<String> vorhandeneEmails = iam.findVorhandeneEmails(identities.stream()
+                                                                                 .map(IdentityVO::getEmail)
+                                                                                 .collect(toList()));
+        
+        final List<ImportZeile> gueltig = new ArrayList<>(block.size());
+        for (int i = 0; i < block.size(); i++) {
+            final ImportZeile zeile = block.get(i);
+            final String violation = violations.get(i);
+            if (violation != null) {
+                ergebnis.addFehler(zeile.getNr(), violation);
+                continue;
+            }
+            
+            final AbstractKunde kunde = zeile.getKunde();
+            final String loginname = kunde.getIdentity().getLoginname();
+            final String email = IdentityVO.normalizeEmail(kunde.getIdentity().getEmail());
+            if (vorhandeneLoginnamen.containsKey(loginname) || !loginnamenImport.add(loginname)) {
+                ergebnis.addFehler(zeile.getNr(), new LoginnameExistsException(loginname).getMessage());
+                continue;
+            }
+            if (vorhandeneEmails.contains(email) || !emailsImport.add(email)) {
+                ergebnis.addFehler(zeile.getNr(), new EmailExistsException(email).getMessage());
+                continue;
+            }
+            
+            vorbereiten(kunde);
+            gueltig.add(zeile);
+        }
+        
+        save(gueltig, ergebnis);
+    }
+    
+    private static void vorbereiten(AbstractKunde kunde) {
+        kunde.setLoginname(kunde.getIdentity().getLoginname());
+        kunde.setBestellungenUri(null);
+    }
+    
+    // Parallele Validierung in Teilbloecken durch den ManagedExecutorService
+    private List<String> validate(List<ImportZeile> block) {
+        final Validator validator = validatorInstance.get();
+        final int anzahlTeile = Math.max(1, Runtime.getRuntime().availableProcessors());
+        final int teilGroesse = (block.size() + anzahlTeile - 1) / anzahlTeile;
+        
+        final List<Callable<List<String>>> tasks = new ArrayList<>(anzahlTeile);
+        for (int i = 0; i < block.size(); i += teilGroesse) {
+            final List<ImportZeile> teil = block.subList(i, Math.min(i + teilGroesse, block.size()));
+            tasks.add(() -> teil.stream()
+                                .map(z -> toMeldung(validator.validate(z.getKunde())))
+                                .collect(toList()));
+        }
+        
+        final List<String> violations = new ArrayList<>(block.size());
+        try {
+            for (Future<List<String>> future : managedExecutorServiceInstance.get().invokeAll(tasks)) {
+                violations.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+        return violations;
+    }
+    
+    private static String toMeldung(Set<ConstraintViolation<AbstractKunde>> violations) {
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                         .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                         .sorted()
+                         .collect(joining("; "));
+    }
+    
+    private void save(List<ImportZeile> zeilen, ImportErgebnis ergebnis) {
+        if (zeilen.isEmpty()) {
+            return;
+        }
+        
+        final List<AbstractKunde> kunden = zeilen.stream()
+                                                 .map(ImportZeile::getKunde)
+                                                 .collect(toList());
+        try {
+            registrierungBroker.saveAll(kunden);
+            ergebnis.addImportiert(kunden.size());
+            return;
+        } catch (RuntimeException e) {
+            // z.B. PersistenceException oder TransactionalException beim Commit
+            LOGGER.log(WARNING, "Block mit " + kunden.size() + " Kunden konnte nicht gespeichert werden,"
+                                + " die Kunden werden einzeln gespeichert", e);
+        }
+        
+        // Fehlerhafte Zeilen ermitteln: jeder Kunde in einer eigenen Transaktion. Die Objekte aus dem
+        // zurueckgerollten Block haben bereits generierte IDs, Versionen und Zeitstempel und wuerden bei persist()
+        // als "detached" abgelehnt. Deshalb wird jeder Kunde neu aus der eingelesenen Zeile erzeugt.
+        zeilen.forEach(zeile -> {
+            try {
+                final AbstractKunde kunde = zeile.neuerKunde();
+                vorbereiten(kunde);
+                registrierungBroker.saveAll(Collections.singletonList(kunde));
+                ergebnis.addImportiert(1);
+            } catch (RuntimeException e) {
+                if (LOGGER.isLoggable(FINER)) {
+                    LOGGER.log(FINER, e.getMessage(), e);
+                }
+                ergebnis.addFehler(zeile.getNr(), e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import de.shop.bestellverwaltung.business.NeueBestellung;
+import de.shop.bestellverwaltung.domain.Bestellung;
+import de.shop.kundenverwaltung.domain.AbstractKunde;
+import de.shop.kundenverwaltung.domain.FamilienstandType;
+import de.shop.kundenverwaltung.domain.Firmenkunde;
+import de.shop.kundenverwaltung.domain.GeschlechtType;
+import de.shop.kundenverwaltung.domain.KundenSegment;
+import de.shop.kundenverwaltung.domain.Privatkunde;
+import de.shop.util.persistence.AfterCommit;
+import de.shop.util.persistence.DefaultEM;
+import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Initialized;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import org.jboss.weld.experimental.Priority;
+
+import static de.shop.kundenverwaltung.domain.AbstractKunde.FIRMENKUNDE;
+import static de.shop.kundenverwaltung.domain.AbstractKunde.PRIVATKUNDE;
+import static java.math.RoundingMode.HALF_UP;
+import static java.util.logging.Level.FINER;
+import static javax.enterprise.event.TransactionPhase.AFTER_SUCCESS;
+import static javax.interceptor.Interceptor.Priority.APPLICATION;
+
+/**
+ * Inkrementell gepflegte Statistik ueber Anzahl und Umsatz der Kunden je Segment, damit Auswertungen nach
+ * Kundenart, Kategorie, Geschlecht und Familienstand nicht jedesmal die Tabellen fuer Kunden und Bestellungen
+ * aggregieren muessen. Pro Segment gibt es 2 Zaehler vom Typ LongAdder, so dass parallele Aenderungen nicht
+ * um dieselbe Speicherzelle konkurrieren. Da die Anzahl der Segmente beschraenkt ist, ist eine Abfrage
+ * unabhaengig von der Anzahl der Kunden. Abweichungen, z.B. durch Bulk-Updates oder Aenderungen direkt in der DB,
+ * werden durch den periodischen Abgleich in KundenStatistikAbgleich korrigiert.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class KundenStatistik {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    // Beim Abgleich wird die komplette Map ausgetauscht, damit Lesezugriffe immer einen konsistenten Stand sehen
+    private volatile ConcurrentHashMap<KundenSegment, Zaehler> zaehler = new ConcurrentHashMap<>();
+    private volatile Date abgleich;
+    
+    @Inject
+    @DefaultEM
+    private EntityManager em;
+    
+    @Inject
+    private AfterCommit afterCommit;
+    
+    @SuppressWarnings("unused")
+    private void onStartup(@Observes @Initialized(ApplicationScoped.class) Object ignored) {
+        abgleichen();
+    }
+    
+    // Der Umsatz wird dem aktuellen Segment des Kunden zugerechnet
+    @SuppressWarnings("unused")
+    private void onCreateBestellung(@Observes(during = AFTER_SUCCESS)
+                                    @Priority(APPLICATION + 100)
+                                    @NeueBestellung
+                                    final Bestellung bestellung) {
+        if (bestellung == null || bestellung.getKunde() == null || bestellung.getGesamtbetrag() == null) {
+            return;
+        }
+        zaehler(bestellung.getKunde().toSegment()).umsatzCent.add(toCent(bestellung.getGesamtbetrag()));
+    }
+    
+    /**
+     * Die Zaehler mit gruppierten Abfragen aus der DB neu aufbauen.
+     */
+    public void abgleichen() {
+        final ConcurrentHashMap<KundenSegment, Zaehler> neu = new ConcurrentHashMap<>();
+        
+        em.createNamedQuery(Privatkunde.STATISTIK_ANZAHL, Object[].class)
+          .getResultList()
+          .forEach(row -> zaehler(neu, privatkunde(row)).anzahl.add((Long) row[3]));
+        em.createNamedQuery(Privatkunde.STATISTIK_UMSATZ, Object[].class)
+          .getResultList()
+          .forEach(row -> zaehler(neu, privatkunde(row)).umsatzCent.add(toCent((BigDecimal) row[3])));
+        em.createNamedQuery(Firmenkunde.STATISTIK_ANZAHL, Object[].class)
+          .getResultList()
+          .forEach(row -> zaehler(neu, firmenkunde(row)).anzahl.add((Long) row[1]));
+        em.createNamedQuery(Firmenkunde.STATISTIK_UMSATZ, Object[].class)
+          .getResultList()
+          .forEach(row -> zaehler(neu, firmenkunde(row)).umsatzCent.add(toCent((BigDecimal) row[1])));
+        
+        // Aenderungen, die waehrend der Abfragen noch in die alte Map eingetragen wurden, gehen verloren
+        // bzw. sind bereits enthalten; sie werden spaetestens beim naechsten Abgleich korrigiert
+        zaehler = neu;
+        abgleich = new Date();
+        
+        LOGGER.info("Kundenstatistik abgeglichen: " + neu.size() + " Segmente");
+    }
+    
+    /**
+     * Einen neuen Kunden nach erfolgreichem Commit der aktuellen Transaktion zaehlen.
+     * @param segment Segment des neuen Kunden
+     */
+    public void add(KundenSegment segment) {
+        afterCommit.run(() -> zaehler(segment).anzahl.increment());
+    }
+    
+    /**
+     * Einen geloeschten Kunden nach erfolgreichem Commit der aktuellen Transaktion austragen.
+     * @param segment Segment des geloeschten Kunden
+     */
+    public void remove(KundenSegment segment) {
+        afterCommit.run(() -> zaehler(segment).anzahl.decrement());
+    }
+    
+    /**
+     * Einen Kunden nach erfolgreichem Commit der aktuellen Transaktion in ein anderes Segment verschieben.
+     * Der bisherige Umsatz bleibt beim alten Segment, bis er beim naechsten Abgleich umgebucht wird.
+     * @param segmentAlt bisheriges Segment
+     * @param segmentNeu neues Segment
+     */
+    public void move(KundenSegment segmentAlt, KundenSegment segmentNeu) {
+        if (segmentAlt == null || Objects.equals(segmentAlt, segmentNeu)) {
+            return;
+        }
+        
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("move: " + segmentAlt + " -> " + segmentNeu);
+        }
+        afterCommit.run(() -> {
+            zaehler(segmentAlt).anzahl.decrement();
+            zaehler(segmentNeu).anzahl.increment();
+        });
+    }
+    
+    /**
+     * Die Kennzahlen aus den Zaehlern der Segmente aufsummieren.
+     * @return Momentaufnahme der Statistik
+     */
+    public Segmentstatistik getStatistik() {
+        final Segmentstatistik statistik = new Segmentstatistik(abgleich);
+        zaehler.forEach((segment, z) -> statistik.add(segment.getArt(), segment.getKategorie(), segment.getGeschlecht(),
+                                                      segment.getFamilienstand(), z.anzahl.sum(), z.umsatzCent.sum()));
+        return statistik;
+    }
+    
+    private Zaehler zaehler(KundenSegment segment) {
+        return zaehler(zaehler, segment);
+    }
+    
+    private static Zaehler zaehler(ConcurrentHashMap<KundenSegment, Zaehler> map, KundenSegment segment) {
+        // get() vorab, weil computeIfAbsent() auch bei vorhandenem Schluessel sperren kann
+        final Zaehler z = map.get(segment);
+        return z == null ? map.computeIfAbsent(segment, s -> new Zaehler()) : z;
+    }
+    
+    private static KundenSegment privatkunde(Object[] row) {
+        return new KundenSegment(PRIVATKUNDE, (Integer) row[0], (GeschlechtType) row[1], (FamilienstandType) row[2]);
+    }
+    
+    private static KundenSegment firmenkunde(Object[] row) {
+        return new KundenSegment(FIRMENKUNDE, (Integer) row[0], null, null);
+    }
+    
+    private static long toCent(BigDecimal betrag) {
+        return betrag == null ? 0 : betrag.setScale(2, HALF_UP).unscaledValue().longValue();
+    }
+    
+    private static class Zaehler {
+        private final LongAdder anzahl = new LongAdder();
+        private final LongAdder umsatzCent = new LongAdder();
+    }
+}
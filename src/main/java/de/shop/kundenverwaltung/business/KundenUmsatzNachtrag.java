@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import java.lang.invoke.MethodHandles;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.inject.Inject;
+
+/**
+ * Einmaliges Nachtragen von Umsatz, Anzahl der Bestellungen, Zeitpunkt der letzten Bestellung und groesster
+ * Anzahl in einer Bestellposition fuer Kunden, die vor der inkrementellen Fortschreibung beim Bestellen
+ * angelegt wurden. Bereits nachgetragene Kunden werden nicht erneut berechnet, so dass der Aufruf bei jedem
+ * Start unkritisch ist.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Singleton
+@Startup
+public class KundenUmsatzNachtrag {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    @Inject
+    KundenBroker kundenBroker;
+    
+    @PostConstruct
+    public void nachtragen() {
+        final int anzahl = kundenBroker.bestellungenNachtragen();
+        LOGGER.info("Umsatz und Bestellungen fuer " + anzahl + " Kunden nachgetragen");
+        final int anzahlBestellmenge = kundenBroker.bestellmengeNachtragen();
+        LOGGER.info("Maximale Bestellmenge fuer " + anzahlBestellmenge + " Kunden nachgetragen");
+    }
+}
@@ -22,13 +22,17 @@ import de.shop.iam.domain.IdentityVO;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.util.interceptor.Log;
 import de.shop.util.persistence.DefaultEM;
+import java.util.List;
 import javax.enterprise.context.Dependent;
 import javax.enterprise.event.Event;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
+import javax.transaction.Transactional;
 import org.jboss.weld.experimental.ExperimentalEvent;
 
+import static javax.transaction.Transactional.TxType.REQUIRES_NEW;
+
 
 
 /**
@@ -70,7 +74,7 @@ public class RegistrierungBroker {
         }
         
         final String email = identity.getEmail();
-        if (iam.findIdentitiesByEmail(email).isPresent()) {
+        if (iam.findLoginnameByEmail(email).isPresent()) {
             // Ein Kunde mit der gleichen Email-Adresse existiert bereits
             throw new EmailExistsException(email);
         }
@@ -82,4 +86,25 @@ public class RegistrierungBroker {
         
         return kunde;
     }
+    
+    /**
+     * Mehrere neue Kunden in einer eigenen Transaktion anlegen, z.B. beim Massenimport.
+     * Die Pruefungen auf vorhandene Loginnamen und Emailadressen muss der Aufrufer
+     * mengenorientiert durchgefuehrt haben. Die INSERT-Anweisungen werden durch
+     * hibernate.jdbc.batch_size gebuendelt; anschliessend wird der Persistenzkontext geleert.
+     * Es wird kein Event fuer jeden einzelnen Kunden ausgeloest.
+     * @param kunden Die neuen Kunden
+     * @param <K> Privatkunde oder Firmenkunde
+     */
+    @Transactional(REQUIRES_NEW)
+    public <K extends AbstractKunde> void saveAll(List<K> kunden) {
+        if (kunden == null || kunden.isEmpty()) {
+            return;
+        }
+        
+        final EntityManager em = emInstance.get();
+        kunden.forEach(em::persist);
+        em.flush();
+        em.clear();
+    }
 }
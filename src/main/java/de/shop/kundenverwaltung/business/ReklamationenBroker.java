@@ -19,7 +19,9 @@ package de.shop.kundenverwaltung.business;
 
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.kundenverwaltung.domain.Reklamation;
+import de.shop.kundenverwaltung.domain.ReklamationId;
 import de.shop.util.interceptor.Log;
+import de.shop.util.persistence.ConcurrentDeletedException;
 import de.shop.util.persistence.DefaultEM;
 import java.util.List;
 import java.util.Optional;
@@ -28,9 +30,11 @@ import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 
-import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.NUR_KUNDE;
+import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.MIT_REKLAMATIONEN;
+import static de.shop.util.Constants.MAX_PAGE_SIZE;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
+import static javax.persistence.TemporalType.DATE;
 
 
 /**
@@ -41,12 +45,15 @@ import static java.util.Optional.of;
 public class ReklamationenBroker {
     private final EntityManager em;
     private final Instance<KundenBroker> kundenBrokerInstance;
+    private final Instance<ReklamationenCache> reklamationenCacheInstance;
     
     @Inject
-    ReklamationenBroker(@DefaultEM EntityManager em, Instance<KundenBroker> kundenBrokerInstance) {
+    ReklamationenBroker(@DefaultEM EntityManager em, Instance<KundenBroker> kundenBrokerInstance,
+                        Instance<ReklamationenCache> reklamationenCacheInstance) {
         super();
         this.em = em;
         this.kundenBrokerInstance = kundenBrokerInstance;
+        this.reklamationenCacheInstance = reklamationenCacheInstance;
     }
     
     /**
@@ -60,6 +67,49 @@ public class ReklamationenBroker {
                                                   .getResultList();
         return reklamationen.isEmpty()? empty() : of(reklamationen);
     }
+    
+    /**
+     * Die Reklamationen eines Kunden seitenweise ermitteln ("Keyset Pagination" nach Nr und Datum).
+     * Die erste Seite wird aus dem Cache gelesen, sofern vorhanden.
+     * @param kundeId Die ID des Kunden
+     * @param lastId Nr und Datum der letzten Reklamation der vorherigen Seite oder null fuer die erste Seite
+     * @param maxResults Max. Anzahl Reklamationen (hoechstens MAX_PAGE_SIZE + 1)
+     * @return Die Liste mit den Reklamationen der Seite
+     */
+    public Optional<List<Reklamation>> findByKundeId(long kundeId, ReklamationId lastId, int maxResults) {
+        final List<Reklamation> reklamationen;
+        if (lastId == null && maxResults <= MAX_PAGE_SIZE + 1) {
+            reklamationen = findErsteSeite(kundeId);
+            if (reklamationen.size() > maxResults) {
+                return of(reklamationen.subList(0, maxResults));
+            }
+        } else {
+            reklamationen = em.createNamedQuery(Reklamation.FIND_BY_KUNDE_ID_AFTER, Reklamation.class)
+                              .setParameter(Reklamation.PARAM_KUNDE_ID, kundeId)
+                              .setParameter(Reklamation.PARAM_LAST_NR, lastId == null ? Long.MIN_VALUE : lastId.getNr())
+                              .setParameter(Reklamation.PARAM_LAST_DATUM, lastId == null ? null : lastId.getDatum(), DATE)
+                              .setMaxResults(maxResults)
+                              .getResultList();
+        }
+        return reklamationen.isEmpty() ? empty() : of(reklamationen);
+    }
+    
+    // Die erste Seite wird mit einer Reklamation mehr gecacht, damit auch der Link "next" ohne DB-Zugriff moeglich ist
+    private List<Reklamation> findErsteSeite(long kundeId) {
+        final ReklamationenCache cache = reklamationenCacheInstance.get();
+        final Optional<List<Reklamation>> cached = cache.get(kundeId);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        
+        final long generation = cache.getGeneration();
+        final List<Reklamation> reklamationen = em.createNamedQuery(Reklamation.FIND_BY_KUNDE_ID, Reklamation.class)
+                                                  .setParameter(Reklamation.PARAM_KUNDE_ID, kundeId)
+                                                  .setMaxResults(MAX_PAGE_SIZE + 1)
+                                                  .getResultList();
+        cache.put(kundeId, reklamationen, generation);
+        return reklamationen;
+    }
 
     
     /**
@@ -69,8 +119,15 @@ public class ReklamationenBroker {
      * @return Die neue Reklamation einschliesslich ggf. generierter ID
      */
     public Reklamation save(Reklamation reklamation, AbstractKunde kunde) {
-        kundenBrokerInstance.get().findById(kunde.getId(), NUR_KUNDE);
+        // Der Fremdschluessel und der Index der Reklamation werden ueber die Liste beim Kunden gesetzt
+        final AbstractKunde kundeDb = kundenBrokerInstance.get()
+                                                          .findById(kunde.getId(), MIT_REKLAMATIONEN)
+                                                          .orElseThrow(() -> new ConcurrentDeletedException(kunde.getId()));
+        kundeDb.addReklamation(reklamation);
+        reklamation.setKunde(kundeDb);
         em.persist(reklamation);
+        
+        reklamationenCacheInstance.get().invalidate(kundeDb.getId());
         return reklamation;
     }
 }
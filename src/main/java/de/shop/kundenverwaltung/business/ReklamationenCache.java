@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import de.shop.kundenverwaltung.domain.Reklamation;
+import de.shop.util.persistence.AfterCommit;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+
+/**
+ * Kleiner LRU-Cache fuer die erste Seite der Reklamationen je Kunde, weil der Reiter mit den Reklamationen
+ * sehr haeufig geoeffnet wird. Neue Reklamationen machen den Eintrag des Kunden ungueltig.
+ * Der Cache wird von allen Threads gemeinsam benutzt und haelt deshalb keine Entities aus einem Persistenzkontext,
+ * sondern nur Kopien ohne den Kunden. Diese Kopien werden nie herausgegeben: jeder Leser erhaelt eigene Kopien.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class ReklamationenCache {
+    private static final int MAX_KUNDEN = 1000;
+    
+    // Zugriffsreihenfolge, damit der am laengsten nicht benutzte Kunde verdraengt wird
+    private final Map<Long, List<Reklamation>> cache = new LinkedHashMap<Long, List<Reklamation>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+        
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, List<Reklamation>> eldest) {
+            return size() > MAX_KUNDEN;
+        }
+    };
+    
+    // Wird bei jeder Invalidierung erhoeht, damit ein parallel aus der DB gelesener, veralteter Stand
+    // nicht nachtraeglich eingetragen wird
+    private final AtomicLong generation = new AtomicLong();
+    
+    @Inject
+    private AfterCommit afterCommit;
+    
+    /**
+     * @return Aktueller Stand fuer einen anschliessenden Aufruf von put()
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+    
+    /**
+     * Die erste Seite der Reklamationen eines Kunden aus dem Cache lesen.
+     * @param kundeId ID des Kunden
+     * @return Eigene Kopien der Reklamationen ohne Kunde oder leeres Optional, falls nicht im Cache
+     */
+    public Optional<List<Reklamation>> get(long kundeId) {
+        final List<Reklamation> reklamationen;
+        synchronized (cache) {
+            reklamationen = cache.get(kundeId);
+        }
+        return reklamationen == null ? empty() : of(kopieren(reklamationen));
+    }
+    
+    /**
+     * Die erste Seite der Reklamationen eines Kunden eintragen, sofern seit dem Lesen aus der DB keine
+     * Invalidierung erfolgt ist.
+     * @param kundeId ID des Kunden
+     * @param reklamationen Die gelesenen Reklamationen
+     * @param generationBeimLesen Ergebnis von getGeneration() vor dem Lesen aus der DB
+     */
+    public void put(long kundeId, List<Reklamation> reklamationen, long generationBeimLesen) {
+        final List<Reklamation> unveraenderlich = Collections.unmodifiableList(kopieren(reklamationen));
+        synchronized (cache) {
+            if (generation.get() == generationBeimLesen) {
+                cache.put(kundeId, unveraenderlich);
+            }
+        }
+    }
+    
+    /**
+     * Den Eintrag eines Kunden sofort und nochmals nach erfolgreichem Commit der aktuellen Transaktion entfernen.
+     * @param kundeId ID des Kunden
+     */
+    public void invalidate(long kundeId) {
+        remove(kundeId);
+        afterCommit.run(() -> remove(kundeId));
+    }
+    
+    private static List<Reklamation> kopieren(List<Reklamation> reklamationen) {
+        return reklamationen.stream()
+                            .map(ReklamationenCache::kopieren)
+                            .collect(Collectors.toList());
+    }
+    
+    // Flache Kopie ohne den Kunden, damit kein (EAGER geladener) Objektgraph im Cache verbleibt
+    private static Reklamation kopieren(Reklamation reklamation) {
+        final Reklamation kopie;
+        try {
+            kopie = (Reklamation) reklamation.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        kopie.setKunde(null);
+        return kopie;
+    }
+    
+    private void remove(long kundeId) {
+        synchronized (cache) {
+            generation.incrementAndGet();
+            cache.remove(kundeId);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.business;
+
+import de.shop.kundenverwaltung.domain.FamilienstandType;
+import de.shop.kundenverwaltung.domain.GeschlechtType;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import static javax.xml.bind.annotation.XmlAccessType.FIELD;
+
+/**
+ * Momentaufnahme der Kundenstatistik: Anzahl der Kunden und Umsatz insgesamt sowie je Kundenart,
+ * Kategorie, Geschlecht und Familienstand.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@XmlRootElement
+@XmlAccessorType(FIELD)
+public class Segmentstatistik {
+    private final Kennzahlen gesamt = new Kennzahlen();
+    private final Map<String, Kennzahlen> art = new TreeMap<>();
+    private final Map<Integer, Kennzahlen> kategorie = new TreeMap<>();
+    private final Map<GeschlechtType, Kennzahlen> geschlecht = new EnumMap<>(GeschlechtType.class);
+    private final Map<FamilienstandType, Kennzahlen> familienstand = new EnumMap<>(FamilienstandType.class);
+    private Date abgleich;
+    
+    public Segmentstatistik() {
+        super();
+    }
+    
+    Segmentstatistik(Date abgleich) {
+        super();
+        this.abgleich = abgleich == null ? null : (Date) abgleich.clone();
+    }
+    
+    void add(String artKey, int kategorieKey, GeschlechtType geschlechtKey, FamilienstandType familienstandKey,
+             long anzahl, long umsatzCent) {
+        gesamt.add(anzahl, umsatzCent);
+        art.computeIfAbsent(artKey, k -> new Kennzahlen()).add(anzahl, umsatzCent);
+        kategorie.computeIfAbsent(kategorieKey, k -> new Kennzahlen()).add(anzahl, umsatzCent);
+        // Firmenkunden haben weder Geschlecht noch Familienstand
+        if (geschlechtKey != null) {
+            geschlecht.computeIfAbsent(geschlechtKey, k -> new Kennzahlen()).add(anzahl, umsatzCent);
+        }
+        if (familienstandKey != null) {
+            familienstand.computeIfAbsent(familienstandKey, k -> new Kennzahlen()).add(anzahl, umsatzCent);
+        }
+    }
+    
+    public Kennzahlen getGesamt() {
+        return gesamt;
+    }
+    
+    public Map<String, Kennzahlen> getArt() {
+        return Collections.unmodifiableMap(art);
+    }
+    
+    public Map<Integer, Kennzahlen> getKategorie() {
+        return Collections.unmodifiableMap(kategorie);
+    }
+    
+    public Map<GeschlechtType, Kennzahlen> getGeschlecht() {
+        return Collections.unmodifiableMap(geschlecht);
+    }
+    
+    public Map<FamilienstandType, Kennzahlen> getFamilienstand() {
+        return Collections.unmodifiableMap(familienstand);
+    }
+    
+    /**
+     * @return Zeitpunkt des letzten Abgleichs mit der DB
+     */
+    public Date getAbgleich() {
+        return abgleich == null ? null : (Date) abgleich.clone();
+    }
+    
+    @Override
+    public String toString() {
+        return "Segmentstatistik {gesamt=" + gesamt + ", art=" + art + ", kategorie=" + kategorie
+               + ", geschlecht=" + geschlecht + ", familienstand=" + familienstand + ", abgleich=" + abgleich + '}';
+    }
+    
+    /**
+     * Anzahl der Kunden und Umsatz zu einem Merkmal.
+     */
+    @XmlAccessorType(FIELD)
+    public static class Kennzahlen {
+        private long anzahl;
+        private BigDecimal umsatz = BigDecimal.ZERO;
+        
+        public Kennzahlen() {
+            super();
+        }
+        
+        void add(long anzahlDelta, long umsatzCentDelta) {
+            anzahl += anzahlDelta;
+            umsatz = umsatz.add(BigDecimal.valueOf(umsatzCentDelta, 2));
+        }
+        
+        public long getAnzahl() {
+            return anzahl;
+        }
+        
+        public BigDecimal getUmsatz() {
+            return umsatz;
+        }
+        
+        @Override
+        public String toString() {
+            return "Kennzahlen {anzahl=" + anzahl + ", umsatz=" + umsatz + '}';
+        }
+    }
+}
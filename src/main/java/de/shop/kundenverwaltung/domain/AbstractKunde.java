@@ -48,6 +48,8 @@ import javax.persistence.JoinColumn;
 import javax.persistence.NamedAttributeNode;
 import javax.persistence.NamedEntityGraph;
 import javax.persistence.NamedEntityGraphs;
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
@@ -55,6 +57,7 @@ import javax.persistence.OneToOne;
 import javax.persistence.OrderColumn;
 import javax.persistence.PostLoad;
 import javax.persistence.PostPersist;
+import javax.persistence.PrePersist;
 import javax.persistence.Table;
 import javax.persistence.Temporal;
 import javax.persistence.Transient;
@@ -81,6 +84,7 @@ import static javax.persistence.CascadeType.PERSIST;
 import static javax.persistence.CascadeType.REMOVE;
 import static javax.persistence.FetchType.LAZY;
 import static javax.persistence.TemporalType.DATE;
+import static javax.persistence.TemporalType.TIMESTAMP;
 
 
 /**
@@ -96,7 +100,11 @@ import static javax.persistence.TemporalType.DATE;
 //@XmlDiscriminatorNode("@type")
 //@Formatted
 @Entity
-@Table(name = "kunde", indexes = @Index(columnList = "file_fk"))
+@Table(name = "kunde", indexes = {
+    @Index(columnList = "file_fk"),
+    @Index(columnList = "nachname, id"),
+    @Index(columnList = "max_bestellmenge")
+})
 // Alternativen: strategy = SINGLE_TABLE (=default), TABLE_PER_CLASS, JOINED
 @Inheritance
 @DiscriminatorColumn(name = "art", length = 1)
@@ -108,6 +116,25 @@ import static javax.persistence.TemporalType.DATE;
                 query = "SELECT   k"
                         + " FROM  AbstractKunde k"
                         + " ORDER BY k.id"),
+    @NamedQuery(name  = AbstractKunde.ALL_AFTER_ID,
+                query = "SELECT   k"
+                        + " FROM  AbstractKunde k"
+                        + " WHERE k.id > :" + AbstractKunde.PARAM_LAST_ID
+                        + " ORDER BY k.id"),
+    @NamedQuery(name  = AbstractKunde.ALL_IDS,
+                query = "SELECT   k.id"
+                        + " FROM  AbstractKunde k"
+                        + " ORDER BY k.id"),
+    @NamedQuery(name  = AbstractKunde.BY_IDS,
+                query = "SELECT   k"
+                        + " FROM  AbstractKunde k"
+                        + " WHERE k.id IN :" + AbstractKunde.PARAM_KUNDE_IDS
+                        + " ORDER BY k.id"),
+    @NamedQuery(name  = AbstractKunde.BESTELLUNGEN_IDS_BY_IDS,
+                query = "SELECT   b.kunde.id, b.id"
+                        + " FROM  Bestellung b"
+                        + " WHERE b.kunde.id IN :" + AbstractKunde.PARAM_KUNDE_IDS
+                        + " ORDER BY b.kunde.id, b.id"),
     @NamedQuery(name  = AbstractKunde.IDS_BY_PREFIX,
                 query = "SELECT   k.id"
                         + " FROM  AbstractKunde k"
@@ -118,10 +145,25 @@ import static javax.persistence.TemporalType.DATE;
                         + " FROM  AbstractKunde k"
                         + " WHERE CONCAT('', k.id) LIKE :" + AbstractKunde.PARAM_KUNDE_ID_PREFIX
                         + " ORDER BY k.id"),
+    @NamedQuery(name  = AbstractKunde.BY_NACHNAME,
+                query = "SELECT   k"
+                        + " FROM  AbstractKunde k"
+                        + " WHERE k.nachname = :" + AbstractKunde.PARAM_KUNDE_NACHNAME
+                        + " ORDER BY k.id"),
+    @NamedQuery(name  = AbstractKunde.BY_NACHNAME_AFTER_ID,
+                query = "SELECT   k"
+                        + " FROM  AbstractKunde k"
+                        + " WHERE k.nachname = :" + AbstractKunde.PARAM_KUNDE_NACHNAME
+                        + "       AND k.id > :" + AbstractKunde.PARAM_LAST_ID
+                        + " ORDER BY k.id"),
     @NamedQuery(name  = AbstractKunde.BY_LOGINNAME,
                 query = "SELECT   k"
                         + " FROM  AbstractKunde k"
                         + " WHERE loginname = :" + AbstractKunde.PARAM_LOGINNAME),
+    @NamedQuery(name  = AbstractKunde.LOGINNAME_BY_ID,
+                query = "SELECT   k.loginname"
+                        + " FROM  AbstractKunde k"
+                        + " WHERE k.id = :" + AbstractKunde.PARAM_KUNDE_ID),
     @NamedQuery(name  = AbstractKunde.BY_BESTELLUNG_ID,
                 query = "SELECT DISTINCT b.kunde"
                         + " FROM   Bestellung b"
@@ -138,7 +180,35 @@ import static javax.persistence.TemporalType.DATE;
     @NamedQuery(name = AbstractKunde.PRIVATKUNDEN_FIRMENKUNDEN,
                 query = "SELECT   k"
                         + " FROM  AbstractKunde k"
-                        + " WHERE TYPE(k) IN (Privatkunde, Firmenkunde)")
+                        + " WHERE TYPE(k) IN (Privatkunde, Firmenkunde)"),
+})
+// SQL statt JPQL, weil Hibernate bei UPDATE den Alias weglaesst und "id" in den Subqueries mehrdeutig waere
+@NamedNativeQueries({
+    // SQL statt JPQL, damit Hibernate nicht den gesamten L2C fuer Kunden invalidiert (siehe KundenBroker).
+    // Die Versionsnummer wird nicht erhoeht, d.h. keine Konflikte mit Aenderungen am Kunden.
+    // Bei Kunden, die noch nicht nachgetragen wurden, bleiben anzahl_bestellungen und max_bestellmenge NULL;
+    // sie werden durch BESTELLUNGEN_NACHTRAGEN und BESTELLMENGE_NACHTRAGEN vollstaendig berechnet
+    @NamedNativeQuery(name  = AbstractKunde.ADD_BESTELLUNG,
+                      query = "UPDATE kunde"
+                              + " SET   umsatz = COALESCE(umsatz, 0) + :" + AbstractKunde.PARAM_BETRAG + ","
+                              + "       anzahl_bestellungen = anzahl_bestellungen + 1,"
+                              + "       letzte_bestellung = :" + AbstractKunde.PARAM_ZEITPUNKT + ","
+                              + "       max_bestellmenge = CASE WHEN max_bestellmenge < :" + AbstractKunde.PARAM_MENGE
+                              + "                               THEN :" + AbstractKunde.PARAM_MENGE
+                              + "                               ELSE max_bestellmenge END"
+                              + " WHERE id = :" + AbstractKunde.PARAM_KUNDE_ID),
+    @NamedNativeQuery(name  = AbstractKunde.BESTELLUNGEN_NACHTRAGEN,
+                      query = "UPDATE kunde"
+                              + " SET   umsatz = COALESCE((SELECT SUM(b.gesamtbetrag) FROM bestellung b WHERE b.kunde_fk = kunde.id), 0),"
+                              + "       anzahl_bestellungen = (SELECT COUNT(*) FROM bestellung b WHERE b.kunde_fk = kunde.id),"
+                              + "       letzte_bestellung = (SELECT MAX(b.erzeugt) FROM bestellung b WHERE b.kunde_fk = kunde.id)"
+                              + " WHERE anzahl_bestellungen IS NULL"),
+    @NamedNativeQuery(name  = AbstractKunde.BESTELLMENGE_NACHTRAGEN,
+                      query = "UPDATE kunde"
+                              + " SET   max_bestellmenge = COALESCE((SELECT MAX(bp.anzahl)"
+                              + "                                    FROM   bestellung b JOIN bestellposition bp ON bp.bestellung_fk = b.id"
+                              + "                                    WHERE  b.kunde_fk = kunde.id), 0)"
+                              + " WHERE max_bestellmenge IS NULL")
 })
 @NamedEntityGraphs({
     @NamedEntityGraph(name = AbstractKunde.GRAPH_BESTELLUNGEN,
@@ -151,9 +221,9 @@ import static javax.persistence.TemporalType.DATE;
 public abstract class AbstractKunde extends AbstractVersionedAuditable implements Cloneable {
     private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
     
-    private static final long KATEGORIE_MAX = 5;
-    private static final String RABATT_MAX = "0.5";
-    private static final int BEMERKUNGEN_LENGTH_MAX = 2000;
+    static final long KATEGORIE_MAX = 5;
+    static final String RABATT_MAX = "0.5";
+    static final int BEMERKUNGEN_LENGTH_MAX = 2000;
     
     public static final String PRIVATKUNDE = "P";
     public static final String FIRMENKUNDE = "F";
@@ -161,19 +231,35 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
     private static final String PREFIX = "AbstractKunde.";
     public static final String ALL = PREFIX + "all";
     public static final String ALL_ORDER_BY_ID = PREFIX + "allOrderById";
+    public static final String ALL_AFTER_ID = PREFIX + "allAfterId";
+    public static final String ALL_IDS = PREFIX + "allIds";
+    public static final String BY_IDS = PREFIX + "byIds";
+    public static final String BESTELLUNGEN_IDS_BY_IDS = PREFIX + "bestellungenIdsByIds";
     public static final String IDS_BY_PREFIX = PREFIX + "idsByIdPrefix";
     public static final String BY_ID_PREFIX = PREFIX + "byIdPrefix";
+    public static final String BY_NACHNAME = PREFIX + "byNachname";
+    public static final String BY_NACHNAME_AFTER_ID = PREFIX + "byNachnameAfterId";
     public static final String BY_LOGINNAME = PREFIX + "byLoginname";
+    public static final String LOGINNAME_BY_ID = PREFIX + "loginnameById";
     public static final String BY_BESTELLUNG_ID = PREFIX + "byBestellungId";
     public static final String OHNE_BESTELLUNGEN = PREFIX + "ohneBestellungen";
     public static final String BY_SEIT = PREFIX + "bySeit";
     public static final String PRIVATKUNDEN_FIRMENKUNDEN = PREFIX + "privatkundenFirmenkunden";
+    public static final String ADD_BESTELLUNG = PREFIX + "addBestellung";
+    public static final String BESTELLUNGEN_NACHTRAGEN = PREFIX + "bestellungenNachtragen";
+    public static final String BESTELLMENGE_NACHTRAGEN = PREFIX + "bestellmengeNachtragen";
 
     public static final String PARAM_KUNDE_ID = "id";
+    public static final String PARAM_KUNDE_IDS = "ids";
     public static final String PARAM_LOGINNAME = "loginname";
+    public static final String PARAM_KUNDE_NACHNAME = "nachname";
     public static final String PARAM_KUNDE_ID_PREFIX = "idPrefix";
     public static final String PARAM_KUNDE_SEIT = "seit";
     public static final String PARAM_BESTELLUNG_ID = "bestellungId";
+    public static final String PARAM_LAST_ID = "lastId";
+    public static final String PARAM_BETRAG = "betrag";
+    public static final String PARAM_ZEITPUNKT = "zeitpunkt";
+    public static final String PARAM_MENGE = "menge";
     
     public static final String GRAPH_BESTELLUNGEN = PREFIX + "bestellungen";
     public static final String GRAPH_REKLAMATIONEN = PREFIX + "reklamationen";
@@ -187,6 +273,18 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
     @XmlTransient
     @JsonIgnore
     private String loginname;
+    
+    // Kopie des Nachnamens aus dem IAM-System, damit die Suche nach Nachnamen in der Shop-DB indiziert erfolgen kann
+    @Column(length = IdentityVO.NACHNAME_LENGTH_MAX)
+    @XmlTransient
+    @JsonIgnore
+    private String nachname;
+    
+    // Normalisierte Kopie der Emailadresse aus dem IAM-System: eindeutig fuer alle Kunden
+    @Column(length = IdentityVO.EMAIL_LENGTH_MAX, unique = true)
+    @XmlTransient
+    @JsonIgnore
+    private String email;
 
     @Valid
     @NotNull(message = "{kunde.identity.notNull}")
@@ -207,11 +305,29 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
     @ApiModelProperty(required = true, example = "0.12")
     private BigDecimal rabatt;
     
+    // Umsatz, Anzahl und Zeitpunkt der letzten Bestellung werden nur durch UPDATE-Anweisungen beim Bestellen
+    // fortgeschrieben und nicht durch Aenderungen am Kunden ueberschrieben
     @Digits(integer = 10, fraction = 2, message = "{kunde.umsatz.digits}")
+    @Column(updatable = false)
     @FormParam(value = "umsatz")
     @ApiModelProperty(required = true, example = "123.45")
     private BigDecimal umsatz;
     
+    // null: noch nicht aus den vorhandenen Bestellungen nachgetragen
+    @Column(name = "anzahl_bestellungen", updatable = false)
+    private Integer anzahlBestellungen;
+    
+    @Temporal(TIMESTAMP)
+    @Column(name = "letzte_bestellung", updatable = false)
+    private Date letzteBestellung;
+    
+    // Groesste Anzahl in einer Bestellposition, damit die Suche nach einer Mindestbestellmenge ueber einen Index
+    // statt ueber alle Bestellpositionen erfolgt. null: noch nicht nachgetragen
+    @Column(name = "max_bestellmenge", updatable = false)
+    @XmlTransient
+    @JsonIgnore
+    private Integer maxBestellmenge;
+    
     @NotNull(message = "{kunde.seit.notNull}")
     @Temporal(DATE)
     @Past(message = "{kunde.seit.past}")
@@ -260,6 +376,12 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
     @JsonIgnore
     private File file;
     
+    // Segment beim Laden bzw. Speichern, damit die Statistik bei einer Aenderung nachgefuehrt werden kann
+    @Transient
+    @XmlTransient
+    @JsonIgnore
+    private KundenSegment segmentGeladen;
+    
     public AbstractKunde() {
         super();
     }
@@ -270,18 +392,55 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
         this.loginname = identity.getLoginname();
         this.identity = identity;
         this.seit = seit;
+        copyIdentityAttributes();
     }
 
+    @PrePersist
+    @Override
+    protected void prePersist() {
+        super.prePersist();
+        // Ein neuer Kunde hat noch keine Bestellungen; ein vom Client gesendeter Umsatz wird ignoriert
+        umsatz = BigDecimal.ZERO;
+        anzahlBestellungen = 0;
+        letzteBestellung = null;
+        maxBestellmenge = 0;
+    }
+    
     @PostPersist
     protected void postPersist() {
         if (LOGGER.isLoggable(FINER)) {
             LOGGER.finer("Neuer Kunde mit ID=" + id);
         }
+        segmentGeladen = toSegment();
     }
     
     @PostLoad
     protected void postLoad() {
         agbAkzeptiert = true;
+        segmentGeladen = toSegment();
+    }
+    
+    /**
+     * Das aktuelle Segment des Kunden fuer die Statistik ermitteln.
+     * @return Segment aus Kundenart, Kategorie und ggf. weiteren Merkmalen
+     */
+    public abstract KundenSegment toSegment();
+    
+    /**
+     * @return Segment beim Laden aus der DB bzw. beim Speichern oder null bei einem neuen, transienten Objekt
+     */
+    public KundenSegment getSegmentGeladen() {
+        return segmentGeladen;
+    }
+    
+    /**
+     * Nach dem Speichern einer Aenderung das aktuelle Segment als geladenes Segment uebernehmen.
+     * @return das bisher geladene Segment
+     */
+    KundenSegment uebernehmeSegment() {
+        final KundenSegment segmentAlt = segmentGeladen;
+        segmentGeladen = toSegment();
+        return segmentAlt;
     }
     
     /**
@@ -302,9 +461,9 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
         
         loginname = k.identity.getLoginname();
         identity.setValues(k.identity);
+        copyIdentityAttributes();
         
         kategorie = k.kategorie;
-        umsatz = k.umsatz;
         seit = k.seit;
         agbAkzeptiert = k.agbAkzeptiert;
         bemerkungen = k.getBemerkungen();
@@ -326,6 +485,26 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
     public void setLoginname(String loginname) {
         this.loginname = loginname;
     }
+    
+    public String getNachname() {
+        return nachname;
+    }
+    
+    public String getEmail() {
+        return email;
+    }
+    
+    /**
+     * Nachname und Emailadresse aus der Identity in die Spalten der Shop-DB uebernehmen.
+     * Muss aufgerufen werden, wenn die Identity im IAM-System angelegt oder aktualisiert wird.
+     */
+    public void copyIdentityAttributes() {
+        if (identity == null) {
+            return;
+        }
+        nachname = identity.getNachname();
+        email = IdentityVO.normalizeEmail(identity.getEmail());
+    }
 
     public IdentityVO getIdentity() {
         return identity;
@@ -357,6 +536,18 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
     public void setUmsatz(BigDecimal umsatz) {
         this.umsatz = umsatz;
     }
+    
+    public Integer getAnzahlBestellungen() {
+        return anzahlBestellungen;
+    }
+    
+    public Date getLetzteBestellung() {
+        return letzteBestellung == null ? null : (Date) letzteBestellung.clone();
+    }
+    
+    public Integer getMaxBestellmenge() {
+        return maxBestellmenge;
+    }
 
     public Date getSeit() {
         return seit == null ? null : (Date) seit.clone();
@@ -496,6 +687,9 @@ public abstract class AbstractKunde extends AbstractVersionedAuditable implement
         neuesObjekt.identity = identity;
         neuesObjekt.kategorie = kategorie;
         neuesObjekt.umsatz = umsatz;
+        neuesObjekt.anzahlBestellungen = anzahlBestellungen;
+        neuesObjekt.letzteBestellung = letzteBestellung;
+        neuesObjekt.maxBestellmenge = maxBestellmenge;
         neuesObjekt.newsletter = newsletter;
         neuesObjekt.agbAkzeptiert = agbAkzeptiert;
         neuesObjekt.bemerkungen = bemerkungen;
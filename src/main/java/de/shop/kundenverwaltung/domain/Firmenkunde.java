@@ -22,6 +22,8 @@ import javax.persistence.Cacheable;
 import javax.persistence.DiscriminatorValue;
 import javax.persistence.Entity;
 import javax.persistence.Inheritance;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.xml.bind.annotation.XmlRootElement;
 
 import static de.shop.kundenverwaltung.domain.AbstractKunde.FIRMENKUNDE;
@@ -36,10 +38,33 @@ import static de.shop.kundenverwaltung.domain.AbstractKunde.FIRMENKUNDE;
 @Entity
 @Inheritance
 @DiscriminatorValue(FIRMENKUNDE)
+@NamedQueries({
+    @NamedQuery(name  = Firmenkunde.STATISTIK_ANZAHL,
+                query = "SELECT   k.kategorie, COUNT(k)"
+                        + " FROM  Firmenkunde k"
+                        + " GROUP BY k.kategorie"),
+    @NamedQuery(name  = Firmenkunde.STATISTIK_UMSATZ,
+                query = "SELECT   k.kategorie, SUM(b.gesamtbetrag)"
+                        + " FROM  Bestellung b, Firmenkunde k"
+                        + " WHERE b.kunde = k"
+                        + " GROUP BY k.kategorie")
+})
 @Cacheable
 @Vetoed
 @SuppressWarnings("CloneableImplementsClone")
 public class Firmenkunde extends AbstractKunde {
+    private static final String PREFIX = "Firmenkunde.";
+    public static final String STATISTIK_ANZAHL = PREFIX + "statistikAnzahl";
+    public static final String STATISTIK_UMSATZ = PREFIX + "statistikUmsatz";
+    
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public KundenSegment toSegment() {
+        return new KundenSegment(FIRMENKUNDE, getKategorie(), null, null);
+    }
+    
     @Override
     public String toString() {
         return "Firmenkunde {" + super.toString() + '}';
@@ -19,8 +19,11 @@ package de.shop.kundenverwaltung.domain;
 
 import de.shop.iam.business.IdentityAccessManagement;
 import de.shop.iam.domain.IdentityVO;
+import de.shop.kundenverwaltung.business.KundeIdIndex;
+import de.shop.kundenverwaltung.business.KundenStatistik;
 import java.lang.invoke.MethodHandles;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 import javax.enterprise.context.Dependent;
 import javax.enterprise.context.spi.CreationalContext;
@@ -28,6 +31,9 @@ import javax.enterprise.inject.spi.Bean;
 import javax.enterprise.inject.spi.BeanManager;
 import javax.inject.Inject;
 import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
 import javax.persistence.PrePersist;
 import javax.persistence.PreRemove;
 import javax.transaction.Transactional;
@@ -43,6 +49,9 @@ import static java.util.logging.Level.FINER;
 public class KundeListener {
     private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
     
+    // Verschachtelungstiefe von deferLoadIdentity() im aktuellen Thread
+    private static final ThreadLocal<int[]> DEFERRED = ThreadLocal.withInitial(() -> new int[1]);
+    
     // FIXME https://issues.jboss.org/browse/WFLY-2387
     //@Inject
     private IdentityAccessManagement iam;
@@ -58,6 +67,14 @@ public class KundeListener {
             LOGGER.finer("loadIdentity BEGINN: " + kunde);
         }
         
+        if (DEFERRED.get()[0] > 0) {
+            // Die Identities werden anschliessend fuer alle gelesenen Kunden gebuendelt ermittelt
+            if (LOGGER.isLoggable(FINER)) {
+                LOGGER.finer("loadIdentity ENDE: zurueckgestellt");
+            }
+            return;
+        }
+        
         workaroundWFLY2387();
         final IdentityVO identity = iam.findIdentityByLoginname(kunde.getLoginname()).get();
         kunde.setIdentity(identity);
@@ -75,6 +92,7 @@ public class KundeListener {
 
         final IdentityVO identity = kunde.getIdentity();
         kunde.setLoginname(identity.getLoginname());
+        kunde.copyIdentityAttributes();
         
         workaroundWFLY2387();
         iam.createIdentity(identity);
@@ -85,6 +103,20 @@ public class KundeListener {
         }
     }
     
+    // Die ID ist erst nach dem INSERT bekannt; eingetragen wird sie erst nach erfolgreichem Commit
+    @PostPersist
+    private void addToIdIndex(AbstractKunde kunde) {
+        getReference(KundeIdIndex.class).add(kunde.getId());
+        getReference(KundenStatistik.class).add(kunde.toSegment());
+    }
+    
+    // Bei einer Aenderung von Kategorie, Geschlecht oder Familienstand wechselt der Kunde das Segment der Statistik
+    @PostUpdate
+    private void updateStatistik(AbstractKunde kunde) {
+        final KundenSegment segmentAlt = kunde.uebernehmeSegment();
+        getReference(KundenStatistik.class).move(segmentAlt, kunde.getSegmentGeladen());
+    }
+    
     // Bei merge() wird wegen der optimistischen Synchronisation der Kundendatensatz gelesen, um die Versionsnummer zu erhalten.
     // Dadurch wird aber der Listener fuer @PostLoad ausgeloest und die neuen Werte im transienten Attribut fuer Identity werden ueberschrieben.
     // Deshalb muessen die Identity-Werte zuerst gespeichert werden, bevor der Kundendatensatz aktualisiert wird.
@@ -106,6 +138,30 @@ public class KundeListener {
         }
     }
     
+    @PostRemove
+    private void removeFromIdIndex(AbstractKunde kunde) {
+        getReference(KundeIdIndex.class).remove(kunde.getId());
+        final KundenSegment segment = kunde.getSegmentGeladen();
+        getReference(KundenStatistik.class).remove(segment == null ? kunde.toSegment() : segment);
+    }
+    
+    /**
+     * Eine Suche ausfuehren, ohne dass fuer jeden gelesenen Kunden einzeln die Identity geladen wird.
+     * Der Aufrufer ist dafuer verantwortlich, die Identities anschliessend gebuendelt zu setzen.
+     * @param query die auszufuehrende Suche
+     * @param <T> Typ des Suchergebnisses
+     * @return das Suchergebnis
+     */
+    public static <T> T deferLoadIdentity(Supplier<T> query) {
+        final int[] deferred = DEFERRED.get();
+        deferred[0]++;
+        try {
+            return query.get();
+        } finally {
+            deferred[0]--;
+        }
+    }
+    
     // FIXME https://issues.jboss.org/browse/WFLY-2387
     private void workaroundWFLY2387() {
         if (iam != null) {
@@ -118,4 +174,10 @@ public class KundeListener {
         final Bean<IdentityAccessManagement> iamServiceBean = (Bean<IdentityAccessManagement>) beans.iterator().next();
         iam = iamServiceBean.create(creationalContext);
     }
+    
+    // Kontextuelle Referenz auf eine anwendungsweite Bean (nicht Bean.create(), sonst eine neue Instanz)
+    private <T> T getReference(Class<T> clazz) {
+        final Bean<?> bean = beanManager.resolve(beanManager.getBeans(clazz));
+        return clazz.cast(beanManager.getReference(bean, clazz, beanManager.createCreationalContext(bean)));
+    }
 }
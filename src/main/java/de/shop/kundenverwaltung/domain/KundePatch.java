@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.domain;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.wordnik.swagger.annotations.ApiModelProperty;
+import de.shop.iam.domain.Adresse;
+import de.shop.iam.domain.IdentityVO;
+import java.math.BigDecimal;
+import java.util.Date;
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.Digits;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Past;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+import static de.shop.iam.domain.IdentityVO.EMAIL_LENGTH_MAX;
+import static de.shop.iam.domain.IdentityVO.EMAIL_PATTERN;
+import static de.shop.iam.domain.IdentityVO.NACHNAME_LENGTH_MAX;
+import static de.shop.iam.domain.IdentityVO.NACHNAME_PATTERN;
+import static de.shop.iam.domain.IdentityVO.VORNAME_LENGTH_MAX;
+import static de.shop.kundenverwaltung.domain.AbstractKunde.BEMERKUNGEN_LENGTH_MAX;
+import static de.shop.kundenverwaltung.domain.AbstractKunde.KATEGORIE_MAX;
+import static de.shop.kundenverwaltung.domain.AbstractKunde.RABATT_MAX;
+
+/**
+ * Geaenderte Werte eines Kunden fuer ein partielles Update mit PATCH. Nur die Attribute, die nicht null sind,
+ * werden aktualisiert. Die Versionsnummer ist Pflicht, damit das Update optimistisch synchronisiert werden kann.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@XmlRootElement
+public class KundePatch {
+    @NotNull(message = "{kunde.version.notNull}")
+    @ApiModelProperty(required = true)
+    private Integer version;
+    
+    @Max(value = KATEGORIE_MAX, message = "{kunde.kategorie.max}")
+    @Min(value = 0, message = "{kunde.kategorie.min}")
+    private Integer kategorie;
+    
+    @DecimalMax(value = RABATT_MAX, message = "{kunde.rabatt.max}")
+    @Digits(integer = 1, fraction = 4, message = "{kunde.rabatt.digits}")
+    private BigDecimal rabatt;
+    
+    @Past(message = "{kunde.seit.past}")
+    private Date seit;
+    
+    private Boolean newsletter;
+    
+    @Size(max = BEMERKUNGEN_LENGTH_MAX)
+    private String bemerkungen;
+    
+    @Size(max = NACHNAME_LENGTH_MAX, message = "{identity.nachname.length}")
+    @Pattern(regexp = NACHNAME_PATTERN, message = "{identity.nachname.pattern}")
+    private String nachname;
+    
+    @Size(max = VORNAME_LENGTH_MAX, message = "{identity.vorname.length}")
+    private String vorname;
+    
+    @Size(max = EMAIL_LENGTH_MAX, message = "{identity.email.length}")
+    @Pattern(regexp = EMAIL_PATTERN, message = "{identity.email}")
+    private String email;
+    
+    @Valid
+    private Adresse adresse;
+    
+    /**
+     * Gibt es geaenderte Werte, die im IAM-System gespeichert sind?
+     * @return true, falls Nachname, Vorname, Email oder Adresse geaendert werden
+     */
+    @XmlTransient
+    @JsonIgnore
+    public boolean isIdentityGeaendert() {
+        return nachname != null || vorname != null || email != null || adresse != null;
+    }
+    
+    /**
+     * Gibt es geaenderte Werte, die in der Tabelle fuer die Kunden gespeichert sind?
+     * @return true, falls mindestens 1 Spalte der Tabelle geaendert wird
+     */
+    @XmlTransient
+    @JsonIgnore
+    public boolean isKundeGeaendert() {
+        return kategorie != null || rabatt != null || seit != null || newsletter != null || bemerkungen != null
+               || nachname != null || email != null;
+    }
+    
+    /**
+     * Die geaenderten Werte fuer das IAM-System in ein vorhandenes ValueObject uebernehmen
+     * @param identity ValueObject mit den bisherigen Werten aus dem IAM-System
+     */
+    public void applyTo(IdentityVO identity) {
+        if (nachname != null) {
+            identity.setNachname(nachname);
+        }
+        if (vorname != null) {
+            identity.setVorname(vorname);
+        }
+        if (email != null) {
+            identity.setEmail(email);
+        }
+        if (adresse != null) {
+            identity.getAdresse().setValues(adresse);
+        }
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public void setVersion(Integer version) {
+        this.version = version;
+    }
+
+    public Integer getKategorie() {
+        return kategorie;
+    }
+
+    public void setKategorie(Integer kategorie) {
+        this.kategorie = kategorie;
+    }
+
+    public BigDecimal getRabatt() {
+        return rabatt;
+    }
+
+    public void setRabatt(BigDecimal rabatt) {
+        this.rabatt = rabatt;
+    }
+
+    public Date getSeit() {
+        return seit == null ? null : (Date) seit.clone();
+    }
+
+    public void setSeit(Date seit) {
+        this.seit = seit == null ? null : (Date) seit.clone();
+    }
+
+    public Boolean getNewsletter() {
+        return newsletter;
+    }
+
+    public void setNewsletter(Boolean newsletter) {
+        this.newsletter = newsletter;
+    }
+
+    public String getBemerkungen() {
+        return bemerkungen;
+    }
+
+    public void setBemerkungen(String bemerkungen) {
+        this.bemerkungen = bemerkungen;
+    }
+
+    public String getNachname() {
+        return nachname;
+    }
+
+    public void setNachname(String nachname) {
+        this.nachname = nachname;
+    }
+
+    public String getVorname() {
+        return vorname;
+    }
+
+    public void setVorname(String vorname) {
+        this.vorname = vorname;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public Adresse getAdresse() {
+        return adresse;
+    }
+
+    public void setAdresse(Adresse adresse) {
+        this.adresse = adresse;
+    }
+
+    @Override
+    public String toString() {
+        return "KundePatch {version=" + version + ", kategorie=" + kategorie + ", rabatt=" + rabatt + ", seit=" + seit
+               + ", newsletter=" + newsletter + ", bemerkungen=" + bemerkungen + ", nachname=" + nachname
+               + ", vorname=" + vorname + ", email=" + email + ", adresse=" + adresse + '}';
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.domain;
+
+import java.util.Objects;
+import javax.enterprise.inject.Vetoed;
+
+import static de.shop.util.Constants.HASH_PRIME;
+
+/**
+ * Unveraenderliches Segment eines Kunden fuer die Statistik: Kundenart, Kategorie und bei Privatkunden
+ * auch Geschlecht und Familienstand.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Vetoed
+public final class KundenSegment {
+    private final String art;
+    private final int kategorie;
+    private final GeschlechtType geschlecht;
+    private final FamilienstandType familienstand;
+    
+    /**
+     * Konstruktor mit den Merkmalen des Segments.
+     * @param art AbstractKunde.PRIVATKUNDE oder AbstractKunde.FIRMENKUNDE
+     * @param kategorie Kategorie des Kunden
+     * @param geschlecht Geschlecht bei Privatkunden, sonst null
+     * @param familienstand Familienstand bei Privatkunden, sonst null
+     */
+    public KundenSegment(String art, int kategorie, GeschlechtType geschlecht, FamilienstandType familienstand) {
+        super();
+        this.art = art;
+        this.kategorie = kategorie;
+        this.geschlecht = geschlecht;
+        this.familienstand = familienstand;
+    }
+
+    public String getArt() {
+        return art;
+    }
+
+    public int getKategorie() {
+        return kategorie;
+    }
+
+    public GeschlechtType getGeschlecht() {
+        return geschlecht;
+    }
+
+    public FamilienstandType getFamilienstand() {
+        return familienstand;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = HASH_PRIME;
+        int result = prime + Objects.hashCode(art);
+        result = prime * result + kategorie;
+        result = prime * result + Objects.hashCode(geschlecht);
+        return prime * result + Objects.hashCode(familienstand);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final KundenSegment other = (KundenSegment) obj;
+        return Objects.equals(art, other.art) && kategorie == other.kategorie
+               && geschlecht == other.geschlecht && familienstand == other.familienstand;
+    }
+
+    @Override
+    public String toString() {
+        return "KundenSegment {art=" + art + ", kategorie=" + kategorie + ", geschlecht=" + geschlecht
+               + ", familienstand=" + familienstand + '}';
+    }
+}
@@ -54,13 +54,45 @@ import static javax.persistence.FetchType.EAGER;
     @NamedQuery(name  = Privatkunde.FIND_BY_GESCHLECHT,
                 query = "SELECT  k"
                         + " FROM Privatkunde k"
-                        + " WHERE k.geschlecht = :" + Privatkunde.PARAM_GESCHLECHT)
+                        + " WHERE k.geschlecht = :" + Privatkunde.PARAM_GESCHLECHT),
+    @NamedQuery(name  = Privatkunde.STATISTIK_ANZAHL,
+                query = "SELECT   k.kategorie, k.geschlecht, k.familienstand, COUNT(k)"
+                        + " FROM  Privatkunde k"
+                        + " GROUP BY k.kategorie, k.geschlecht, k.familienstand"),
+    @NamedQuery(name  = Privatkunde.STATISTIK_UMSATZ,
+                query = "SELECT   k.kategorie, k.geschlecht, k.familienstand, SUM(b.gesamtbetrag)"
+                        + " FROM  Bestellung b, Privatkunde k"
+                        + " WHERE b.kunde = k"
+                        + " GROUP BY k.kategorie, k.geschlecht, k.familienstand"),
+    @NamedQuery(name  = Privatkunde.PROJEKTION_BY_IDS,
+                query = "SELECT   NEW de.shop.kundenverwaltung.soap.PrivatkundeVO(k.id, k.version, k.loginname,"
+                        + "           k.kategorie, k.rabatt, k.umsatz, k.seit, k.bemerkungen,"
+                        + "           k.familienstand, k.geschlecht)"
+                        + " FROM  Privatkunde k"
+                        + " WHERE k.id IN :" + AbstractKunde.PARAM_KUNDE_IDS
+                        + " ORDER BY k.id"),
+    @NamedQuery(name  = Privatkunde.PROJEKTION_BY_NACHNAME,
+                query = "SELECT   NEW de.shop.kundenverwaltung.soap.PrivatkundeVO(k.id, k.version, k.loginname,"
+                        + "           k.kategorie, k.rabatt, k.umsatz, k.seit, k.bemerkungen,"
+                        + "           k.familienstand, k.geschlecht)"
+                        + " FROM  Privatkunde k"
+                        + " WHERE k.nachname = :" + AbstractKunde.PARAM_KUNDE_NACHNAME
+                        + " ORDER BY k.id"),
+    @NamedQuery(name  = Privatkunde.HOBBYS_BY_IDS,
+                query = "SELECT   k.id, h"
+                        + " FROM  Privatkunde k JOIN k.hobbys h"
+                        + " WHERE k.id IN :" + AbstractKunde.PARAM_KUNDE_IDS)
 })
 @Cacheable
 @Vetoed
 public class Privatkunde extends AbstractKunde {
     private static final String PREFIX = "Privatkunde.";
     public static final String FIND_BY_GESCHLECHT = PREFIX + "findByGeschlecht";
+    public static final String STATISTIK_ANZAHL = PREFIX + "statistikAnzahl";
+    public static final String STATISTIK_UMSATZ = PREFIX + "statistikUmsatz";
+    public static final String PROJEKTION_BY_IDS = PREFIX + "projektionByIds";
+    public static final String PROJEKTION_BY_NACHNAME = PREFIX + "projektionByNachname";
+    public static final String HOBBYS_BY_IDS = PREFIX + "hobbysByIds";
     public static final String PARAM_GESCHLECHT = "geschlecht";
     
     @Column(length = 2)
@@ -107,6 +139,14 @@ public class Privatkunde extends AbstractKunde {
         hobbys = pk.hobbys;
     }
     
+    /**
+     * {inheritDoc}
+     */
+    @Override
+    public KundenSegment toSegment() {
+        return new KundenSegment(PRIVATKUNDE, getKategorie(), geschlecht, familienstand);
+    }
+    
     public FamilienstandType getFamilienstand() {
         return familienstand;
     }
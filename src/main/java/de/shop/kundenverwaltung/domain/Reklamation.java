@@ -51,12 +51,22 @@ import static javax.persistence.TemporalType.DATE;
  */
 @XmlRootElement
 @Entity
-@Table(indexes = @Index(columnList = "kunde_fk"))
+// Zusammengesetzter Index fuer "Keyset Pagination" innerhalb der Reklamationen eines Kunden
+@Table(indexes = @Index(columnList = "kunde_fk, nr, datum"))
 @NamedQueries({
     @NamedQuery(name  = Reklamation.FIND_BY_KUNDE_ID,
                 query = "SELECT r"
                         + " FROM   Reklamation r"
-                        + " WHERE  r.kunde.id = :" + Reklamation.PARAM_KUNDE_ID)
+                        + " WHERE  r.kunde.id = :" + Reklamation.PARAM_KUNDE_ID
+                        + " ORDER BY r.nr, r.datum"),
+    @NamedQuery(name  = Reklamation.FIND_BY_KUNDE_ID_AFTER,
+                query = "SELECT r"
+                        + " FROM   Reklamation r"
+                        + " WHERE  r.kunde.id = :" + Reklamation.PARAM_KUNDE_ID
+                        + "        AND (r.nr > :" + Reklamation.PARAM_LAST_NR
+                        + "             OR (r.nr = :" + Reklamation.PARAM_LAST_NR
+                        + "                 AND r.datum > :" + Reklamation.PARAM_LAST_DATUM + "))"
+                        + " ORDER BY r.nr, r.datum")
 })
 @IdClass(ReklamationId.class)
 @Vetoed
@@ -67,7 +77,11 @@ public class Reklamation  extends AbstractVersionedAuditable {
     public static final String PREFIX = "Reklamation.";
     public static final String FIND_BY_KUNDE_ID =
                                PREFIX + "findByKundeId";
+    public static final String FIND_BY_KUNDE_ID_AFTER =
+                               PREFIX + "findByKundeIdAfter";
     public static final String PARAM_KUNDE_ID = "kundeId";
+    public static final String PARAM_LAST_NR = "lastNr";
+    public static final String PARAM_LAST_DATUM = "lastDatum";
 
     @Id
     @ApiModelProperty(required = true)
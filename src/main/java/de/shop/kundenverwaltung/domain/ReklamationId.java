@@ -41,6 +41,16 @@ public class ReklamationId implements Serializable {
 
     @Temporal(DATE)
     private Date datum;
+    
+    public ReklamationId() {
+        super();
+    }
+    
+    public ReklamationId(long nr, Date datum) {
+        super();
+        this.nr = nr;
+        this.datum = datum == null ? null : (Date) datum.clone();
+    }
 
     @Override
     public int hashCode() {
@@ -82,4 +92,9 @@ public class ReklamationId implements Serializable {
     public void setDatum(Date datum) {
         this.datum = datum == null ? null : (Date) datum.clone();
     }
+    
+    @Override
+    public String toString() {
+        return "ReklamationId {nr=" + nr + ", datum=" + datum + '}';
+    }
 }
@@ -22,7 +22,7 @@ import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.util.jsf.Client;
 import de.shop.util.jsf.Messages;
 import de.shop.util.persistence.File;
-import de.shop.util.persistence.FileHelper;
+import de.shop.util.persistence.FileStoreQueue;
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
 import java.util.Collections;
@@ -78,7 +78,7 @@ public class ViewKundeModel implements Serializable {
     private transient Instance<HttpServletRequest> requestInstance;
     private transient Instance<Messages> messagesInstance;
     private transient Instance<Locale> localeInstance;
-    private transient Instance<FileHelper> fileHelperInstance;
+    private transient Instance<FileStoreQueue> fileStoreQueueInstance;
     
     /**
      * Default-Konstruktor f&uuml;r EJB
@@ -93,19 +93,19 @@ public class ViewKundeModel implements Serializable {
      * @param requestInstance zu injizierendes Instance-Objekt f&uuml;r HttpServletRequest
      * @param messagesInstance zu injizierendes Instance-Objekt f&uuml;r Messages
      * @param localeInstance zu injizierendes Instance-Objekt f&uuml;r Locale
-     * @param fileHelperInstance zu injizierendes Instance-Objekt f&uuml;r FileHelper
+     * @param fileStoreQueueInstance zu injizierendes Instance-Objekt f&uuml;r FileStoreQueue
      */
     @Inject
     ViewKundeModel(Instance<KundenBroker> kundenBrokerInstance,
                    Instance<HttpServletRequest> requestInstance,
                    Instance<Messages> messagesInstance,
                    @Client Instance<Locale> localeInstance,
-                   Instance<FileHelper> fileHelperInstance) {
+                   Instance<FileStoreQueue> fileStoreQueueInstance) {
         this.kundenBrokerInstance = kundenBrokerInstance;
         this.requestInstance = requestInstance;
         this.messagesInstance = messagesInstance;
         this.localeInstance = localeInstance;
-        this.fileHelperInstance = fileHelperInstance;
+        this.fileStoreQueueInstance = fileStoreQueueInstance;
     }
 
     @Remove
@@ -258,13 +258,19 @@ public class ViewKundeModel implements Serializable {
         }
     }
     
+    /**
+     * Den Dateinamen fuer die URL eines Bildes oder Videos ermitteln. Beim Rendern werden nur Verwaltungsdaten
+     * gelesen: Eine fehlende Datei wird einmal pro Version im Hintergrund abgespeichert.
+     * @param file Die Verwaltungsdaten
+     * @return Der Dateiname oder "", falls es keine Datei gibt
+     */
     @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
     public String getFilename(File file) {
         if (file == null) {
             return "";
         }
         
-        fileHelperInstance.get().store(file);
+        fileStoreQueueInstance.get().sicherstellen(file);
         return file.getFilename();
     }
 }
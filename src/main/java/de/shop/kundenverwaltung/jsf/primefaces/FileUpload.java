@@ -21,11 +21,16 @@ import de.shop.iam.business.IdentityAccessManagement;
 import de.shop.kundenverwaltung.business.KundenBroker;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.util.interceptor.Log;
+import de.shop.util.persistence.FileHelper;
+import de.shop.util.persistence.Upload;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
 import java.util.Optional;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.faces.view.ViewScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -69,8 +74,12 @@ public class FileUpload implements Serializable {
     @Inject
     private transient IdentityAccessManagement iam;
     
+    @Inject
+    private transient FileHelper fileHelper;
+    
     private String loginname;
-    private transient byte[] bytes;
+    // temporaere Datei statt byte[], damit die hochgeladene Datei bis zu upload() nicht im Heap liegt
+    private transient Upload hochgeladen;
     private String contentType;
 
     FileUpload() {
@@ -83,9 +92,14 @@ public class FileUpload implements Serializable {
         // Bug in RichFaces: der Upload-Listener beendet die Conversation, bevor die Methode upload() aufgerufen ist
     }
 
+    @PreDestroy
+    private void preDestroy() {
+        closeUpload();
+    }
+
     @Override
     public String toString() {
-        final String size = bytes == null ? "null" : String.valueOf(bytes.length);
+        final String size = hochgeladen == null ? "null" : String.valueOf(hochgeladen.getSize());
         return "FileUpload {loginname=" + loginname + ", contentType=" + contentType + ", size=" + size + '}';
     }
     
@@ -97,20 +111,28 @@ public class FileUpload implements Serializable {
         this.loginname = loginname;
     }
 
-    public void uploadListener(FileUploadEvent event) {
+    public void uploadListener(FileUploadEvent event) throws IOException {
         final UploadedFile uploadedFile = event.getFile();
         contentType = uploadedFile.getContentType();
-        bytes = uploadedFile.getContents();
-        if (bytes == null) {
+        closeUpload();
+        try (final InputStream inputStream = uploadedFile.getInputstream()) {
+            hochgeladen = fileHelper.spool(inputStream);
+        }
+        if (hochgeladen.getSize() == 0) {
             LOGGER.warning("FileUpload: 0 (!) Bytes");
         }
         if (LOGGER.isLoggable(FINER)) {
-            LOGGER.finer("Hochgeladenen Datei: " + bytes.length + " Bytes mit MIME-Type " + contentType);
+            LOGGER.finer("Hochgeladenen Datei: " + hochgeladen.getSize() + " Bytes mit MIME-Type " + contentType);
         }
     }
 
     @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING, KUNDE_STRING })
     public String upload() {
+        if (hochgeladen == null) {
+            LOGGER.warning("FileUpload: keine Datei hochgeladen");
+            return null;
+        }
+        
         final Optional<? extends AbstractKunde> kundeOpt = kundenBroker.findByLoginname(loginname, NUR_KUNDE);
         if (!kundeOpt.isPresent()) {
             iam.checkAdminMitarbeiter();
@@ -120,7 +142,8 @@ public class FileUpload implements Serializable {
 
         final AbstractKunde kunde = kundeOpt.get();
         iam.checkSameIdentity(kunde.getLoginname());
-        kundenBroker.setFile(kunde, bytes, contentType);
+        kundenBroker.setFile(kunde, hochgeladen, contentType);
+        closeUpload();
         return JSF_INDEX + JSF_REDIRECT_SUFFIX;
     }
     
@@ -165,8 +188,15 @@ public class FileUpload implements Serializable {
     public String resetUpload() {
         loginname = null;
         contentType = null;
-        bytes = null;
+        closeUpload();
         
         return null;
     }
+    
+    private void closeUpload() {
+        if (hochgeladen != null) {
+            hochgeladen.close();
+            hochgeladen = null;
+        }
+    }
 }
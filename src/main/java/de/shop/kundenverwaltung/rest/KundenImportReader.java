@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.kundenverwaltung.rest;
+
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import de.shop.iam.domain.Adresse;
+import de.shop.iam.domain.IdentityVO;
+import de.shop.kundenverwaltung.business.ImportZeile;
+import de.shop.kundenverwaltung.domain.AbstractKunde;
+import de.shop.kundenverwaltung.domain.Firmenkunde;
+import de.shop.kundenverwaltung.domain.Privatkunde;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiFunction;
+import javax.enterprise.context.ApplicationScoped;
+
+import static de.shop.util.Constants.TIMEZONE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Zeilenweises Einlesen von Kunden beim Massenimport, so dass die Datei nie vollstaendig im Speicher liegt.
+ * Unterstuetzt werden NDJSON (1 JSON-Objekt pro Zeile wie bei POST /registrierung) und CSV mit Kopfzeile.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class KundenImportReader {
+    // Spalten der CSV-Datei; die Reihenfolge wird durch die Kopfzeile festgelegt
+    static final String CSV_TYPE = "type";
+    static final String CSV_LOGINNAME = "loginname";
+    static final String CSV_PASSWORD = "password";
+    static final String CSV_NACHNAME = "nachname";
+    static final String CSV_VORNAME = "vorname";
+    static final String CSV_EMAIL = "email";
+    static final String CSV_PLZ = "plz";
+    static final String CSV_ORT = "ort";
+    static final String CSV_STRASSE = "strasse";
+    static final String CSV_HAUSNR = "hausnr";
+    static final String CSV_SEIT = "seit";
+    static final String CSV_KATEGORIE = "kategorie";
+    static final String CSV_NEWSLETTER = "newsletter";
+    static final String CSV_AGB = "agbAkzeptiert";
+    
+    private static final char CSV_TRENNER = ',';
+    private static final char CSV_QUOTE = '"';
+    
+    private final ObjectReader kundeReader;
+    
+    /**
+     * Public Default-Konstruktor f&uuml;r CDI
+     */
+    public KundenImportReader() {
+        super();
+        final AnnotationIntrospector introspector = AnnotationIntrospector.pair(new JacksonAnnotationIntrospector(),
+                                                                                new JaxbAnnotationIntrospector());
+        final ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.setAnnotationIntrospector(introspector);
+        kundeReader = objectMapper.reader(AbstractKunde.class);
+    }
+    
+    /**
+     * Kunden im Format NDJSON einlesen.
+     * @param inputStream Eingabe mit 1 Kunden als JSON-Objekt pro Zeile
+     * @return Iterator ueber die eingelesenen Zeilen
+     */
+    public Iterator<ImportZeile> readNdjson(InputStream inputStream) {
+        return new ZeilenIterator(inputStream, (nr, zeile) -> {
+            try {
+                return ImportZeile.of(nr, () -> readKunde(zeile));
+            } catch (UncheckedIOException e) {
+                return ImportZeile.fehler(nr, e.getCause().getMessage());
+            }
+        });
+    }
+    
+    /**
+     * Kunden im Format CSV mit Kopfzeile einlesen.
+     * @param inputStream Eingabe mit Kopfzeile und 1 Kunden pro Zeile
+     * @return Iterator ueber die eingelesenen Zeilen
+     */
+    public Iterator<ImportZeile> readCsv(InputStream inputStream) {
+        final Map<String, Integer> spalten = new HashMap<>();
+        return new ZeilenIterator(inputStream, (nr, zeile) -> {
+            final List<String> werte = splitCsv(zeile);
+            if (spalten.isEmpty()) {
+                for (int i = 0; i < werte.size(); i++) {
+                    spalten.put(werte.get(i).trim(), i);
+                }
+                return null;
+            }
+            try {
+                return ImportZeile.of(nr, () -> toKunde(werte, spalten));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                return ImportZeile.fehler(nr, e.getMessage());
+            }
+        });
+    }
+    
+    private AbstractKunde readKunde(String zeile) {
+        try {
+            return kundeReader.readValue(zeile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    private static AbstractKunde toKunde(List<String> werte, Map<String, Integer> spalten) {
+        final String type = get(werte, spalten, CSV_TYPE);
+        final AbstractKunde kunde;
+        if (type == null || AbstractKunde.PRIVATKUNDE.equals(type)) {
+            kunde = new Privatkunde();
+        } else if (AbstractKunde.FIRMENKUNDE.equals(type)) {
+            kunde = new Firmenkunde();
+        } else {
+            throw new IllegalArgumentException("Unbekannter Typ: " + type);
+        }
+        
+        final IdentityVO identity = new IdentityVO();
+        identity.setLoginname(get(werte, spalten, CSV_LOGINNAME));
+        final String password = get(werte, spalten, CSV_PASSWORD);
+        identity.setPassword(password);
+        identity.setPasswordWdh(password);
+        identity.setNachname(get(werte, spalten, CSV_NACHNAME));
+        identity.setVorname(get(werte, spalten, CSV_VORNAME));
+        identity.setEmail(get(werte, spalten, CSV_EMAIL));
+        identity.setAdresse(new Adresse(get(werte, spalten, CSV_PLZ),
+                                        get(werte, spalten, CSV_ORT),
+                                        get(werte, spalten, CSV_STRASSE),
+                                        get(werte, spalten, CSV_HAUSNR)));
+        kunde.setIdentity(identity);
+        
+        final String seit = get(werte, spalten, CSV_SEIT);
+        if (seit != null) {
+            kunde.setSeit(Date.from(LocalDate.parse(seit).atStartOfDay(TIMEZONE).toInstant()));
+        }
+        final String kategorie = get(werte, spalten, CSV_KATEGORIE);
+        if (kategorie != null) {
+            kunde.setKategorie(Integer.parseInt(kategorie));
+        }
+        kunde.setNewsletter(Boolean.parseBoolean(get(werte, spalten, CSV_NEWSLETTER)));
+        kunde.setAgbAkzeptiert(Boolean.parseBoolean(get(werte, spalten, CSV_AGB)));
+        return kunde;
+    }
+    
+    private static String get(List<String> werte, Map<String, Integer> spalten, String spalte) {
+        final Integer idx = spalten.get(spalte);
+        if (idx == null || idx >= werte.size()) {
+            return null;
+        }
+        final String wert = werte.get(idx);
+        return wert.isEmpty() ? null : wert;
+    }
+    
+    // Felder durch Komma getrennt; Felder in Anfuehrungszeichen duerfen Kommas und "" enthalten
+    static List<String> splitCsv(String zeile) {
+        final List<String> werte = new ArrayList<>();
+        final StringBuilder wert = new StringBuilder();
+        boolean inQuotes = false;
+        for (int i = 0; i < zeile.length(); i++) {
+            final char c = zeile.charAt(i);
+            if (inQuotes) {
+                if (c == CSV_QUOTE) {
+                    if (i + 1 < zeile.length() && zeile.charAt(i + 1) == CSV_QUOTE) {
+                        wert.append(CSV_QUOTE);
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else {
+                    wert.append(c);
+                }
+            } else if (c == CSV_QUOTE) {
+                inQuotes = true;
+            } else if (c == CSV_TRENNER) {
+                werte.add(wert.toString());
+                wert.setLength(0);
+            } else {
+                wert.append(c);
+            }
+        }
+        werte.add(wert.toString());
+        return werte;
+    }
+    
+    /**
+     * Liest die Eingabe erst bei Bedarf zeilenweise; Leerzeilen werden uebersprungen.
+     * Liefert die Umwandlung null (z.B. fuer die CSV-Kopfzeile), wird die Zeile ebenfalls uebersprungen.
+     */
+    private static final class ZeilenIterator implements Iterator<ImportZeile> {
+        private final BufferedReader reader;
+        private final BiFunction<Long, String, ImportZeile> umwandlung;
+        private long nr;
+        private ImportZeile naechste;
+        
+        ZeilenIterator(InputStream inputStream, BiFunction<Long, String, ImportZeile> umwandlung) {
+            this.reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8));
+            this.umwandlung = umwandlung;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (naechste == null) {
+                final String zeile;
+                try {
+                    zeile = reader.readLine();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (zeile == null) {
+                    return false;
+                }
+                nr++;
+                if (!zeile.trim().isEmpty()) {
+                    naechste = umwandlung.apply(nr, zeile);
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public ImportZeile next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final ImportZeile result = naechste;
+            naechste = null;
+            return result;
+        }
+    }
+}
@@ -27,33 +27,63 @@ import de.shop.bestellverwaltung.rest.BestellungenResource;
 import de.shop.iam.business.IdentityAccessManagement;
 import de.shop.kundenverwaltung.business.KundenBroker;
 import de.shop.kundenverwaltung.business.KundenBroker.OrderByType;
+import de.shop.kundenverwaltung.business.KundenStatistik;
+import de.shop.kundenverwaltung.business.Segmentstatistik;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.kundenverwaltung.domain.GeschlechtType;
+import de.shop.kundenverwaltung.domain.KundePatch;
 import de.shop.kundenverwaltung.domain.Privatkunde;
+import de.shop.util.NoMimeTypeException;
 import de.shop.util.ShopRuntimeException;
 import de.shop.util.Strings;
+import de.shop.util.persistence.ChunkedUpload;
+import de.shop.util.persistence.ChunkedUploads;
+import de.shop.util.persistence.Dateistatistik;
 import de.shop.util.persistence.File;
+import de.shop.util.persistence.FileHelper;
+import de.shop.util.persistence.FileStoreQueue;
+import de.shop.util.persistence.ImageDerivatives;
+import de.shop.util.persistence.ImageSize;
+import de.shop.util.persistence.MediaCache;
+import de.shop.util.persistence.MimeType;
+import de.shop.util.persistence.MultimediaType;
+import de.shop.util.persistence.Upload;
+import de.shop.util.rest.Base64StreamingOutput;
+import de.shop.util.rest.CachedStreamingOutput;
+import de.shop.util.rest.ByteRange;
+import de.shop.util.rest.FileStreamingOutput;
+import de.shop.util.rest.PATCH;
 import de.shop.util.rest.REST;
+import de.shop.util.rest.StreamingListWriter;
 import de.shop.util.rest.UriHelper;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.net.URI;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiFunction;
 import java.util.logging.Logger;
 import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.Pattern;
 import javax.ws.rs.BeanParam;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
@@ -65,7 +95,9 @@ import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.GenericEntity;
 import javax.ws.rs.core.Link;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import org.jboss.resteasy.api.validation.ViolationReport;
 import org.picketlink.authorization.annotations.RolesAllowed;
@@ -79,23 +111,37 @@ import static de.shop.iam.domain.RolleType.MITARBEITER_STRING;
 import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.MIT_BESTELLUNGEN;
 import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.NUR_KUNDE;
 import static de.shop.util.Constants.ADD_LINK;
+import static de.shop.util.Constants.CURSOR_QUERY_PARAM;
 import static de.shop.util.Constants.FIRST_LINK;
 import static de.shop.util.Constants.LAST_LINK;
+import static de.shop.util.Constants.LIMIT_QUERY_PARAM;
 import static de.shop.util.Constants.LIST_LINK;
+import static de.shop.util.Constants.MAX_PAGE_SIZE;
+import static de.shop.util.Constants.NEXT_LINK;
 import static de.shop.util.Constants.REMOVE_LINK;
 import static de.shop.util.Constants.SELF_LINK;
 import static de.shop.util.Constants.UPDATE_LINK;
+import static de.shop.util.rest.ByteRange.ACCEPT_RANGES;
+import static de.shop.util.rest.ByteRange.BYTES;
+import static de.shop.util.rest.ByteRange.CONTENT_RANGE;
+import static de.shop.util.rest.ByteRange.RANGE;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
 import static java.util.logging.Level.FINEST;
 import static java.util.stream.Collectors.toList;
+import static javax.ws.rs.core.HttpHeaders.CONTENT_LENGTH;
 import static javax.ws.rs.core.MediaType.APPLICATION_FORM_URLENCODED;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
 import static javax.ws.rs.core.MediaType.APPLICATION_XML;
 import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
 import static javax.ws.rs.core.MediaType.TEXT_XML;
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.CONFLICT;
 import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+import static javax.ws.rs.core.Response.Status.PARTIAL_CONTENT;
+import static javax.ws.rs.core.Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE;
+import static javax.ws.rs.core.Response.Status.SERVICE_UNAVAILABLE;
 
 
 /**
@@ -125,8 +171,16 @@ public class KundenResource {
     public static final String PLZ_QUERY_PARAM = "plz";
     public static final String EMAIL_QUERY_PARAM = "email";
     public static final String SEIT_QUERY_PARAM = "seit";
+    public static final String SEIT_VON_QUERY_PARAM = "seitVon";
+    public static final String SEIT_BIS_QUERY_PARAM = "seitBis";
     public static final String GESCHLECHT_QUERY_PARAM = "geschlecht";
     public static final String MINBESTMENGE_QUERY_PARAM = "minBestMenge";
+    public static final String SIZE_QUERY_PARAM = "size";
+    public static final String LENGTH_QUERY_PARAM = "length";
+    public static final String CHUNK_SIZE_QUERY_PARAM = "chunkSize";
+    public static final String MIME_TYPE_QUERY_PARAM = "mimeType";
+    public static final String UPLOAD_ID_PATH_PARAM = "uploadId";
+    public static final String CHUNK_PATH_PARAM = "chunk";
     
     private static final String NEUE_WERTE_DURCH_DEN_PUT_REQUEST = "Neue Werte durch den PUT-Request = ";
     
@@ -135,11 +189,18 @@ public class KundenResource {
     private Instance<BestellungenBroker> bestellungenBrokerInstance;
     private Instance<UriHelper> uriHelperInstance;
     private Instance<ManagedExecutorService> managedExecutorServiceInstance;
+    private Instance<StreamingListWriter> streamingListWriterInstance;
+    private Instance<KundenStatistik> kundenStatistikInstance;
+    private Instance<FileHelper> fileHelperInstance;
+    private Instance<ImageDerivatives> imageDerivativesInstance;
+    private Instance<ChunkedUploads> chunkedUploadsInstance;
+    private Instance<MediaCache> mediaCacheInstance;
+    private Instance<FileStoreQueue> fileStoreQueueInstance;
     
     static {
         try {
             FIND_BY_ID = KundenResource.class.getMethod("findById", long.class, UriInfo.class);
-            DOWNLOAD_IMAGE = KundenResource.class.getMethod("downloadImage", long.class);
+            DOWNLOAD_IMAGE = KundenResource.class.getMethod("downloadImage", long.class, String.class, String.class);
             DOWNLOAD_BAS64 = KundenResource.class.getMethod("downloadBase64", long.class);
             DELETE = KundenResource.class.getMethod("delete", long.class);
                     
@@ -162,19 +223,40 @@ public class KundenResource {
      * @param bestellungenBrokerInstance zu injizierendes Instance-Objekt f&uuml;r BestellungenBroker
      * @param uriHelperInstance zu injizierendes Instance-Objekt f&uuml;r UriHelper
      * @param managedExecutorServiceInstance zu injizierendes Instance-Objekt f&uuml;r ManagedExecutorService
+     * @param streamingListWriterInstance zu injizierendes Instance-Objekt f&uuml;r StreamingListWriter
+     * @param kundenStatistikInstance zu injizierendes Instance-Objekt f&uuml;r KundenStatistik
+     * @param fileHelperInstance zu injizierendes Instance-Objekt f&uuml;r FileHelper
+     * @param imageDerivativesInstance zu injizierendes Instance-Objekt f&uuml;r ImageDerivatives
+     * @param chunkedUploadsInstance zu injizierendes Instance-Objekt f&uuml;r ChunkedUploads
+     * @param mediaCacheInstance zu injizierendes Instance-Objekt f&uuml;r MediaCache
+     * @param fileStoreQueueInstance zu injizierendes Instance-Objekt f&uuml;r FileStoreQueue
      */
     @Inject
     public KundenResource(KundenBroker kundenBroker,
                           IdentityAccessManagement iam,
                           Instance<BestellungenBroker> bestellungenBrokerInstance,
                           Instance<UriHelper> uriHelperInstance,
-                          Instance<ManagedExecutorService> managedExecutorServiceInstance) {
+                          Instance<ManagedExecutorService> managedExecutorServiceInstance,
+                          Instance<StreamingListWriter> streamingListWriterInstance,
+                          Instance<KundenStatistik> kundenStatistikInstance,
+                          Instance<FileHelper> fileHelperInstance,
+                          Instance<ImageDerivatives> imageDerivativesInstance,
+                          Instance<ChunkedUploads> chunkedUploadsInstance,
+                          Instance<MediaCache> mediaCacheInstance,
+                          Instance<FileStoreQueue> fileStoreQueueInstance) {
         super();
         this.kundenBroker = kundenBroker;
         this.bestellungenBrokerInstance = bestellungenBrokerInstance;
         this.uriHelperInstance = uriHelperInstance;
         this.iam = iam;
         this.managedExecutorServiceInstance = managedExecutorServiceInstance;
+        this.streamingListWriterInstance = streamingListWriterInstance;
+        this.kundenStatistikInstance = kundenStatistikInstance;
+        this.fileHelperInstance = fileHelperInstance;
+        this.imageDerivativesInstance = imageDerivativesInstance;
+        this.chunkedUploadsInstance = chunkedUploadsInstance;
+        this.mediaCacheInstance = mediaCacheInstance;
+        this.fileStoreQueueInstance = fileStoreQueueInstance;
     }
     
     /**
@@ -275,45 +357,89 @@ public class KundenResource {
 
     /**
      * Mit der URI /kunden werden alle Kunden ermittelt oder
-     * mit kunden?nachname=... diejenigen mit einem bestimmten Nachnamen.
+     * mit kunden?nachname=... diejenigen mit einem bestimmten Nachnamen
+     * oder mit kunden?email=... derjenige mit einer bestimmten Emailadresse.
+     * Mit kunden?limit=...&amp;cursor=... werden alle Kunden seitenweise ermittelt,
+     * wobei der Link "next" auf die naechste Seite verweist.
      * @param nachname Der gemeinsame Nachname der gesuchten Kunden
+     * @param email Die Emailadresse des gesuchten Kunden (nicht kombinierbar mit anderen Suchkriterien)
      * @param seit Datum seit wann
+     * @param seitVon Beginn des Zeitraums fuer "seit"
+     * @param seitBis Ende des Zeitraums fuer "seit"
      * @param geschlecht Geschlecht
      * @param minBestMenge Mindestbestellmenge
+     * @param limit Max. Anzahl Kunden pro Seite (nur ohne Suchkriterien oder mit Nachname)
+     * @param cursor Cursor aus dem Link "next" der vorherigen Seite (nur ohne Suchkriterien)
      * @param uriInfo von JAX-RS injiziertes Objekt zu UriInfo
      * @return Collection mit den gefundenen Kundendaten
      */
     @GET
     @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
-    @ApiOperation(value = "Kunden mit dem Nachnamen, seit-Datum, Geschlecht oder Mindestbestellmenge suchen",
+    @ApiOperation(value = "Kunden mit dem Nachnamen, der Emailadresse, seit-Datum, Geschlecht oder Mindestbestellmenge suchen",
                   response = AbstractKunde.class,
                   responseContainer = "List")
     @ApiResponses({
         @ApiResponse(code = 200, message = "OK", response = AbstractKunde.class),
+        @ApiResponse(code = 400, message = "Ung\u00FCltiger Cursor"),
         @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
         @ApiResponse(code = 404, message = "Es gibt keine Kunden zu den angegebenen Suchkriterien")
     })
     public Response find(@QueryParam(NACHNAME_QUERY_PARAM)
                          @Pattern(regexp = NACHNAME_PATTERN, message = "{identity.nachname.pattern}")
                          String nachname,
+                         @QueryParam(EMAIL_QUERY_PARAM)
+                         String email,
                          // Default-Format, z.B. 31 Oct 2001
                          @QueryParam(SEIT_QUERY_PARAM)
                          Date seit,
+                         @QueryParam(SEIT_VON_QUERY_PARAM)
+                         Date seitVon,
+                         @QueryParam(SEIT_BIS_QUERY_PARAM)
+                         Date seitBis,
                          @QueryParam(GESCHLECHT_QUERY_PARAM)
                          GeschlechtType geschlecht,
                          @QueryParam(MINBESTMENGE_QUERY_PARAM)
                          Integer minBestMenge,
+                         @QueryParam(LIMIT_QUERY_PARAM)
+                         @Min(value = 1, message = "{pagination.limit.min}")
+                         @Max(value = MAX_PAGE_SIZE, message = "{pagination.limit.max}")
+                         Integer limit,
+                         @QueryParam(CURSOR_QUERY_PARAM)
+                         String cursor,
                          @Context
                          UriInfo uriInfo) {
         
         Optional<List<AbstractKunde>> kundenOpt;
         
-        if (Strings.isNullOrEmpty(nachname) && seit == null && geschlecht == null && minBestMenge == null) {
+        if (!Strings.isNullOrEmpty(email)) {
+            // Emailadresse ist eindeutig: Suche ueber den Index fuer Emailadressen
+            if (!Strings.isNullOrEmpty(nachname) || seit != null || seitVon != null || seitBis != null
+                || geschlecht != null || minBestMenge != null || limit != null || cursor != null) {
+                return Response.status(BAD_REQUEST).build();
+            }
+            kundenOpt = kundenBroker.findByEmail(email, NUR_KUNDE)
+                                    .map(k -> Collections.singletonList(k));
+        } else if (seitVon != null || seitBis != null) {
+            // Zeitraum fuer "seit", ggf. mit weiteren Kriterien
+            if (!Strings.isNullOrEmpty(nachname) || seit != null) {
+                return Response.status(BAD_REQUEST).build();
+            }
+            kundenOpt = kundenBroker.findByCriteria(seitVon, seitBis, geschlecht, minBestMenge);
+        } else if (Strings.isNullOrEmpty(nachname) && seit == null && geschlecht == null && minBestMenge == null) {
             // Kein Query-Parameter
+            if (limit != null || cursor != null) {
+                return findSeitenweise((lastId, maxResults) -> kundenBroker.findAll(NUR_KUNDE, lastId, maxResults),
+                                       limit, cursor, uriInfo);
+            }
             kundenOpt = kundenBroker.findAll(NUR_KUNDE, OrderByType.ID);
             
         // Genau Ein Query-Parameter
         } else if (!Strings.isNullOrEmpty(nachname) && seit == null && geschlecht == null && minBestMenge == null) {
+            if (limit != null || cursor != null) {
+                return findSeitenweise((lastId, maxResults) -> kundenBroker.findByNachname(nachname, NUR_KUNDE,
+                                                                                           lastId, maxResults),
+                                       limit, cursor, uriInfo);
+            }
             kundenOpt = kundenBroker.findByNachname(nachname, NUR_KUNDE);
         } else if (seit != null && Strings.isNullOrEmpty(nachname)
                  && geschlecht == null && minBestMenge == null) {
@@ -347,6 +473,113 @@ public class KundenResource {
                        .build();
     }
     
+    /**
+     * Kunden seitenweise ermitteln ("Keyset Pagination")
+     * @param findPage Suche nach Kunden mit einer ID groesser als lastId und max. Anzahl Kunden
+     * @param limit Max. Anzahl Kunden pro Seite oder null
+     * @param cursor Cursor der vorherigen Seite oder null fuer die erste Seite
+     * @param uriInfo von JAX-RS injiziertes Objekt zu UriInfo
+     * @return Response mit den Kunden der Seite und ggf. dem Link "next"
+     */
+    private Response findSeitenweise(BiFunction<Long, Integer, Optional<List<AbstractKunde>>> findPage,
+                                     Integer limit, String cursor, UriInfo uriInfo) {
+        final UriHelper uriHelper = uriHelperInstance.get();
+        final Optional<Long> lastIdOpt = uriHelper.decodeCursor(cursor);
+        if (!lastIdOpt.isPresent()) {
+            return Response.status(BAD_REQUEST).build();
+        }
+        
+        // Einen Kunden mehr lesen, um festzustellen, ob es eine naechste Seite gibt
+        final int maxResults = limit == null ? MAX_PAGE_SIZE : limit;
+        final Optional<List<AbstractKunde>> kundenOpt = findPage.apply(lastIdOpt.get(), maxResults + 1);
+        if (!kundenOpt.isPresent()) {
+            return Response.status(NOT_FOUND).build();
+        }
+        
+        final List<AbstractKunde> gefundeneKunden = kundenOpt.get();
+        final boolean hasNext = gefundeneKunden.size() > maxResults;
+        final List<AbstractKunde> kunden = hasNext
+                                           ? new ArrayList<>(gefundeneKunden.subList(0, maxResults))
+                                           : gefundeneKunden;
+        kunden.forEach(k -> setStructuralLinks(k, uriInfo));
+        
+        final List<Link> links = new ArrayList<>(Arrays.asList(getTransitionalLinksKunden(kunden, uriInfo)));
+        if (hasNext) {
+            final long lastId = kunden.get(kunden.size() - 1).getId();
+            links.add(Link.fromUri(uriHelper.getNextUri(lastId, uriInfo))
+                          .rel(NEXT_LINK)
+                          .build());
+        }
+        
+        return Response.ok(new GenericEntity<List<AbstractKunde>>(kunden){})   //NOSONAR
+                       .links(links.toArray(new Link[links.size()]))
+                       .build();
+    }
+    
+    /**
+     * Mit der URI /kunden/stream alle Kunden elementweise als JSON-Array oder XML-Dokument ermitteln,
+     * z.B. fuer einen Export. Der Speicherbedarf ist dabei unabhaengig von der Anzahl der Kunden.
+     * @param uriInfo von JAX-RS injiziertes Objekt zu UriInfo
+     * @param request von JAX-RS injiziertes Objekt zu Request
+     * @return Response mit den Kundendaten als Stream
+     */
+    @GET
+    @Path("/stream")
+    @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
+    @ApiOperation(value = "Alle Kunden als Stream ermitteln",
+                  response = AbstractKunde.class,
+                  responseContainer = "List")
+    @ApiResponses({
+        @ApiResponse(code = 200, message = "OK", response = AbstractKunde.class),
+        @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
+        @ApiResponse(code = 406, message = "Nur JSON und XML werden unterst\u00FCtzt")
+    })
+    public Response streamAll(@Context UriInfo uriInfo, @Context Request request) {
+        return streamingListWriterInstance.get().ok(kundenBroker.streamAll(NUR_KUNDE),
+                                                    AbstractKunde.class,
+                                                    k -> setStructuralLinks(k, uriInfo),
+                                                    request);
+    }
+    
+    /**
+     * Mit der URI /kunden/statistik die Anzahl der Kunden und den Umsatz je Kundenart, Kategorie, Geschlecht
+     * und Familienstand ermitteln. Die Werte stammen aus inkrementell gepflegten Zaehlern und nicht aus der DB.
+     * @return Statistik ueber die Kunden
+     */
+    @GET
+    @Path("/statistik")
+    @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
+    @ApiOperation(value = "Anzahl und Umsatz der Kunden je Segment ermitteln",
+                  response = Segmentstatistik.class)
+    @ApiResponses({
+        @ApiResponse(code = 200, message = "OK", response = Segmentstatistik.class),
+        @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
+        @ApiResponse(code = 406, message = "Nur JSON und XML werden unterst\u00FCtzt")
+    })
+    public Segmentstatistik findStatistik() {
+        return kundenStatistikInstance.get().getStatistik();
+    }
+    
+    /**
+     * Mit der URI /kunden/statistik/dateien die Kennzahlen zum Abspeichern der Bilder und Videos ermitteln,
+     * z.B. Laenge der Warteschlange, Wiederholungen und fehlgeschlagene Auftraege, sowie die Kennzahlen des
+     * Caches fuer Bilder und Videos, z.B. Trefferquote und belegter Speicher.
+     * @return Statistik ueber das Abspeichern der Dateien
+     */
+    @GET
+    @Path("/statistik/dateien")
+    @RolesAllowed(ADMIN_STRING)
+    @ApiOperation(value = "Kennzahlen zum Abspeichern der Bilder und Videos ermitteln",
+                  response = Dateistatistik.class)
+    @ApiResponses({
+        @ApiResponse(code = 200, message = "OK", response = Dateistatistik.class),
+        @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
+        @ApiResponse(code = 406, message = "Nur JSON und XML werden unterst\u00FCtzt")
+    })
+    public Dateistatistik findDateistatistik() {
+        return new Dateistatistik(fileStoreQueueInstance.get(), mediaCacheInstance.get());
+    }
+    
     /**
      * Nachnamen zu gegebenem Praefix suchen
      * @param nachnamePrefix Praefix zu gesuchten Nachnamen
@@ -508,6 +741,43 @@ public class KundenResource {
         
         return update(kunde, uriInfo);
     }
+    
+    /**
+     * Mit der URI /kunden/{id} einen vorhandenen Kunden per PATCH partiell aktualisieren. Es werden nur die
+     * uebergebenen Werte geschrieben, ohne den Kunden vorher vollstaendig zu laden.
+     * @param id ID des zu aktualisierenden Kunden
+     * @param patch geaenderte Werte und bisherige Versionsnummer
+     * @return Response-Objekt ohne Rumpf und mit der neuen Versionsnummer als ETag
+     */
+    @Path("/{" + ID_PATH_PARAM + ":[1-9]\\d*}")
+    @PATCH
+    @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING, KUNDE_STRING })
+    @ApiOperation(value = "Einzelne Werte eines vorhandenen Kunden modifizieren")
+    @ApiResponses({
+        @ApiResponse(code = 204, message = "NoContent (OK)"),
+        @ApiResponse(code = 400, message = "Die neuen Daten zum Kunden sind nicht korrekt", response = ViolationReport.class),
+        @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
+        @ApiResponse(code = 404, message = "Es gibt keinen Kunden zur angegebenen Kundennummer"),
+        @ApiResponse(code = 409, message = "Der Kunde wurde zwischenzeitlich ge\u00E4ndert")
+    })
+    public Response patch(@PathParam(ID_PATH_PARAM) long id, @Valid KundePatch patch) {
+        // Nur der Loginname wird fuer die Zugriffspruefung benoetigt
+        final Optional<String> loginnameOpt = kundenBroker.findLoginnameById(id);
+        if (!loginnameOpt.isPresent()) {
+            iam.checkAdminMitarbeiter();
+            return Response.status(NOT_FOUND).build();
+        }
+        final String loginname = loginnameOpt.get();
+        iam.checkSameIdentity(loginname);
+        if (LOGGER.isLoggable(FINEST)) {
+            LOGGER.finest("Neue Werte durch den PATCH-Request: " + patch);
+        }
+        
+        final int version = kundenBroker.update(id, loginname, patch);
+        return Response.noContent()
+                       .tag(String.valueOf(version))
+                       .build();
+    }
 
     
     /**
@@ -559,7 +829,8 @@ public class KundenResource {
         @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
         @ApiResponse(code = 404, message = "Es gibt keinen Kunden zur angegebenen Kundennummer")
     })
-    public Response uploadImage(@PathParam(ID_PATH_PARAM) long kundeId, byte[] bytes, @Context UriInfo uriInfo) {
+    public Response uploadImage(@PathParam(ID_PATH_PARAM) long kundeId, InputStream inputStream,
+                                @Context UriInfo uriInfo) {
         final Optional<? extends AbstractKunde> kundeOpt = kundenBroker.findById(kundeId, NUR_KUNDE);
         if (!kundeOpt.isPresent()) {
             iam.checkAdminMitarbeiter();
@@ -569,44 +840,377 @@ public class KundenResource {
         final AbstractKunde kunde = kundeOpt.get();
         iam.checkSameIdentity(kunde.getIdentity().getLoginname());
         
-        kundenBroker.setFile(kunde, bytes);
+        // Datenstrom statt byte[]: die Datei wird nicht vollstaendig im Heap gehalten
+        kundenBroker.setFile(kunde, inputStream);
+        return Response.created(uriHelperInstance.get().getUri(KundenResource.class, DOWNLOAD_IMAGE, kundeId, uriInfo))
+                       .build();
+    }
+    
+    /**
+     * Eine Sitzung anlegen, um eine grosse Datei, z.B. ein Video, in nummerierten Abschnitten hochzuladen.
+     * Nach einem Verbindungsabbruch werden nur die fehlenden Abschnitte erneut gesendet.
+     * @param kundeId ID des Kunden
+     * @param length Groesse der gesamten Datei in Bytes
+     * @param chunkSize Groesse der Abschnitte in Bytes; nur der letzte Abschnitt darf kuerzer sein
+     * @param mimeTypeStr MIME-Type der Datei oder null, um ihn anhand der ersten Bytes zu ermitteln
+     * @param uriInfo von JAX-RS injiziertes Objekt zu UriInfo
+     * @return Response mit der URI und dem Fortschritt der neuen Sitzung oder mit Statuscode 404, falls es den
+     *         Kunden nicht gibt
+     */
+    @Path("/image/{" + ID_PATH_PARAM + ":[1-9]\\d*}/uploads")
+    @POST
+    @Produces({ APPLICATION_JSON })
+    @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING, KUNDE_STRING })
+    @ApiOperation(value = "Eine Sitzung zum Hochladen eines Bildes oder Videos in Abschnitten anlegen", response = ChunkedUpload.class)
+    @ApiResponses({
+        @ApiResponse(code = 201, message = "Created (OK)", response = ChunkedUpload.class),
+        @ApiResponse(code = 400, message = "Ung\u00FCltige Gr\u00F6\u00DFe, Abschnittsgr\u00F6\u00DFe oder MIME-Type"),
+        @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
+        @ApiResponse(code = 404, message = "Es gibt keinen Kunden zur angegebenen Kundennummer"),
+        @ApiResponse(code = 413, message = "Die Datei ist zu gro\u00DF"),
+        @ApiResponse(code = 503, message = "Zu viele Sitzungen zum Hochladen")
+    })
+    public Response createChunkedUpload(@PathParam(ID_PATH_PARAM) long kundeId,
+                                        @QueryParam(LENGTH_QUERY_PARAM) long length,
+                                        @QueryParam(CHUNK_SIZE_QUERY_PARAM) int chunkSize,
+                                        @QueryParam(MIME_TYPE_QUERY_PARAM) String mimeTypeStr,
+                                        @Context UriInfo uriInfo) {
+        final MimeType mimeType = mimeTypeStr == null ? null : MimeType.build(mimeTypeStr);
+        if (length <= 0 || chunkSize < ChunkedUploads.MIN_CHUNK_SIZE || chunkSize > ChunkedUploads.MAX_CHUNK_SIZE
+            || mimeTypeStr != null && mimeType == null) {
+            return Response.status(BAD_REQUEST).build();
+        }
+        if (!findKundeMitBerechtigung(kundeId).isPresent()) {
+            return Response.status(NOT_FOUND).build();
+        }
+        
+        final Optional<ChunkedUpload> chunkedUploadOpt = chunkedUploadsInstance.get()
+                                                                               .create(kundeId, length, chunkSize,
+                                                                                       mimeType);
+        if (!chunkedUploadOpt.isPresent()) {
+            return Response.status(SERVICE_UNAVAILABLE).build();
+        }
+        final ChunkedUpload chunkedUpload = chunkedUploadOpt.get();
+        return Response.created(uriInfo.getAbsolutePathBuilder().path(chunkedUpload.getId()).build())
+                       .entity(chunkedUpload)
+                       .build();
+    }
+    
+    /**
+     * Einen Abschnitt hochladen. Abschnitte koennen in beliebiger Reihenfolge und mehrfach gesendet werden.
+     * @param kundeId ID des Kunden
+     * @param uploadId ID der Sitzung
+     * @param nummer Nummer des Abschnitts beginnend mit 0; er beginnt in der Datei bei nummer * chunkSize
+     * @param inputStream Die Bytes des Abschnitts
+     * @return Response mit dem Fortschritt der Sitzung
+     */
+    @Path("/image/{" + ID_PATH_PARAM + ":[1-9]\\d*}/uploads/{" + UPLOAD_ID_PATH_PARAM + "}/{"
+          + CHUNK_PATH_PARAM + ":\\d+}")
+    @PUT
+    @Consumes({ APPLICATION_OCTET_STREAM })
+    @Produces({ APPLICATION_JSON })
+    @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING, KUNDE_STRING })
+    @ApiOperation(value = "Einen Abschnitt eines Bildes oder Videos hochladen", response = ChunkedUpload.class)
+    @ApiResponses({
+        @ApiResponse(code = 200, message = "OK", response = ChunkedUpload.class),
+        @ApiResponse(code = 400, message = "Ung\u00FCltige Nummer oder L\u00E4nge des Abschnitts"),
+        @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
+        @ApiResponse(code = 404, message = "Es gibt keine Sitzung zur angegebenen ID")
+    })
+    public Response uploadChunk(@PathParam(ID_PATH_PARAM) long kundeId,
+                                @PathParam(UPLOAD_ID_PATH_PARAM) String uploadId,
+                                @PathParam(CHUNK_PATH_PARAM) int nummer,
+                                InputStream inputStream) {
+        final Optional<ChunkedUpload> chunkedUploadOpt = findChunkedUpload(kundeId, uploadId);
+        if (!chunkedUploadOpt.isPresent()) {
+            return Response.status(NOT_FOUND).build();
+        }
+        
+        final ChunkedUpload chunkedUpload = chunkedUploadOpt.get();
+        if (!chunkedUploadsInstance.get().write(chunkedUpload, nummer, inputStream)) {
+            return Response.status(BAD_REQUEST).entity(chunkedUpload).build();
+        }
+        return Response.ok(chunkedUpload).build();
+    }
+    
+    /**
+     * Den Fortschritt einer Sitzung abfragen, z.B. um nach einem Verbindungsabbruch die fehlenden Abschnitte
+     * zu ermitteln
+     * @param kundeId ID des Kunden
+     * @param uploadId ID der Sitzung
+     * @return Response mit dem Fortschritt der Sitzung
+     */
+    @Path("/image/{" + ID_PATH_PARAM + ":[1-9]\\d*}/uploads/{" + UPLOAD_ID_PATH_PARAM + "}")
+    @GET
+    @Produces({ APPLICATION_JSON })
+    @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING, KUNDE_STRING })
+    @ApiOperation(value = "Den Fortschritt beim Hochladen in Abschnitten abfragen", response = ChunkedUpload.class)
+    @ApiResponses({
+        @ApiResponse(code = 200, message = "OK", response = ChunkedUpload.class),
+        @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
+        @ApiResponse(code = 404, message = "Es gibt keine Sitzung zur angegebenen ID")
+    })
+    public Response findChunkedUploadById(@PathParam(ID_PATH_PARAM) long kundeId,
+                                          @PathParam(UPLOAD_ID_PATH_PARAM) String uploadId) {
+        final Optional<ChunkedUpload> chunkedUploadOpt = findChunkedUpload(kundeId, uploadId);
+        if (!chunkedUploadOpt.isPresent()) {
+            return Response.status(NOT_FOUND).build();
+        }
+        return Response.ok(chunkedUploadOpt.get()).build();
+    }
+    
+    /**
+     * Eine vollstaendig hochgeladene Datei dem Kunden zuordnen. Die zusammengesetzte temporaere Datei wird
+     * ohne Kopieren uebernommen und dabei nicht in den Heap gelesen.
+     * @param kundeId ID des Kunden
+     * @param uploadId ID der Sitzung
+     * @param uriInfo von JAX-RS injiziertes Objekt zu UriInfo
+     * @return Response mit der URI fuer den Download bzw. mit dem Fortschritt, falls Abschnitte fehlen
+     */
+    @Path("/image/{" + ID_PATH_PARAM + ":[1-9]\\d*}/uploads/{" + UPLOAD_ID_PATH_PARAM + "}")
+    @POST
+    @Produces({ APPLICATION_JSON })
+    @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING, KUNDE_STRING })
+    @ApiOperation(value = "Das Hochladen in Abschnitten abschliessen")
+    @ApiResponses({
+        @ApiResponse(code = 201, message = "Created (OK)"),
+        @ApiResponse(code = 400, message = "Der MIME-Type der Datei kann nicht ermittelt werden"),
+        @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
+        @ApiResponse(code = 404, message = "Es gibt keine Sitzung zur angegebenen ID"),
+        @ApiResponse(code = 409, message = "Es fehlen noch Abschnitte", response = ChunkedUpload.class)
+    })
+    public Response commitChunkedUpload(@PathParam(ID_PATH_PARAM) long kundeId,
+                                        @PathParam(UPLOAD_ID_PATH_PARAM) String uploadId,
+                                        @Context UriInfo uriInfo) {
+        final Optional<? extends AbstractKunde> kundeOpt = findKundeMitBerechtigung(kundeId);
+        final Optional<ChunkedUpload> chunkedUploadOpt = chunkedUploadsInstance.get().find(kundeId, uploadId);
+        if (!kundeOpt.isPresent() || !chunkedUploadOpt.isPresent()) {
+            return Response.status(NOT_FOUND).build();
+        }
+        
+        final ChunkedUpload chunkedUpload = chunkedUploadOpt.get();
+        if (!chunkedUpload.isVollstaendig()) {
+            return Response.status(CONFLICT).entity(chunkedUpload).build();
+        }
+        // Vor dem Abschliessen pruefen, damit die Sitzung bei einem fehlenden MIME-Type erhalten bleibt
+        final MimeType mimeType = chunkedUpload.getMimeType() == null
+                                  ? fileHelperInstance.get().getMimeType(chunkedUpload.getPath())
+                                  : chunkedUpload.getMimeType();
+        if (mimeType == null) {
+            throw new NoMimeTypeException();
+        }
+        
+        final Optional<Upload> uploadOpt = chunkedUploadsInstance.get().commit(chunkedUpload);
+        if (!uploadOpt.isPresent()) {
+            return Response.status(CONFLICT).entity(chunkedUpload).build();
+        }
+        
+        // Die Sitzung wird erst nach dem Commit entfernt und ist nach einem Rollback wieder vorhanden
+        try (final Upload upload = uploadOpt.get()) {
+            kundenBroker.setFile(kundeOpt.get(), upload, mimeType.toString());
+        }
         return Response.created(uriHelperInstance.get().getUri(KundenResource.class, DOWNLOAD_IMAGE, kundeId, uriInfo))
                        .build();
     }
     
     /**
-     * Bild zu einem Kunden mit gegebener ID herunterladen
+     * Eine Sitzung abbrechen und die bisher hochgeladenen Abschnitte verwerfen
      * @param kundeId ID des Kunden
-     * @return Byte[] mit dem Bild
+     * @param uploadId ID der Sitzung
+     */
+    @Path("/image/{" + ID_PATH_PARAM + ":[1-9]\\d*}/uploads/{" + UPLOAD_ID_PATH_PARAM + "}")
+    @DELETE
+    @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING, KUNDE_STRING })
+    @ApiOperation(value = "Das Hochladen in Abschnitten abbrechen")
+    @ApiResponses({
+        @ApiResponse(code = 204, message = "No Content (OK)"),
+        @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden.")
+    })
+    public void abortChunkedUpload(@PathParam(ID_PATH_PARAM) long kundeId,
+                                   @PathParam(UPLOAD_ID_PATH_PARAM) String uploadId) {
+        findChunkedUpload(kundeId, uploadId).ifPresent(chunkedUploadsInstance.get()::abort);
+    }
+    
+    private Optional<ChunkedUpload> findChunkedUpload(long kundeId, String uploadId) {
+        if (!findKundeMitBerechtigung(kundeId).isPresent()) {
+            return empty();
+        }
+        return chunkedUploadsInstance.get().find(kundeId, uploadId);
+    }
+    
+    /**
+     * Einen Kunden ermitteln und pruefen, ob der eingeloggte Benutzer auf seine Dateien zugreifen darf
+     * @param kundeId ID des Kunden
+     * @return Der Kunde oder empty(), falls es ihn nicht gibt
+     */
+    private Optional<? extends AbstractKunde> findKundeMitBerechtigung(long kundeId) {
+        final Optional<? extends AbstractKunde> kundeOpt = kundenBroker.findById(kundeId, NUR_KUNDE);
+        if (kundeOpt.isPresent()) {
+            iam.checkSameIdentity(kundeOpt.get().getIdentity().getLoginname());
+        } else {
+            iam.checkAdminMitarbeiter();
+        }
+        return kundeOpt;
+    }
+    
+    /**
+     * Bild oder Video zu einem Kunden mit gegebener ID herunterladen. Die Datei wird aus dem Dateisystem
+     * gestreamt; mit dem Header "Range" kann ein Teil angefordert werden, z.B. zum Spulen in einem Video.
+     * Mit dem Query-Parameter "size" wird ein verkleinertes Bild angefordert. Solange es noch nicht im
+     * Hintergrund erzeugt wurde, wird das Original geliefert.
+     * @param kundeId ID des Kunden
+     * @param size Groesse des verkleinerten Bildes, z.B. "small", oder null fuer das Original
+     * @param range Wert des Headers "Range" oder null
+     * @return Response mit der Datei bzw. dem angeforderten Teil oder mit Statuscode 404, falls es den Kunden
+     *         oder zu ihm keine Datei gibt
      */
     @Path("/image/{" + ID_PATH_PARAM + ":[1-9]\\d*}")
     @GET
-    @Produces({ "image/jpeg", "image/pjpeg", "image/png" })
+    @Produces({ "image/jpeg", "image/pjpeg", "image/png", "video/mp4" })
     @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING, KUNDE_STRING })
     @ApiOperation(value = "Von einem vorhandenen Kunden ein Bild oder ein Video herunterladen", response = Byte.class, responseContainer = "list")
     @ApiResponses({
         @ApiResponse(code = 200, message = "OK", response = Byte.class),
+        @ApiResponse(code = 206, message = "Partial Content: der angeforderte Bereich", response = Byte.class),
+        @ApiResponse(code = 400, message = "Ung\u00FCltige Bildgr\u00F6\u00DFe"),
         @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
-        @ApiResponse(code = 404, message = "Es gibt keinen Kunden zur angegebenen Kundennummer")
+        @ApiResponse(code = 404, message = "Es gibt keinen Kunden zur angegebenen Kundennummer oder keine Datei zum Kunden"),
+        @ApiResponse(code = 416, message = "Der angeforderte Bereich liegt ausserhalb der Datei")
     })
-    public byte[] downloadImage(@PathParam(ID_PATH_PARAM) long kundeId) {
+    public Response downloadImage(@PathParam(ID_PATH_PARAM) long kundeId,
+                                  @QueryParam(SIZE_QUERY_PARAM) String size,
+                                  @HeaderParam(RANGE) String range) {
+        final ImageSize imageSize;
+        if (size == null) {
+            imageSize = null;
+        } else {
+            imageSize = ImageSize.build(size);
+            if (imageSize == null) {
+                return Response.status(BAD_REQUEST).build();
+            }
+        }
+        
         final Optional<? extends AbstractKunde> kundeOpt = kundenBroker.findById(kundeId, NUR_KUNDE);
         if (!kundeOpt.isPresent()) {
             iam.checkAdminMitarbeiter();
-            return new byte[0];
+            return Response.status(NOT_FOUND).build();
         }
         
         final AbstractKunde kunde = kundeOpt.get();
         iam.checkSameIdentity(kunde.getIdentity().getLoginname());
         
         final File file = kunde.getFile();
+        if (file == null) {
+            return Response.status(NOT_FOUND).build();
+        }
         if (LOGGER.isLoggable(FINEST)) {
             LOGGER.finest(file.toString());
         }
         
-        return file.getBytes();
+        final String mimeType = file.getMimeType().toString();
+        final FileHelper fileHelper = fileHelperInstance.get();
+        final boolean derivat = imageSize != null && file.getMimeType().getMultimediaType() == MultimediaType.IMAGE;
+        
+        // Haeufig angeforderte Bilder, z.B. Logos, ohne Datei-I/O aus dem Cache senden
+        final Optional<MediaCache.Eintrag> eintragOpt = mediaCacheInstance.get().find(file, derivat ? imageSize : null);
+        if (eintragOpt.isPresent()) {
+            return download(eintragOpt.get(), mimeType, range);
+        }
+        
+        if (derivat) {
+            final Optional<java.nio.file.Path> derivatOpt = fileHelper.findDerivat(file, imageSize);
+            if (derivatOpt.isPresent()) {
+                return download(file, imageSize, derivatOpt.get(), mimeType, range);
+            }
+        }
+        
+        if (derivat) {
+            // z.B. bei Bildern von vor der Einfuehrung verkleinerter Bilder oder bei einem verworfenen Auftrag:
+            // bis das verkleinerte Bild erzeugt ist, wird das Original geliefert
+            imageDerivativesInstance.get().erzeugen(file.getChecksum(), file.getMimeType(), imageSize);
+            
+            // Ein bereits gecachtes Original nicht erneut aus dem Dateisystem laden und dabei ersetzen
+            final Optional<MediaCache.Eintrag> originalOpt = mediaCacheInstance.get().find(file, null);
+            if (originalOpt.isPresent()) {
+                return download(originalOpt.get(), mimeType, range);
+            }
+        }
+        
+        final Optional<java.nio.file.Path> pathOpt = fileHelper.ensureOnDisk(file);
+        if (!pathOpt.isPresent()) {
+            LOGGER.warning("Keine Datei im Dateisystem fuer " + file);
+            return Response.status(NOT_FOUND).build();
+        }
+        
+        return download(file, null, pathOpt.get(), mimeType, range);
+    }
+    
+    /**
+     * Eine Datei aus dem Dateisystem senden und dabei in den Cache laden, sofern sie klein genug ist
+     * @param file Die Verwaltungsdaten der Datei
+     * @param imageSize Groesse des verkleinerten Bildes oder null fuer das Original
+     * @param path Pfad des unveraenderlichen Inhalts bzw. des verkleinerten Bildes
+     * @param mimeType MIME-Type fuer den Response
+     * @param range Wert des Headers "Range" oder null
+     * @return Response mit der Datei bzw. dem angeforderten Teil
+     */
+    private Response download(File file, ImageSize imageSize, java.nio.file.Path path, String mimeType,
+                              String range) {
+        final long length = size(path);
+        final Optional<MediaCache.Eintrag> eintragOpt = mediaCacheInstance.get().laden(file, imageSize, path, length);
+        if (eintragOpt.isPresent()) {
+            return download(eintragOpt.get(), mimeType, range);
+        }
+        return download(length, (position, count) -> new FileStreamingOutput(path, position, count), mimeType,
+                        range);
+    }
+    
+    private static Response download(MediaCache.Eintrag eintrag, String mimeType, String range) {
+        return download(eintrag.getLength(), (position, count) -> new CachedStreamingOutput(eintrag, position, count),
+                        mimeType, range);
     }
     
+    /**
+     * Response fuer eine Datei bzw. fuer den mit "Range" angeforderten Teil erstellen
+     * @param length Laenge der Datei
+     * @param streamingOutput Funktion, die fuer Position und Anzahl der Bytes den Inhalt des Response liefert
+     * @param mimeType MIME-Type fuer den Response
+     * @param range Wert des Headers "Range" oder null
+     * @return Response mit der Datei bzw. dem angeforderten Teil
+     */
+    private static Response download(long length, BiFunction<Long, Long, StreamingOutput> streamingOutput,
+                                     String mimeType, String range) {
+        final Optional<ByteRange> byteRangeOpt = ByteRange.parse(range, length);
+        if (!byteRangeOpt.isPresent()) {
+            return Response.ok(streamingOutput.apply(0L, length), mimeType)
+                           .header(ACCEPT_RANGES, BYTES)
+                           .header(CONTENT_LENGTH, length)
+                           .build();
+        }
+        
+        final ByteRange byteRange = byteRangeOpt.get();
+        if (!byteRange.isSatisfiable()) {
+            return Response.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                           .header(CONTENT_RANGE, byteRange.toContentRange())
+                           .build();
+        }
+        return Response.status(PARTIAL_CONTENT)
+                       .type(mimeType)
+                       .entity(streamingOutput.apply(byteRange.getStart(), byteRange.getCount()))
+                       .header(ACCEPT_RANGES, BYTES)
+                       .header(CONTENT_RANGE, byteRange.toContentRange())
+                       .header(CONTENT_LENGTH, byteRange.getCount())
+                       .build();
+    }
+    
+    /**
+     * Bild oder Video mit Base64-Codierung zu einem Kunden hochladen. Der Request-Body wird beim Lesen
+     * decodiert und direkt in eine temporaere Datei geschrieben, ohne ihn als String im Heap zu halten.
+     * @param kundeId ID des Kunden
+     * @param inputStream Request-Body mit Base64-Codierung
+     * @param uriInfo von JAX-RS injiziertes Objekt zu UriInfo
+     * @return Response mit der URI fuer den Download
+     */
     @Path("/base64/{" + ID_PATH_PARAM + ":[1-9]\\d*}")
     @POST
     @Consumes({ TEXT_PLAIN })
@@ -617,7 +1221,8 @@ public class KundenResource {
         @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
         @ApiResponse(code = 404, message = "Es gibt keinen Kunden zur angegebenen Kundennummer")
     })
-    public Response uploadBase64(@PathParam(ID_PATH_PARAM) long kundeId, String base64, @Context UriInfo uriInfo) {
+    public Response uploadBase64(@PathParam(ID_PATH_PARAM) long kundeId, InputStream inputStream,
+                                 @Context UriInfo uriInfo) {
         final Optional<? extends AbstractKunde> kundeOpt = kundenBroker.findById(kundeId, NUR_KUNDE);
         if (!kundeOpt.isPresent()) {
             iam.checkAdminMitarbeiter();
@@ -627,16 +1232,16 @@ public class KundenResource {
         final AbstractKunde kunde = kundeOpt.get();
         iam.checkSameIdentity(kunde.getIdentity().getLoginname());
         
-        final byte[] bytes = Base64.getDecoder().decode(base64);
-        kundenBroker.setFile(kunde, bytes);
+        kundenBroker.setFile(kunde, Base64.getDecoder().wrap(inputStream));
         return Response.created(uriHelperInstance.get().getUri(KundenResource.class, DOWNLOAD_BAS64, kundeId, uriInfo))
                        .build();
     }
     
     /**
-     * Multimedia-Datei (mit Base64-Codierung) zu einem Kunden mit gegebener ID herunterladen
+     * Multimedia-Datei (mit Base64-Codierung) zu einem Kunden mit gegebener ID herunterladen. Die Datei wird
+     * beim Schreiben des Response aus dem Dateisystem gelesen und codiert.
      * @param kundeId ID des Kunden
-     * @return String mit Base64-Codierung einer Multimedia-Datei
+     * @return Response mit der Base64-Codierung einer Multimedia-Datei
      */
     @Path("/base64/{" + ID_PATH_PARAM + ":[1-9]\\d*}")
     @GET
@@ -648,22 +1253,55 @@ public class KundenResource {
         @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
         @ApiResponse(code = 404, message = "Es gibt keinen Kunden zur angegebenen Kundennummer")
     })
-    public String downloadBase64(@PathParam(ID_PATH_PARAM) long kundeId) {
+    public Response downloadBase64(@PathParam(ID_PATH_PARAM) long kundeId) {
         final Optional<? extends AbstractKunde> kundeOpt = kundenBroker.findById(kundeId, NUR_KUNDE);
         if (!kundeOpt.isPresent()) {
             iam.checkAdminMitarbeiter();
-            return "";
+            return Response.ok("").build();
         }
         
         final AbstractKunde kunde = kundeOpt.get();
         iam.checkSameIdentity(kunde.getIdentity().getLoginname());
         
         final File file = kunde.getFile();
+        if (file == null) {
+            return Response.status(NOT_FOUND).build();
+        }
         if (LOGGER.isLoggable(FINEST)) {
             LOGGER.finest(file.toString());
         }
         
-        return Base64.getEncoder().encodeToString(file.getBytes());
+        final MediaCache mediaCache = mediaCacheInstance.get();
+        Optional<MediaCache.Eintrag> eintragOpt = mediaCache.find(file, null);
+        if (!eintragOpt.isPresent()) {
+            final Optional<java.nio.file.Path> pathOpt = fileHelperInstance.get().ensureOnDisk(file);
+            if (!pathOpt.isPresent()) {
+                LOGGER.warning("Keine Datei im Dateisystem fuer " + file);
+                return Response.status(NOT_FOUND).build();
+            }
+            
+            final java.nio.file.Path path = pathOpt.get();
+            final long length = size(path);
+            eintragOpt = mediaCache.laden(file, null, path, length);
+            if (!eintragOpt.isPresent()) {
+                return Response.ok(new Base64StreamingOutput(path), TEXT_PLAIN)
+                               .header(CONTENT_LENGTH, Base64StreamingOutput.getEncodedLength(length))
+                               .build();
+            }
+        }
+        
+        final MediaCache.Eintrag eintrag = eintragOpt.get();
+        return Response.ok(new Base64StreamingOutput(eintrag), TEXT_PLAIN)
+                       .header(CONTENT_LENGTH, Base64StreamingOutput.getEncodedLength(eintrag.getLength()))
+                       .build();
+    }
+    
+    private static long size(java.nio.file.Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            throw new ShopRuntimeException(e);
+        }
     }
     
     //--------------------------------------------------------------------------
@@ -23,15 +23,21 @@ import com.wordnik.swagger.annotations.ApiParam;
 import com.wordnik.swagger.annotations.ApiResponse;
 import com.wordnik.swagger.annotations.ApiResponses;
 import de.shop.iam.domain.IdentityVO;
+import de.shop.kundenverwaltung.business.ImportErgebnis;
+import de.shop.kundenverwaltung.business.ImportZeile;
+import de.shop.kundenverwaltung.business.KundenImportBroker;
 import de.shop.kundenverwaltung.business.RegistrierungBroker;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.kundenverwaltung.domain.Privatkunde;
 import de.shop.util.rest.REST;
 import de.shop.util.rest.UriHelper;
+import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
 import java.net.URI;
+import java.util.Iterator;
 import java.util.logging.Logger;
 import javax.inject.Inject;
+import javax.transaction.Transactional;
 import javax.validation.Valid;
 import javax.ws.rs.BeanParam;
 import javax.ws.rs.Consumes;
@@ -42,9 +48,15 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 import org.jboss.resteasy.api.validation.ViolationReport;
+import org.picketlink.authorization.annotations.RolesAllowed;
 
+import static de.shop.iam.domain.RolleType.ADMIN_STRING;
 import static de.shop.kundenverwaltung.rest.KundenResource.FIND_BY_ID;
+import static de.shop.util.Constants.APPLICATION_NDJSON;
+import static de.shop.util.Constants.TEXT_CSV;
+import static java.util.logging.Level.FINER;
 import static java.util.logging.Level.FINEST;
+import static javax.transaction.Transactional.TxType.NOT_SUPPORTED;
 import static javax.ws.rs.core.MediaType.APPLICATION_FORM_URLENCODED;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.MediaType.APPLICATION_XML;
@@ -65,6 +77,8 @@ public class RegistrierungResource {
     private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
     
     private RegistrierungBroker registrierungBroker;
+    private KundenImportBroker kundenImportBroker;
+    private KundenImportReader kundenImportReader;
     private UriHelper uriHelper;
 
     /**
@@ -77,12 +91,17 @@ public class RegistrierungResource {
     /**
      * Package-private Konstruktor mit "Constructor Injection" f&uuml;r CDI
      * @param registrierungBroker zu injizierendes Objekt f&uuml;r RegistrierungBroker
+     * @param kundenImportBroker zu injizierendes Objekt f&uuml;r KundenImportBroker
+     * @param kundenImportReader zu injizierendes Objekt f&uuml;r KundenImportReader
      * @param uriHelper zu injizierendes Objekt f&uuml;r UriHelper
      */
     @Inject
-    RegistrierungResource(RegistrierungBroker registrierungBroker, UriHelper uriHelper) {
+    RegistrierungResource(RegistrierungBroker registrierungBroker, KundenImportBroker kundenImportBroker,
+                          KundenImportReader kundenImportReader, UriHelper uriHelper) {
         super();
         this.registrierungBroker = registrierungBroker;
+        this.kundenImportBroker = kundenImportBroker;
+        this.kundenImportReader = kundenImportReader;
         this.uriHelper = uriHelper;
     }
 
@@ -150,4 +169,55 @@ public class RegistrierungResource {
         
         return save(kunde, uriInfo);
     }
+    
+    /**
+     * Mit der URI /registrierung/bulk viele Kunden im Format NDJSON (1 JSON-Objekt pro Zeile) per POST anlegen.
+     * Jeder Block von Kunden wird in einer eigenen Transaktion gespeichert.
+     * @param inputStream Kunden im Format NDJSON
+     * @return Response-Objekt mit dem Ergebnis des Imports
+     */
+    @Path("/bulk")
+    @POST
+    @Consumes(APPLICATION_NDJSON)
+    @Produces(APPLICATION_JSON)
+    @Transactional(NOT_SUPPORTED)
+    @RolesAllowed(ADMIN_STRING)
+    @ApiOperation(value = "Viele neue Kunden im Format NDJSON importieren", response = ImportErgebnis.class)
+    @ApiResponses({
+        @ApiResponse(code = 200, message = "OK: fehlerhafte Zeilen sind im Ergebnis aufgelistet"),
+        @ApiResponse(code = 401, message = "Keine Berechtigung"),
+    })
+    public Response importNdjson(@ApiParam(required = true) InputStream inputStream) {
+        return importKunden(kundenImportReader.readNdjson(inputStream));
+    }
+    
+    /**
+     * Mit der URI /registrierung/bulk viele Kunden im Format CSV mit Kopfzeile per POST anlegen.
+     * Jeder Block von Kunden wird in einer eigenen Transaktion gespeichert.
+     * @param inputStream Kunden im Format CSV
+     * @return Response-Objekt mit dem Ergebnis des Imports
+     */
+    @Path("/bulk")
+    @POST
+    @Consumes(TEXT_CSV)
+    @Produces(APPLICATION_JSON)
+    @Transactional(NOT_SUPPORTED)
+    @RolesAllowed(ADMIN_STRING)
+    @ApiOperation(value = "Viele neue Kunden im Format CSV importieren", response = ImportErgebnis.class)
+    @ApiResponses({
+        @ApiResponse(code = 200, message = "OK: fehlerhafte Zeilen sind im Ergebnis aufgelistet"),
+        @ApiResponse(code = 401, message = "Keine Berechtigung"),
+    })
+    public Response importCsv(@ApiParam(required = true) InputStream inputStream) {
+        return importKunden(kundenImportReader.readCsv(inputStream));
+    }
+    
+    private Response importKunden(Iterator<ImportZeile> zeilen) {
+        final ImportErgebnis ergebnis = kundenImportBroker.importKunden(zeilen);
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer(ergebnis.toString());
+        }
+        return Response.ok(ergebnis)
+                       .build();
+    }
 }
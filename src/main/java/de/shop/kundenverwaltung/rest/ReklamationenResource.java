@@ -17,19 +17,51 @@
 
 package de.shop.kundenverwaltung.rest;
 
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+import de.shop.kundenverwaltung.business.ReklamationenBroker;
+import de.shop.kundenverwaltung.domain.Reklamation;
+import de.shop.kundenverwaltung.domain.ReklamationId;
 import de.shop.util.rest.REST;
+import de.shop.util.rest.UriHelper;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.GenericEntity;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import org.picketlink.authorization.annotations.RolesAllowed;
 
+import static de.shop.iam.domain.RolleType.ADMIN_STRING;
+import static de.shop.iam.domain.RolleType.MITARBEITER_STRING;
+import static de.shop.util.Constants.CURSOR_QUERY_PARAM;
+import static de.shop.util.Constants.LIMIT_QUERY_PARAM;
+import static de.shop.util.Constants.MAX_PAGE_SIZE;
+import static de.shop.util.Constants.NEXT_LINK;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.MediaType.APPLICATION_XML;
-import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
 import static javax.ws.rs.core.MediaType.TEXT_XML;
-import static javax.ws.rs.core.Response.Status.NOT_IMPLEMENTED;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
 
 
 /**
@@ -39,27 +71,123 @@ import static javax.ws.rs.core.Response.Status.NOT_IMPLEMENTED;
 @Path("/reklamationen")
 @Produces({ APPLICATION_JSON, APPLICATION_XML + ";qs=0.75", TEXT_XML + ";qs=0.5" })
 @Consumes({ APPLICATION_JSON, APPLICATION_XML, TEXT_XML })
+@Api(value = "/reklamationen",
+     description = "Reklamationen der Kunden",
+     basePath = "https://localhost:8443/shop/rest")
 public class ReklamationenResource {
+    // public fuer Testklassen
+    public static final String KUNDE_ID_PATH_PARAM = "id";
+    
+    private static final char CURSOR_TRENNZEICHEN = '_';
+    
+    private ReklamationenBroker reklamationenBroker;
+    private Instance<UriHelper> uriHelperInstance;
+    
     /**
-     * Mit der URI /reklamationen/kunde/{id} die Reklamationen ermitteln
-     * zu einem bestimmten Kunden ermitteln
-     * @param id ID des Kunden
-     * @return reklamationen, falls die ID vorhanden ist
+     * Public Default-Konstruktor f&uuml;r JAX-RS
+     */
+    public ReklamationenResource() {
+        super();
+    }
+    
+    /**
+     * Public Konstruktor mit "Constructor Injection" f&uuml;r CDI
+     * @param reklamationenBroker zu injizierendes Objekt f&uuml;r ReklamationenBroker
+     * @param uriHelperInstance zu injizierendes Instance-Objekt f&uuml;r UriHelper
+     */
+    @Inject
+    public ReklamationenResource(ReklamationenBroker reklamationenBroker, Instance<UriHelper> uriHelperInstance) {
+        super();
+        this.reklamationenBroker = reklamationenBroker;
+        this.uriHelperInstance = uriHelperInstance;
+    }
+    
+    /**
+     * Mit der URI /reklamationen/kunde/{id} die Reklamationen zu einem bestimmten Kunden seitenweise ermitteln,
+     * wobei der Link "next" auf die naechste Seite verweist.
+     * @param kundeId ID des Kunden
+     * @param limit Max. Anzahl Reklamationen pro Seite
+     * @param cursor Cursor aus dem Link "next" der vorherigen Seite oder null fuer die erste Seite
+     * @param uriInfo von JAX-RS injiziertes Objekt zu UriInfo
+     * @return Response mit den Reklamationen der Seite
      */
     @GET
-    @Path("/kunde/{id:[1-9]\\d*}")
-    public Response findByKundeId(@PathParam("id") long id) {   //NOSONAR
-        // Diese Methode ist bewusst NICHT implementiert, um zu zeigen,
-        // wie man Methodensignaturen an der Schnittstelle fuer andere
-        // Teammitglieder schon mal bereitstellt, indem einfach ein "Not implemented" (501)
-        // produziert wird.
-        // Die Kolleg/inn/en koennen nun weiterarbeiten, waehrend man selbst
-        // gerade keine Zeit hat, weil andere Aufgaben Vorrang haben.
+    @Path("/kunde/{" + KUNDE_ID_PATH_PARAM + ":[1-9]\\d*}")
+    @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
+    @ApiOperation(value = "Reklamationen zu einem Kunden seitenweise ermitteln",
+                  response = Reklamation.class,
+                  responseContainer = "List")
+    @ApiResponses({
+        @ApiResponse(code = 200, message = "OK", response = Reklamation.class),
+        @ApiResponse(code = 400, message = "Ung\u00FCltiger Cursor"),
+        @ApiResponse(code = 403, message = "Die notwendigen Berechtigungen f\u00FCr diese Operation sind nicht vorhanden."),
+        @ApiResponse(code = 404, message = "Es gibt keine Reklamationen zu dem Kunden")
+    })
+    public Response findByKundeId(@PathParam(KUNDE_ID_PATH_PARAM)
+                                  long kundeId,
+                                  @QueryParam(LIMIT_QUERY_PARAM)
+                                  @Min(value = 1, message = "{pagination.limit.min}")
+                                  @Max(value = MAX_PAGE_SIZE, message = "{pagination.limit.max}")
+                                  Integer limit,
+                                  @QueryParam(CURSOR_QUERY_PARAM)
+                                  String cursor,
+                                  @Context
+                                  UriInfo uriInfo) {
+        ReklamationId lastId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            final Optional<ReklamationId> lastIdOpt = decodeCursor(cursor);
+            if (!lastIdOpt.isPresent()) {
+                return Response.status(BAD_REQUEST).build();
+            }
+            lastId = lastIdOpt.get();
+        }
+        
+        // Eine Reklamation mehr lesen, um festzustellen, ob es eine naechste Seite gibt
+        final int maxResults = limit == null ? MAX_PAGE_SIZE : limit;
+        final Optional<List<Reklamation>> reklamationenOpt =
+                                          reklamationenBroker.findByKundeId(kundeId, lastId, maxResults + 1);
+        if (!reklamationenOpt.isPresent()) {
+            return Response.status(NOT_FOUND).build();
+        }
+        
+        final List<Reklamation> gefundeneReklamationen = reklamationenOpt.get();
+        final boolean hasNext = gefundeneReklamationen.size() > maxResults;
+        final List<Reklamation> reklamationen = hasNext
+                                                ? new ArrayList<>(gefundeneReklamationen.subList(0, maxResults))
+                                                : gefundeneReklamationen;
         
-        // TODO findByKundeId noch nicht implementiert
-        return Response.status(NOT_IMPLEMENTED)
-                       .entity("findByKundeId: NOT YET IMPLEMENTED")
-                       .type(TEXT_PLAIN)
-                       .build();
+        final Response.ResponseBuilder builder = Response.ok(new GenericEntity<List<Reklamation>>(reklamationen){});  //NOSONAR
+        if (hasNext) {
+            final Reklamation letzte = reklamationen.get(reklamationen.size() - 1);
+            builder.links(Link.fromUri(uriHelperInstance.get().getNextUri(encodeCursor(letzte), uriInfo))
+                              .rel(NEXT_LINK)
+                              .build());
+        }
+        return builder.build();
+    }
+    
+    // Nr und Datum der letzten Reklamation als undurchsichtigen Cursor codieren
+    private static String encodeCursor(Reklamation reklamation) {
+        final String lastId = String.valueOf(reklamation.getNr()) + CURSOR_TRENNZEICHEN
+                              + reklamation.getDatum().getTime();
+        return Base64.getUrlEncoder()
+                     .withoutPadding()
+                     .encodeToString(lastId.getBytes(StandardCharsets.US_ASCII));
+    }
+    
+    private static Optional<ReklamationId> decodeCursor(String cursor) {
+        try {
+            final String lastId = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            final int pos = lastId.indexOf(CURSOR_TRENNZEICHEN);
+            if (pos < 0) {
+                return empty();
+            }
+            final long nr = Long.parseLong(lastId.substring(0, pos));
+            final long datum = Long.parseLong(lastId.substring(pos + 1));
+            return of(new ReklamationId(nr, new Date(datum)));
+        } catch (IllegalArgumentException e) {
+            // auch NumberFormatException
+            return empty();
+        }
     }
 }
@@ -18,10 +18,8 @@
 package de.shop.kundenverwaltung.soap;
 
 import de.shop.kundenverwaltung.business.KundenBroker;
-import de.shop.kundenverwaltung.domain.AbstractKunde;
-import de.shop.kundenverwaltung.domain.Privatkunde;
-import java.util.Collections;
-import java.util.Optional;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
@@ -30,8 +28,7 @@ import javax.jws.WebResult;
 import javax.jws.WebService;
 import javax.jws.soap.SOAPBinding;
 
-import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.MIT_BESTELLUNGEN;
-import static java.util.stream.Collectors.toSet;
+import static java.util.Collections.singletonList;
 
 /**
  * https://localhost:8443/shop/KundeSOAPService/KundeSOAP?wsdl
@@ -79,17 +76,19 @@ public class KundenSoap {
     @WebResult(name = "privatkunde")
     //@RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
     public PrivatkundeVO findById(@WebParam(name = "id") long id) {
-        final Optional<? extends AbstractKunde> kundeOpt = kundenBroker.findById(id, MIT_BESTELLUNGEN);
-        if (!kundeOpt.isPresent()) {
-            return null;
-        }
-        final AbstractKunde kunde = kundeOpt.get();
-        if (!(kunde instanceof Privatkunde)) {
-            return null;
-        }
-        
-        final Privatkunde privatkunde = Privatkunde.class.cast(kunde);
-        return new PrivatkundeVO(privatkunde);
+        final List<PrivatkundeVO> privatkunden = kundenBroker.findPrivatkundenVOByIds(singletonList(id));
+        return privatkunden.isEmpty() ? null : privatkunden.get(0);
+    }
+    
+    /**
+     * Mehrere Privatkunden anhand ihrer IDs mit einem Aufruf suchen, z.B. fuer den Abgleich mit einem ERP-System.
+     * @param ids IDs der gesuchten Privatkunden
+     * @return Die gefundenen Privatkunden aufsteigend nach ID; nicht gefundene IDs werden ignoriert
+     */
+    @WebResult(name = "privatkunden")
+//  @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
+    public List<PrivatkundeVO> findByIds(@WebParam(name = "ids") List<Long> ids) {
+        return kundenBroker.findPrivatkundenVOByIds(ids);
     }
     
     /**
@@ -100,11 +99,6 @@ public class KundenSoap {
     @WebResult(name = "privatkunden")
 //  @RolesAllowed({ ADMIN_STRING, MITARBEITER_STRING })
     public Set<PrivatkundeVO> findByNachname(@WebParam(name = "nachname") String nachname) {
-        return kundenBroker.findByNachname(nachname, MIT_BESTELLUNGEN)
-                           .orElse(Collections.emptyList())
-                           .stream()
-                           .filter(kunde -> kunde instanceof Privatkunde)
-                           .map(privatkunde -> new PrivatkundeVO((Privatkunde) privatkunde))
-                           .collect(toSet());
+        return new HashSet<>(kundenBroker.findPrivatkundenVOByNachname(nachname));
     }
 }
@@ -59,6 +59,28 @@ public class PrivatkundeVO {
         super();
     }
     
+    /**
+     * Konstruktor fuer die Projektion in JPQL ("SELECT NEW ..."): Identity, Bestellungen und Hobbys
+     * werden anschliessend gebuendelt gesetzt.
+     */
+    public PrivatkundeVO(long id, int version, String loginname, int kategorie, BigDecimal rabatt,
+                         BigDecimal umsatz, Date seit, String bemerkungen, FamilienstandType familienstand,
+                         GeschlechtType geschlecht) {
+        super();
+        this.id = id;
+        this.version = version;
+        this.loginname = loginname;
+        this.kategorie = kategorie;
+        this.rabatt = rabatt;
+        this.umsatz = umsatz;
+        this.seit = seit;
+        // wie bei @PostLoad: gespeicherte Kunden haben die AGB akzeptiert
+        agbAkzeptiert = true;
+        this.bemerkungen = bemerkungen;
+        this.familienstand = familienstand;
+        this.geschlecht = geschlecht;
+    }
+    
     public PrivatkundeVO(Privatkunde pk) {
         super();
         id = pk.getId();
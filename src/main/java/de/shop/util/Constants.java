@@ -29,6 +29,10 @@ import static java.util.concurrent.TimeUnit.MINUTES;
 public final class Constants {
     public static final String REST_PATH = "/rest";
     
+    // Medientypen fuer den Massenimport
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    public static final String TEXT_CSV = "text/csv";
+    
     // Domain-Klassen
     public static final int HASH_PRIME = 31;
     public static final int HASH_SHIFT = 32;
@@ -49,12 +53,22 @@ public final class Constants {
     public static final String REMOVE_LINK = "remove";
     public static final String FIRST_LINK = "first";
     public static final String LAST_LINK = "last";
+    public static final String NEXT_LINK = "next";
+    
+    // Keyset-Pagination
+    public static final String LIMIT_QUERY_PARAM = "limit";
+    public static final String CURSOR_QUERY_PARAM = "cursor";
+    public static final int MAX_PAGE_SIZE = 100;
     
     // JPA
     public static final String DEFAULT_PU = "default";
     public static final String LOADGRAPH = "javax.persistence.loadgraph";
     public static final int ERSTE_VERSION = 0;
     public static final int MAX_AUTOCOMPLETE = 10;
+    // Anzahl Objekte, nach denen beim Streaming der Persistenzkontext geleert wird
+    public static final int STREAM_CHUNK_SIZE = 500;
+    // Anzahl Objekte pro Transaktion beim Massenimport
+    public static final int IMPORT_BATCH_SIZE = 500;
     
     // JSF
     public static final String JSF_INDEX = "/p/index";
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util;
+
+import javax.enterprise.inject.Vetoed;
+
+
+/**
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Vetoed
+public class FileTooLargeException extends AbstractShopException {
+    private static final long serialVersionUID = 4915732940171652270L;
+    
+    private static final String MESSAGE_KEY = "file.tooLarge";
+    
+    private final long sizeLimit;
+
+    public FileTooLargeException(long sizeLimit) {
+        super("Die Datei ist groesser als " + sizeLimit + " Bytes");
+        this.sizeLimit = sizeLimit;
+    }
+    
+    public long getSizeLimit() {
+        return sizeLimit;
+    }
+    
+    @Override
+    public String getMessageKey() {
+        return MESSAGE_KEY;
+    }
+}
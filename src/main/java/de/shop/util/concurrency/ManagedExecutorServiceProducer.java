@@ -19,6 +19,7 @@ package de.shop.util.concurrency;
 
 import javax.annotation.Resource;
 import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
 import javax.enterprise.context.Dependent;
 import javax.enterprise.inject.Produces;
 
@@ -31,10 +32,10 @@ public class ManagedExecutorServiceProducer {
     @Produces
     private static ManagedExecutorService managedExecutorService;
     
-    // fuer zeitlich versetzte oder periodische Ausfuehrungen
-    //@Resource
-    //@Produces
-    //private ManagedScheduledExecutorService managedScheduledExecutorService;   //NOSONAR
+    // fuer zeitlich versetzte oder periodische Ausfuehrungen, z.B. Wiederholungen mit Wartezeit
+    @Resource
+    @Produces
+    private static ManagedScheduledExecutorService managedScheduledExecutorService;
     
     ManagedExecutorServiceProducer() {
         super();
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import javax.annotation.Resource;
+import javax.enterprise.context.Dependent;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Aenderungen an In-Memory-Strukturen erst nach erfolgreichem Commit der aktuellen Transaktion ausfuehren,
+ * damit ein Rollback keine veralteten Eintraege hinterlaesst. Umgekehrt koennen Aenderungen ausserhalb der DB,
+ * z.B. im Dateisystem, bei einem Rollback rueckgaengig gemacht werden.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Dependent
+public class AfterCommit {
+    @Resource(lookup = "java:comp/TransactionSynchronizationRegistry")
+    private TransactionSynchronizationRegistry txSyncRegistry;
+    
+    /**
+     * Eine Aenderung nach dem Commit ausfuehren bzw. sofort, falls keine Transaktion aktiv ist.
+     * @param aenderung Die auszufuehrende Aenderung
+     */
+    public void run(Runnable aenderung) {
+        if (txSyncRegistry.getTransactionKey() == null) {
+            aenderung.run();
+            return;
+        }
+        
+        register(Status.STATUS_COMMITTED, aenderung);
+    }
+    
+    /**
+     * Eine bereits ausgefuehrte Aenderung ausserhalb der DB nach einem Rollback rueckgaengig machen.
+     * Ohne aktive Transaktion gibt es keinen Rollback und es wird nichts ausgefuehrt.
+     * @param kompensation Die auszufuehrende Kompensation
+     */
+    public void runAfterRollback(Runnable kompensation) {
+        if (txSyncRegistry.getTransactionKey() == null) {
+            return;
+        }
+        
+        register(Status.STATUS_ROLLEDBACK, kompensation);
+    }
+    
+    private void register(int erwarteterStatus, Runnable runnable) {
+        txSyncRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+                // nichts zu tun
+            }
+            
+            @Override
+            public void afterCompletion(int status) {
+                if (status == erwarteterStatus) {
+                    runnable.run();
+                }
+            }
+        });
+    }
+}
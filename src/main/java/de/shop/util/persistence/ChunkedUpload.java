@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Eine Sitzung fuer das Hochladen einer grossen Datei in nummerierten Abschnitten ("Chunks"), die in beliebiger
+ * Reihenfolge und nach einem Verbindungsabbruch erneut gesendet werden koennen. Die Abschnitte werden an ihrer
+ * Position in eine temporaere Datei geschrieben.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class ChunkedUpload {
+    // Max. Anzahl fehlender Abschnitte in der Fortschrittsanzeige
+    private static final int MAX_FEHLEND = 100;
+    
+    private final String id;
+    private final long kundeId;
+    private final long length;
+    private final int chunkSize;
+    private final int chunks;
+    
+    // Vom Client angegebener MIME-Type, weil z.B. MP4 nicht an den ersten Bytes erkannt wird; evtl. null
+    private final MimeType mimeType;
+    
+    @JsonIgnore
+    private final Path path;
+    
+    // Empfangene Abschnitte; geschuetzt durch synchronized
+    @JsonIgnore
+    private final BitSet empfangen;
+    
+    // Schreiben von Abschnitten (parallel) vs. Abschliessen (exklusiv)
+    @JsonIgnore
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    @JsonIgnore
+    private volatile long letzteAktivitaet = System.currentTimeMillis();
+    
+    ChunkedUpload(String id, long kundeId, long length, int chunkSize, MimeType mimeType, Path path) {
+        super();
+        this.id = id;
+        this.kundeId = kundeId;
+        this.length = length;
+        this.chunkSize = chunkSize;
+        this.chunks = (int) ((length + chunkSize - 1) / chunkSize);
+        this.mimeType = mimeType;
+        this.path = path;
+        empfangen = new BitSet(chunks);
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    @JsonIgnore
+    public long getKundeId() {
+        return kundeId;
+    }
+    
+    public long getLength() {
+        return length;
+    }
+    
+    public int getChunkSize() {
+        return chunkSize;
+    }
+    
+    public int getChunks() {
+        return chunks;
+    }
+    
+    public MimeType getMimeType() {
+        return mimeType;
+    }
+    
+    /**
+     * @return Anzahl der empfangenen Abschnitte
+     */
+    public synchronized int getEmpfangen() {
+        return empfangen.cardinality();
+    }
+    
+    /**
+     * @return Nummern der noch fehlenden Abschnitte, max. die ersten 100
+     */
+    public synchronized List<Integer> getFehlend() {
+        final List<Integer> fehlend = new ArrayList<>();
+        for (int i = empfangen.nextClearBit(0); i < chunks && fehlend.size() < MAX_FEHLEND;
+             i = empfangen.nextClearBit(i + 1)) {
+            fehlend.add(i);
+        }
+        return fehlend;
+    }
+    
+    public synchronized boolean isVollstaendig() {
+        return empfangen.cardinality() == chunks;
+    }
+    
+    /**
+     * Position eines Abschnitts in der Datei
+     * @param nummer Nummer des Abschnitts beginnend mit 0
+     * @return Position des ersten Bytes
+     */
+    long getOffset(int nummer) {
+        return (long) nummer * chunkSize;
+    }
+    
+    /**
+     * Laenge eines Abschnitts: nur der letzte Abschnitt darf kuerzer sein
+     * @param nummer Nummer des Abschnitts beginnend mit 0
+     * @return Anzahl der Bytes
+     */
+    long getLength(int nummer) {
+        return Math.min(chunkSize, length - getOffset(nummer));
+    }
+    
+    boolean isGueltig(int nummer) {
+        return nummer >= 0 && nummer < chunks;
+    }
+    
+    synchronized void setEmpfangen(int nummer) {
+        empfangen.set(nummer);
+        letzteAktivitaet = System.currentTimeMillis();
+    }
+    
+    Path getPath() {
+        return path;
+    }
+    
+    ReadWriteLock getLock() {
+        return lock;
+    }
+    
+    long getLetzteAktivitaet() {
+        return letzteAktivitaet;
+    }
+    
+    @Override
+    public String toString() {
+        return "ChunkedUpload {id=" + id + ", kundeId=" + kundeId + ", length=" + length + ", chunkSize="
+               + chunkSize + ", chunks=" + chunks + ", mimeType=" + mimeType + ", empfangen=" + getEmpfangen() + ", path=" + path + '}';
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import de.shop.util.FileTooLargeException;
+import de.shop.util.ShopRuntimeException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Logger;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+import static java.util.logging.Level.FINER;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Sitzungen fuer das wiederaufnehmbare Hochladen grosser Dateien in Abschnitten verwalten, z.B. Videos von
+ * mobilen Clients: Nach einem Verbindungsabbruch muessen nur die fehlenden Abschnitte erneut gesendet werden.
+ * Jeder Abschnitt wird mit einem Puffer fester Groesse per FileChannel an seine Position in einer temporaeren
+ * Datei geschrieben, so dass weder ein Abschnitt noch die Datei im Heap gehalten wird.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class ChunkedUploads {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    public static final int MIN_CHUNK_SIZE = 64 * 1024;
+    public static final int MAX_CHUNK_SIZE = 8 * 1024 * 1024;
+    
+    // Obergrenze fuer gleichzeitige Sitzungen, da jede Sitzung eine temporaere Datei belegt
+    private static final int MAX_SITZUNGEN = 100;
+    
+    // Sitzungen ohne Aktivitaet werden nach dieser Frist verworfen
+    private static final long FRIST_MILLIS = 24 * 60 * 60 * 1000L;
+    
+    private static final int BUFFER_SIZE = 8 * 1024;
+    
+    private final ConcurrentMap<String, ChunkedUpload> sitzungen = new ConcurrentHashMap<>();
+    
+    private Instance<FileHelper> fileHelperInstance;
+    private Instance<AfterCommit> afterCommitInstance;
+    
+    /**
+     * Package-private Default-Konstruktor f&uuml;r CDI
+     */
+    ChunkedUploads() {
+        super();
+    }
+    
+    /**
+     * Package-private Konstruktor mit "Constructor Injection" f&uuml;r CDI
+     * @param fileHelperInstance zu injizierendes Instance-Objekt f&uuml;r FileHelper
+     * @param afterCommitInstance zu injizierendes Instance-Objekt f&uuml;r AfterCommit
+     */
+    @Inject
+    ChunkedUploads(Instance<FileHelper> fileHelperInstance, Instance<AfterCommit> afterCommitInstance) {
+        super();
+        this.fileHelperInstance = fileHelperInstance;
+        this.afterCommitInstance = afterCommitInstance;
+    }
+    
+    /**
+     * Eine neue Sitzung mit einer leeren temporaeren Datei anlegen
+     * @param kundeId ID des Kunden, zu dem hochgeladen wird
+     * @param length Groesse der gesamten Datei
+     * @param chunkSize Groesse der Abschnitte, nur der letzte Abschnitt darf kuerzer sein
+     * @param mimeType MIME-Type der Datei oder null, um ihn beim Abschliessen zu ermitteln
+     * @return Die neue Sitzung oder empty(), falls es bereits zu viele Sitzungen gibt
+     * @throws FileTooLargeException Falls die Datei groesser als das Limit ist
+     */
+    public Optional<ChunkedUpload> create(long kundeId, long length, int chunkSize, MimeType mimeType) {
+        final FileHelper fileHelper = fileHelperInstance.get();
+        if (length > fileHelper.getSizeLimit()) {
+            throw new FileTooLargeException(fileHelper.getSizeLimit());
+        }
+        if (sitzungen.size() >= MAX_SITZUNGEN) {
+            LOGGER.warning("Zu viele Sitzungen zum Hochladen in Abschnitten");
+            return empty();
+        }
+        
+        final Path path;
+        try {
+            path = fileHelper.createTmpFile();
+        } catch (IOException e) {
+            throw new ShopRuntimeException(e);
+        }
+        final ChunkedUpload chunkedUpload = new ChunkedUpload(UUID.randomUUID().toString(), kundeId, length,
+                                                              chunkSize, mimeType, path);
+        sitzungen.put(chunkedUpload.getId(), chunkedUpload);
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("Neue Sitzung: " + chunkedUpload);
+        }
+        return of(chunkedUpload);
+    }
+    
+    /**
+     * Eine Sitzung zu einem Kunden ermitteln
+     * @param kundeId ID des Kunden
+     * @param id ID der Sitzung
+     * @return Die Sitzung oder empty(), falls sie nicht (mehr) existiert
+     */
+    public Optional<ChunkedUpload> find(long kundeId, String id) {
+        final ChunkedUpload chunkedUpload = sitzungen.get(id);
+        return chunkedUpload == null || chunkedUpload.getKundeId() != kundeId ? empty() : of(chunkedUpload);
+    }
+    
+    /**
+     * Einen Abschnitt an seine Position in der temporaeren Datei schreiben. Ein bereits empfangener Abschnitt
+     * darf erneut gesendet werden und wird dann ueberschrieben.
+     * @param chunkedUpload Die Sitzung
+     * @param nummer Nummer des Abschnitts beginnend mit 0
+     * @param inputStream Datenstrom mit genau den Bytes des Abschnitts
+     * @return true, falls der Abschnitt vollstaendig geschrieben wurde; false bei ungueltiger Nummer oder Laenge
+     *         bzw. falls die Sitzung bereits abgeschlossen ist
+     */
+    public boolean write(ChunkedUpload chunkedUpload, int nummer, InputStream inputStream) {
+        if (!chunkedUpload.isGueltig(nummer)) {
+            return false;
+        }
+        
+        final Lock lock = chunkedUpload.getLock().readLock();
+        lock.lock();
+        try {
+            if (!sitzungen.containsKey(chunkedUpload.getId())) {
+                return false;
+            }
+            
+            final long offset = chunkedUpload.getOffset(nummer);
+            final long erwartet = chunkedUpload.getLength(nummer);
+            final long geschrieben;
+            try (final FileChannel channel = FileChannel.open(chunkedUpload.getPath(), WRITE)) {
+                geschrieben = write(Channels.newChannel(inputStream), channel, offset, erwartet);
+            }
+            if (geschrieben != erwartet) {
+                if (LOGGER.isLoggable(FINER)) {
+                    LOGGER.finer("Abschnitt " + nummer + " mit " + geschrieben + " statt " + erwartet + " Bytes");
+                }
+                return false;
+            }
+            chunkedUpload.setEmpfangen(nummer);
+            if (LOGGER.isLoggable(FINEST)) {
+                LOGGER.finest("Abschnitt " + nummer + " empfangen: " + chunkedUpload);
+            }
+            return true;
+        } catch (IOException e) {
+            throw new ShopRuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Einen Datenstrom mit positionsbezogenen Schreiboperationen in eine Datei schreiben; Luecken zwischen
+     * Abschnitten bleiben bei Dateisystemen mit "Sparse Files" unbelegt.
+     * @return Anzahl der Bytes im Datenstrom, max. erwartet + 1
+     */
+    private static long write(ReadableByteChannel source, FileChannel channel, long offset, long erwartet)
+            throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long anzahl = 0;
+        while (anzahl <= erwartet && source.read(buffer) != -1) {
+            buffer.flip();
+            final int laenge = buffer.remaining();
+            if (anzahl + laenge > erwartet) {
+                // Zu lang: nicht in den naechsten Abschnitt schreiben
+                return erwartet + 1;
+            }
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, offset + anzahl + laenge - buffer.remaining());
+            }
+            anzahl += laenge;
+            buffer.clear();
+        }
+        return anzahl;
+    }
+    
+    /**
+     * Eine vollstaendige Sitzung abschliessen: Ein Hard Link auf die temporaere Datei wird ohne Kopieren als
+     * Upload uebernommen, lediglich fuer die SHA-256-Pruefsumme wird sie einmal sequentiell gelesen.
+     * Die temporaere Datei wird erst nach dem Commit geloescht. Nach einem Rollback, z.B. bei einer parallelen
+     * Aenderung des Kunden, gibt es die Sitzung wieder und sie kann erneut abgeschlossen werden.
+     * @param chunkedUpload Die Sitzung
+     * @return Die hochgeladene Datei, die vom Aufrufer mit close() freigegeben werden muss,
+     *         oder empty(), falls noch Abschnitte fehlen
+     * @throws FileTooLargeException Falls die Datei groesser als das Limit ist
+     */
+    public Optional<Upload> commit(ChunkedUpload chunkedUpload) {
+        final Lock lock = chunkedUpload.getLock().writeLock();
+        lock.lock();
+        try {
+            if (!chunkedUpload.isVollstaendig() || !sitzungen.remove(chunkedUpload.getId(), chunkedUpload)) {
+                return empty();
+            }
+        } finally {
+            lock.unlock();
+        }
+        
+        final FileHelper fileHelper = fileHelperInstance.get();
+        final Path tmpLink;
+        try {
+            tmpLink = fileHelper.createTmpLink(chunkedUpload.getPath());
+        } catch (IOException e) {
+            sitzungen.put(chunkedUpload.getId(), chunkedUpload);
+            throw new ShopRuntimeException(e);
+        }
+        final AfterCommit afterCommit = afterCommitInstance.get();
+        afterCommit.run(() -> delete(chunkedUpload));
+        afterCommit.runAfterRollback(() -> wiederherstellen(chunkedUpload));
+        
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("Sitzung abgeschlossen: " + chunkedUpload);
+        }
+        return of(fileHelper.adopt(tmpLink));
+    }
+    
+    // Der Upload kann als Hard Link in einen Inhalt verschoben worden sein, der auch nach dem Rollback
+    // erhalten bleibt: erneut gesendete Abschnitte duerfen ihn nicht veraendern
+    private void wiederherstellen(ChunkedUpload chunkedUpload) {
+        try {
+            fileHelperInstance.get().entkoppeln(chunkedUpload.getPath());
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "Sitzung kann nach dem Rollback nicht wiederhergestellt werden: " + chunkedUpload, e);
+            delete(chunkedUpload);
+            return;
+        }
+        sitzungen.put(chunkedUpload.getId(), chunkedUpload);
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("Sitzung nach Rollback wiederhergestellt: " + chunkedUpload);
+        }
+    }
+    
+    /**
+     * Eine Sitzung abbrechen und die temporaere Datei loeschen
+     * @param chunkedUpload Die Sitzung
+     */
+    public void abort(ChunkedUpload chunkedUpload) {
+        final Lock lock = chunkedUpload.getLock().writeLock();
+        lock.lock();
+        try {
+            if (sitzungen.remove(chunkedUpload.getId(), chunkedUpload)) {
+                delete(chunkedUpload);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Sitzungen verwerfen, die seit Ablauf der Frist nicht mehr aktiv waren
+     * @return Anzahl der verworfenen Sitzungen
+     */
+    public int aufraeumen() {
+        final long grenze = System.currentTimeMillis() - FRIST_MILLIS;
+        int anzahl = 0;
+        for (ChunkedUpload chunkedUpload : sitzungen.values()) {
+            if (chunkedUpload.getLetzteAktivitaet() < grenze) {
+                abort(chunkedUpload);
+                anzahl++;
+            }
+        }
+        // temporaere Dateien von Sitzungen vor einem Neustart
+        fileHelperInstance.get().deleteTmpFiles(FRIST_MILLIS);
+        return anzahl;
+    }
+    
+    private static void delete(ChunkedUpload chunkedUpload) {
+        try {
+            Files.deleteIfExists(chunkedUpload.getPath());
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "Fehler beim Loeschen der Datei " + chunkedUpload.getPath(), e);
+        }
+    }
+}
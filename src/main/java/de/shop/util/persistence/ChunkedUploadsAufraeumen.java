@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.lang.invoke.MethodHandles;
+import java.util.logging.Logger;
+import javax.ejb.Schedule;
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+
+/**
+ * Periodisches Verwerfen nicht mehr aktiver Sitzungen zum Hochladen in Abschnitten.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Stateless
+public class ChunkedUploadsAufraeumen {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    @Inject
+    ChunkedUploads chunkedUploads;
+    
+    @Schedule(hour = "*", minute = "15", persistent = false)
+    public void aufraeumen() {
+        final int anzahl = chunkedUploads.aufraeumen();
+        if (anzahl > 0) {
+            LOGGER.info(anzahl + " Sitzungen zum Hochladen in Abschnitten verworfen");
+        }
+    }
+}
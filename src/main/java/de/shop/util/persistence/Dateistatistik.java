@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import static javax.xml.bind.annotation.XmlAccessType.FIELD;
+
+/**
+ * Momentaufnahme der Kennzahlen zum Abspeichern der Dateien fuer die Web-Anwendung, z.B. fuer den Betrieb:
+ * eine dauerhaft volle Warteschlange oder viele fehlgeschlagene Auftraege deuten auf ein langsames oder
+ * fehlerhaftes Dateisystem hin. Eine niedrige Trefferquote des MediaCache bei vollem Speicher deutet auf
+ * zu wenige Slabs hin.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@XmlRootElement
+@XmlAccessorType(FIELD)
+public class Dateistatistik {
+    private int warteschlangenLaenge;
+    private int maxAuftraege;
+    private long eingereiht;
+    private long zusammengefasst;
+    private long geschrieben;
+    private long direktGeschrieben;
+    private long wiederholt;
+    private long fehlgeschlagen;
+    private long cacheTreffer;
+    private long cacheFehlschlaege;
+    private double cacheTrefferquote;
+    private long cacheVerdraengt;
+    private long cacheResidentBytes;
+    private long cacheAllocatedBytes;
+    private int cacheEintraege;
+    
+    public Dateistatistik() {
+        super();
+    }
+    
+    /**
+     * Konstruktor fuer eine Momentaufnahme
+     * @param fileStoreQueue Warteschlange fuer das Abspeichern der Dateien
+     * @param mediaCache Cache fuer haeufig angeforderte Dateien
+     */
+    public Dateistatistik(FileStoreQueue fileStoreQueue, MediaCache mediaCache) {
+        super();
+        warteschlangenLaenge = fileStoreQueue.getWarteschlangenLaenge();
+        maxAuftraege = fileStoreQueue.getMaxAuftraege();
+        eingereiht = fileStoreQueue.getEingereiht();
+        zusammengefasst = fileStoreQueue.getZusammengefasst();
+        geschrieben = fileStoreQueue.getGeschrieben();
+        direktGeschrieben = fileStoreQueue.getDirektGeschrieben();
+        wiederholt = fileStoreQueue.getWiederholt();
+        fehlgeschlagen = fileStoreQueue.getFehlgeschlagen();
+        cacheTreffer = mediaCache.getTreffer();
+        cacheFehlschlaege = mediaCache.getFehlschlaege();
+        cacheTrefferquote = mediaCache.getTrefferquote();
+        cacheVerdraengt = mediaCache.getVerdraengt();
+        cacheResidentBytes = mediaCache.getResidentBytes();
+        cacheAllocatedBytes = mediaCache.getAllocatedBytes();
+        cacheEintraege = mediaCache.getAnzahlEintraege();
+    }
+    
+    /**
+     * @return Anzahl der anstehenden Auftraege in FileStoreQueue
+     */
+    public int getWarteschlangenLaenge() {
+        return warteschlangenLaenge;
+    }
+    
+    public int getMaxAuftraege() {
+        return maxAuftraege;
+    }
+    
+    public long getEingereiht() {
+        return eingereiht;
+    }
+    
+    public long getZusammengefasst() {
+        return zusammengefasst;
+    }
+    
+    public long getGeschrieben() {
+        return geschrieben;
+    }
+    
+    /**
+     * @return Anzahl der Dateien, die wegen voller Warteschlange vom Aufrufer geschrieben wurden
+     */
+    public long getDirektGeschrieben() {
+        return direktGeschrieben;
+    }
+    
+    public long getWiederholt() {
+        return wiederholt;
+    }
+    
+    public long getFehlgeschlagen() {
+        return fehlgeschlagen;
+    }
+    
+    public long getCacheTreffer() {
+        return cacheTreffer;
+    }
+    
+    public long getCacheFehlschlaege() {
+        return cacheFehlschlaege;
+    }
+    
+    /**
+     * @return Anteil der Treffer im MediaCache zwischen 0 und 1
+     */
+    public double getCacheTrefferquote() {
+        return cacheTrefferquote;
+    }
+    
+    public long getCacheVerdraengt() {
+        return cacheVerdraengt;
+    }
+    
+    /**
+     * @return Anzahl der Bytes, die von Eintraegen im MediaCache belegt sind
+     */
+    public long getCacheResidentBytes() {
+        return cacheResidentBytes;
+    }
+    
+    /**
+     * @return Anzahl der Bytes, die der MediaCache ausserhalb des Heaps angelegt hat
+     */
+    public long getCacheAllocatedBytes() {
+        return cacheAllocatedBytes;
+    }
+    
+    public int getCacheEintraege() {
+        return cacheEintraege;
+    }
+    
+    @Override
+    public String toString() {
+        return "Dateistatistik {warteschlangenLaenge=" + warteschlangenLaenge + ", maxAuftraege=" + maxAuftraege
+               + ", eingereiht=" + eingereiht + ", zusammengefasst=" + zusammengefasst
+               + ", geschrieben=" + geschrieben + ", direktGeschrieben=" + direktGeschrieben
+               + ", wiederholt=" + wiederholt + ", fehlgeschlagen=" + fehlgeschlagen
+               + ", cacheTreffer=" + cacheTreffer + ", cacheFehlschlaege=" + cacheFehlschlaege
+               + ", cacheTrefferquote=" + cacheTrefferquote + ", cacheVerdraengt=" + cacheVerdraengt
+               + ", cacheResidentBytes=" + cacheResidentBytes + ", cacheAllocatedBytes=" + cacheAllocatedBytes
+               + ", cacheEintraege=" + cacheEintraege + '}';
+    }
+}
@@ -22,18 +22,21 @@ import java.lang.invoke.MethodHandles;
 import java.util.Objects;
 import java.util.logging.Logger;
 import javax.enterprise.inject.Vetoed;
-import javax.persistence.Basic;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
-import javax.persistence.Lob;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlTransient;
 
 import static de.shop.util.Constants.HASH_PRIME;
 import static java.util.logging.Level.FINEST;
+import static javax.persistence.FetchType.LAZY;
 import static javax.xml.bind.annotation.XmlAccessType.FIELD;
 
 
@@ -42,7 +45,12 @@ import static javax.xml.bind.annotation.XmlAccessType.FIELD;
  */
 @Entity
 // "file" ist in Oracle kein gueltiger Tabellenname
-@Table(name = "file_tbl")
+@Table(name = "file_tbl", indexes = @Index(columnList = "checksum"))
+@NamedQuery(name  = File.FIND_AB_ID,
+            query = "SELECT   f"
+                    + " FROM  File f JOIN FETCH f.content"
+                    + " WHERE f.id > :" + File.PARAM_ID
+                    + " ORDER BY f.id")
 @XmlAccessorType(FIELD)
 @Vetoed
 public class File extends AbstractVersionedAuditable {
@@ -52,6 +60,10 @@ public class File extends AbstractVersionedAuditable {
 
     public static final int FILENAME_LENGTH_MAX = 128;
     
+    private static final String PREFIX = "File.";
+    public static final String FIND_AB_ID = PREFIX + "findAbId";
+    public static final String PARAM_ID = "id";
+    
     @Id
     @GeneratedValue
     @Column(nullable = false, updatable = false)
@@ -59,12 +71,24 @@ public class File extends AbstractVersionedAuditable {
     @JsonIgnore
     private long id;
     
-    @Lob
-    @Basic(optional = false)
+    // Der Inhalt wird ueber die SHA-256-Pruefsumme referenziert: identische Dateien mehrerer Kunden
+    // werden nur einmal abgespeichert
+    @ManyToOne(fetch = LAZY, optional = false)
+    @JoinColumn(name = "checksum")
+    @XmlTransient
+    @JsonIgnore
+    private FileContent content;
+    
+    // Nur lesend abgebildeter Fremdschluessel: die Checksum ist ohne Laden des Inhalts verfuegbar
+    @Column(name = "checksum", length = FileContent.CHECKSUM_LENGTH, insertable = false, updatable = false)
     @XmlTransient
     @JsonIgnore
-    // Spaltentyp OID bei PostgreSQL, BLOB bei Oracle, LONGBLOB bei MySQL, BLOB bei H2
-    private byte[] bytes;
+    private String checksum;
+    
+    @Column(nullable = false)
+    @XmlTransient
+    @JsonIgnore
+    private long groesse;
     
     @Column(length = FILENAME_LENGTH_MAX, unique = true, nullable = false)
     @XmlTransient
@@ -85,21 +109,25 @@ public class File extends AbstractVersionedAuditable {
         super();
     }
     
-    public File(byte[] bytes, String dateiname, MimeType mimeType) {
+    public File(FileContent content, String dateiname, MimeType mimeType) {
         super();
-        set(bytes, dateiname, mimeType);
+        set(content, dateiname, mimeType);
     }
 
     public long getId() {
         return id;
     }
 
-    public byte[] getBytes() {
-        return bytes;
+    public FileContent getContent() {
+        return content;
     }
-
-    public void setBytes(byte[] bytes) {
-        this.bytes = bytes;
+    
+    public long getGroesse() {
+        return groesse;
+    }
+    
+    public String getChecksum() {
+        return checksum;
     }
     
     public String getFilename() {
@@ -126,9 +154,17 @@ public class File extends AbstractVersionedAuditable {
         this.multimediaType = multimediaType;
     }
 
-    public final void set(byte[] bytes, String filename, MimeType mimeType) {
+    /**
+     * Einen (evtl. bereits vorhandenen) Inhalt referenzieren
+     * @param content Der Inhalt
+     * @param filename Der Dateiname
+     * @param mimeType Der MIME-Type
+     */
+    public final void set(FileContent content, String filename, MimeType mimeType) {
         // Hibernate braucht den Aufruf der set-Methoden, um ein Update (Dirty-Flag!) zu erkennen
-        setBytes(bytes);
+        this.content = content;
+        checksum = content.getChecksum();
+        groesse = content.getGroesse();
         setFilename(filename);
         setMimeType(mimeType);
         setMultimediaType(mimeType.getMultimediaType());
@@ -139,7 +175,6 @@ public class File extends AbstractVersionedAuditable {
 
     @Override
     public String toString() {
-        final int groesse = bytes == null ? 0 : bytes.length;
         return "File {id=" + id + ", groesse=" + groesse
                + ", filename=" + filename + ", mimeType=" + mimeType + ", multimediaType=" + multimediaType
                + ", " + super.toString() + '}';
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import static de.shop.util.Constants.STREAM_CHUNK_SIZE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Abgleich der Dateien fuer die Web-Anwendung unter filesDb mit den Verwaltungsdaten in der DB beim Start,
+ * z.B. nach dem Wiederherstellen eines Backups oder nach Schreibfehlern. Die Verwaltungsdaten werden
+ * abschnittsweise im Hintergrund gelesen, fehlende oder veraltete Dateien werden ueber die FileStoreQueue
+ * parallel verlinkt. Der Start der Anwendung wird dadurch nicht verzoegert.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Singleton
+@Startup
+public class FileAbgleich {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    @Inject
+    Instance<FileContentBroker> fileContentBrokerInstance;
+    
+    @Inject
+    Instance<FileHelper> fileHelperInstance;
+    
+    @Inject
+    Instance<FileStoreQueue> fileStoreQueueInstance;
+    
+    @Inject
+    Instance<ManagedExecutorService> managedExecutorServiceInstance;
+    
+    @PostConstruct
+    public void abgleichen() {
+        managedExecutorServiceInstance.get().execute(this::abgleichenImHintergrund);
+    }
+    
+    private void abgleichenImHintergrund() {
+        final FileContentBroker fileContentBroker = fileContentBrokerInstance.get();
+        final FileHelper fileHelper = fileHelperInstance.get();
+        final FileStoreQueue fileStoreQueue = fileStoreQueueInstance.get();
+        final AtomicInteger anzahl = new AtomicInteger();
+        final AtomicInteger eingereiht = new AtomicInteger();
+        try {
+            KeysetStream.of(id -> fileContentBroker.findFilesAbId(id, STREAM_CHUNK_SIZE), File::getId,
+                            STREAM_CHUNK_SIZE)
+                        .peek(file -> anzahl.incrementAndGet())
+                        .filter(file -> !fileHelper.isOnDisk(file.getFilename(), file.getChecksum()))
+                        .forEach(file -> {
+                eingereiht.incrementAndGet();
+                // Bei voller Warteschlange wird hier direkt geschrieben und das Lesen dadurch gebremst
+                fileStoreQueue.abspeichern(file.getFilename(), file.getChecksum());
+            });
+            LOGGER.info("Abgleich von " + anzahl.get() + " Dateien mit der DB: " + eingereiht.get()
+                        + " Dateien werden abgespeichert, " + fileStoreQueue);
+        } catch (RuntimeException e) {
+            LOGGER.log(WARNING, "Fehler beim Abgleich der Dateien mit der DB", e);
+        } finally {
+            fileContentBrokerInstance.destroy(fileContentBroker);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import de.shop.util.ShopRuntimeException;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.Objects;
+import javax.enterprise.inject.Vetoed;
+import javax.persistence.Basic;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Lob;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+
+import static de.shop.util.Constants.HASH_PRIME;
+import static javax.persistence.FetchType.LAZY;
+import static javax.persistence.TemporalType.TIMESTAMP;
+
+
+/**
+ * Der Inhalt einer Multimedia-Datei, adressiert durch seine SHA-256-Pruefsumme: Identische Inhalte werden
+ * nur einmal abgespeichert und von beliebig vielen Objekten der Klasse File referenziert.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Entity
+@Table(name = "file_content", indexes = @Index(columnList = "referenzen, freigegeben"))
+@NamedQueries({
+    @NamedQuery(name  = FileContent.REFERENZ_HINZUFUEGEN,
+                query = "UPDATE FileContent c"
+                        + " SET   c.referenzen = c.referenzen + 1"
+                        + " WHERE c.checksum = :" + FileContent.PARAM_CHECKSUM),
+    @NamedQuery(name  = FileContent.REFERENZ_ENTFERNEN,
+                query = "UPDATE FileContent c"
+                        + " SET   c.referenzen = c.referenzen - 1,"
+                        + "       c.freigegeben = :" + FileContent.PARAM_ZEITPUNKT
+                        + " WHERE c.checksum = :" + FileContent.PARAM_CHECKSUM),
+    @NamedQuery(name  = FileContent.UNREFERENZIERT,
+                query = "SELECT   c.checksum"
+                        + " FROM  FileContent c"
+                        + " WHERE c.referenzen <= 0"
+                        + "       AND c.freigegeben < :" + FileContent.PARAM_ZEITPUNKT),
+    // Die Bedingungen werden beim DELETE erneut geprueft, falls zwischenzeitlich eine Referenz hinzugekommen ist.
+    // Kein korrelierter Subquery, weil Hibernate bei DELETE den Alias der Haupttabelle nicht uebernimmt.
+    @NamedQuery(name  = FileContent.DELETE_UNREFERENZIERT,
+                query = "DELETE FROM FileContent c"
+                        + " WHERE c.checksum = :" + FileContent.PARAM_CHECKSUM
+                        + "       AND c.referenzen <= 0"
+                        + "       AND NOT EXISTS (SELECT f.id FROM File f"
+                        + "                       WHERE f.content.checksum = :" + FileContent.PARAM_CHECKSUM + ")"),
+    @NamedQuery(name  = FileContent.ANZAHL_FILES,
+                query = "SELECT   COUNT(f.id)"
+                        + " FROM  File f"
+                        + " WHERE f.content.checksum = :" + FileContent.PARAM_CHECKSUM),
+    @NamedQuery(name  = FileContent.CHECKSUMS_IN_DB,
+                query = "SELECT   c.checksum"
+                        + " FROM  FileContent c"
+                        + " WHERE c.bytes IS NOT NULL"),
+    @NamedQuery(name  = FileContent.AUSGELAGERT,
+                query = "UPDATE FileContent c"
+                        + " SET   c.bytes = NULL"
+                        + " WHERE c.checksum = :" + FileContent.PARAM_CHECKSUM)
+})
+@Vetoed
+public class FileContent extends AbstractAuditable {
+    public static final int CHECKSUM_LENGTH = 64;
+    
+    private static final String PREFIX = "FileContent.";
+    public static final String REFERENZ_HINZUFUEGEN = PREFIX + "referenzHinzufuegen";
+    public static final String REFERENZ_ENTFERNEN = PREFIX + "referenzEntfernen";
+    public static final String UNREFERENZIERT = PREFIX + "unreferenziert";
+    public static final String DELETE_UNREFERENZIERT = PREFIX + "deleteUnreferenziert";
+    public static final String ANZAHL_FILES = PREFIX + "anzahlFiles";
+    public static final String CHECKSUMS_IN_DB = PREFIX + "checksumsInDb";
+    public static final String AUSGELAGERT = PREFIX + "ausgelagert";
+    public static final String PARAM_CHECKSUM = "checksum";
+    public static final String PARAM_ZEITPUNKT = "zeitpunkt";
+    
+    // SHA-256 als Hexadezimalstring
+    @Id
+    @Column(length = CHECKSUM_LENGTH, nullable = false, updatable = false)
+    private String checksum;
+    
+    // Die Bytes liegen im Dateisystem unter filesDb. Nur Altdaten haben noch einen Blob, bis sie beim Start
+    // durch FileContentMigration ausgelagert sind. Dadurch enthalten weder Datensaetze noch DB-Backups Videos.
+    @Lob
+    @Basic(fetch = LAZY)
+    // Spaltentyp OID bei PostgreSQL, BLOB bei Oracle, LONGBLOB bei MySQL, BLOB bei H2
+    private Blob bytes;
+    
+    @Column(nullable = false, updatable = false)
+    private long groesse;
+    
+    // Nur durch REFERENZ_HINZUFUEGEN und REFERENZ_ENTFERNEN geaendert, damit parallele Uploads sich nicht
+    // gegenseitig ueberschreiben
+    @Column(nullable = false, updatable = false)
+    private int referenzen;
+    
+    // Zeitpunkt, zu dem zuletzt eine Referenz entfernt wurde: Frist fuer das Aufraeumen
+    @Temporal(TIMESTAMP)
+    @Column(updatable = false)
+    private Date freigegeben;
+    
+    public FileContent() {
+        super();
+    }
+    
+    /**
+     * Konstruktor fuer einen neuen Inhalt. Es werden nur die Verwaltungsdaten abgespeichert,
+     * die Bytes werden von FileHelper in das Dateisystem verschoben. Bis zur ersten Referenz gilt der Inhalt
+     * als freigegeben, damit er aufgeraeumt wird, falls der Upload nicht abgeschlossen wird.
+     * @param upload Die hochgeladene Datei
+     */
+    public FileContent(Upload upload) {
+        super();
+        checksum = upload.getChecksum();
+        groesse = upload.getSize();
+        freigegeben = new Date();
+    }
+    
+    public String getChecksum() {
+        return checksum;
+    }
+    
+    public long getGroesse() {
+        return groesse;
+    }
+    
+    public int getReferenzen() {
+        return referenzen;
+    }
+    
+    /**
+     * Abfrage, ob der Inhalt noch als Blob in der DB liegt (Altdaten)
+     * @return true, falls der Inhalt noch nicht ausgelagert ist
+     */
+    public boolean isInDb() {
+        return bytes != null;
+    }
+    
+    /**
+     * Den Blob von Altdaten als Datenstrom lesen. Der Datenstrom ist nur innerhalb der Transaktion gueltig.
+     * @return Datenstrom fuer den Inhalt
+     */
+    public InputStream getInputStream() {
+        try {
+            return bytes.getBinaryStream();
+        } catch (SQLException e) {
+            throw new ShopRuntimeException(e);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "FileContent {checksum=" + checksum + ", groesse=" + groesse + ", referenzen=" + referenzen
+               + ", freigegeben=" + freigegeben + ", " + super.toString() + '}';
+    }
+    
+    @Override
+    public int hashCode() {
+        final int prime = HASH_PRIME;
+        return prime + Objects.hashCode(checksum);
+    }
+    
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FileContent)) {
+            return false;
+        }
+        final FileContent other = (FileContent) obj;
+        return Objects.equals(checksum, other.getChecksum());
+    }
+}
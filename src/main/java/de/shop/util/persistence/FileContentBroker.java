@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import de.shop.util.ShopRuntimeException;
+import de.shop.util.interceptor.Log;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+import javax.enterprise.context.Dependent;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import javax.transaction.Transactional;
+
+import static java.util.logging.Level.FINER;
+import static java.util.logging.Level.FINEST;
+import static javax.persistence.LockModeType.PESSIMISTIC_WRITE;
+import static javax.transaction.Transactional.TxType.REQUIRES_NEW;
+
+/**
+ * Inhalte von Multimedia-Dateien adressiert durch ihre SHA-256-Pruefsumme verwalten: Bekannte Inhalte werden
+ * nur referenziert, nicht referenzierte Inhalte werden nach einer Frist aufgeraeumt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Dependent
+@Log
+public class FileContentBroker {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    // Frist, bevor ein nicht mehr referenzierter Inhalt geloescht wird, z.B. fuer erneutes Hochladen
+    private static final long FRIST_MILLIS = 60 * 60 * 1000L;
+    
+    private final EntityManager em;
+    private final Instance<FileHelper> fileHelperInstance;
+    private final Instance<AfterCommit> afterCommitInstance;
+    private final Instance<ImageDerivatives> imageDerivativesInstance;
+    private final Instance<FileStoreQueue> fileStoreQueueInstance;
+    private final Instance<FileContentBroker> fileContentBrokerInstance;
+    
+    /**
+     * Package-private Konstruktor mit "Constructor Injection" f&uuml;r CDI
+     * @param em zu injizierendes Objekt f&uuml;r EntityManager
+     * @param fileHelperInstance zu injizierendes Instance-Objekt f&uuml;r FileHelper
+     * @param afterCommitInstance zu injizierendes Instance-Objekt f&uuml;r AfterCommit
+     * @param imageDerivativesInstance zu injizierendes Instance-Objekt f&uuml;r ImageDerivatives
+     * @param fileStoreQueueInstance zu injizierendes Instance-Objekt f&uuml;r FileStoreQueue
+     * @param fileContentBrokerInstance zu injizierendes Instance-Objekt f&uuml;r FileContentBroker, damit
+     *        anlegen() ueber den Interceptor fuer @Transactional aufgerufen wird
+     */
+    @Inject
+    FileContentBroker(@DefaultEM EntityManager em,
+                      Instance<FileHelper> fileHelperInstance,
+                      Instance<AfterCommit> afterCommitInstance,
+                      Instance<ImageDerivatives> imageDerivativesInstance,
+                      Instance<FileStoreQueue> fileStoreQueueInstance,
+                      Instance<FileContentBroker> fileContentBrokerInstance) {
+        super();
+        this.em = em;
+        this.fileHelperInstance = fileHelperInstance;
+        this.afterCommitInstance = afterCommitInstance;
+        this.imageDerivativesInstance = imageDerivativesInstance;
+        this.fileStoreQueueInstance = fileStoreQueueInstance;
+        this.fileContentBrokerInstance = fileContentBrokerInstance;
+    }
+    
+    /**
+     * Den Inhalt zu einer hochgeladenen Datei ermitteln bzw. neu anlegen. Bei einem bekannten Inhalt
+     * wird die Datei nicht erneut abgespeichert. Ein neuer Inhalt hat nur Verwaltungsdaten in der DB.
+     * Parallele Uploads mit identischem Inhalt sind unkritisch: Der neue Inhalt wird in einer eigenen
+     * Transaktion angelegt und bei einem doppelten Primaerschluessel wird der parallel angelegte Inhalt gelesen.
+     * @param upload Die hochgeladene Datei
+     * @return Der vorhandene oder neu angelegte Inhalt
+     */
+    public FileContent findOrCreate(Upload upload) {
+        final String checksum = upload.getChecksum();
+        final FileContent vorhanden = em.find(FileContent.class, checksum);
+        if (vorhanden != null) {
+            if (LOGGER.isLoggable(FINER)) {
+                LOGGER.finer("Bekannter Inhalt: " + vorhanden);
+            }
+            return vorhanden;
+        }
+        
+        try {
+            fileContentBrokerInstance.get().anlegen(upload);
+        } catch (PersistenceException e) {
+            // Ein paralleler Upload hat den Inhalt inzwischen angelegt
+            final FileContent parallel = em.find(FileContent.class, checksum);
+            if (parallel == null) {
+                throw e;
+            }
+            if (LOGGER.isLoggable(FINER)) {
+                LOGGER.finer("Parallel angelegter Inhalt: " + parallel);
+            }
+            return parallel;
+        }
+        
+        final FileContent content = em.find(FileContent.class, checksum);
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("Neuer Inhalt: " + content);
+        }
+        return content;
+    }
+    
+    /**
+     * Einen neuen Inhalt in einer eigenen Transaktion anlegen, damit ein doppelter Primaerschluessel durch einen
+     * parallelen Upload nicht die Transaktion des Aufrufers zum Rollback markiert. Wird die Transaktion des
+     * Aufrufers spaeter zurueckgerollt, bleibt der Inhalt ohne Referenz und wird von aufraeumen() entfernt.
+     * @param upload Die hochgeladene Datei
+     * @throws PersistenceException Falls es den Inhalt bereits gibt
+     */
+    @Transactional(REQUIRES_NEW)
+    public void anlegen(Upload upload) {
+        em.persist(new FileContent(upload));
+        // Einen doppelten Primaerschluessel schon hier und nicht erst beim Commit erkennen
+        em.flush();
+    }
+    
+    /**
+     * Den Inhalt einer hochgeladenen Datei vor dem Commit im Dateisystem abspeichern. Wird die Transaktion
+     * zurueckgerollt, wird ein neu verschobener Inhalt nur dann geloescht, wenn ihn kein paralleler Upload
+     * inzwischen referenziert, denn der Inhalt wird durch anlegen() schon vor dem Commit sichtbar.
+     * @param upload Die hochgeladene Datei
+     */
+    public void abspeichern(Upload upload) {
+        if (!fileHelperInstance.get().storeContent(upload)) {
+            return;
+        }
+        final String checksum = upload.getChecksum();
+        final FileContentBroker fileContentBroker = fileContentBrokerInstance.get();
+        afterCommitInstance.get().runAfterRollback(() -> fileContentBroker.loeschenNachRollback(checksum));
+    }
+    
+    /**
+     * Einen nach einem Rollback nicht referenzierten Inhalt aus dem Dateisystem loeschen. Die Sperre auf den
+     * Inhalt wartet auf einen parallelen Upload, der seine Referenz bereits gezaehlt hat. Ein Upload, der seine
+     * Referenz erst danach zaehlt, findet den Inhalt nicht mehr im Dateisystem und verschiebt seine eigene Datei.
+     * @param checksum Die Checksum des Inhalts
+     */
+    @Transactional(REQUIRES_NEW)
+    public void loeschenNachRollback(String checksum) {
+        final FileContent content = em.find(FileContent.class, checksum, PESSIMISTIC_WRITE);
+        if (content == null) {
+            // Ohne Verwaltungsdaten wurde der Inhalt bereits von aufraeumen() entfernt
+            return;
+        }
+        final long anzahlFiles = em.createNamedQuery(FileContent.ANZAHL_FILES, Long.class)
+                                   .setParameter(FileContent.PARAM_CHECKSUM, checksum)
+                                   .getSingleResult();
+        if (content.getReferenzen() > 0 || anzahlFiles > 0) {
+            if (LOGGER.isLoggable(FINER)) {
+                LOGGER.finer("Inhalt nach Rollback weiterhin referenziert: " + content);
+            }
+            return;
+        }
+        // Innerhalb der Transaktion, damit ein paralleler Upload erst danach seine Referenz zaehlt
+        fileHelperInstance.get().deleteContent(checksum);
+    }
+    
+    /**
+     * Nach dem Commit im Hintergrund die Datei fuer die Web-Anwendung auf den Inhalt verlinken und die
+     * verkleinerten Bilder erzeugen, damit der Request nicht darauf wartet und bei einem Rollback
+     * nichts geaendert wird.
+     * @param file Die Verwaltungsdaten mit einem bereits abgespeicherten Inhalt
+     */
+    public void abspeichernNachCommit(File file) {
+        final String filename = file.getFilename();
+        final String checksum = file.getChecksum();
+        final MimeType mimeType = file.getMimeType();
+        final FileStoreQueue fileStoreQueue = fileStoreQueueInstance.get();
+        final ImageDerivatives imageDerivatives = imageDerivativesInstance.get();
+        afterCommitInstance.get().run(() -> {
+            fileStoreQueue.abspeichern(filename, checksum);
+            imageDerivatives.erzeugen(checksum, mimeType);
+        });
+    }
+    
+    /**
+     * Verwaltungsdaten von Dateien abschnittsweise nach aufsteigender ID lesen, z.B. fuer KeysetStream
+     * @param id Die ID der zuletzt gelesenen Datei bzw. 0
+     * @param anzahl Max. Anzahl der Dateien
+     * @return Die naechsten Dateien
+     */
+    public List<File> findFilesAbId(long id, int anzahl) {
+        return em.createNamedQuery(File.FIND_AB_ID, File.class)
+                 .setParameter(File.PARAM_ID, id)
+                 .setMaxResults(anzahl)
+                 .getResultList();
+    }
+    
+    /**
+     * Eine zusaetzliche Referenz auf einen Inhalt zaehlen
+     * @param content Der referenzierte Inhalt
+     * @throws ConcurrentDeletedException Falls aufraeumen() den Inhalt inzwischen geloescht hat; ein erneuter
+     *         Upload legt ihn wieder an
+     */
+    public void referenzHinzufuegen(FileContent content) {
+        final int anzahl = em.createNamedQuery(FileContent.REFERENZ_HINZUFUEGEN)
+                             .setParameter(FileContent.PARAM_CHECKSUM, content.getChecksum())
+                             .executeUpdate();
+        if (anzahl == 0) {
+            // Ohne Abbruch wuerde das Abspeichern der Datei am Fremdschluessel scheitern
+            throw new ConcurrentDeletedException(content.getChecksum());
+        }
+    }
+    
+    /**
+     * Eine entfernte Referenz auf einen Inhalt zaehlen
+     * @param content Der nicht mehr referenzierte Inhalt oder null
+     */
+    public void referenzEntfernen(FileContent content) {
+        if (content == null) {
+            return;
+        }
+        em.createNamedQuery(FileContent.REFERENZ_ENTFERNEN)
+          .setParameter(FileContent.PARAM_CHECKSUM, content.getChecksum())
+          .setParameter(FileContent.PARAM_ZEITPUNKT, new Date())
+          .executeUpdate();
+    }
+    
+    /**
+     * Die Checksums aller Inhalte ermitteln, die noch als Blob in der DB liegen
+     * @return Liste der Checksums
+     */
+    public List<String> findChecksumsInDb() {
+        return em.createNamedQuery(FileContent.CHECKSUMS_IN_DB, String.class)
+                 .getResultList();
+    }
+    
+    /**
+     * Den Blob eines Inhalts in das Dateisystem auslagern und danach in der DB entfernen. Jeder Inhalt wird in
+     * einer eigenen Transaktion ausgelagert, damit ein Fehler nicht die bereits ausgelagerten Inhalte betrifft
+     * und die Transaktionen kurz bleiben. Ein erneuter Aufruf ist unkritisch.
+     * @param checksum Die Checksum des Inhalts
+     * @return true, falls der Inhalt ausgelagert wurde
+     */
+    @Transactional(REQUIRES_NEW)
+    public boolean auslagern(String checksum) {
+        final FileContent content = em.find(FileContent.class, checksum);
+        if (content == null || !content.isInDb()) {
+            return false;
+        }
+        
+        try {
+            fileHelperInstance.get().auslagern(content);
+        } catch (IOException e) {
+            throw new ShopRuntimeException(e);
+        }
+        // Erst nach dem Abspeichern im Dateisystem: bei einem Fehler bleibt der Blob erhalten
+        em.createNamedQuery(FileContent.AUSGELAGERT)
+          .setParameter(FileContent.PARAM_CHECKSUM, checksum)
+          .executeUpdate();
+        if (LOGGER.isLoggable(FINEST)) {
+            LOGGER.finest("Inhalt ausgelagert: " + content);
+        }
+        return true;
+    }
+    
+    /**
+     * Inhalte loeschen, die seit Ablauf der Frist nicht mehr referenziert werden, und die zugehoerigen
+     * Dateien nach dem Commit aus dem Dateisystem entfernen.
+     * @return Anzahl der geloeschten Inhalte
+     */
+    public int aufraeumen() {
+        final Date grenze = new Date(System.currentTimeMillis() - FRIST_MILLIS);
+        final List<String> checksums = em.createNamedQuery(FileContent.UNREFERENZIERT, String.class)
+                                         .setParameter(FileContent.PARAM_ZEITPUNKT, grenze)
+                                         .getResultList();
+        if (checksums.isEmpty()) {
+            return 0;
+        }
+        
+        final FileHelper fileHelper = fileHelperInstance.get();
+        final AfterCommit afterCommit = afterCommitInstance.get();
+        int anzahl = 0;
+        for (String checksum : checksums) {
+            final int deleted = em.createNamedQuery(FileContent.DELETE_UNREFERENZIERT)
+                                  .setParameter(FileContent.PARAM_CHECKSUM, checksum)
+                                  .executeUpdate();
+            if (deleted == 0) {
+                // inzwischen wieder referenziert
+                continue;
+            }
+            if (LOGGER.isLoggable(FINEST)) {
+                LOGGER.finest("Nicht referenzierter Inhalt geloescht: " + checksum);
+            }
+            afterCommit.run(() -> fileHelper.deleteContent(checksum));
+            anzahl++;
+        }
+        
+        LOGGER.info(anzahl + " nicht referenzierte Datei-Inhalte geloescht");
+        return anzahl;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import javax.annotation.PostConstruct;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Einmaliges Auslagern der Blobs von Altdaten aus der Tabelle file_content in das Dateisystem unter filesDb.
+ * Die Inhalte werden parallel in jeweils eigenen Transaktionen ausgelagert, ohne den Start der Anwendung
+ * zu blockieren. Bereits ausgelagerte Inhalte werden nicht erneut betrachtet, so dass der Aufruf bei jedem
+ * Start unkritisch ist.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@Singleton
+@Startup
+public class FileContentMigration {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    // Anzahl paralleler Auslagerungen: begrenzt die Last auf DB, Dateisystem und Thread-Pool
+    private static final int PARALLELITAET = 4;
+    
+    @Inject
+    FileContentBroker fileContentBroker;
+    
+    @Inject
+    Instance<FileContentBroker> fileContentBrokerInstance;
+    
+    @Inject
+    Instance<ManagedExecutorService> managedExecutorServiceInstance;
+    
+    @PostConstruct
+    private void postConstruct() {
+        migrieren();
+    }
+    
+    /**
+     * Alle Blobs im Hintergrund auslagern, ohne auf das Ende zu warten
+     * @return Future, das nach dem Auslagern aller Inhalte abgeschlossen ist, z.B. fuer Tests
+     */
+    public CompletableFuture<Void> migrieren() {
+        final List<String> checksums = fileContentBroker.findChecksumsInDb();
+        if (checksums.isEmpty()) {
+            LOGGER.info("Keine Datei-Inhalte in der DB auszulagern");
+            return CompletableFuture.completedFuture(null);
+        }
+        LOGGER.info(checksums.size() + " Datei-Inhalte werden aus der DB ausgelagert");
+        
+        final Queue<String> offen = new ConcurrentLinkedQueue<>(checksums);
+        final AtomicInteger anzahl = new AtomicInteger();
+        final AtomicInteger fehler = new AtomicInteger();
+        final ManagedExecutorService executor = managedExecutorServiceInstance.get();
+        final CompletableFuture<?>[] auslagerungen =
+            IntStream.range(0, Math.min(PARALLELITAET, checksums.size()))
+                     .mapToObj(i -> CompletableFuture.runAsync(() -> auslagern(offen, anzahl, fehler), executor))
+                     .toArray(CompletableFuture<?>[]::new);
+        return CompletableFuture.allOf(auslagerungen)
+                                .whenComplete((ergebnis, t) -> {
+            if (t != null) {
+                LOGGER.log(WARNING, "Fehler beim Auslagern der Datei-Inhalte", t);
+            }
+            LOGGER.info(anzahl.get() + " Datei-Inhalte aus der DB ausgelagert, " + fehler.get() + " Fehler");
+        });
+    }
+    
+    private void auslagern(Queue<String> offen, AtomicInteger anzahl, AtomicInteger fehler) {
+        final FileContentBroker broker = fileContentBrokerInstance.get();
+        try {
+            for (String checksum = offen.poll(); checksum != null; checksum = offen.poll()) {
+                try {
+                    if (broker.auslagern(checksum)) {
+                        anzahl.incrementAndGet();
+                    }
+                } catch (RuntimeException e) {
+                    // Der Blob bleibt erhalten und wird beim naechsten Start erneut ausgelagert
+                    fehler.incrementAndGet();
+                    LOGGER.log(WARNING, "Fehler beim Auslagern des Inhalts " + checksum, e);
+                }
+            }
+        } finally {
+            fileContentBrokerInstance.destroy(broker);
+        }
+    }
+}
@@ -17,18 +17,28 @@
 
 package de.shop.util.persistence;
 
+import de.shop.util.FileTooLargeException;
 import de.shop.util.ShopRuntimeException;
 import de.shop.util.interceptor.Log;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
 import java.net.URLConnection;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributeView;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.logging.Logger;
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.ApplicationScoped;
@@ -37,10 +47,14 @@ import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
 import static java.util.logging.Level.FINER;
 import static java.util.logging.Level.FINEST;
 import static java.util.logging.Level.WARNING;
+import static javax.xml.bind.DatatypeConverter.printHexBinary;
 
 
 /**
@@ -51,7 +65,6 @@ import static java.util.logging.Level.WARNING;
 public class FileHelper implements Serializable {
     private static final long serialVersionUID = 12904207356717310L;
     private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
-    private static final long CREATION_TIME_DELAY = 1000;
     
     // Zulaessige Extensionen fuer File Upload mit einer Webseite
     private static final String EXTENSIONEN = "/(\\.|\\/)(jpe?g|png|mp4|wav)$/";
@@ -59,9 +72,31 @@ public class FileHelper implements Serializable {
     // Zulaessige Extensionen fuer File Upload mit einer Webseite
     private static final long SIZE_LIMIT = 50 * 1024 * 1024L;
     
+    // Puffer beim Streamen hochgeladener Dateien: der Heap-Bedarf ist unabhaengig von der Dateigroesse
+    private static final int BUFFER_SIZE = 8 * 1024;
+    
+    // Unterverzeichnis fuer temporaere Dateien beim Hochladen: im selben Dateisystem wie die Zieldateien
+    private static final String UPLOAD_DIR = ".upload";
+    private static final String UPLOAD_PREFIX = "upload";
+    private static final String UPLOAD_SUFFIX = ".tmp";
+    
+    // Unterverzeichnis fuer die Inhalte, adressiert durch ihre SHA-256-Pruefsumme
+    private static final String CONTENT_DIR = ".content";
+    
+    // Anzahl der Hex-Ziffern fuer die Unterverzeichnisse der Inhalte: 256 Unterverzeichnisse
+    private static final int SHARD_LENGTH = 2;
+    
+    // Trennzeichen zwischen Pruefsumme und Groesse bei verkleinerten Bildern, z.B. <checksum>_small.jpg
+    private static final char DERIVAT_SEPARATOR = '_';
+    
+    private static final String CHECKSUM_ALGORITHM = "SHA-256";
+    
     // Verzeichnis fuer hochgeladene Dateien
     private transient Path path;
     
+    // Verzeichnis fuer temporaere Dateien beim Hochladen
+    private transient Path uploadPath;
+    
     FileHelper() {
         super();
     }
@@ -73,6 +108,7 @@ public class FileHelper implements Serializable {
         
         // Verzeichnis im Dateisystem des Betriebssystems
         path = Paths.get(System.getenv("JBOSS_HOME"), "filesDb", getAppName());
+        uploadPath = path.resolve(UPLOAD_DIR);
                 
         if (Files.exists(path)) {
             LOGGER.info("Verzeichnis fuer hochgeladene Dateien: " + path);
@@ -118,12 +154,25 @@ public class FileHelper implements Serializable {
         }
 
         try (final InputStream inputStream = new ByteArrayInputStream(bytes)) {
-            final String mimeTypeStr = URLConnection.guessContentTypeFromStream(inputStream);
-            
-            if (LOGGER.isLoggable(FINEST)) {
-                LOGGER.finest("MIME-Type: " + mimeTypeStr);
+            return getMimeType(inputStream);
+        } catch (IOException e) {
+            if (LOGGER.isLoggable(FINER)) {
+                LOGGER.log(FINER, e.getMessage(), e);
             }
-            return MimeType.build(mimeTypeStr);
+            LOGGER.warning("Fehler beim Ermitteln des MIME-Types: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * MIME-Type zu einer Datei anhand ihrer ersten Bytes ermitteln
+     * @param file Pfad der Datei, zu der der MIME-Type ermittelt wird
+     * @return Der zugehoerige MIME-Type
+     */
+    public MimeType getMimeType(Path file) {
+        // guessContentTypeFromStream benoetigt mark() und reset()
+        try (final InputStream inputStream = new BufferedInputStream(Files.newInputStream(file))) {
+            return getMimeType(inputStream);
         } catch (IOException e) {
             if (LOGGER.isLoggable(FINER)) {
                 LOGGER.log(FINER, e.getMessage(), e);
@@ -133,6 +182,146 @@ public class FileHelper implements Serializable {
         }
     }
     
+    private static MimeType getMimeType(InputStream inputStream) throws IOException {
+        final String mimeTypeStr = URLConnection.guessContentTypeFromStream(inputStream);
+        if (LOGGER.isLoggable(FINEST)) {
+            LOGGER.finest("MIME-Type: " + mimeTypeStr);
+        }
+        return mimeTypeStr == null ? null : MimeType.build(mimeTypeStr);
+    }
+    
+    /**
+     * Eine hochgeladene Datei mit einem Puffer fester Groesse in eine temporaere Datei schreiben und dabei
+     * Groesse und SHA-256-Pruefsumme ermitteln, ohne die Datei als byte[] im Heap zu halten.
+     * @param inputStream Datenstrom der hochgeladenen Datei
+     * @return Die temporaere Datei, die vom Aufrufer mit close() freigegeben werden muss
+     * @throws FileTooLargeException Falls die Datei groesser als das Limit ist
+     */
+    public Upload spool(InputStream inputStream) {
+        final Path tmpFile;
+        try {
+            tmpFile = createTmpFile();
+        } catch (IOException e) {
+            throw new ShopRuntimeException(e);
+        }
+        
+        final MessageDigest digest = newMessageDigest();
+        long size = 0;
+        boolean ok = false;
+        try (final OutputStream outputStream = Files.newOutputStream(tmpFile)) {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            for (int n = inputStream.read(buffer); n != -1; n = inputStream.read(buffer)) {
+                size += n;
+                if (size > SIZE_LIMIT) {
+                    throw new FileTooLargeException(SIZE_LIMIT);
+                }
+                digest.update(buffer, 0, n);
+                outputStream.write(buffer, 0, n);
+            }
+            ok = true;
+        } catch (IOException e) {
+            throw new ShopRuntimeException(e);
+        } finally {
+            if (!ok) {
+                deleteTmpFile(tmpFile);
+            }
+        }
+        
+        final Upload upload = new Upload(tmpFile, size, printHexBinary(digest.digest()).toLowerCase(Locale.ROOT),
+                                         getMimeType(tmpFile));
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("Hochgeladene Datei: " + upload);
+        }
+        return upload;
+    }
+    
+    /**
+     * Eine vollstaendig geschriebene temporaere Datei, z.B. aus Abschnitten zusammengesetzt, als hochgeladene
+     * Datei uebernehmen. Fuer die SHA-256-Pruefsumme wird sie einmal mit einem Puffer fester Groesse gelesen.
+     * @param tmpFile Die temporaere Datei im Verzeichnis fuer temporaere Dateien
+     * @return Die hochgeladene Datei, die vom Aufrufer mit close() freigegeben werden muss
+     * @throws FileTooLargeException Falls die Datei groesser als das Limit ist
+     */
+    Upload adopt(Path tmpFile) {
+        final MessageDigest digest = newMessageDigest();
+        final long size;
+        boolean ok = false;
+        try {
+            size = Files.size(tmpFile);
+            if (size > SIZE_LIMIT) {
+                throw new FileTooLargeException(SIZE_LIMIT);
+            }
+            try (final InputStream inputStream = Files.newInputStream(tmpFile)) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                for (int n = inputStream.read(buffer); n != -1; n = inputStream.read(buffer)) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+            ok = true;
+        } catch (IOException e) {
+            throw new ShopRuntimeException(e);
+        } finally {
+            if (!ok) {
+                deleteTmpFile(tmpFile);
+            }
+        }
+        
+        final Upload upload = new Upload(tmpFile, size, printHexBinary(digest.digest()).toLowerCase(Locale.ROOT),
+                                         getMimeType(tmpFile));
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("Uebernommene Datei: " + upload);
+        }
+        return upload;
+    }
+    
+    /**
+     * Eine leere temporaere Datei im selben Dateisystem wie die Zieldateien anlegen
+     * @return Pfad der temporaeren Datei
+     * @throws IOException Falls die Datei nicht angelegt werden kann
+     */
+    Path createTmpFile() throws IOException {
+        Files.createDirectories(uploadPath);
+        return Files.createTempFile(uploadPath, UPLOAD_PREFIX, UPLOAD_SUFFIX);
+    }
+    
+    /**
+     * Temporaere Dateien loeschen, die seit einer Frist nicht mehr geaendert wurden, z.B. von Sitzungen
+     * zum Hochladen in Abschnitten vor einem Neustart
+     * @param fristMillis Die Frist in Millisekunden
+     */
+    void deleteTmpFiles(long fristMillis) {
+        if (!Files.isDirectory(uploadPath)) {
+            return;
+        }
+        final long grenze = System.currentTimeMillis() - fristMillis;
+        try (final DirectoryStream<Path> tmpFiles = Files.newDirectoryStream(uploadPath,
+                                                                           UPLOAD_PREFIX + '*' + UPLOAD_SUFFIX)) {
+            for (Path tmpFile : tmpFiles) {
+                if (Files.getLastModifiedTime(tmpFile).toMillis() < grenze) {
+                    deleteTmpFile(tmpFile);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "Fehler beim Loeschen temporaerer Dateien in " + uploadPath, e);
+        }
+    }
+    
+    private static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(CHECKSUM_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new ShopRuntimeException(e);
+        }
+    }
+    
+    private static void deleteTmpFile(Path tmpFile) {
+        try {
+            Files.deleteIfExists(tmpFile);
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "Fehler beim Loeschen der temporaeren Datei " + tmpFile, e);
+        }
+    }
+    
     public String getFilename(Class<?> clazz, Object id, MimeType mimeType) {
         final String filename = clazz.getSimpleName() + "_" + id + "." + mimeType.getExtension();
         if (LOGGER.isLoggable(FINEST)) {
@@ -149,46 +338,325 @@ public class FileHelper implements Serializable {
         return SIZE_LIMIT;
     }
     
+    /**
+     * Die Datei fuer die Web-Anwendung auf den Inhalt verlinken, falls sie nicht bereits darauf verweist.
+     * Nur bei Altdaten muss der Inhalt zuvor aus dem Blob abgespeichert werden.
+     * @param file Die Verwaltungsdaten
+     */
     @Log
     public void store(File file) {
         if (file == null) {
             return;
         }
         
-        final String filename = file.getFilename();
+        // Der Blob wird gestreamt und nicht vollstaendig in den Heap geladen.
+        final FileContent content = file.getContent();
+        final Path contentPath = getContentPath(content.getChecksum());
+        try {
+            if (!Files.exists(contentPath)) {
+                if (!content.isInDb()) {
+                    LOGGER.severe("Kein Inhalt fuer " + file + " vorhanden: " + contentPath);
+                    return;
+                }
+                try (final InputStream inputStream = content.getInputStream()) {
+                    writeAtomically(inputStream, contentPath);
+                }
+            }
+            verlinken(content.getChecksum(), file.getFilename());
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "Fehler beim Speichern der Datei " + file.getFilename(), e);
+        }
+    }
+    
+    /**
+     * Eine Datei fuer die Web-Anwendung auf einen bereits abgespeicherten Inhalt verlinken. Ob die Datei schon
+     * aktuell ist, wird ueber die Identitaet mit dem Inhalt (Hard Link) statt ueber Zeitstempel geprueft.
+     * @param checksum Die SHA-256-Pruefsumme des Inhalts
+     * @param filename Der Dateiname fuer die Web-Anwendung
+     * @throws IOException Falls der Inhalt fehlt oder die Datei nicht angelegt werden kann
+     */
+    public void verlinken(String checksum, String filename) throws IOException {
+        final Path contentPath = getContentPath(checksum);
         final Path absoluteFilename = path.resolve(filename);
-        if (LOGGER.isLoggable(FINEST)) {
-            LOGGER.finest("Absoluter Dateiname: " + absoluteFilename);
+        if (!Files.exists(contentPath)) {
+            throw new NoSuchFileException(contentPath.toString());
         }
-        
-        // aktuelle Datei nicht ueberschreiben?
-        if (Files.exists(absoluteFilename)) {
-            long creationTime = 0L;
-            try {
-                creationTime = Files.getFileAttributeView(absoluteFilename, BasicFileAttributeView.class)
-                                    .readAttributes()
-                                    .creationTime()
-                                    .toMillis();
-            } catch (IOException e) {
-                LOGGER.log(WARNING, "Fehler beim Lesen des Erzeugungsdatums der Datei " + absoluteFilename, e);
+        if (isVerlinkt(contentPath, absoluteFilename)) {
+            if (LOGGER.isLoggable(FINEST)) {
+                LOGGER.finest("Die Datei " + filename + " ist bereits aktuell");
             }
-            
-            // Die Datei wurde beim Hochladen evtl. in einem parallelen Thread angelegt,
-            // der evtl. vor dem Abspeichern der Verwaltungsdaten in der DB fertig war.
-            // Als Zeitunterschied bzw. Toleranz sollten 1000 Millisekunden ausreichend sein.
-            if (creationTime + CREATION_TIME_DELAY > file.getAktualisiert().getTime()) {
-                if (LOGGER.isLoggable(FINEST)) {
-                    LOGGER.finest("Die Datei " + filename + " existiert bereits");
-                }
-                return;
+            return;
+        }
+        link(contentPath, absoluteFilename);
+    }
+    
+    /**
+     * Den Inhalt einer Datei im Dateisystem ermitteln und ihn bei Altdaten zuvor aus dem Blob abspeichern.
+     * Downloads lesen den unveraenderlichen Inhalt und nicht die Datei fuer die Web-Anwendung, weil diese
+     * nach erneutem Hochladen erst nach dem Commit durch FileStoreQueue neu verlinkt wird.
+     * @param file Die Verwaltungsdaten
+     * @return Pfad des Inhalts oder empty(), falls er nicht im Dateisystem abgespeichert werden kann
+     */
+    public Optional<Path> ensureOnDisk(File file) {
+        final Path contentPath = getContentPath(file.getChecksum());
+        if (!Files.exists(contentPath)) {
+            if (LOGGER.isLoggable(FINER)) {
+                LOGGER.finer("Inhalt " + contentPath + " wird aus der DB abgespeichert");
             }
+            store(file);
+        }
+        return Files.exists(contentPath) ? of(contentPath) : empty();
+    }
+    
+    /**
+     * Eine Datei vollstaendig als Byte-Array lesen. Nur fuer kleine Dateien sinnvoll, ansonsten ensureOnDisk().
+     * @param file Die Verwaltungsdaten
+     * @return Der Inhalt der Datei
+     */
+    public byte[] readBytes(File file) {
+        final Path absoluteFilename = ensureOnDisk(file).orElseThrow(() -> new ShopRuntimeException(
+            "Keine Datei im Dateisystem fuer " + file));
+        try {
+            return Files.readAllBytes(absoluteFilename);
+        } catch (IOException e) {
+            throw new ShopRuntimeException(e);
+        }
+    }
+    
+    /**
+     * Den Inhalt einer hochgeladenen Datei uebernehmen: Ein neuer Inhalt wird nur verschoben, ein bekannter
+     * Inhalt bleibt unveraendert. Der Aufruf muss vor dem Commit erfolgen, damit es keine Verwaltungsdaten
+     * ohne Inhalt gibt. Die Datei fuer die Web-Anwendung wird danach mit FileStoreQueue verlinkt.
+     * @param upload Die hochgeladene Datei
+     * @return true, falls der Inhalt neu verschoben wurde, false falls er bereits vorhanden war
+     * @throws ShopRuntimeException Falls der Inhalt nicht abgespeichert werden kann
+     */
+    @Log
+    public boolean storeContent(Upload upload) {
+        final Path contentPath = getContentPath(upload.getChecksum());
+        if (Files.exists(contentPath)) {
+            return false;
+        }
+        try {
+            Files.createDirectories(contentPath.getParent());
+            upload.moveTo(contentPath);
+        } catch (IOException e) {
+            throw new ShopRuntimeException(e);
+        }
+        return true;
+    }
+    
+    /**
+     * Abfrage, ob die Datei fuer die Web-Anwendung auf den Inhalt aus den Verwaltungsdaten verlinkt ist.
+     * Die Groesse genuegt nicht, weil ein neuer Inhalt gleich gross sein kann.
+     * @param filename Der Dateiname fuer die Web-Anwendung
+     * @param checksum Die SHA-256-Pruefsumme des Inhalts aus den Verwaltungsdaten
+     * @return true, falls die Datei nicht (erneut) abgespeichert werden muss
+     */
+    public boolean isOnDisk(String filename, String checksum) {
+        try {
+            return isVerlinkt(getContentPath(checksum), path.resolve(filename));
+        } catch (IOException e) {
+            LOGGER.log(WARNING, e.getMessage(), e);
+            return false;
+        }
+    }
+    
+    private static boolean isVerlinkt(Path contentPath, Path absoluteFilename) throws IOException {
+        return Files.exists(contentPath) && Files.exists(absoluteFilename)
+               && Files.isSameFile(contentPath, absoluteFilename);
+    }
+    
+    /**
+     * Den Blob eines Inhalts in das Dateisystem auslagern. Eine bereits vorhandene Datei mit passender Groesse
+     * wird uebernommen, z.B. aus einem abgebrochenen Lauf oder aus dem Verzeichnis vor der Aufteilung
+     * in Unterverzeichnisse.
+     * @param content Der Inhalt mit Blob
+     * @throws IOException Falls der Inhalt nicht vollstaendig abgespeichert werden kann
+     */
+    void auslagern(FileContent content) throws IOException {
+        final String checksum = content.getChecksum();
+        final Path contentPath = getContentPath(checksum);
+        if (hasGroesse(contentPath, content.getGroesse())) {
+            return;
+        }
+        
+        final Path alterPath = path.resolve(CONTENT_DIR).resolve(checksum);
+        if (hasGroesse(alterPath, content.getGroesse())) {
+            Files.createDirectories(contentPath.getParent());
+            move(alterPath, contentPath);
+            return;
         }
         
-        // byte[] als Datei abspeichern
-        try (final InputStream inputStream = new ByteArrayInputStream(file.getBytes())) {
-            Files.copy(inputStream, absoluteFilename, REPLACE_EXISTING);
+        try (final InputStream inputStream = content.getInputStream()) {
+            writeAtomically(inputStream, contentPath);
+        }
+        if (!hasGroesse(contentPath, content.getGroesse())) {
+            Files.deleteIfExists(contentPath);
+            throw new IOException("Unvollstaendig ausgelagert: " + contentPath);
+        }
+    }
+    
+    private static boolean hasGroesse(Path file, long groesse) throws IOException {
+        return Files.isRegularFile(file) && Files.size(file) == groesse;
+    }
+    
+    /**
+     * Einen nicht mehr referenzierten Inhalt aus dem Dateisystem loeschen. Bereits verlinkte Dateien
+     * fuer die Web-Anwendung bleiben bis zum Ueberschreiben lesbar.
+     * @param checksum Die SHA-256-Pruefsumme des Inhalts
+     */
+    public void deleteContent(String checksum) {
+        final Path contentPath = getContentPath(checksum);
+        try {
+            Files.deleteIfExists(contentPath);
         } catch (IOException e) {
-            LOGGER.log(WARNING, "Fehler beim Speichern der Datei " + absoluteFilename, e);
+            LOGGER.log(WARNING, "Fehler beim Loeschen der Datei " + contentPath, e);
+        }
+        
+        // verkleinerte Bilder zum Inhalt
+        if (!Files.isDirectory(contentPath.getParent())) {
+            return;
+        }
+        try (final DirectoryStream<Path> derivate = Files.newDirectoryStream(contentPath.getParent(),
+                                                                            checksum + DERIVAT_SEPARATOR + '*')) {
+            for (Path derivat : derivate) {
+                Files.deleteIfExists(derivat);
+            }
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "Fehler beim Loeschen der verkleinerten Bilder zu " + contentPath, e);
+        }
+    }
+    
+    /**
+     * Pfad eines Inhalts im Dateisystem ermitteln. Die ersten beiden Hex-Ziffern der Pruefsumme bilden ein
+     * Unterverzeichnis, damit kein Verzeichnis mit sehr vielen Eintraegen entsteht.
+     * @param checksum Die SHA-256-Pruefsumme des Inhalts
+     * @return Der Pfad, unabhaengig davon, ob die Datei existiert
+     */
+    public Path getContentPath(String checksum) {
+        return path.resolve(CONTENT_DIR)
+                   .resolve(checksum.substring(0, SHARD_LENGTH))
+                   .resolve(checksum);
+    }
+    
+    /**
+     * Pfad eines verkleinerten Bildes neben dem Inhalt ermitteln
+     * @param checksum Die SHA-256-Pruefsumme des Inhalts
+     * @param size Die Groesse des verkleinerten Bildes
+     * @param mimeType Der MIME-Type des Inhalts
+     * @return Der Pfad, unabhaengig davon, ob die Datei existiert
+     */
+    public Path getDerivatPath(String checksum, ImageSize size, MimeType mimeType) {
+        return getContentPath(checksum).resolveSibling(checksum + DERIVAT_SEPARATOR + size + "."
+                                                      + mimeType.getExtension());
+    }
+    
+    /**
+     * Ein bereits erzeugtes verkleinertes Bild ermitteln
+     * @param file Die Verwaltungsdaten des Originals
+     * @param size Die Groesse des verkleinerten Bildes
+     * @return Pfad des verkleinerten Bildes oder empty(), falls es (noch) nicht existiert
+     */
+    public Optional<Path> findDerivat(File file, ImageSize size) {
+        final Path derivatPath = getDerivatPath(file.getChecksum(), size, file.getMimeType());
+        return Files.exists(derivatPath) ? of(derivatPath) : empty();
+    }
+    
+    /**
+     * Ein verkleinertes Bild atomar neben dem Inhalt abspeichern
+     * @param checksum Die SHA-256-Pruefsumme des Inhalts
+     * @param size Die Groesse des verkleinerten Bildes
+     * @param mimeType Der MIME-Type des Inhalts
+     * @param inputStream Datenstrom des verkleinerten Bildes
+     * @throws IOException Falls die Datei nicht geschrieben werden kann
+     */
+    public void storeDerivat(String checksum, ImageSize size, MimeType mimeType, InputStream inputStream)
+           throws IOException {
+        writeAtomically(inputStream, getDerivatPath(checksum, size, mimeType));
+    }
+    
+    /**
+     * Eine Datei fuer die Web-Anwendung als Hard Link auf den Inhalt anlegen bzw. ersetzen, so dass identische
+     * Inhalte nur einmal Platz belegen. Ohne Unterstuetzung fuer Hard Links wird kopiert.
+     * @param contentPath Pfad des Inhalts
+     * @param target Pfad der Datei fuer die Web-Anwendung
+     * @throws IOException Falls die Datei nicht angelegt werden kann
+     */
+    private void link(Path contentPath, Path target) throws IOException {
+        final Path tmpLink = createTmpLink(contentPath);
+        try {
+            move(tmpLink, target);
+        } catch (IOException e) {
+            deleteTmpFile(tmpLink);
+            throw e;
+        }
+    }
+    
+    /**
+     * Eine temporaere Datei als Hard Link auf eine vorhandene Datei anlegen. Ohne Unterstuetzung fuer Hard Links
+     * wird kopiert.
+     * @param source Pfad der vorhandenen Datei
+     * @return Pfad der temporaeren Datei
+     * @throws IOException Falls die Datei nicht angelegt werden kann
+     */
+    Path createTmpLink(Path source) throws IOException {
+        Files.createDirectories(uploadPath);
+        final Path tmpLink = uploadPath.resolve(UPLOAD_PREFIX + UUID.randomUUID() + UPLOAD_SUFFIX);
+        try {
+            Files.createLink(tmpLink, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            if (LOGGER.isLoggable(FINEST)) {
+                LOGGER.finest("Kein Hard Link auf " + source + ": " + e.getMessage());
+            }
+            Files.copy(source, tmpLink, REPLACE_EXISTING);
+        }
+        return tmpLink;
+    }
+    
+    /**
+     * Eine Datei durch eine Kopie ersetzen, damit sie nicht mehr als Hard Link mit einer anderen Datei,
+     * z.B. einem Inhalt, dieselben Bytes teilt und ohne Auswirkung auf diese geaendert werden kann.
+     * @param file Pfad der Datei
+     * @throws IOException Falls die Datei nicht kopiert werden kann
+     */
+    void entkoppeln(Path file) throws IOException {
+        Files.createDirectories(uploadPath);
+        final Path tmpFile = Files.createTempFile(uploadPath, UPLOAD_PREFIX, UPLOAD_SUFFIX);
+        try {
+            Files.copy(file, tmpFile, REPLACE_EXISTING);
+            move(tmpFile, file);
+        } catch (IOException e) {
+            deleteTmpFile(tmpFile);
+            throw e;
+        }
+    }
+    
+    /**
+     * Einen Datenstrom zuerst in eine temporaere Datei schreiben und diese dann umbenennen,
+     * damit ein paralleler Download nie eine halb geschriebene Datei liest.
+     * @param inputStream Der zu schreibende Datenstrom
+     * @param target Pfad der Zieldatei
+     * @throws IOException Falls die Datei nicht geschrieben werden kann
+     */
+    private void writeAtomically(InputStream inputStream, Path target) throws IOException {
+        Files.createDirectories(uploadPath);
+        Files.createDirectories(target.getParent());
+        final Path tmpFile = Files.createTempFile(uploadPath, UPLOAD_PREFIX, UPLOAD_SUFFIX);
+        try {
+            Files.copy(inputStream, tmpFile, REPLACE_EXISTING);
+            move(tmpFile, target);
+        } catch (IOException e) {
+            deleteTmpFile(tmpFile);
+            throw e;
+        }
+    }
+    
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, REPLACE_EXISTING);
         }
     }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Warteschlange, um Dateien fuer die Web-Anwendung im Hintergrund auf ihren Inhalt zu verlinken
+ * ("Write Behind"). Die Warteschlange ist begrenzt: ist sie voll, schreibt der Aufrufer selbst und wird dadurch
+ * gebremst. Mehrere Auftraege fuer denselben Dateinamen werden zu einem Auftrag mit dem neuesten Inhalt
+ * zusammengefasst. Fehlgeschlagene Auftraege werden mit exponentiell wachsender Wartezeit wiederholt.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class FileStoreQueue {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    // Obergrenze fuer anstehende Auftraege, d.h. unterschiedliche Dateinamen
+    private static final int MAX_AUFTRAEGE = 200;
+    
+    private static final int MAX_VERSUCHE = 5;
+    
+    // Wartezeit vor der 1. Wiederholung, danach jeweils verdoppelt: 200, 400, 800, 1600 ms
+    private static final long WARTEZEIT_MILLIS = 200;
+    
+    // Obergrenze fuer gemerkte Versionen, danach wird neu begonnen
+    private static final int MAX_SICHERGESTELLT = 10_000;
+    
+    // Dateiname -> Checksum des neuesten Inhalts
+    private final ConcurrentMap<String, String> auftraege = new ConcurrentHashMap<>();
+    
+    // Dateiname -> Version der Verwaltungsdaten, fuer die die Datei bereits sichergestellt wurde
+    private final ConcurrentMap<String, Integer> sichergestellt = new ConcurrentHashMap<>();
+    
+    private final AtomicLong eingereiht = new AtomicLong();
+    private final AtomicLong zusammengefasst = new AtomicLong();
+    private final AtomicLong geschrieben = new AtomicLong();
+    private final AtomicLong direktGeschrieben = new AtomicLong();
+    private final AtomicLong wiederholt = new AtomicLong();
+    private final AtomicLong fehlgeschlagen = new AtomicLong();
+    
+    private Instance<FileHelper> fileHelperInstance;
+    private Instance<ManagedScheduledExecutorService> managedScheduledExecutorServiceInstance;
+    
+    /**
+     * Package-private Default-Konstruktor f&uuml;r CDI
+     */
+    FileStoreQueue() {
+        super();
+    }
+    
+    /**
+     * Package-private Konstruktor mit "Constructor Injection" f&uuml;r CDI
+     * @param fileHelperInstance zu injizierendes Instance-Objekt f&uuml;r FileHelper
+     * @param managedScheduledExecutorServiceInstance zu injizierendes Instance-Objekt f&uuml;r
+     *                                                ManagedScheduledExecutorService
+     */
+    @Inject
+    FileStoreQueue(Instance<FileHelper> fileHelperInstance,
+                   Instance<ManagedScheduledExecutorService> managedScheduledExecutorServiceInstance) {
+        super();
+        this.fileHelperInstance = fileHelperInstance;
+        this.managedScheduledExecutorServiceInstance = managedScheduledExecutorServiceInstance;
+    }
+    
+    /**
+     * Eine Datei fuer die Web-Anwendung im Hintergrund auf einen bereits abgespeicherten Inhalt verlinken.
+     * Bei voller Warteschlange wird sofort im aufrufenden Thread geschrieben.
+     * @param filename Der Dateiname fuer die Web-Anwendung
+     * @param checksum Die SHA-256-Pruefsumme des Inhalts
+     */
+    public void abspeichern(String filename, String checksum) {
+        if (einreihen(filename, checksum)) {
+            return;
+        }
+        
+        direktGeschrieben.incrementAndGet();
+        try {
+            fileHelperInstance.get().verlinken(checksum, filename);
+        } catch (IOException e) {
+            fehlgeschlagen.incrementAndGet();
+            LOGGER.log(WARNING, "Fehler beim Speichern der Datei " + filename, e);
+        }
+    }
+    
+    /**
+     * Sicherstellen, dass die Datei fuer die Web-Anwendung zur aktuellen Version der Verwaltungsdaten existiert,
+     * ohne den Aufrufer durch Datei-I/O zu blockieren, z.B. beim Rendern einer Seite. Pro Version wird hoechstens
+     * einmal ein Auftrag eingereiht. Bei voller Warteschlange oder fehlgeschlagenem Auftrag wird es beim
+     * naechsten Aufruf erneut versucht.
+     * @param file Die Verwaltungsdaten
+     */
+    public void sicherstellen(File file) {
+        final String filename = file.getFilename();
+        final Integer version = file.getVersion();
+        if (version.equals(sichergestellt.get(filename))) {
+            return;
+        }
+        if (!einreihen(filename, file.getChecksum())) {
+            return;
+        }
+        if (sichergestellt.size() >= MAX_SICHERGESTELLT) {
+            sichergestellt.clear();
+        }
+        sichergestellt.put(filename, version);
+    }
+    
+    private boolean einreihen(String filename, String checksum) {
+        // Ein anstehender Auftrag fuer denselben Dateinamen wird nur auf den neuesten Inhalt gesetzt
+        if (auftraege.replace(filename, checksum) != null) {
+            zusammengefasst.incrementAndGet();
+            return true;
+        }
+        if (auftraege.size() >= MAX_AUFTRAEGE) {
+            return false;
+        }
+        if (auftraege.putIfAbsent(filename, checksum) != null) {
+            // zwischenzeitlich von einem parallelen Thread eingereiht
+            auftraege.put(filename, checksum);
+            zusammengefasst.incrementAndGet();
+            return true;
+        }
+        
+        eingereiht.incrementAndGet();
+        planen(filename, 1, 0);
+        return true;
+    }
+    
+    private void planen(String filename, int versuch, long wartezeit) {
+        try {
+            managedScheduledExecutorServiceInstance.get().schedule(() -> ausfuehren(filename, versuch),
+                                                                   wartezeit, MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            auftraege.remove(filename);
+            sichergestellt.remove(filename);
+            fehlgeschlagen.incrementAndGet();
+            LOGGER.log(WARNING, "Die Datei " + filename + " wird nicht gespeichert", e);
+        }
+    }
+    
+    private void ausfuehren(String filename, int versuch) {
+        final String checksum = auftraege.get(filename);
+        if (checksum == null) {
+            return;
+        }
+        
+        try {
+            fileHelperInstance.get().verlinken(checksum, filename);
+        } catch (IOException e) {
+            if (versuch >= MAX_VERSUCHE) {
+                sichergestellt.remove(filename);
+                fehlgeschlagen.incrementAndGet();
+                LOGGER.log(WARNING, "Fehler beim Speichern der Datei " + filename + " nach " + versuch
+                                    + " Versuchen", e);
+                if (!auftraege.remove(filename, checksum)) {
+                    // ein neuerer Inhalt wurde eingereiht
+                    planen(filename, 1, 0);
+                }
+                return;
+            }
+            wiederholt.incrementAndGet();
+            if (LOGGER.isLoggable(FINEST)) {
+                LOGGER.finest("Wiederholung " + versuch + " fuer " + filename + ": " + e.getMessage());
+            }
+            planen(filename, versuch + 1, WARTEZEIT_MILLIS << (versuch - 1));
+            return;
+        }
+        
+        if (auftraege.remove(filename, checksum)) {
+            geschrieben.incrementAndGet();
+        } else {
+            // Waehrend des Schreibens wurde ein neuerer Inhalt eingereiht
+            planen(filename, 1, 0);
+        }
+    }
+    
+    /**
+     * @return Anzahl der anstehenden Auftraege
+     */
+    public int getWarteschlangenLaenge() {
+        return auftraege.size();
+    }
+    
+    public int getMaxAuftraege() {
+        return MAX_AUFTRAEGE;
+    }
+    
+    public long getEingereiht() {
+        return eingereiht.get();
+    }
+    
+    public long getZusammengefasst() {
+        return zusammengefasst.get();
+    }
+    
+    public long getGeschrieben() {
+        return geschrieben.get();
+    }
+    
+    public long getDirektGeschrieben() {
+        return direktGeschrieben.get();
+    }
+    
+    public long getWiederholt() {
+        return wiederholt.get();
+    }
+    
+    public long getFehlgeschlagen() {
+        return fehlgeschlagen.get();
+    }
+    
+    @Override
+    public String toString() {
+        return "FileStoreQueue {warteschlangenLaenge=" + getWarteschlangenLaenge() + ", eingereiht=" + eingereiht
+               + ", zusammengefasst=" + zusammengefasst + ", geschrieben=" + geschrieben
+               + ", direktGeschrieben=" + direktGeschrieben + ", wiederholt=" + wiederholt
+               + ", fehlgeschlagen=" + fehlgeschlagen + '}';
+    }
+}
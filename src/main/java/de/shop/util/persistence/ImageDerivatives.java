@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import de.shop.util.interceptor.Log;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.inject.Inject;
+
+import static java.awt.image.BufferedImage.TYPE_INT_ARGB;
+import static java.awt.image.BufferedImage.TYPE_INT_RGB;
+import static java.util.logging.Level.FINER;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Verkleinerte Bilder zu einem hochgeladenen Bild im Hintergrund erzeugen und neben dem Inhalt im Dateisystem
+ * abspeichern, so dass der Request zum Hochladen nicht auf das Skalieren warten muss.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+@Log
+public class ImageDerivatives {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    // Obergrenze fuer gleichzeitig anstehende Auftraege: weitere Auftraege werden verworfen und beim naechsten
+    // Download erneut angestossen, statt den Thread-Pool des Application Servers zu verstopfen
+    private static final int MAX_AUFTRAEGE = 100;
+    
+    // Bilder mit mehr Pixeln werden nicht dekodiert, z.B. zum Schutz vor "Dekompressionsbomben"
+    private static final long MAX_PIXEL = 50_000_000L;
+    
+    private static final int BUFFER_SIZE = 16 * 1024;
+    
+    // Obergrenze fuer gemerkte Bilder, die nicht verkleinert werden koennen
+    private static final int MAX_NICHT_SKALIERBAR = 10_000;
+    
+    // Auftraege, die noch anstehen oder gerade bearbeitet werden: gleiche Auftraege werden zusammengefasst
+    private final Set<String> auftraege = ConcurrentHashMap.newKeySet();
+    
+    // Auftraege, die dauerhaft scheitern, z.B. zu grosse Bilder oder Formate ohne ImageReader: sie werden nicht
+    // bei jedem Download erneut angestossen und protokolliert. Zugriffsreihenfolge fuer die Verdraengung.
+    private final Map<String, Boolean> nichtSkalierbar =
+        new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_NICHT_SKALIERBAR;
+            }
+        };
+    
+    private Instance<FileHelper> fileHelperInstance;
+    private Instance<ManagedExecutorService> managedExecutorServiceInstance;
+    
+    /**
+     * Package-private Default-Konstruktor f&uuml;r CDI
+     */
+    ImageDerivatives() {
+        super();
+    }
+    
+    /**
+     * Package-private Konstruktor mit "Constructor Injection" f&uuml;r CDI
+     * @param fileHelperInstance zu injizierendes Instance-Objekt f&uuml;r FileHelper
+     * @param managedExecutorServiceInstance zu injizierendes Instance-Objekt f&uuml;r ManagedExecutorService
+     */
+    @Inject
+    ImageDerivatives(Instance<FileHelper> fileHelperInstance,
+                     Instance<ManagedExecutorService> managedExecutorServiceInstance) {
+        super();
+        this.fileHelperInstance = fileHelperInstance;
+        this.managedExecutorServiceInstance = managedExecutorServiceInstance;
+    }
+    
+    /**
+     * Alle verkleinerten Bilder zu einem Inhalt im Hintergrund erzeugen. Fuer Videos und Audios wird nichts erzeugt.
+     * @param checksum Die SHA-256-Pruefsumme des Inhalts
+     * @param mimeType Der MIME-Type des Inhalts
+     */
+    public void erzeugen(String checksum, MimeType mimeType) {
+        for (ImageSize size : ImageSize.values()) {
+            erzeugen(checksum, mimeType, size);
+        }
+    }
+    
+    /**
+     * Ein verkleinertes Bild im Hintergrund erzeugen, falls es noch nicht existiert
+     * @param checksum Die SHA-256-Pruefsumme des Inhalts
+     * @param mimeType Der MIME-Type des Inhalts
+     * @param size Die gewuenschte Groesse
+     * @return true, falls der Auftrag angenommen wurde oder bereits ansteht, false z.B. fuer ein Bild, das
+     *         nicht verkleinert werden kann
+     */
+    public boolean erzeugen(String checksum, MimeType mimeType, ImageSize size) {
+        if (checksum == null || mimeType == null || mimeType.getMultimediaType() != MultimediaType.IMAGE) {
+            return false;
+        }
+        
+        final String auftrag = checksum + '_' + size;
+        if (auftraege.contains(auftrag)) {
+            return true;
+        }
+        if (isNichtSkalierbar(auftrag)) {
+            return false;
+        }
+        if (auftraege.size() >= MAX_AUFTRAEGE) {
+            if (LOGGER.isLoggable(FINER)) {
+                LOGGER.finer("Zu viele anstehende Auftraege, verworfen: " + auftrag);
+            }
+            return false;
+        }
+        if (!auftraege.add(auftrag)) {
+            return true;
+        }
+        
+        try {
+            managedExecutorServiceInstance.get().execute(() -> {
+                try {
+                    if (!skalieren(checksum, mimeType, size)) {
+                        setNichtSkalierbar(auftrag);
+                    }
+                } finally {
+                    auftraege.remove(auftrag);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            auftraege.remove(auftrag);
+            LOGGER.warning("Verkleinertes Bild " + auftrag + " wird nicht erzeugt: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+    
+    private boolean isNichtSkalierbar(String auftrag) {
+        synchronized (nichtSkalierbar) {
+            return nichtSkalierbar.containsKey(auftrag);
+        }
+    }
+    
+    private void setNichtSkalierbar(String auftrag) {
+        synchronized (nichtSkalierbar) {
+            nichtSkalierbar.put(auftrag, Boolean.TRUE);
+        }
+    }
+    
+    /**
+     * Ein verkleinertes Bild erzeugen und abspeichern
+     * @param checksum Die SHA-256-Pruefsumme des Inhalts
+     * @param mimeType Der MIME-Type des Inhalts
+     * @param size Die gewuenschte Groesse
+     * @return false, falls das Bild dauerhaft nicht verkleinert werden kann; true sonst, auch bei voruebergehenden
+     *         Fehlern, damit der Auftrag beim naechsten Download erneut angestossen wird
+     */
+    private boolean skalieren(String checksum, MimeType mimeType, ImageSize size) {
+        final FileHelper fileHelper = fileHelperInstance.get();
+        final Path original = fileHelper.getContentPath(checksum);
+        if (!Files.exists(original) || Files.exists(fileHelper.getDerivatPath(checksum, size, mimeType))) {
+            return true;
+        }
+        
+        try {
+            final BufferedImage bild = lesen(original, size.getPixel());
+            if (bild == null) {
+                return false;
+            }
+            
+            final boolean transparent = mimeType == MimeType.PNG;
+            final BufferedImage verkleinert = verkleinern(bild, size.getPixel(), transparent);
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(BUFFER_SIZE);
+            if (!ImageIO.write(verkleinert, mimeType.getExtension(), outputStream)) {
+                LOGGER.warning("Kein ImageWriter fuer " + mimeType);
+                return false;
+            }
+            fileHelper.storeDerivat(checksum, size, mimeType, new ByteArrayInputStream(outputStream.toByteArray()));
+            if (LOGGER.isLoggable(FINEST)) {
+                LOGGER.finest("Verkleinertes Bild erzeugt: " + checksum + ", " + size + ", "
+                              + verkleinert.getWidth() + "x" + verkleinert.getHeight());
+            }
+            return true;
+        } catch (IIOException e) {
+            // Das Bild kann nicht dekodiert werden, z.B. weil die Datei beschaedigt ist
+            LOGGER.log(WARNING, "Fehler beim Dekodieren von " + original, e);
+            return false;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(WARNING, "Fehler beim Verkleinern von " + original, e);
+            return true;
+        }
+    }
+    
+    /**
+     * Ein Bild lesen und dabei nur so viele Zeilen und Spalten dekodieren, wie fuer die Zielgroesse noetig sind,
+     * damit auch grosse Fotos nicht vollstaendig im Heap liegen.
+     * @param original Pfad des Bildes
+     * @param pixel Maximale Kantenlaenge des verkleinerten Bildes
+     * @return Das Bild oder null, falls es nicht gelesen werden kann
+     * @throws IOException Falls die Datei nicht gelesen werden kann
+     */
+    private static BufferedImage lesen(Path original, int pixel) throws IOException {
+        try (final ImageInputStream inputStream = ImageIO.createImageInputStream(original.toFile())) {
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+            if (!readers.hasNext()) {
+                LOGGER.warning("Kein ImageReader fuer " + original);
+                return null;
+            }
+            
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(inputStream, true, true);
+                final int breite = reader.getWidth(0);
+                final int hoehe = reader.getHeight(0);
+                if ((long) breite * hoehe > MAX_PIXEL) {
+                    LOGGER.warning("Bild zu gross zum Verkleinern: " + original + ", " + breite + "x" + hoehe);
+                    return null;
+                }
+                
+                // Doppelte Zielgroesse beibehalten, damit das anschliessende Interpolieren noch genug Details hat
+                final int faktor = Math.max(1, Math.max(breite, hoehe) / (pixel * 2));
+                final ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(faktor, faktor, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * Ein Bild schrittweise halbieren, weil bilineare Interpolation in einem einzigen Schritt bei starker
+     * Verkleinerung Pixel auslaesst und das Ergebnis unscharf bzw. kantig wird.
+     * @param bild Das Ausgangsbild
+     * @param pixel Maximale Kantenlaenge des Ergebnisses
+     * @param transparent true, falls der Alpha-Kanal erhalten bleiben soll (PNG)
+     * @return Das verkleinerte Bild
+     */
+    private static BufferedImage verkleinern(BufferedImage bild, int pixel, boolean transparent) {
+        final double skalierung = Math.min(1.0, (double) pixel / Math.max(bild.getWidth(), bild.getHeight()));
+        final int zielBreite = Math.max(1, (int) Math.round(bild.getWidth() * skalierung));
+        final int zielHoehe = Math.max(1, (int) Math.round(bild.getHeight() * skalierung));
+        // JPEG hat keinen Alpha-Kanal
+        final int typ = transparent ? TYPE_INT_ARGB : TYPE_INT_RGB;
+        
+        BufferedImage aktuell = bild;
+        int breite = bild.getWidth();
+        int hoehe = bild.getHeight();
+        do {
+            breite = Math.max(zielBreite, breite / 2);
+            hoehe = Math.max(zielHoehe, hoehe / 2);
+            final BufferedImage naechstes = new BufferedImage(breite, hoehe, typ);
+            final Graphics2D graphics = naechstes.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                                          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.drawImage(aktuell, 0, 0, breite, hoehe, null);
+            } finally {
+                graphics.dispose();
+            }
+            aktuell = naechstes;
+        } while (breite != zielBreite || hoehe != zielHoehe);
+        
+        return aktuell;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Vorberechnete Groessen fuer verkleinerte Bilder, z.B. fuer Listen und Vorschauen.
+ * Der Wert ist die maximale Kantenlaenge in Pixel, das Seitenverhaeltnis bleibt erhalten.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public enum ImageSize {
+    SMALL("small", 64),
+    MEDIUM("medium", 256),
+    LARGE("large", 1024);
+    
+    private static final Map<String, ImageSize> NAME_CACHE = new HashMap<>();
+    static {
+        Arrays.stream(ImageSize.values())
+              .forEach(imageSize -> {
+            NAME_CACHE.put(imageSize.value, imageSize);
+            NAME_CACHE.put(imageSize.name(), imageSize);
+        });
+    }
+    
+    private final String value;
+    private final int pixel;
+    
+    private ImageSize(String value, int pixel) {
+        this.value = value;
+        this.pixel = pixel;
+    }
+    
+    public static ImageSize build(String value) {
+        return NAME_CACHE.get(value);
+    }
+    
+    public int getPixel() {
+        return pixel;
+    }
+    
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterators;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+
+/**
+ * Objekte abschnittsweise nach aufsteigenden IDs lesen ("Keyset Pagination") und als sequentiellen Stream bereitstellen.
+ * Ein Abschnitt wird erst gelesen, wenn alle Objekte des vorherigen Abschnitts verarbeitet sind, so dass z.B.
+ * der Persistenzkontext vor dem Lesen des naechsten Abschnitts geleert werden kann.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public final class KeysetStream<T> implements Iterator<T> {
+    private final LongFunction<List<T>> nextChunk;
+    private final ToLongFunction<T> getId;
+    private final int chunkSize;
+    
+    private Iterator<T> chunk = Collections.emptyIterator();
+    private long lastId;
+    private boolean lastChunk;
+    
+    private KeysetStream(LongFunction<List<T>> nextChunk, ToLongFunction<T> getId, int chunkSize) {
+        this.nextChunk = nextChunk;
+        this.getId = getId;
+        this.chunkSize = chunkSize;
+    }
+    
+    /**
+     * Einen Stream erzeugen, der die Objekte abschnittsweise liest
+     * @param nextChunk Funktion, die zur ID des letzten Objekts (bzw. 0) die max. chunkSize naechsten Objekte
+     *                  nach aufsteigender ID liefert
+     * @param getId Funktion, die zu einem Objekt die ID liefert
+     * @param chunkSize Max. Anzahl Objekte pro Abschnitt
+     * @param <T> Typ der Objekte
+     * @return Sequentieller Stream mit allen Objekten
+     */
+    public static <T> Stream<T> of(LongFunction<List<T>> nextChunk, ToLongFunction<T> getId, int chunkSize) {
+        final Iterator<T> iterator = new KeysetStream<>(nextChunk, getId, chunkSize);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, ORDERED | NONNULL), false);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (chunk.hasNext()) {
+            return true;
+        }
+        if (lastChunk) {
+            return false;
+        }
+        
+        final List<T> objekte = nextChunk.apply(lastId);
+        lastChunk = objekte.size() < chunkSize;
+        if (objekte.isEmpty()) {
+            return false;
+        }
+        lastId = getId.applyAsLong(objekte.get(objekte.size() - 1));
+        chunk = objekte.iterator();
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return chunk.next();
+    }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.shop.util.persistence;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.enterprise.context.ApplicationScoped;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+import static java.util.logging.Level.FINER;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Begrenzter Cache ausserhalb des Heaps fuer haeufig angeforderte kleine Dateien, z.B. Logos und Avatare.
+ * Der Speicher besteht aus "Direct" ByteBuffers ("Slabs"), die in Bloecke fester Groesse unterteilt sind.
+ * Ein Eintrag belegt beliebige freie Bloecke, so dass der Speicher nicht fragmentiert. Ist er voll, wird der am
+ * laengsten nicht mehr angeforderte Eintrag verdraengt (LRU). Ein Eintrag wird ueber die Pruefsumme des Inhalts
+ * und ggf. die Groesse des verkleinerten Bildes identifiziert und aus dem unveraenderlichen Inhalt bzw. dem
+ * verkleinerten Bild geladen: nach dem Hochladen einer neuen Datei wird der alte Eintrag nicht mehr gefunden
+ * und altert aus dem Cache heraus.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class MediaCache {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    static final int BLOCK_SIZE = 8 * 1024;
+    static final int SLAB_SIZE = 4 * 1024 * 1024;
+    private static final int BLOECKE_PRO_SLAB = SLAB_SIZE / BLOCK_SIZE;
+    
+    // Obergrenze: 16 Slabs zu je 4 MB, d.h. 64 MB ausserhalb des Heaps. Slabs werden erst bei Bedarf angelegt.
+    private static final int MAX_SLABS = 16;
+    
+    // Groessere Dateien, z.B. Videos, werden nicht gecacht, sondern weiterhin aus dem Dateisystem gestreamt
+    static final int MAX_EINTRAG_SIZE = 1024 * 1024;
+    
+    private final int maxSlabs;
+    private final ByteBuffer[] slabs;
+    private int anzahlSlabs;
+    private final Deque<Integer> freieBloecke = new ArrayDeque<>();
+    
+    // Zugriffsreihenfolge: der erste Eintrag ist der am laengsten nicht mehr angeforderte
+    private final Map<String, Eintrag> eintraege = new LinkedHashMap<>(16, 0.75f, true);
+    
+    private final AtomicLong treffer = new AtomicLong();
+    private final AtomicLong fehlschlaege = new AtomicLong();
+    private final AtomicLong verdraengt = new AtomicLong();
+    private final AtomicLong residentBytes = new AtomicLong();
+    
+    public MediaCache() {
+        this(MAX_SLABS);
+    }
+    
+    /**
+     * Konstruktor mit einer anderen Obergrenze, z.B. um das Verdraengen mit wenigen Dateien zu testen
+     * @param maxSlabs Maximale Anzahl der Slabs
+     */
+    MediaCache(int maxSlabs) {
+        super();
+        this.maxSlabs = maxSlabs;
+        slabs = new ByteBuffer[maxSlabs];
+    }
+    
+    /**
+     * Einen Eintrag im Cache suchen
+     * @param file Die Verwaltungsdaten der Datei
+     * @param imageSize Groesse des verkleinerten Bildes oder null fuer das Original
+     * @return Der Eintrag oder empty(), falls die Datei nicht im Cache ist
+     */
+    public Optional<Eintrag> find(File file, ImageSize imageSize) {
+        final Eintrag eintrag;
+        synchronized (this) {
+            eintrag = eintraege.get(getKey(file, imageSize));
+        }
+        if (eintrag == null) {
+            return empty();
+        }
+        treffer.incrementAndGet();
+        return of(eintrag);
+    }
+    
+    /**
+     * Eine Datei in den Cache laden. Die Bytes werden mit einem FileChannel direkt in die Bloecke gelesen,
+     * ohne sie in den Heap zu kopieren.
+     * @param file Die Verwaltungsdaten der Datei
+     * @param imageSize Groesse des verkleinerten Bildes oder null fuer das Original
+     * @param path Pfad des Inhalts bzw. des verkleinerten Bildes, aber nicht der Datei fuer die Web-Anwendung,
+     *        die nach erneutem Hochladen ueberschrieben wird
+     * @param length Laenge der Datei
+     * @return Der neue Eintrag oder empty(), falls die Datei zu gross ist oder kein Speicher frei wird
+     */
+    public Optional<Eintrag> laden(File file, ImageSize imageSize, Path path, long length) {
+        if (length <= 0 || length > MAX_EINTRAG_SIZE) {
+            return empty();
+        }
+        // Nur Fehlschlaege fuer cachebare Dateien zaehlen, damit Videos die Trefferquote nicht verfaelschen
+        fehlschlaege.incrementAndGet();
+        
+        final int anzahl = (int) ((length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        final int[] bloecke = reservieren(anzahl);
+        if (bloecke == null) {
+            return empty();
+        }
+        
+        final String key = getKey(file, imageSize);
+        final Eintrag eintrag = new Eintrag(key, path, length, bloecke);
+        try (final FileChannel channel = FileChannel.open(path, READ)) {
+            long position = 0;
+            for (int block : bloecke) {
+                final ByteBuffer buffer = getBlock(block, (int) Math.min(BLOCK_SIZE, length - position));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new IOException("Unerwartetes Dateiende: " + path);
+                    }
+                }
+                position += BLOCK_SIZE;
+            }
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "Datei kann nicht gecacht werden: " + path, e);
+            freigeben(bloecke);
+            return empty();
+        }
+        
+        residentBytes.addAndGet(length);
+        final Eintrag alt;
+        synchronized (this) {
+            alt = eintraege.put(key, eintrag);
+        }
+        // Gleichzeitig geladene Datei: der zuvor eingetragene Eintrag wird ersetzt
+        if (alt != null) {
+            alt.abgeben();
+        }
+        if (LOGGER.isLoggable(FINEST)) {
+            LOGGER.finest("Gecacht: " + eintrag);
+        }
+        return of(eintrag);
+    }
+    
+    /**
+     * Freie Bloecke reservieren. Falls noetig wird ein neuer Slab angelegt oder es werden die am laengsten
+     * nicht mehr angeforderten Eintraege verdraengt. Eintraege, die gerade gesendet werden, geben ihre Bloecke
+     * erst danach frei und werden deshalb uebersprungen.
+     * @param anzahl Anzahl der benoetigten Bloecke
+     * @return Die Nummern der Bloecke oder null, falls nicht genug Speicher frei wird
+     */
+    private int[] reservieren(int anzahl) {
+        final Deque<Eintrag> verdraengteEintraege = new ArrayDeque<>();
+        int[] bloecke = null;
+        synchronized (this) {
+            while (freieBloecke.size() < anzahl && anzahlSlabs < maxSlabs) {
+                neuerSlab();
+            }
+            
+            // Nur verdraengen, wenn die nicht gesendeten Eintraege zusammen genug Bloecke freigeben
+            if (freieBloecke.size() < anzahl && freieBloecke.size() + getFreigebbareBloecke() >= anzahl) {
+                final Iterator<Eintrag> iter = eintraege.values().iterator();
+                while (freieBloecke.size() < anzahl && iter.hasNext()) {
+                    final Eintrag eintrag = iter.next();
+                    if (eintrag.isGepinnt()) {
+                        continue;
+                    }
+                    iter.remove();
+                    verdraengteEintraege.add(eintrag);
+                    eintrag.abgeben();
+                }
+            }
+            
+            if (freieBloecke.size() >= anzahl) {
+                bloecke = new int[anzahl];
+                for (int i = 0; i < anzahl; i++) {
+                    bloecke[i] = freieBloecke.pop();
+                }
+            }
+        }
+        
+        verdraengt.addAndGet(verdraengteEintraege.size());
+        if (LOGGER.isLoggable(FINER) && !verdraengteEintraege.isEmpty()) {
+            LOGGER.finer("Verdraengt: " + verdraengteEintraege.size() + " Eintraege, " + this);
+        }
+        return bloecke;
+    }
+    
+    // Aufruf nur mit Lock
+    private int getFreigebbareBloecke() {
+        int anzahl = 0;
+        for (Eintrag eintrag : eintraege.values()) {
+            if (!eintrag.isGepinnt()) {
+                anzahl += eintrag.bloecke.length;
+            }
+        }
+        return anzahl;
+    }
+    
+    // Aufruf nur mit Lock
+    private void neuerSlab() {
+        slabs[anzahlSlabs] = ByteBuffer.allocateDirect(SLAB_SIZE);
+        final int erster = anzahlSlabs * BLOECKE_PRO_SLAB;
+        for (int i = 0; i < BLOECKE_PRO_SLAB; i++) {
+            freieBloecke.push(erster + i);
+        }
+        anzahlSlabs++;
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("Neuer Slab: " + this);
+        }
+    }
+    
+    private synchronized void freigeben(int[] bloecke) {
+        for (int block : bloecke) {
+            freieBloecke.push(block);
+        }
+    }
+    
+    // Aufruf nur mit Lock
+    private void freigebenIntern(Eintrag eintrag) {
+        for (int block : eintrag.bloecke) {
+            freieBloecke.push(block);
+        }
+        residentBytes.addAndGet(-eintrag.length);
+    }
+    
+    /**
+     * Sicht auf einen Block: duplicate() teilt die Bytes, hat aber eine eigene Position, so dass mehrere Threads
+     * denselben Slab gleichzeitig lesen koennen.
+     * @param block Nummer des Blocks
+     * @param length Anzahl der genutzten Bytes im Block
+     * @return ByteBuffer fuer den Block
+     */
+    private ByteBuffer getBlock(int block, int length) {
+        final ByteBuffer slab;
+        synchronized (this) {
+            slab = slabs[block / BLOECKE_PRO_SLAB];
+        }
+        final ByteBuffer buffer = slab.duplicate();
+        final int offset = (block % BLOECKE_PRO_SLAB) * BLOCK_SIZE;
+        buffer.limit(offset + length).position(offset);
+        return buffer.slice();
+    }
+    
+    private static String getKey(File file, ImageSize imageSize) {
+        final String key = file.getChecksum();
+        return imageSize == null ? key : key + '_' + imageSize;
+    }
+    
+    public long getTreffer() {
+        return treffer.get();
+    }
+    
+    public long getFehlschlaege() {
+        return fehlschlaege.get();
+    }
+    
+    /**
+     * Trefferquote fuer cachebare Dateien seit dem Start der Anwendung
+     * @return Anteil der Treffer an allen Anfragen zwischen 0 und 1
+     */
+    public double getTrefferquote() {
+        final long t = treffer.get();
+        final long gesamt = t + fehlschlaege.get();
+        return gesamt == 0 ? 0 : (double) t / gesamt;
+    }
+    
+    public long getVerdraengt() {
+        return verdraengt.get();
+    }
+    
+    /**
+     * Anzahl der Bytes, die zur Zeit von Eintraegen belegt sind
+     * @return Belegte Bytes ohne den Verschnitt im jeweils letzten Block
+     */
+    public long getResidentBytes() {
+        return residentBytes.get();
+    }
+    
+    /**
+     * Anzahl der Bytes, die ausserhalb des Heaps fuer Slabs angelegt wurden
+     * @return Angelegte Bytes
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) anzahlSlabs * SLAB_SIZE;
+    }
+    
+    public synchronized int getAnzahlEintraege() {
+        return eintraege.size();
+    }
+    
+    @Override
+    public String toString() {
+        return "MediaCache {treffer=" + treffer + ", fehlschlaege=" + fehlschlaege + ", verdraengt=" + verdraengt
+               + ", residentBytes=" + residentBytes + ", allocatedBytes=" + getAllocatedBytes()
+               + ", eintraege=" + getAnzahlEintraege() + '}';
+    }
+    
+    /**
+     * Eine gecachte Datei. Solange sie gesendet wird, bleiben ihre Bloecke belegt, auch wenn sie inzwischen
+     * verdraengt wurde.
+     */
+    public final class Eintrag {
+        private final String key;
+        private final Path path;
+        private final long length;
+        private final int[] bloecke;
+        
+        // 1 fuer den Cache zzgl. 1 je laufendem Senden; bei 0 sind die Bloecke frei
+        private final AtomicInteger referenzen = new AtomicInteger(1);
+        
+        Eintrag(String key, Path path, long length, int[] bloecke) {
+            this.key = key;
+            this.path = path;
+            this.length = length;
+            this.bloecke = bloecke;
+        }
+        
+        /**
+         * Pfad der Datei, aus der der Eintrag geladen wurde, z.B. falls er vor dem Senden verdraengt wird
+         * @return Pfad der Datei
+         */
+        public Path getPath() {
+            return path;
+        }
+        
+        public long getLength() {
+            return length;
+        }
+        
+        /**
+         * Wird der Eintrag gerade gesendet, wuerde Verdraengen keine Bloecke freigeben
+         * @return true, falls ausser dem Cache noch jemand eine Referenz haelt
+         */
+        boolean isGepinnt() {
+            return referenzen.get() > 1;
+        }
+        
+        /**
+         * Einen Bereich der gecachten Datei in einen OutputStream schreiben. Die Bytes werden aus den Direct
+         * ByteBuffers ueber einen WritableByteChannel geschrieben und nicht als Ganzes in den Heap kopiert.
+         * @param outputStream Ziel, z.B. der Response
+         * @param position Position des ersten Bytes
+         * @param count Anzahl der Bytes
+         * @return false, falls der Eintrag inzwischen verdraengt wurde und nichts geschrieben wurde
+         * @throws IOException Falls beim Schreiben ein Fehler auftritt
+         */
+        public boolean writeTo(OutputStream outputStream, long position, long count) throws IOException {
+            if (!anfordern()) {
+                return false;
+            }
+            try {
+                final WritableByteChannel target = Channels.newChannel(outputStream);
+                final long end = Math.min(position + count, length);
+                long pos = position;
+                while (pos < end) {
+                    final int index = (int) (pos / BLOCK_SIZE);
+                    final int offset = (int) (pos % BLOCK_SIZE);
+                    final int blockLength = (int) Math.min(BLOCK_SIZE, length - (long) index * BLOCK_SIZE);
+                    final ByteBuffer buffer = getBlock(bloecke[index], blockLength);
+                    buffer.position(offset);
+                    buffer.limit((int) Math.min(blockLength, offset + end - pos));
+                    pos += buffer.remaining();
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                }
+            } finally {
+                abgeben();
+            }
+            return true;
+        }
+        
+        private boolean anfordern() {
+            int alt;
+            do {
+                alt = referenzen.get();
+                if (alt == 0) {
+                    return false;
+                }
+            } while (!referenzen.compareAndSet(alt, alt + 1));
+            return true;
+        }
+        
+        // Der Cache gibt seine Referenz beim Verdraengen oder Ersetzen ab
+        private void abgeben() {
+            if (referenzen.decrementAndGet() == 0) {
+                synchronized (MediaCache.this) {
+                    freigebenIntern(this);
+                }
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return "Eintrag {key=" + key + ", path=" + path + ", length=" + length + ", bloecke=" + bloecke.length
+                   + ", referenzen=" + referenzen + '}';
+        }
+    }
+}
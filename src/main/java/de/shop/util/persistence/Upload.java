@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import de.shop.util.ShopRuntimeException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.logging.Level.FINEST;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Eine hochgeladene Datei, die beim Empfang mit einem Puffer fester Groesse in eine temporaere Datei
+ * geschrieben wurde, zusammen mit Groesse, SHA-256-Pruefsumme und erkanntem MIME-Type.
+ * Mit close() werden geoeffnete Datenstroeme geschlossen und die temporaere Datei geloescht,
+ * sofern sie nicht mit moveTo() uebernommen wurde.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class Upload implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    private final Path path;
+    private final long size;
+    private final String checksum;
+    private final MimeType mimeType;
+    private final List<InputStream> inputStreams = new ArrayList<>(1);
+    private boolean moved;
+    
+    Upload(Path path, long size, String checksum, MimeType mimeType) {
+        super();
+        this.path = path;
+        this.size = size;
+        this.checksum = checksum;
+        this.mimeType = mimeType;
+    }
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public String getChecksum() {
+        return checksum;
+    }
+    
+    public MimeType getMimeType() {
+        return mimeType;
+    }
+    
+    /**
+     * Einen Datenstrom auf die temporaere Datei oeffnen, der spaetestens durch close() geschlossen wird.
+     * @return Datenstrom auf die hochgeladene Datei
+     */
+    public InputStream getInputStream() {
+        try {
+            final InputStream inputStream = Files.newInputStream(path);
+            inputStreams.add(inputStream);
+            return inputStream;
+        } catch (IOException e) {
+            throw new ShopRuntimeException(e);
+        }
+    }
+    
+    /**
+     * Die temporaere Datei an ihren endgueltigen Platz verschieben. Das Verzeichnis fuer temporaere Dateien
+     * liegt im selben Dateisystem wie das Zielverzeichnis, so dass nichts kopiert werden muss.
+     * @param target Pfad der Zieldatei
+     * @throws IOException Falls die Datei nicht verschoben werden kann
+     */
+    void moveTo(Path target) throws IOException {
+        try {
+            Files.move(path, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            if (LOGGER.isLoggable(FINEST)) {
+                LOGGER.finest("Kein atomares Verschieben nach " + target + ": " + e.getMessage());
+            }
+            Files.move(path, target, REPLACE_EXISTING);
+        }
+        moved = true;
+    }
+    
+    @Override
+    public void close() {
+        inputStreams.forEach(inputStream -> {
+            try {
+                inputStream.close();
+            } catch (IOException e) {
+                LOGGER.log(WARNING, e.getMessage(), e);
+            }
+        });
+        inputStreams.clear();
+        
+        if (moved) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOGGER.log(WARNING, "Fehler beim Loeschen der temporaeren Datei " + path, e);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return "Upload {path=" + path + ", size=" + size + ", checksum=" + checksum + ", mimeType=" + mimeType + '}';
+    }
+}
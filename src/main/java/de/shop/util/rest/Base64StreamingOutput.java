@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import de.shop.util.persistence.MediaCache;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Eine Datei mit Base64-Codierung in den Response schreiben: Es wird mit einem Puffer fester Groesse gelesen
+ * und codiert, so dass der Heap-Bedarf unabhaengig von der Dateigroesse ist.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class Base64StreamingOutput implements StreamingOutput {
+    private final Path path;
+    private final MediaCache.Eintrag eintrag;
+    
+    /**
+     * Konstruktor fuer eine Datei
+     * @param path Pfad der Datei
+     */
+    public Base64StreamingOutput(Path path) {
+        super();
+        this.path = path;
+        this.eintrag = null;
+    }
+    
+    /**
+     * Konstruktor fuer eine Datei im MediaCache
+     * @param eintrag Der Eintrag im Cache
+     */
+    public Base64StreamingOutput(MediaCache.Eintrag eintrag) {
+        super();
+        this.path = eintrag.getPath();
+        this.eintrag = eintrag;
+    }
+    
+    /**
+     * Laenge der Base64-Codierung ohne Zeilenumbrueche fuer den Header "Content-Length" berechnen
+     * @param length Laenge der Datei
+     * @return Laenge der Base64-Codierung einschliesslich Padding
+     */
+    public static long getEncodedLength(long length) {
+        return (length + 2) / 3 * 4;
+    }
+    
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        // close() des Encoders schreibt das Padding, darf den Response-Stream aber nicht schliessen
+        try (final OutputStream base64 = Base64.getEncoder().wrap(new NonClosingOutputStream(outputStream))) {
+            // Wurde der Eintrag zwischenzeitlich verdraengt, wird die Datei aus dem Dateisystem gelesen
+            if (eintrag == null || !eintrag.writeTo(base64, 0, eintrag.getLength())) {
+                Files.copy(path, base64);
+            }
+        }
+        outputStream.flush();
+    }
+    
+    @Override
+    public String toString() {
+        return "Base64StreamingOutput {path=" + path + ", eintrag=" + eintrag + '}';
+    }
+    
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream outputStream) {
+            super(outputStream);
+        }
+        
+        // FilterOutputStream schreibt sonst jedes Byte einzeln
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
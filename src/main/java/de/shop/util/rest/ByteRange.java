@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import java.util.Optional;
+
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+
+/**
+ * Ein Bytebereich aus dem Header "Range" gemaess RFC 7233, z.B. "bytes=0-1023", "bytes=1024-" oder "bytes=-500".
+ * Mehrere Bereiche und syntaktisch falsche Angaben werden ignoriert, d.h. die gesamte Datei wird geliefert.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public final class ByteRange {
+    // Header-Namen, die in javax.ws.rs.core.HttpHeaders fehlen
+    public static final String RANGE = "Range";
+    public static final String ACCEPT_RANGES = "Accept-Ranges";
+    public static final String CONTENT_RANGE = "Content-Range";
+    public static final String BYTES = "bytes";
+    
+    private static final String BYTES_UNIT = BYTES + '=';
+    private static final char BIS = '-';
+    private static final char TRENNER = ',';
+    
+    private final long start;
+    private final long end;
+    private final long length;
+    
+    private ByteRange(long start, long end, long length) {
+        this.start = start;
+        this.end = end;
+        this.length = length;
+    }
+    
+    /**
+     * Den Header "Range" fuer eine Datei mit gegebener Laenge auswerten
+     * @param header Wert des Headers "Range" oder null
+     * @param length Laenge der Datei in Bytes
+     * @return Der angeforderte Bereich oder empty(), falls die gesamte Datei geliefert werden soll
+     */
+    public static Optional<ByteRange> parse(String header, long length) {
+        if (header == null || !header.startsWith(BYTES_UNIT) || header.indexOf(TRENNER) != -1) {
+            return empty();
+        }
+        
+        final String spec = header.substring(BYTES_UNIT.length()).trim();
+        final int pos = spec.indexOf(BIS);
+        if (pos == -1) {
+            return empty();
+        }
+        
+        try {
+            if (pos == 0) {
+                // Suffix: die letzten n Bytes
+                final long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    return of(new ByteRange(length, length - 1, length));
+                }
+                return of(new ByteRange(Math.max(0, length - suffix), length - 1, length));
+            }
+            
+            final long start = Long.parseLong(spec.substring(0, pos));
+            final String endStr = spec.substring(pos + 1);
+            if (endStr.isEmpty()) {
+                return of(new ByteRange(start, length - 1, length));
+            }
+            
+            final long end = Long.parseLong(endStr);
+            if (end < start) {
+                return empty();
+            }
+            return of(new ByteRange(start, Math.min(end, length - 1), length));
+        } catch (NumberFormatException e) {
+            return empty();
+        }
+    }
+    
+    /**
+     * Kann der Bereich geliefert werden oder ist "416 Range Not Satisfiable" die Antwort?
+     * @return true, falls der Bereich innerhalb der Datei beginnt
+     */
+    public boolean isSatisfiable() {
+        return start < length && start <= end;
+    }
+    
+    public long getStart() {
+        return start;
+    }
+    
+    public long getEnd() {
+        return end;
+    }
+    
+    public long getCount() {
+        return end - start + 1;
+    }
+    
+    /**
+     * Wert fuer den Header "Content-Range"
+     * @return z.B. "bytes 0-1023/4096"; bei einem nicht lieferbaren Bereich "*" statt Anfang und Ende
+     */
+    public String toContentRange() {
+        return isSatisfiable()
+               ? BYTES + ' ' + start + BIS + end + '/' + length
+               : BYTES + " */" + length;
+    }
+    
+    @Override
+    public String toString() {
+        return "ByteRange {start=" + start + ", end=" + end + ", length=" + length + '}';
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package de.shop.util.rest;
+
+import de.shop.util.persistence.MediaCache;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Einen Bereich einer Datei aus dem MediaCache in den Response schreiben. Wurde der Eintrag zwischenzeitlich
+ * verdraengt, wird die Datei aus dem Dateisystem gelesen.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class CachedStreamingOutput implements StreamingOutput {
+    private final MediaCache.Eintrag eintrag;
+    private final long position;
+    private final long count;
+    
+    /**
+     * Konstruktor fuer einen Bereich einer gecachten Datei
+     * @param eintrag Der Eintrag im Cache
+     * @param position Position des ersten Bytes
+     * @param count Anzahl der Bytes
+     */
+    public CachedStreamingOutput(MediaCache.Eintrag eintrag, long position, long count) {
+        super();
+        this.eintrag = eintrag;
+        this.position = position;
+        this.count = count;
+    }
+    
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        if (!eintrag.writeTo(outputStream, position, count)) {
+            new FileStreamingOutput(eintrag.getPath(), position, count).write(outputStream);
+            return;
+        }
+        outputStream.flush();
+    }
+    
+    @Override
+    public String toString() {
+        return "CachedStreamingOutput {eintrag=" + eintrag + ", position=" + position + ", count=" + count + '}';
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import javax.ws.rs.core.StreamingOutput;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Einen Bereich einer Datei mit FileChannel.transferTo() in den Response schreiben: Die Bytes werden nicht
+ * in den Heap kopiert, sondern vom Betriebssystem bzw. mit einem kleinen Puffer des JDK uebertragen.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+public class FileStreamingOutput implements StreamingOutput {
+    private final Path path;
+    private final long position;
+    private final long count;
+    
+    /**
+     * Konstruktor fuer einen Bereich einer Datei
+     * @param path Pfad der Datei
+     * @param position Position des ersten Bytes
+     * @param count Anzahl der Bytes
+     */
+    public FileStreamingOutput(Path path, long position, long count) {
+        super();
+        this.path = path;
+        this.position = position;
+        this.count = count;
+    }
+    
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        // Wird eine Datei waehrend des Downloads ersetzt, bleibt der geoeffnete Channel auf der alten Datei
+        try (final FileChannel channel = FileChannel.open(path, READ)) {
+            final WritableByteChannel target = Channels.newChannel(outputStream);
+            final long end = Math.min(position + count, channel.size());
+            long pos = position;
+            while (pos < end) {
+                final long transferred = channel.transferTo(pos, end - pos, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                pos += transferred;
+            }
+        }
+        outputStream.flush();
+    }
+    
+    @Override
+    public String toString() {
+        return "FileStreamingOutput {path=" + path + ", position=" + position + ", count=" + count + '}';
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.rest;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.AnnotationIntrospector;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+import de.shop.util.ShopRuntimeException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.Variant;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.logging.Level.FINER;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+import static javax.ws.rs.core.MediaType.APPLICATION_XML_TYPE;
+import static javax.ws.rs.core.MediaType.TEXT_XML_TYPE;
+import static javax.ws.rs.core.Response.Status.NOT_ACCEPTABLE;
+
+/**
+ * Listen als JSON-Array oder XML-Dokument elementweise in den Response schreiben ("Streaming"),
+ * so dass der Speicherbedarf unabhaengig von der Anzahl der Elemente ist.
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@ApplicationScoped
+public class StreamingListWriter {
+    private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+    
+    // Wurzelelement wie bei RESTEasy fuer Listen
+    private static final String XML_ROOT = "collection";
+    // Nach wie vielen Elementen der Puffer geleert wird
+    private static final int FLUSH_INTERVAL = 100;
+    
+    private static final List<Variant> VARIANTS = Variant.mediaTypes(APPLICATION_JSON_TYPE,
+                                                                      APPLICATION_XML_TYPE,
+                                                                      TEXT_XML_TYPE)
+                                                         .build();
+    
+    private final ObjectMapper objectMapper;
+    private final XMLOutputFactory xmlOutputFactory;
+    private final Map<Class<?>, JAXBContext> jaxbContexts = new ConcurrentHashMap<>();
+    
+    StreamingListWriter() {
+        super();
+        // Jackson-Annotationen und ergaenzend JAXB-Annotationen wie bei resteasy-jackson2-provider
+        final AnnotationIntrospector introspector = AnnotationIntrospector.pair(new JacksonAnnotationIntrospector(),
+                                                                                new JaxbAnnotationIntrospector());
+        objectMapper = new ObjectMapper();
+        objectMapper.setAnnotationIntrospector(introspector);
+        objectMapper.disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        objectMapper.getFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        xmlOutputFactory = XMLOutputFactory.newInstance();
+    }
+    
+    /**
+     * Response mit den Elementen eines Streams im Format JSON oder XML gemaess dem Header "Accept" erzeugen
+     * @param objekte Stream mit den Elementen, der erst beim Schreiben des Response konsumiert wird
+     * @param clazz Klasse der Elemente
+     * @param setStructuralLinks Funktion, mit der vor dem Schreiben eines Elements dessen URIs gesetzt werden
+     * @param request von JAX-RS injiziertes Objekt zu Request
+     * @param <T> Typ der Elemente
+     * @return Response mit StreamingOutput bzw. Statuscode 406
+     */
+    public <T> Response ok(Stream<T> objekte, Class<T> clazz, Consumer<? super T> setStructuralLinks, Request request) {
+        final Variant variant = request.selectVariant(VARIANTS);
+        if (variant == null) {
+            return Response.status(NOT_ACCEPTABLE).build();
+        }
+        
+        final MediaType mediaType = variant.getMediaType();
+        final Iterator<T> iterator = objekte.peek(setStructuralLinks).iterator();
+        final StreamingOutput output = APPLICATION_JSON_TYPE.equals(mediaType)
+                                       ? out -> writeJson(iterator, clazz, out)
+                                       : out -> writeXml(iterator, clazz, out);
+        return Response.ok(output, mediaType)
+                       .build();
+    }
+    
+    private <T> void writeJson(Iterator<T> iterator, Class<T> clazz, OutputStream out) throws IOException {
+        final ObjectWriter writer = objectMapper.writerFor(clazz);
+        int anzahl = 0;
+        try (final JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            while (iterator.hasNext()) {
+                writer.writeValue(generator, iterator.next());
+                if (++anzahl % FLUSH_INTERVAL == 0) {
+                    generator.flush();
+                }
+            }
+            generator.writeEndArray();
+        }
+        
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("JSON-Elemente: " + anzahl);
+        }
+    }
+    
+    private <T> void writeXml(Iterator<T> iterator, Class<T> clazz, OutputStream out) throws IOException {
+        int anzahl = 0;
+        try {
+            final Marshaller marshaller = getJaxbContext(clazz).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+            
+            // close() beim XMLStreamWriter schliesst nicht den OutputStream
+            final XMLStreamWriter writer = xmlOutputFactory.createXMLStreamWriter(new NonClosingOutputStream(out),
+                                                                                  UTF_8.name());
+            writer.writeStartDocument(UTF_8.name(), "1.0");
+            writer.writeStartElement(XML_ROOT);
+            while (iterator.hasNext()) {
+                marshaller.marshal(iterator.next(), writer);
+                if (++anzahl % FLUSH_INTERVAL == 0) {
+                    writer.flush();
+                }
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.close();
+        } catch (JAXBException | XMLStreamException e) {
+            throw new ShopRuntimeException(e);
+        }
+        
+        if (LOGGER.isLoggable(FINER)) {
+            LOGGER.finer("XML-Elemente: " + anzahl);
+        }
+    }
+    
+    private JAXBContext getJaxbContext(Class<?> clazz) throws JAXBException {
+        JAXBContext ctx = jaxbContexts.get(clazz);
+        if (ctx == null) {
+            ctx = JAXBContext.newInstance(clazz);
+            jaxbContexts.putIfAbsent(clazz, ctx);
+        }
+        return ctx;
+    }
+    
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
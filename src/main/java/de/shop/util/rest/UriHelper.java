@@ -19,9 +19,16 @@ package de.shop.util.rest;
 
 import java.lang.reflect.Method;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
 import javax.enterprise.context.ApplicationScoped;
 import javax.ws.rs.core.UriInfo;
 
+import static de.shop.util.Constants.CURSOR_QUERY_PARAM;
+import static java.util.Optional.empty;
+import static java.util.Optional.of;
+
 
 /**
  * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
@@ -44,4 +51,59 @@ public class UriHelper {
                       .path(clazz, method.getName())
                       .build(id);
     }
+    
+    /**
+     * URI fuer die naechste Seite bei "Keyset Pagination": die Request-URI mit einem neuen Cursor
+     * @param lastId ID des letzten Objekts der aktuellen Seite
+     * @param uriInfo UriInfo zum aktuellen Request
+     * @return URI fuer die naechste Seite
+     */
+    public URI getNextUri(long lastId, UriInfo uriInfo) {
+        return getNextUri(encodeCursor(lastId), uriInfo);
+    }
+    
+    /**
+     * URI fuer die naechste Seite bei "Keyset Pagination" mit einem bereits codierten Cursor,
+     * z.B. bei einem zusammengesetzten Schluessel
+     * @param cursor Cursor fuer den Query-Parameter
+     * @param uriInfo UriInfo zum aktuellen Request
+     * @return URI fuer die naechste Seite
+     */
+    public URI getNextUri(String cursor, UriInfo uriInfo) {
+        return uriInfo.getRequestUriBuilder()
+                      .replaceQueryParam(CURSOR_QUERY_PARAM, cursor)
+                      .build();
+    }
+    
+    /**
+     * Die ID des letzten Objekts einer Seite als undurchsichtigen Cursor codieren
+     * @param lastId ID des letzten Objekts
+     * @return Cursor fuer den Query-Parameter
+     */
+    public String encodeCursor(long lastId) {
+        return Base64.getUrlEncoder()
+                     .withoutPadding()
+                     .encodeToString(String.valueOf(lastId).getBytes(StandardCharsets.US_ASCII));
+    }
+    
+    /**
+     * Einen Cursor decodieren
+     * @param cursor Cursor aus dem Query-Parameter oder null fuer die erste Seite
+     * @return ID des letzten Objekts der vorherigen Seite bzw. 0 fuer die erste Seite;
+     *         leeres Optional bei einem ungueltigen Cursor
+     */
+    public Optional<Long> decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return of(0L);
+        }
+        
+        try {
+            final String lastIdStr = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.US_ASCII);
+            final long lastId = Long.parseLong(lastIdStr);
+            return lastId < 0 ? empty() : of(lastId);
+        } catch (IllegalArgumentException e) {
+            // auch NumberFormatException
+            return empty();
+        }
+    }
 }
@@ -6,48 +6,51 @@ SET MODE PostgreSQL
 -- Default bei deutschem Betriebssystem:
 -- SET datestyle TO 'DMY'
 
--- BLOBs mit PostgreSQL:
--- INSERT INTO file_tbl (id, version, bytes, filename, mimetype, multimedia_type, erzeugt, aktualisiert) VALUES (301,0,lo_import('C:/temp/db/image.png'),'Privatkunde_301.png','png','I','2014-02-01 00:00:00','2014-02-01 00:00:00')
--- INSERT INTO file_tbl (id, version, bytes, filename, mimetype, multimedia_type, erzeugt, aktualisiert) VALUES (302,0,lo_import('C:/temp/db/video.mp4'),'Privatkunde_302.mp4','mp4','V','2014-02-02 00:00:00','2014-02-02 00:00:00')
+-- BLOBs mit PostgreSQL: FileContentMigration lagert die Inhalte beim Start in das Dateisystem aus.
+-- <checksum> ist die SHA-256-Pruefsumme der Datei in Kleinbuchstaben (z.B. mit sha256sum), <groesse> ihre Groesse in Bytes.
+-- INSERT INTO file_content (checksum, bytes, groesse, referenzen, freigegeben, erzeugt, aktualisiert) VALUES ('<checksum image.png>',lo_import('C:/temp/db/image.png'),<groesse image.png>,1,NULL,'2014-02-01 00:00:00','2014-02-01 00:00:00')
+-- INSERT INTO file_content (checksum, bytes, groesse, referenzen, freigegeben, erzeugt, aktualisiert) VALUES ('<checksum video.mp4>',lo_import('C:/temp/db/video.mp4'),<groesse video.mp4>,1,NULL,'2014-02-02 00:00:00','2014-02-02 00:00:00')
+-- INSERT INTO file_tbl (id, version, checksum, groesse, filename, mimetype, multimedia_type, erzeugt, aktualisiert) VALUES (301,0,'<checksum image.png>',<groesse image.png>,'Privatkunde_301.png','png','I','2014-02-01 00:00:00','2014-02-01 00:00:00')
+-- INSERT INTO file_tbl (id, version, checksum, groesse, filename, mimetype, multimedia_type, erzeugt, aktualisiert) VALUES (302,0,'<checksum video.mp4>',<groesse video.mp4>,'Privatkunde_302.mp4','mp4','V','2014-02-02 00:00:00','2014-02-02 00:00:00')
 
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES(300,0,'admin',1,NULL,'2014-02-01','F',NULL,NULL,false,NULL,NULL,'2014-02-01 00:00:00','2014-02-01 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, file_fk, bemerkungen, erzeugt, aktualisiert) VALUES (301,0,'adriana.alpha',1,1500.5,'2014-02-01','P','VH','W',true,0.1,NULL,NULL,'2014-02-01 00:00:00','2014-02-01 00:00:00')
--- INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, file_fk, bemerkungen, erzeugt, aktualisiert) VALUES (301,0,'adriana.alpha',1,1500.5,'2014-02-01','P','VH','W',true,0.1,301,NULL,'2014-02-01 00:00:00','2014-02-01 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, file_fk, bemerkungen, erzeugt, aktualisiert) VALUES (302,0,'alfred.alpha',1,500.5,'2014-02-02','P','L','M',true,NULL,NULL,NULL,'2014-02-02 00:00:00','2014-02-02 00:00:00')
--- INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, file_fk, bemerkungen, erzeugt, aktualisiert) VALUES (302,0,'alfred.alpha',1,500.5,'2014-02-02','P','L','M',true,NULL,302,NULL,'2014-02-02 00:00:00','2014-02-02 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (303,0,'anton.alpha',1,0.5,'2014-02-03','F',NULL,NULL,true,0.1,NULL,'2014-02-03 00:00:00','2014-02-03 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (304,0,'dirk.delta',1,1500.5,'2014-02-04','F',NULL,NULL,true,0.15,NULL,'2014-02-04 00:00:00','2014-02-04 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (305,0,'emil.epsilon',1,1500.5,'2014-02-05','P','G','M',false,NULL,NULL,'2014-02-05 00:00:00','2014-02-05 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (320,0,'na.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (321,0,'nb.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (322,0,'nc.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (323,0,'nd.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (324,0,'ne.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (325,0,'nf.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (326,0,'ng.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (327,0,'nh.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (328,0,'ni.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (329,0,'nj.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (330,0,'nk.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (331,0,'nl.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (332,0,'nm.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (333,0,'nn.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (334,0,'no.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (335,0,'np.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (336,0,'nq.nu',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (340,0,'oa.omega',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (341,0,'ob.omega',2,11500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (342,0,'oc.omega',3,21500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (343,0,'od.omega',4,31500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (344,0,'oe.omega',5,41500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (345,0,'of.omega',1,51500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (346,0,'og.omega',2,61500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (347,0,'oh.omega',3,71500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (348,0,'oi.omega',4,81500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (349,0,'oj.omega',5,911500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (350,0,'ok.omega',1,101500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (351,0,'ol.omega',2,111500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
-INSERT INTO kunde (id, version, loginname, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (352,0,'om.omega',3,121500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES(300,0,'admin','Admin','admin@hs-karlsruhe.de',1,NULL,'2014-02-01','F',NULL,NULL,false,NULL,NULL,'2014-02-01 00:00:00','2014-02-01 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, file_fk, bemerkungen, erzeugt, aktualisiert) VALUES (301,0,'adriana.alpha','Alpha','adriana.alpha@hs-karlsruhe.de',1,1500.5,'2014-02-01','P','VH','W',true,0.1,NULL,NULL,'2014-02-01 00:00:00','2014-02-01 00:00:00')
+-- INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, file_fk, bemerkungen, erzeugt, aktualisiert) VALUES (301,0,'adriana.alpha','Alpha','adriana.alpha@hs-karlsruhe.de',1,1500.5,'2014-02-01','P','VH','W',true,0.1,301,NULL,'2014-02-01 00:00:00','2014-02-01 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, file_fk, bemerkungen, erzeugt, aktualisiert) VALUES (302,0,'alfred.alpha','Alpha','alfred.alpha@hs-karlsruhe.de',1,500.5,'2014-02-02','P','L','M',true,NULL,NULL,NULL,'2014-02-02 00:00:00','2014-02-02 00:00:00')
+-- INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, file_fk, bemerkungen, erzeugt, aktualisiert) VALUES (302,0,'alfred.alpha','Alpha','alfred.alpha@hs-karlsruhe.de',1,500.5,'2014-02-02','P','L','M',true,NULL,302,NULL,'2014-02-02 00:00:00','2014-02-02 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (303,0,'anton.alpha','Alpha','anton.alpha@hs-karlsruhe.de',1,0.5,'2014-02-03','F',NULL,NULL,true,0.1,NULL,'2014-02-03 00:00:00','2014-02-03 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (304,0,'dirk.delta','Delta','dirk.delta@hs-karlsruhe.de',1,1500.5,'2014-02-04','F',NULL,NULL,true,0.15,NULL,'2014-02-04 00:00:00','2014-02-04 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (305,0,'emil.epsilon','Epsilon','emil.epsilon@hs-karlsruhe.de',1,1500.5,'2014-02-05','P','G','M',false,NULL,NULL,'2014-02-05 00:00:00','2014-02-05 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (320,0,'na.nu','Nu','na.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (321,0,'nb.nu','Nu','nb.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (322,0,'nc.nu','Nu','nc.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (323,0,'nd.nu','Nu','nd.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (324,0,'ne.nu','Nu','ne.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (325,0,'nf.nu','Nu','nf.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (326,0,'ng.nu','Nu','ng.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (327,0,'nh.nu','Nu','nh.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (328,0,'ni.nu','Nu','ni.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (329,0,'nj.nu','Nu','nj.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (330,0,'nk.nu','Nu','nk.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (331,0,'nl.nu','Nu','nl.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (332,0,'nm.nu','Nu','nm.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (333,0,'nn.nu','Nu','nn.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (334,0,'no.nu','Nu','no.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (335,0,'np.nu','Nu','np.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (336,0,'nq.nu','Nu','nq.nu@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (340,0,'oa.omega','Omega','oa.omega@hs-karlsruhe.de',1,1500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (341,0,'ob.omega','Omega','ob.omega@hs-karlsruhe.de',2,11500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (342,0,'oc.omega','Omega','oc.omega@hs-karlsruhe.de',3,21500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (343,0,'od.omega','Omega','od.omega@hs-karlsruhe.de',4,31500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (344,0,'oe.omega','Omega','oe.omega@hs-karlsruhe.de',5,41500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (345,0,'of.omega','Omega','of.omega@hs-karlsruhe.de',1,51500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (346,0,'og.omega','Omega','og.omega@hs-karlsruhe.de',2,61500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (347,0,'oh.omega','Omega','oh.omega@hs-karlsruhe.de',3,71500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (348,0,'oi.omega','Omega','oi.omega@hs-karlsruhe.de',4,81500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (349,0,'oj.omega','Omega','oj.omega@hs-karlsruhe.de',5,911500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (350,0,'ok.omega','Omega','ok.omega@hs-karlsruhe.de',1,101500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (351,0,'ol.omega','Omega','ol.omega@hs-karlsruhe.de',2,111500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
+INSERT INTO kunde (id, version, loginname, nachname, email, kategorie, umsatz, seit, art, familienstand, geschlecht, newsletter, rabatt, bemerkungen, erzeugt, aktualisiert) VALUES (352,0,'om.omega','Omega','om.omega@hs-karlsruhe.de',3,121500.5,'2014-02-28','P','VH','M',true,NULL,NULL,'2014-02-28 00:00:00','2014-02-28 00:00:00')
 
 INSERT INTO kunde_hobby (kunde_fk, hobby) VALUES (301,'S')
 INSERT INTO kunde_hobby (kunde_fk, hobby) VALUES (301,'L')
@@ -24,9 +24,12 @@ import de.shop.bestellverwaltung.util.BestellungBuilder;
 import de.shop.kundenverwaltung.business.KundenBroker;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.util.AbstractBrokerTest;
+import de.shop.util.persistence.DefaultEM;
 import java.lang.invoke.MethodHandles;
+import java.math.BigDecimal;
 import java.util.logging.Logger;
 import javax.inject.Inject;
+import javax.persistence.EntityManager;
 import javax.transaction.HeuristicMixedException;
 import javax.transaction.HeuristicRollbackException;
 import javax.transaction.NotSupportedException;
@@ -39,6 +42,7 @@ import org.junit.runner.RunWith;
 
 import static de.shop.bestellverwaltung.util.BestellungAssert.assertThatBestellung;
 import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.MIT_BESTELLUNGEN;
+import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.NUR_KUNDE;
 import static de.shop.util.TestConstants.BEGINN;
 import static de.shop.util.TestConstants.ENDE;
 import static de.shop.util.TestConstants.LOGINNAME;
@@ -66,6 +70,10 @@ public class BestellungenBrokerTest extends AbstractBrokerTest {
 	@Inject
 	private KatalogBroker katalogBroker;
 	
+	@Inject
+	@DefaultEM
+	private EntityManager em;
+	
     // Story: Als ... moechte ich eine neue Bestellung abspeichern
 	@Test
 	@InSequence(1)
@@ -106,4 +114,119 @@ public class BestellungenBrokerTest extends AbstractBrokerTest {
 
 		LOGGER.finer("save " + ENDE);
 	}
+	
+    // Story: Als ... moechte ich, dass beim Bestellen der Umsatz des Kunden fortgeschrieben wird
+	@Test
+	@InSequence(2)
+	public void saveUmsatz() throws RollbackException, HeuristicMixedException, HeuristicRollbackException,
+	                                SystemException, NotSupportedException {
+		LOGGER.finer("saveUmsatz " + BEGINN);
+		
+		// Given
+		trans.begin();
+		final Artikel artikel = katalogBroker.findById(ARTIKEL_1_ID).get();
+		trans.commit();
+		
+		Bestellung bestellung = new BestellungBuilder()
+                                .addBestellposition(artikel, ARTIKEL_1_ANZAHL)
+                                .build();
+		
+		trans.begin();
+		final AbstractKunde kunde = kundenBroker.findByLoginname(LOGINNAME, MIT_BESTELLUNGEN).get();
+		trans.commit();
+		final int anzahlVorher = kunde.getAnzahlBestellungen();
+		final BigDecimal umsatzVorher = kunde.getUmsatz();
+		
+		// When
+		trans.begin();
+		bestellung = bestellungenBroker.save(bestellung, kunde);
+		trans.commit();
+		
+		// Then
+		trans.begin();
+		final AbstractKunde kundeNachher = kundenBroker.findByLoginname(LOGINNAME, NUR_KUNDE).get();
+		trans.commit();
+		assertThat(kundeNachher.getAnzahlBestellungen()).isEqualTo(anzahlVorher + 1);
+		assertThat(kundeNachher.getUmsatz()).isEqualByComparingTo(umsatzVorher.add(bestellung.getGesamtbetrag()));
+		assertThat(kundeNachher.getLetzteBestellung()).isNotNull();
+
+		LOGGER.finer("saveUmsatz " + ENDE);
+	}
+	
+    // Story: Als ... moechte ich, dass beim Bestellen die groesste Bestellmenge des Kunden nur erhoeht wird
+	@Test
+	@InSequence(3)
+	public void saveMaxBestellmenge() throws RollbackException, HeuristicMixedException, HeuristicRollbackException,
+	                                         SystemException, NotSupportedException {
+		LOGGER.finer("saveMaxBestellmenge " + BEGINN);
+		
+		// Given
+		trans.begin();
+		final Artikel artikel = katalogBroker.findById(ARTIKEL_1_ID).get();
+		final AbstractKunde kunde = kundenBroker.findByLoginname(LOGINNAME, MIT_BESTELLUNGEN).get();
+		trans.commit();
+		final int maxVorher = kunde.getMaxBestellmenge();
+		final int mengeGroesser = maxVorher + 1;
+		
+		// When
+		trans.begin();
+		bestellungenBroker.save(new BestellungBuilder().addBestellposition(artikel, mengeGroesser).build(), kunde);
+		trans.commit();
+		
+		// Then
+		trans.begin();
+		final AbstractKunde kundeNachGroesser = kundenBroker.findByLoginname(LOGINNAME, MIT_BESTELLUNGEN).get();
+		trans.commit();
+		assertThat(kundeNachGroesser.getMaxBestellmenge()).isEqualTo(mengeGroesser);
+		
+		// When (2)
+		trans.begin();
+		bestellungenBroker.save(new BestellungBuilder().addBestellposition(artikel, ARTIKEL_1_ANZAHL).build(),
+		                        kundeNachGroesser);
+		trans.commit();
+		
+		// Then (2)
+		trans.begin();
+		final AbstractKunde kundeNachKleiner = kundenBroker.findByLoginname(LOGINNAME, NUR_KUNDE).get();
+		trans.commit();
+		assertThat(kundeNachKleiner.getMaxBestellmenge()).isEqualTo(mengeGroesser);
+
+		LOGGER.finer("saveMaxBestellmenge " + ENDE);
+	}
+	
+    // Story: Als ... moechte ich, dass die groesste Bestellmenge fuer vorhandene Kunden nachgetragen wird
+	@Test
+	@InSequence(4)
+	public void bestellmengeNachtragen() throws RollbackException, HeuristicMixedException,
+	                                            HeuristicRollbackException, SystemException, NotSupportedException {
+		LOGGER.finer("bestellmengeNachtragen " + BEGINN);
+		
+		// Given
+		trans.begin();
+		final long kundeId = kundenBroker.findByLoginname(LOGINNAME, NUR_KUNDE).get().getId();
+		final Number erwartet = (Number) em.createNativeQuery("SELECT MAX(bp.anzahl)"
+		                                                      + " FROM bestellung b"
+		                                                      + " JOIN bestellposition bp ON bp.bestellung_fk = b.id"
+		                                                      + " WHERE b.kunde_fk = :id")
+		                                   .setParameter("id", kundeId)
+		                                   .getSingleResult();
+		em.createNativeQuery("UPDATE kunde SET max_bestellmenge = NULL WHERE id = :id")
+		  .setParameter("id", kundeId)
+		  .executeUpdate();
+		trans.commit();
+		
+		// When
+		trans.begin();
+		final int anzahl = kundenBroker.bestellmengeNachtragen();
+		trans.commit();
+		
+		// Then
+		assertThat(anzahl).isGreaterThanOrEqualTo(1);
+		trans.begin();
+		final AbstractKunde kunde = kundenBroker.findByLoginname(LOGINNAME, NUR_KUNDE).get();
+		trans.commit();
+		assertThat(kunde.getMaxBestellmenge()).isEqualTo(erwartet.intValue());
+
+		LOGGER.finer("bestellmengeNachtragen " + ENDE);
+	}
 }
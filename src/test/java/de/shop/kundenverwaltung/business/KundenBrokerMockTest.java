@@ -25,6 +25,8 @@ import de.shop.kundenverwaltung.util.AdresseBuilder;
 import de.shop.kundenverwaltung.util.IdentityBuilder;
 import de.shop.kundenverwaltung.util.PrivatkundeBuilder;
 import de.shop.util.AbstractBrokerMockTest;
+import de.shop.util.persistence.AfterCommit;
+import de.shop.util.persistence.FileContentBroker;
 import de.shop.util.persistence.FileHelper;
 import java.lang.invoke.MethodHandles;
 import java.util.Date;
@@ -81,6 +83,21 @@ public class KundenBrokerMockTest extends AbstractBrokerMockTest {
     
     @Mock
     private Instance<ManagedExecutorService> managedExecutorServiceInstance;
+    
+    @Mock
+    private Instance<KundeIdIndex> kundeIdIndexInstance;
+    
+    @Mock
+    private Instance<KundeCriteriaQueries> kundeCriteriaQueriesInstance;
+    
+    @Mock
+    private Instance<KundenStatistik> kundenStatistikInstance;
+    
+    @Mock
+    private Instance<FileContentBroker> fileContentBrokerInstance;
+    
+    @Mock
+    private Instance<AfterCommit> afterCommitInstance;
 	
     // Story: Als ein ... moechte ich einen Kunden zu einem gegebenen Loginnamen suchen
 	@Test
@@ -91,7 +108,10 @@ public class KundenBrokerMockTest extends AbstractBrokerMockTest {
 		// Given
         
         // new statt @Inject: injizierte Attribute (z.B. EntityManager) sind null
-	    final KundenBroker kundenBroker = new KundenBroker(mockedEm, iamInstance, fileHelperInstance, managedExecutorServiceInstance);
+	    final KundenBroker kundenBroker = new KundenBroker(mockedEm, iamInstance, fileHelperInstance, managedExecutorServiceInstance,
+                                                               kundeIdIndexInstance, kundeCriteriaQueriesInstance,
+                                                               kundenStatistikInstance, fileContentBrokerInstance,
+                                                               afterCommitInstance);
         final AbstractKunde mockedKunde = getMockedKundeByLoginname(LOGINNAME);
         mockSingletonQuery(BY_LOGINNAME, mockedKunde);
         
@@ -21,8 +21,13 @@ import de.shop.iam.domain.IdentityVO;
 import de.shop.kundenverwaltung.business.KundenBroker.OrderByType;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.util.AbstractBrokerTest;
+import de.shop.util.persistence.File;
+import de.shop.util.persistence.FileHelper;
 import java.lang.invoke.MethodHandles;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.logging.Logger;
@@ -44,6 +49,7 @@ import static de.shop.kundenverwaltung.util.KundenAssert.assertThatKunden;
 import static de.shop.kundenverwaltung.util.OptionalKundenAssert.assertThatOptionalKunden;
 import static de.shop.util.TestConstants.BEGINN;
 import static de.shop.util.TestConstants.ENDE;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 
@@ -61,11 +67,18 @@ public class KundenBrokerTest extends AbstractBrokerTest {
 	private static final String LOGINNAME = "adriana.alpha";
     private static final int MIN_MENGE = 2;
     private static final char SUFFIX_NEUER_NACHNAME = 'x';
+    private static final String ID_PREFIX = "30";
+    private static final String PNG_SIGNATUR = "\u0089PNG\r\n\u001a\n";
+    private static final Date SEIT_VON = Date.from(LocalDate.of(2014, 2, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    private static final Date SEIT_BIS = Date.from(LocalDate.of(2014, 2, 2).atStartOfDay(ZoneId.systemDefault()).toInstant());
 
 	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
 	
 	@Inject
 	private KundenBroker kundenBroker;
+	
+	@Inject
+	private FileHelper fileHelper;
 
 
     // Story: Als ein ... moechte ich einen Kunden zu gegebenem Loginnamen suchen
@@ -88,6 +101,25 @@ public class KundenBrokerTest extends AbstractBrokerTest {
 		LOGGER.finer("findByLoginname " + ENDE);
 	}
 	
+    // Story: Als ein ... moechte ich beim Eingeben einer Kunden-ID passende IDs vorgeschlagen bekommen
+	@Test
+	@InSequence(2)
+	public void findIdsByPrefix() {
+		LOGGER.finer("findIdsByPrefix " + BEGINN);
+		
+		// Given
+		
+		// When
+		final List<Long> ids = kundenBroker.findIdsByPrefix(ID_PREFIX);
+		
+		// Then
+		assertThat(ids).isNotEmpty()
+		               .contains(PRIVATKUNDE_ID)
+		               .isSorted();
+		assertThat(ids.stream().allMatch(id -> String.valueOf(id).startsWith(ID_PREFIX))).isTrue();
+		LOGGER.finer("findIdsByPrefix " + ENDE);
+	}
+	
     // Story: Als ein ... moechte ich Kunden zu einem gegebenen Nachnamen suchen
 	@Test
 	@InSequence(10)
@@ -218,10 +250,42 @@ public class KundenBrokerTest extends AbstractBrokerTest {
 		kunde = kundenBroker.findById(PRIVATKUNDE_ID, NUR_KUNDE).get();
         trans.commit();
         assertThatKunde(kunde).hasNachname(neuerNachname);
+        
+        // Der gespiegelte Nachname in der Tabelle kunde wurde ebenfalls aktualisiert
+        trans.begin();
+        final Optional<List<AbstractKunde>> kundenNeuerNachname = kundenBroker.findByNachname(neuerNachname, NUR_KUNDE);
+        trans.commit();
+        assertThatKunden(kundenNeuerNachname.get())
+            .isNotEmpty()
+            .haveSameNachname(neuerNachname);
 
 		LOGGER.finer("updateNachname " + ENDE);
 	}
 	
+    // Story: Als ein ... moechte ich Kunden suchen, die in einem Zeitraum Kunde geworden sind
+	@Test
+	@InSequence(21)
+	public void findByCriteriaZeitraum() throws RollbackException, HeuristicMixedException,
+                                                HeuristicRollbackException, SecurityException,
+                                                IllegalStateException, SystemException, NotSupportedException {
+		LOGGER.finer("findByCriteriaZeitraum " + BEGINN);
+		
+		// Given
+		
+		// When
+		trans.begin();
+		final List<AbstractKunde> kunden = kundenBroker.findByCriteria(SEIT_VON, SEIT_BIS, null, null).get();
+		trans.commit();
+		
+		// Then
+		assertThat(kunden).isNotEmpty()
+		                  .doesNotHaveDuplicates();
+		assertThat(kunden.stream()
+		                 .map(AbstractKunde::getSeit)
+		                 .allMatch(seit -> !seit.before(SEIT_VON) && !seit.after(SEIT_BIS))).isTrue();
+		LOGGER.finer("findByCriteriaZeitraum " + ENDE);
+	}
+	
     // Story: Als ein ... moechte ich einen vorhandenen Kunden loeschen, falls
     //        er keine Bestellungen hat
 	@Test
@@ -281,4 +345,39 @@ public class KundenBrokerTest extends AbstractBrokerTest {
 		trans.rollback();
 		LOGGER.finer("deleteMitBestellungen " + ENDE);
 	}
+	
+    // Story: Als ein ... moechte ich, dass identische Bilder verschiedener Kunden
+    //        nur einmal abgespeichert werden
+	@Test
+	@InSequence(50)
+	public void setFileDedupliziert() throws RollbackException, HeuristicMixedException,
+	                                         HeuristicRollbackException, SystemException,
+	                                         NotSupportedException {
+		LOGGER.finer("setFileDedupliziert " + BEGINN);
+		
+		// Given
+		// PNG-Signatur, damit der MIME-Type erkannt wird, und ein eindeutiger Inhalt
+		final byte[] bytes = (PNG_SIGNATUR + System.nanoTime()).getBytes(ISO_8859_1);
+		
+		// When
+		trans.begin();
+		final AbstractKunde kunde1 = kundenBroker.findById(PRIVATKUNDE_ID, NUR_KUNDE).get();
+		kundenBroker.setFile(kunde1, bytes);
+		final AbstractKunde kunde2 = kundenBroker.findById(ID_MIT_BESTELLUNGEN, NUR_KUNDE).get();
+		kundenBroker.setFile(kunde2, bytes);
+		trans.commit();
+		
+		// Then
+		trans.begin();
+		final File file1 = kundenBroker.findById(PRIVATKUNDE_ID, NUR_KUNDE).get().getFile();
+		final File file2 = kundenBroker.findById(ID_MIT_BESTELLUNGEN, NUR_KUNDE).get().getFile();
+		assertThat(file1.getFilename()).isNotEqualTo(file2.getFilename());
+		assertThat(file1.getChecksum()).isNotNull()
+		                               .isEqualTo(file2.getChecksum());
+		assertThat(file1.getContent().getReferenzen()).isEqualTo(2);
+		assertThat(fileHelper.readBytes(file1)).isEqualTo(bytes);
+		trans.commit();
+		
+		LOGGER.finer("setFileDedupliziert " + ENDE);
+	}
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2013 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.shop.kundenverwaltung.business;
+
+import de.shop.iam.domain.Adresse;
+import de.shop.iam.domain.IdentityVO;
+import de.shop.kundenverwaltung.domain.HobbyType;
+import de.shop.kundenverwaltung.domain.Privatkunde;
+import de.shop.kundenverwaltung.util.AdresseBuilder;
+import de.shop.kundenverwaltung.util.IdentityBuilder;
+import de.shop.kundenverwaltung.util.PrivatkundeBuilder;
+import de.shop.util.AbstractBrokerTest;
+import java.lang.invoke.MethodHandles;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+import javax.inject.Inject;
+import javax.transaction.HeuristicMixedException;
+import javax.transaction.HeuristicRollbackException;
+import javax.transaction.NotSupportedException;
+import javax.transaction.RollbackException;
+import javax.transaction.SystemException;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static de.shop.kundenverwaltung.business.KundenBroker.FetchType.NUR_KUNDE;
+import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.ENDE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+/**
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@RunWith(Arquillian.class)
+public class KundenImportBrokerTest extends AbstractBrokerTest {
+	private static final String NACHNAME = "Nachnameimport";
+	private static final String VORNAME = "Vorname";
+	private static final String PASSWORD = "p";
+	private static final String PLZ = "76133";
+	private static final String ORT = "Karlsruhe";
+	private static final String STRASSE = "Testweg";
+	private static final String HAUSNR = "1";
+	private static final Date SEIT = Date.from(LocalDate.of(2014, 2, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+	private static final String SUFFIX_FEHLERHAFT = "b";
+	private static final List<String> SUFFIXE = Arrays.asList("a", SUFFIX_FEHLERHAFT, "c");
+
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	@Inject
+	private KundenImportBroker kundenImportBroker;
+	
+	@Inject
+	private KundenBroker kundenBroker;
+	
+    // Story: Als ein Administrator moechte ich beim Massenimport die gueltigen Zeilen eines Blocks importieren,
+    //        auch wenn eine Zeile erst beim Speichern in der DB abgelehnt wird
+	@Test
+	@InSequence(1)
+	public void importBlockMitFehlerhafterZeile() throws RollbackException, HeuristicMixedException,
+                                                         HeuristicRollbackException, SecurityException,
+                                                         IllegalStateException, SystemException,
+                                                         NotSupportedException {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		// Die fehlerhafte Zeile besteht die Validierung, aber "hobby" ist in kunde_hobby NOT NULL,
+		// so dass die Transaktion fuer den ganzen Block zurueckgerollt wird
+		final List<ImportZeile> zeilen = Arrays.asList(ImportZeile.of(1, () -> neuerKunde(SUFFIXE.get(0))),
+		                                               ImportZeile.of(2, () -> neuerKunde(SUFFIXE.get(1))),
+		                                               ImportZeile.of(3, () -> neuerKunde(SUFFIXE.get(2))));
+		
+		// When
+		final ImportErgebnis ergebnis = kundenImportBroker.importKunden(zeilen.iterator());
+		
+		// Then
+		assertThat(ergebnis.getZeilen()).isEqualTo(zeilen.size());
+		assertThat(ergebnis.getImportiert()).isEqualTo(zeilen.size() - 1);
+		assertThat(ergebnis.getAnzahlFehler()).isEqualTo(1);
+		assertThat(ergebnis.getFehler()).hasSize(1);
+		
+		trans.begin();
+		for (String suffix : SUFFIXE) {
+			final boolean vorhanden = kundenBroker.findByLoginname(getLoginname(suffix), NUR_KUNDE).isPresent();
+			assertThat(vorhanden).isEqualTo(!SUFFIX_FEHLERHAFT.equals(suffix));
+		}
+		trans.commit();
+		
+		LOGGER.finer(ENDE);
+	}
+	
+	private static String getLoginname(String suffix) {
+		return VORNAME + '.' + NACHNAME + suffix;
+	}
+	
+	private static Privatkunde neuerKunde(String suffix) {
+		final Adresse adresse = new AdresseBuilder()
+		                        .plz(PLZ)
+		                        .ort(ORT)
+		                        .strasse(STRASSE)
+		                        .hausnr(HAUSNR)
+		                        .build();
+		final IdentityVO identity = new IdentityBuilder()
+		                            .loginname(getLoginname(suffix))
+		                            .enabled(true)
+		                            .expirationDate(null)
+		                            .password(PASSWORD)
+		                            .passwordWdh(PASSWORD)
+		                            .nachname(NACHNAME + suffix)
+		                            .vorname(VORNAME)
+		                            .email(NACHNAME + suffix + "@test.de")
+		                            .adresse(adresse)
+		                            .build();
+		final Set<HobbyType> hobbys = new HashSet<>();
+		hobbys.add(SUFFIX_FEHLERHAFT.equals(suffix) ? null : HobbyType.SPORT);
+		return new PrivatkundeBuilder()
+		       .identity(identity)
+		       .seit(SEIT)
+		       .hobbys(hobbys)
+		       .agbAkzeptiert(true)
+		       .build();
+	}
+}
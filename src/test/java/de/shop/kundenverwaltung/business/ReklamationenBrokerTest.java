@@ -19,6 +19,7 @@ package de.shop.kundenverwaltung.business;
 
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.kundenverwaltung.domain.Reklamation;
+import de.shop.kundenverwaltung.domain.ReklamationId;
 import de.shop.util.AbstractBrokerTest;
 import java.lang.invoke.MethodHandles;
 import java.util.List;
@@ -108,4 +109,43 @@ public class ReklamationenBrokerTest extends AbstractBrokerTest {
         
 		LOGGER.finer("findByKundeIdNichtVorhanden " + ENDE);
 	}
+	
+	// Story: Als ein ... moechte ich die Reklamationen zu einem Kunden seitenweise lesen
+	@Test
+	@InSequence(3)
+	public void findByKundeIdSeitenweise() throws RollbackException, HeuristicMixedException,
+                                                  HeuristicRollbackException, SecurityException,
+                                                  IllegalStateException, SystemException, NotSupportedException {
+		LOGGER.finer("findByKundeIdSeitenweise " + BEGINN);
+
+		// Given
+		
+		// When
+		trans.begin();
+		final List<Reklamation> ersteSeite =
+                                reklamationenBroker.findByKundeId(KUNDE_ID_MIT_REKLAMATIONEN, null, 1).get();
+        trans.commit();
+		final Reklamation letzte = ersteSeite.get(0);
+		trans.begin();
+		final List<Reklamation> zweiteSeite =
+                                reklamationenBroker.findByKundeId(KUNDE_ID_MIT_REKLAMATIONEN,
+                                                                  new ReklamationId(letzte.getNr(), letzte.getDatum()),
+                                                                  1).get();
+        trans.commit();
+		
+		// Then
+		assertThat(ersteSeite).hasSize(1);
+		assertThat(zweiteSeite).hasSize(1);
+		final Reklamation naechste = zweiteSeite.get(0);
+		// Der Schluessel (nr, datum) muss echt groesser sein als der letzte Schluessel der ersten Seite
+		assertThat(naechste.getNr()).isGreaterThanOrEqualTo(letzte.getNr());
+		if (naechste.getNr() == letzte.getNr()) {
+			assertThat(naechste.getDatum()).isAfter(letzte.getDatum());
+		}
+		final ReklamationId naechsteId = new ReklamationId(naechste.getNr(), naechste.getDatum());
+		assertThat(ersteSeite).extracting(r -> new ReklamationId(r.getNr(), r.getDatum()))
+		                      .doesNotContain(naechsteId);
+		
+		LOGGER.finer("findByKundeIdSeitenweise " + ENDE);
+	}
 }
@@ -18,25 +18,39 @@
 package de.shop.kundenverwaltung.rest;
 
 import de.shop.bestellverwaltung.domain.Bestellung;
+import de.shop.kundenverwaltung.business.Segmentstatistik;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.kundenverwaltung.domain.GeschlechtType;
+import de.shop.kundenverwaltung.domain.KundePatch;
 import de.shop.kundenverwaltung.domain.Privatkunde;
 import de.shop.util.AbstractResourceTest;
+import de.shop.util.persistence.ChunkedUploads;
+import de.shop.util.persistence.Dateistatistik;
+import de.shop.util.persistence.ImageSize;
+import de.shop.util.persistence.MimeType;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
+import javax.imageio.ImageIO;
 import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.core.Form;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.Response;
 import org.jboss.arquillian.junit.Arquillian;
 import org.jboss.arquillian.junit.InSequence;
@@ -47,22 +61,43 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import static de.shop.bestellverwaltung.util.BestellungenAssert.assertThatBestellungen;
+import static de.shop.iam.rest.IamQueryFilter.IAM_QUERIES_HEADER;
+import static de.shop.kundenverwaltung.rest.KundenResource.CHUNK_PATH_PARAM;
+import static de.shop.kundenverwaltung.rest.KundenResource.CHUNK_SIZE_QUERY_PARAM;
+import static de.shop.kundenverwaltung.rest.KundenResource.EMAIL_QUERY_PARAM;
 import static de.shop.kundenverwaltung.rest.KundenResource.GESCHLECHT_QUERY_PARAM;
 import static de.shop.kundenverwaltung.rest.KundenResource.ID_PATH_PARAM;
+import static de.shop.kundenverwaltung.rest.KundenResource.LENGTH_QUERY_PARAM;
+import static de.shop.kundenverwaltung.rest.KundenResource.MIME_TYPE_QUERY_PARAM;
 import static de.shop.kundenverwaltung.rest.KundenResource.NACHNAME_QUERY_PARAM;
+import static de.shop.kundenverwaltung.rest.KundenResource.SIZE_QUERY_PARAM;
+import static de.shop.kundenverwaltung.rest.KundenResource.UPLOAD_ID_PATH_PARAM;
 import static de.shop.kundenverwaltung.util.KundeAssert.assertThatKunde;
 import static de.shop.kundenverwaltung.util.KundenAssert.assertThatKunden;
 import static de.shop.kundenverwaltung.util.ViolationAssert.assertThatViolations;
 import static de.shop.util.ByteArrrayAssert.assertThatByteArrray;
 import static de.shop.util.Constants.FIRST_LINK;
 import static de.shop.util.Constants.LAST_LINK;
+import static de.shop.util.Constants.LIMIT_QUERY_PARAM;
+import static de.shop.util.Constants.MAX_AUTOCOMPLETE;
+import static de.shop.util.Constants.NEXT_LINK;
 import static de.shop.util.ResponseAssert.assertThatResponse;
+import static de.shop.util.rest.ByteRange.CONTENT_RANGE;
+import static de.shop.util.rest.ByteRange.RANGE;
 import static de.shop.util.TestConstants.BEGINN;
 import static de.shop.util.TestConstants.ENDE;
+import static de.shop.util.TestConstants.KUNDEN_BASE64_ID_URI;
 import static de.shop.util.TestConstants.KUNDEN_BESTELLUNGEN_ID_URI;
 import static de.shop.util.TestConstants.KUNDEN_ID_URI;
 import static de.shop.util.TestConstants.KUNDEN_IMAGE_ID_URI;
+import static de.shop.util.TestConstants.KUNDEN_PREFIX_NACHNAME_URI;
 import static de.shop.util.TestConstants.KUNDEN_PRIVAT_URI;
+import static de.shop.util.TestConstants.KUNDEN_STATISTIK_DATEIEN_URI;
+import static de.shop.util.TestConstants.KUNDEN_STATISTIK_URI;
+import static de.shop.util.TestConstants.KUNDEN_STREAM_URI;
+import static de.shop.util.TestConstants.KUNDEN_UPLOADS_CHUNK_URI;
+import static de.shop.util.TestConstants.KUNDEN_UPLOADS_ID_URI;
+import static de.shop.util.TestConstants.KUNDEN_UPLOADS_URI;
 import static de.shop.util.TestConstants.KUNDEN_URI;
 import static de.shop.util.TestConstants.LOGINNAME;
 import static de.shop.util.TestConstants.LOGINNAME_ADMIN;
@@ -79,6 +114,8 @@ import static javax.ws.rs.client.Entity.entity;
 import static javax.ws.rs.client.Entity.form;
 import static javax.ws.rs.client.Entity.json;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 
@@ -94,12 +131,19 @@ public class KundenResourceTest extends AbstractResourceTest {
 	private static final long ID_NICHT_VORHANDEN = 10_000L;
 	private static final long ID_UPDATE = 320;
 	private static final long ID_UPDATE_FALSCHES_PASSWORD = 325;
+	private static final long ID_PATCH = 321;
     private static final long ID_DELETE = 322;
 	private static final long ID_DELETE_MIT_BESTELLUNGEN = 301;
 	private static final long ID_DELETE_FORBIDDEN = 301;
 	private static final String NACHNAME = "Alpha";
+	private static final String NACHNAME_PREFIX_KLEIN = "al";
+	private static final String NACHNAME_GEBUENDELT = "Omega";
+	private static final Long[] IDS_GEBUENDELT = { 340L, 341L, 342L, 343L, 344L, 345L, 346L, 347L, 348L, 349L,
+		                                           350L, 351L, 352L };
 	private static final String NACHNAME_NICHT_VORHANDEN = "Falschername";
 	private static final String NACHNAME_INVALID = "Test9";
+	private static final String EMAIL_GROSS = "Adriana.Alpha@HS-Karlsruhe.de";
+	private static final long ID_EMAIL = 301;
     
     private static final int TIMEOUT = 3;
     
@@ -116,6 +160,9 @@ public class KundenResourceTest extends AbstractResourceTest {
 	private static final String IMAGE_PATH_UPLOAD = "src/test/resources/rest/" + IMAGE_FILENAME;
 	private static final String IMAGE_MIMETYPE = "image/png";
 	private static final String IMAGE_PATH_DOWNLOAD = "target/" + IMAGE_FILENAME;
+	// Das verkleinerte Bild wird im Hintergrund erzeugt
+	private static final int MAX_VERSUCHE_DERIVAT = 50;
+	private static final long WARTEZEIT_DERIVAT_MILLIS = 200;
 	private static final long ID_UPLOAD = 302;
 
 	private static final String IMAGE_INVALID = "image.bmp";
@@ -456,6 +503,65 @@ public class KundenResourceTest extends AbstractResourceTest {
 		LOGGER.finer(ENDE);
 	}
 	
+    // Story: Als ein Administrator moechte ich einen Kunden anhand der Emailadresse suchen,
+    //        wobei Gross-/Kleinschreibung keine Rolle spielt
+	@Test
+	@InSequence(23)
+	public void findByEmail() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		
+		// When
+		final Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				                  .target(KUNDEN_URI)
+                                  .queryParam(EMAIL_QUERY_PARAM, EMAIL_GROSS)
+                                  .request()
+                                  .accept(APPLICATION_JSON)
+                                  .get();
+		
+		// Then
+        assertThatResponse(response).hasStatusOk();
+		final List<AbstractKunde> kunden = response.readEntity(new GenericType<List<AbstractKunde>>() { });
+        assertThatKunden(kunden)
+            .isNotEmpty()
+            .doNotContainNull();
+		assertThat(kunden).hasSize(1);
+        assertThatKunde(kunden.get(0)).hasId(ID_EMAIL);
+		
+		LOGGER.finer(ENDE);
+	}
+	
+    // Story: Als ein Administrator moechte ich Anzahl und Umsatz der Kunden je Segment sehen
+	@Test
+	@InSequence(24)
+	public void findStatistik() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		
+		// When
+		final Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				                  .target(KUNDEN_STATISTIK_URI)
+                                  .request()
+                                  .accept(APPLICATION_JSON)
+                                  .get();
+		
+		// Then
+        assertThatResponse(response).hasStatusOk();
+		final Segmentstatistik statistik = response.readEntity(Segmentstatistik.class);
+		assertThat(statistik.getGesamt().getAnzahl()).isPositive();
+		assertThat(statistik.getArt()).isNotEmpty();
+		final long summeArt = statistik.getArt()
+		                               .values()
+		                               .stream()
+		                               .mapToLong(Segmentstatistik.Kennzahlen::getAnzahl)
+		                               .sum();
+		assertThat(summeArt).isEqualTo(statistik.getGesamt().getAnzahl());
+		
+		LOGGER.finer(ENDE);
+	}
+	
     // Story: Als ein Administrator moechte ich Kunden anhand des Geschlechts suchen
 	@Test
 	@InSequence(30)
@@ -484,6 +590,139 @@ public class KundenResourceTest extends AbstractResourceTest {
 		LOGGER.finer(ENDE);
 	}
     
+    // Story: Als Administrator moechte ich Kunden nach dem Nachnamen suchen, ohne dass pro Kunde
+    //        das IAM-System abgefragt wird
+	@Test
+	@InSequence(33)
+	public void findByNachnameIdentitiesGebuendelt() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		final String nachname = NACHNAME_GEBUENDELT;
+		
+		// When
+		final Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				                  .target(KUNDEN_URI)
+                                  .queryParam(NACHNAME_QUERY_PARAM, nachname)
+                                  .request()
+                                  .accept(APPLICATION_JSON)
+                                  .get();
+		
+		// Then
+        assertThatResponse(response).hasStatusOk();
+		final List<AbstractKunde> kunden = response.readEntity(new GenericType<List<AbstractKunde>>() { });
+        assertThatKunden(kunden)
+            .isNotEmpty()
+            .doNotContainNull();
+		assertThat(kunden).hasSize(IDS_GEBUENDELT.length)
+                          .extracting(AbstractKunde::getId)
+                          .containsOnly(IDS_GEBUENDELT);
+		// Jede Identity wurde aus dem gebuendelten IAM-Query uebernommen
+		kunden.forEach(k -> {
+			assertThat(k.getIdentity()).isNotNull();
+			assertThat(k.getIdentity().getNachname()).isEqualTo(nachname);
+			assertThat(k.getIdentity().getLoginname()).endsWith(".omega");
+		});
+        final int iamQueries = Integer.parseInt(response.getHeaderString(IAM_QUERIES_HEADER));
+        assertThat(iamQueries).isLessThan(kunden.size());
+		
+		LOGGER.finer(ENDE);
+	}
+    
+    // Story: Als Mitarbeiter moechte ich beim Eingeben eines Nachnamens passende Nachnamen vorgeschlagen bekommen
+	@Test
+	@InSequence(36)
+	public void findNachnamenByPrefix() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		
+		// When
+		final Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				                  .target(KUNDEN_PREFIX_NACHNAME_URI)
+                                  .resolveTemplate("nachname", NACHNAME_PREFIX_KLEIN)
+                                  .request()
+                                  .accept(APPLICATION_JSON)
+                                  .get();
+		final List<String> nachnamen = response.readEntity(new GenericType<List<String>>() { });
+		
+		// Then
+		assertThat(nachnamen).contains(NACHNAME)
+		                     .doesNotHaveDuplicates();
+		assertThat(nachnamen.size()).isLessThanOrEqualTo(MAX_AUTOCOMPLETE);
+        // Beantwortet aus dem Praefix-Index ohne Abfrage an das IAM-System
+        assertThat(Integer.parseInt(response.getHeaderString(IAM_QUERIES_HEADER))).isEqualTo(0);
+		
+		LOGGER.finer(ENDE);
+	}
+	
+    // Story: Als Administrator moechte ich alle Kunden seitenweise auslesen
+	@Test
+	@InSequence(34)
+	public void findAllSeitenweise() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		final int limit = 2;
+		
+		// When
+		Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				            .target(KUNDEN_URI)
+                            .queryParam(LIMIT_QUERY_PARAM, limit)
+                            .request()
+                            .accept(APPLICATION_JSON)
+                            .get();
+		final List<AbstractKunde> ersteSeite = response.readEntity(new GenericType<List<AbstractKunde>>() { });
+		final Link next = response.getLink(NEXT_LINK);
+		
+		// Then
+        assertThatKunden(ersteSeite)
+            .haveSize(limit)
+            .doNotContainNull();
+        assertThat(next).isNotNull();
+        
+        // When
+        response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+                   .target(next.getUri())
+                   .request()
+                   .accept(APPLICATION_JSON)
+                   .get();
+		final List<AbstractKunde> zweiteSeite = response.readEntity(new GenericType<List<AbstractKunde>>() { });
+        
+        // Then
+        assertThatKunden(zweiteSeite)
+            .isNotEmpty()
+            .doNotContainNull();
+        assertThat(zweiteSeite.get(0).getId()).isGreaterThan(ersteSeite.get(limit - 1).getId());
+		
+		LOGGER.finer(ENDE);
+	}
+    
+    // Story: Als Administrator moechte ich alle Kunden fuer einen Export auslesen
+	@Test
+	@InSequence(35)
+	public void streamAll() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		
+		// When
+		final Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				                  .target(KUNDEN_STREAM_URI)
+                                  .request()
+                                  .accept(APPLICATION_JSON)
+                                  .get();
+		final List<AbstractKunde> kunden = response.readEntity(new GenericType<List<AbstractKunde>>() { });
+		
+		// Then
+        assertThatKunden(kunden)
+            .isNotEmpty()
+            .doNotContainNull();
+        assertThat(kunden.get(0).getBestellungenUri()).isNotNull();
+		
+		LOGGER.finer(ENDE);
+	}
+    
     // Story: Als Administrator moechte ich einen Kunden zu einer Bestellung-ID auslesen
 	@Test
 	@InSequence(31)
@@ -700,6 +939,63 @@ public class KundenResourceTest extends AbstractResourceTest {
 		
 		LOGGER.finer(ENDE);
 	}
+	
+    // Story: Als ein Administrator moechte ich einzelne Kundendaten aendern, ohne den ganzen Kunden zu senden
+	@Test
+	@InSequence(43)
+	public void patch() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				            .target(KUNDEN_ID_URI)
+                            .resolveTemplate(ID_PATH_PARAM, ID_PATCH)
+                            .request()
+                            .accept(APPLICATION_JSON)
+                            .get();
+		AbstractKunde kunde = response.readEntity(AbstractKunde.class);
+		response.close();
+        assertThatKunde(kunde).hasId(ID_PATCH);
+		final int origVersion = kunde.getVersion();
+		
+		final KundePatch patch = new KundePatch();
+		patch.setVersion(origVersion);
+		patch.setBemerkungen(NEUE_BEMERKUNGEN);
+		
+		// When
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_PATCH)
+                   .request()
+                   .method("PATCH", json(patch));
+		
+		// Then
+        assertThatResponse(response).hasStatusNoContent();
+		response.close();
+		
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_PATCH)
+                   .request()
+                   .accept(APPLICATION_JSON)
+                   .get();
+		kunde = response.readEntity(AbstractKunde.class);
+		response.close();
+        assertThatKunde(kunde)
+            .hasVersionGreaterThant(origVersion)
+            .hasBemerkungen(NEUE_BEMERKUNGEN);
+		
+		// Erneutes PATCH mit der alten Versionsnummer funktioniert NICHT
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_PATCH)
+                   .request()
+                   .method("PATCH", json(patch));
+        assertThatResponse(response).hasStatusConflict();
+		response.close();
+		
+		LOGGER.finer(ENDE);
+	}
 
     // Story: Als ein Administrator moechte ich einen Kunden ohne Bestellungen loeschen
 	@Test
@@ -858,4 +1154,444 @@ public class KundenResourceTest extends AbstractResourceTest {
         assertThatResponse(response).hasStatusUnsupportedType();
 		response.close();
 	}
+	
+    // Story: Als ein Administrator moechte ich von einem hochgeladenen Video nur einen Teil herunterladen,
+    //        z.B. um darin zu spulen
+	@Test
+	@InSequence(62)
+	public void downloadRange() throws IOException {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		final byte[] uploadBytes = Files.readAllBytes(Paths.get(IMAGE_PATH_UPLOAD));
+		final int start = 10;
+		final int end = 109;
+		
+		// When
+		final Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				                  .target(KUNDEN_IMAGE_ID_URI)
+                                  .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                                  .request()
+                                  .accept(IMAGE_MIMETYPE)
+                                  .header(RANGE, "bytes=" + start + "-" + end)
+                                  .get();
+		
+		// Then
+        assertThatResponse(response).hasStatusPartialContent();
+		assertThat(response.getHeaderString(CONTENT_RANGE)).isEqualTo("bytes " + start + "-" + end + "/"
+		                                                               + uploadBytes.length);
+		final byte[] downloadBytes = response.readEntity(new GenericType<byte[]>() {});
+        assertThatByteArrray(downloadBytes).isEqualTo(Arrays.copyOfRange(uploadBytes, start, end + 1));
+		
+		LOGGER.finer(ENDE);
+	}
+	
+    // Story: Als ein Administrator moechte ich zu einem hochgeladenen Bild eine verkleinerte Vorschau herunterladen
+	@Test
+	@InSequence(63)
+	public void downloadSmall() throws IOException, InterruptedException {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		final ImageSize size = ImageSize.SMALL;
+		
+		// When
+		// Solange die Vorschau noch im Hintergrund erzeugt wird, wird das Original geliefert:
+		// deshalb wiederholt anfordern, bis die laengere Kante hoechstens die Zielgroesse hat
+		Response response;
+		int kante = Integer.MAX_VALUE;
+		for (int versuch = 0; versuch < MAX_VERSUCHE_DERIVAT && kante > size.getPixel(); versuch++) {
+			if (versuch > 0) {
+				Thread.sleep(WARTEZEIT_DERIVAT_MILLIS);
+			}
+			response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+					   .target(KUNDEN_IMAGE_ID_URI)
+                       .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                       .queryParam(SIZE_QUERY_PARAM, size.toString())
+                       .request()
+                       .accept(IMAGE_MIMETYPE)
+                       .get();
+	        assertThatResponse(response).hasStatusOk();
+			final byte[] downloadBytes = response.readEntity(new GenericType<byte[]>() {});
+			final BufferedImage bild = ImageIO.read(new ByteArrayInputStream(downloadBytes));
+			assertThat(bild).isNotNull();
+			kante = Math.max(bild.getWidth(), bild.getHeight());
+		}
+		
+		// Then
+		assertThat(kante).isLessThanOrEqualTo(size.getPixel());
+		
+		// When (2)
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_IMAGE_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                   .queryParam(SIZE_QUERY_PARAM, "gigantisch")
+                   .request()
+                   .accept(IMAGE_MIMETYPE)
+                   .get();
+		
+		// Then (2)
+        assertThatResponse(response).hasStatusBadRequest();
+		response.close();
+		
+		LOGGER.finer(ENDE);
+	}
+	
+    // Story: Als ein Administrator erhalte ich einen 404 Fehler, wenn ich zu einem nicht-vorhandenen Kunden
+    //        ein Bild herunterladen moechte
+	@Test
+	@InSequence(66)
+	public void downloadKundeNichtVorhanden() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		
+		// When
+		final Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				                  .target(KUNDEN_IMAGE_ID_URI)
+                                  .resolveTemplate(ID_PATH_PARAM, ID_NICHT_VORHANDEN)
+                                  .request()
+                                  .accept(IMAGE_MIMETYPE)
+                                  .get();
+		
+		// Then
+        assertThatResponse(response).hasStatusNotFound();
+		response.close();
+		
+		LOGGER.finer(ENDE);
+	}
+	
+    // Story: Als ein Administrator moechte ich zu einem Kunden ein Bild mit Base64-Codierung hochladen
+    //        und auch wieder herunterladen
+	@Test
+	@InSequence(64)
+	public void uploadDownloadBase64() throws IOException {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		final byte[] uploadBytes = Files.readAllBytes(Paths.get(IMAGE_PATH_UPLOAD));
+		final String base64 = Base64.getEncoder().encodeToString(uploadBytes);
+		
+		// When
+		Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				            .target(KUNDEN_BASE64_ID_URI)
+                            .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                            .request()
+                            .post(entity(base64, TEXT_PLAIN));
+		
+		// Then
+        assertThatResponse(response).hasStatusCreated();
+		response.close();
+		
+		// When (2)
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_BASE64_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                   .request()
+                   .accept(TEXT_PLAIN)
+                   .get();
+		
+		// Then (2)
+        assertThatResponse(response).hasStatusOk();
+		final String downloadBase64 = response.readEntity(String.class);
+		assertThat(downloadBase64).isEqualTo(base64);
+		
+		LOGGER.finer(ENDE);
+	}
+	
+    // Story: Als ein Administrator moechte ich ein Video in Abschnitten hochladen, die Abschnitte in beliebiger
+    //        Reihenfolge senden und die Datei anschliessend unveraendert wieder herunterladen
+	@Test
+	@InSequence(65)
+	public void uploadChunked() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		// 3 volle Abschnitte und ein kuerzerer letzter Abschnitt
+		final int chunkSize = ChunkedUploads.MIN_CHUNK_SIZE;
+		final byte[] uploadBytes = new byte[3 * chunkSize + 123];
+		new Random().nextBytes(uploadBytes);
+		
+		// When
+		Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				            .target(KUNDEN_UPLOADS_URI)
+                            .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                            .queryParam(LENGTH_QUERY_PARAM, uploadBytes.length)
+                            .queryParam(CHUNK_SIZE_QUERY_PARAM, chunkSize)
+                            .queryParam(MIME_TYPE_QUERY_PARAM, MimeType.MP4.toString())
+                            .request()
+                            .accept(APPLICATION_JSON)
+                            .post(null);
+		
+		// Then
+        assertThatResponse(response).hasStatusCreated();
+		final String location = response.getLocation().toString();
+		final String uploadId = location.substring(location.lastIndexOf('/') + 1);
+		response.close();
+		
+		// When (2)
+		// Abschnitte ausser der Reihe: 2, 0, 3, 1
+		for (int nummer : new int[] { 2, 0, 3, 1 }) {
+			final int von = nummer * chunkSize;
+			final byte[] chunk = Arrays.copyOfRange(uploadBytes, von, Math.min(von + chunkSize, uploadBytes.length));
+			response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+					   .target(KUNDEN_UPLOADS_CHUNK_URI)
+                       .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                       .resolveTemplate(UPLOAD_ID_PATH_PARAM, uploadId)
+                       .resolveTemplate(CHUNK_PATH_PARAM, nummer)
+                       .request()
+                       .accept(APPLICATION_JSON)
+                       .put(entity(chunk, APPLICATION_OCTET_STREAM));
+			
+			// Then (2)
+	        assertThatResponse(response).hasStatusOk();
+			response.close();
+		}
+		
+		// When (3)
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_UPLOADS_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                   .resolveTemplate(UPLOAD_ID_PATH_PARAM, uploadId)
+                   .request()
+                   .accept(APPLICATION_JSON)
+                   .post(null);
+		
+		// Then (3)
+        assertThatResponse(response).hasStatusCreated();
+		response.close();
+		
+		// When (4)
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_IMAGE_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                   .request()
+                   .get();
+		
+		// Then (4)
+        assertThatResponse(response).hasStatusOk();
+		final byte[] downloadBytes = response.readEntity(byte[].class);
+		assertThatByteArrray(downloadBytes).isEqualTo(uploadBytes);
+		
+		LOGGER.finer(ENDE);
+	}
+	
+    // Story: Als ein Administrator moechte ich nach dem Hochladen von Dateien die Kennzahlen
+    //        zum Abspeichern im Dateisystem abfragen
+	@Test
+	@InSequence(67)
+	public void findDateistatistik() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		
+		// When
+		final Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				                  .target(KUNDEN_STATISTIK_DATEIEN_URI)
+                                  .request()
+                                  .accept(APPLICATION_JSON)
+                                  .get();
+		
+		// Then
+        assertThatResponse(response).hasStatusOk();
+		final Dateistatistik statistik = response.readEntity(Dateistatistik.class);
+		// In den vorherigen Tests wurden Dateien hochgeladen
+		assertThat(statistik.getEingereiht() + statistik.getDirektGeschrieben()).isPositive();
+		assertThat(statistik.getWarteschlangenLaenge()).isBetween(0, statistik.getMaxAuftraege());
+		// In den vorherigen Tests wurden Bilder heruntergeladen
+		assertThat(statistik.getCacheTreffer() + statistik.getCacheFehlschlaege()).isPositive();
+		assertThat(statistik.getCacheTrefferquote()).isGreaterThanOrEqualTo(0.0)
+		                                            .isLessThanOrEqualTo(1.0);
+		assertThat(statistik.getCacheResidentBytes()).isLessThanOrEqualTo(statistik.getCacheAllocatedBytes());
+		
+		LOGGER.finer(ENDE);
+	}
+	
+    // Story: Als ein Administrator moechte ich nach einem Verbindungsabbruch beim Hochladen in Abschnitten
+    //        die fehlenden Abschnitte ermitteln und die Sitzung erst abschliessen koennen, wenn alle da sind.
+    //        Scheitert das Abschliessen, bleiben die Abschnitte erhalten.
+	@Test
+	@InSequence(69)
+	public void uploadChunkedFortsetzen() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		// 3 Abschnitte, von denen der mittlere beim "Verbindungsabbruch" fehlt
+		final int chunkSize = ChunkedUploads.MIN_CHUNK_SIZE;
+		final byte[] uploadBytes = new byte[3 * chunkSize];
+		new Random().nextBytes(uploadBytes);
+		// Kein bekannter Dateianfang, so dass kein MIME-Type ermittelt werden kann
+		uploadBytes[0] = 1;
+		Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				            .target(KUNDEN_UPLOADS_URI)
+                            .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                            .queryParam(LENGTH_QUERY_PARAM, uploadBytes.length)
+                            .queryParam(CHUNK_SIZE_QUERY_PARAM, chunkSize)
+                            .request()
+                            .accept(APPLICATION_JSON)
+                            .post(null);
+        assertThatResponse(response).hasStatusCreated();
+		final String location = response.getLocation().toString();
+		final String uploadId = location.substring(location.lastIndexOf('/') + 1);
+		response.close();
+		for (int nummer : new int[] { 0, 2 }) {
+			final int von = nummer * chunkSize;
+			response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+					   .target(KUNDEN_UPLOADS_CHUNK_URI)
+                       .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                       .resolveTemplate(UPLOAD_ID_PATH_PARAM, uploadId)
+                       .resolveTemplate(CHUNK_PATH_PARAM, nummer)
+                       .request()
+                       .accept(APPLICATION_JSON)
+                       .put(entity(Arrays.copyOfRange(uploadBytes, von, von + chunkSize), APPLICATION_OCTET_STREAM));
+	        assertThatResponse(response).hasStatusOk();
+			response.close();
+		}
+		
+		// When
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_UPLOADS_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                   .resolveTemplate(UPLOAD_ID_PATH_PARAM, uploadId)
+                   .request()
+                   .accept(APPLICATION_JSON)
+                   .get();
+		
+		// Then
+        assertThatResponse(response).hasStatusOk();
+		Map<String, Object> fortschritt = response.readEntity(new GenericType<Map<String, Object>>() {});
+		assertThat(fortschritt.get("empfangen")).isEqualTo(2);
+		assertThat((List<?>) fortschritt.get("fehlend")).containsExactly(1);
+		
+		// When (2)
+		// Abschliessen trotz fehlendem Abschnitt
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_UPLOADS_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                   .resolveTemplate(UPLOAD_ID_PATH_PARAM, uploadId)
+                   .request()
+                   .accept(APPLICATION_JSON)
+                   .post(null);
+		
+		// Then (2)
+        assertThatResponse(response).hasStatusConflict();
+		fortschritt = response.readEntity(new GenericType<Map<String, Object>>() {});
+		assertThat((List<?>) fortschritt.get("fehlend")).containsExactly(1);
+		
+		// When (3)
+		// Der fehlende Abschnitt mit einem Byte zu viel
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_UPLOADS_CHUNK_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                   .resolveTemplate(UPLOAD_ID_PATH_PARAM, uploadId)
+                   .resolveTemplate(CHUNK_PATH_PARAM, 1)
+                   .request()
+                   .accept(APPLICATION_JSON)
+                   .put(entity(new byte[chunkSize + 1], APPLICATION_OCTET_STREAM));
+		
+		// Then (3)
+        assertThatResponse(response).hasStatusBadRequest();
+		fortschritt = response.readEntity(new GenericType<Map<String, Object>>() {});
+		assertThat((List<?>) fortschritt.get("fehlend")).containsExactly(1);
+		
+		// When (4)
+		// Der fehlende Abschnitt, danach Abschliessen ohne ermittelbaren MIME-Type
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_UPLOADS_CHUNK_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                   .resolveTemplate(UPLOAD_ID_PATH_PARAM, uploadId)
+                   .resolveTemplate(CHUNK_PATH_PARAM, 1)
+                   .request()
+                   .accept(APPLICATION_JSON)
+                   .put(entity(Arrays.copyOfRange(uploadBytes, chunkSize, 2 * chunkSize), APPLICATION_OCTET_STREAM));
+        assertThatResponse(response).hasStatusOk();
+		response.close();
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_UPLOADS_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                   .resolveTemplate(UPLOAD_ID_PATH_PARAM, uploadId)
+                   .request()
+                   .accept(APPLICATION_JSON)
+                   .post(null);
+		
+		// Then (4)
+        assertThatResponse(response).hasStatusBadRequest();
+		response.close();
+		
+		// When (5)
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_UPLOADS_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                   .resolveTemplate(UPLOAD_ID_PATH_PARAM, uploadId)
+                   .request()
+                   .accept(APPLICATION_JSON)
+                   .get();
+		
+		// Then (5)
+		// Die Sitzung mit allen Abschnitten gibt es weiterhin
+        assertThatResponse(response).hasStatusOk();
+		fortschritt = response.readEntity(new GenericType<Map<String, Object>>() {});
+		assertThat(fortschritt.get("empfangen")).isEqualTo(3);
+		assertThat((List<?>) fortschritt.get("fehlend")).isEmpty();
+		
+		// Die Sitzung verwerfen
+		response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				   .target(KUNDEN_UPLOADS_ID_URI)
+                   .resolveTemplate(ID_PATH_PARAM, ID_UPLOAD)
+                   .resolveTemplate(UPLOAD_ID_PATH_PARAM, uploadId)
+                   .request()
+                   .delete();
+        assertThatResponse(response).hasStatusNoContent();
+		response.close();
+		
+		LOGGER.finer(ENDE);
+	}
+	
+    // Story: Als ein Administrator erhalte ich einen 404 Fehler, wenn ich zu einem nicht-vorhandenen Kunden
+    //        eine Datei in Abschnitten hochladen moechte
+	@Test
+	@InSequence(70)
+	public void createChunkedUploadKundeNichtVorhanden() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		
+		// When
+		final Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+				                  .target(KUNDEN_UPLOADS_URI)
+                                  .resolveTemplate(ID_PATH_PARAM, ID_NICHT_VORHANDEN)
+                                  .queryParam(LENGTH_QUERY_PARAM, ChunkedUploads.MIN_CHUNK_SIZE)
+                                  .queryParam(CHUNK_SIZE_QUERY_PARAM, ChunkedUploads.MIN_CHUNK_SIZE)
+                                  .request()
+                                  .accept(APPLICATION_JSON)
+                                  .post(null);
+		
+		// Then
+        assertThatResponse(response).hasStatusNotFound();
+		response.close();
+		
+		LOGGER.finer(ENDE);
+	}
+	
+    // Story: Als ein Kunde darf ich die Kennzahlen zum Abspeichern der Dateien nicht abfragen
+	@Test
+	@InSequence(68)
+	public void findDateistatistikVerboten() {
+		LOGGER.finer(BEGINN);
+		
+		// Given
+		
+		// When
+		final Response response = getHttpsClient(LOGINNAME_KUNDE, PASSWORD_KUNDE)
+				                  .target(KUNDEN_STATISTIK_DATEIEN_URI)
+                                  .request()
+                                  .accept(APPLICATION_JSON)
+                                  .get();
+		
+		// Then
+        assertThatResponse(response).hasStatusForbidden();
+		response.close();
+		
+		LOGGER.finer(ENDE);
+	}
 }
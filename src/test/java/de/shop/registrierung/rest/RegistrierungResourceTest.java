@@ -21,6 +21,7 @@ import de.shop.bestellverwaltung.domain.Bestellung;
 import de.shop.bestellverwaltung.util.BestellungBuilder;
 import de.shop.iam.domain.Adresse;
 import de.shop.iam.domain.IdentityVO;
+import de.shop.kundenverwaltung.business.ImportErgebnis;
 import de.shop.kundenverwaltung.domain.AbstractKunde;
 import de.shop.kundenverwaltung.domain.Privatkunde;
 import de.shop.kundenverwaltung.util.AdresseBuilder;
@@ -48,6 +49,7 @@ import static de.shop.kundenverwaltung.domain.GeschlechtType.MAENNLICH;
 import static de.shop.kundenverwaltung.rest.KundenResource.ID_PATH_PARAM;
 import static de.shop.kundenverwaltung.util.KundeAssert.assertThatKunde;
 import static de.shop.registrierung.rest.ViolationAssert.assertThatViolations;
+import static de.shop.util.Constants.TEXT_CSV;
 import static de.shop.util.ResponseAssert.assertThatResponse;
 import static de.shop.util.TestConstants.ARTIKEL_URI;
 import static de.shop.util.TestConstants.BEGINN;
@@ -56,13 +58,16 @@ import static de.shop.util.TestConstants.ENDE;
 import static de.shop.util.TestConstants.KUNDEN_ID_URI;
 import static de.shop.util.TestConstants.LOGINNAME_ADMIN;
 import static de.shop.util.TestConstants.PASSWORD_ADMIN;
+import static de.shop.util.TestConstants.REGISTRIERUNG_BULK_URI;
 import static de.shop.util.TestConstants.REGISTRIERUNG_PRIVAT_URI;
 import static de.shop.util.TestConstants.REGISTRIERUNG_URI;
 import static java.util.Calendar.FEBRUARY;
 import static java.util.Locale.ENGLISH;
+import static javax.ws.rs.client.Entity.entity;
 import static javax.ws.rs.client.Entity.form;
 import static javax.ws.rs.client.Entity.json;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static org.assertj.core.api.Assertions.assertThat;
 
 
 /**
@@ -111,6 +116,20 @@ public class RegistrierungResourceTest extends AbstractResourceTest {
     private static final long ID_MIT_BESTELLUNGEN = 301;
     private static final String LOGINNAME_EMAIL_EXISTS = VORNAME + '.' + NACHNAME + ".emailEx";
     
+    private static final String CSV_KOPFZEILE =
+        "type,loginname,password,nachname,vorname,email,plz,ort,strasse,hausnr,seit,kategorie,newsletter,agbAkzeptiert";
+    private static final String CSV_BULK = CSV_KOPFZEILE + "\n"
+        + "P,Vorname.Nachnamebulka,p,Nachnamebulka,Vorname,bulka@test.de,76133,Karlsruhe,Testweg,1,2014-02-01,1,false,true\n"
+        + "P,Vorname.Nachnamebulkb,p,Nachnamebulkb,Vorname,bulkb@test.de,76133,Karlsruhe,\"Testweg, Hinterhaus\",2,"
+        + "2014-02-01,1,true,true\n"
+        // Loginname existiert bereits
+        + "P," + LOGINNAME_ADMIN + ",p,Nachnamebulkc,Vorname,bulkc@test.de,76133,Karlsruhe,Testweg,3,2014-02-01,1,false,true\n"
+        // ungueltige PLZ
+        + "P,Vorname.Nachnamebulkd,p,Nachnamebulkd,Vorname,bulkd@test.de," + PLZ_INVALID
+        + ",Karlsruhe,Testweg,4,2014-02-01,1,false,true\n";
+    private static final long BULK_ZEILEN = 4;
+    private static final long BULK_IMPORTIERT = 2;
+    
     // Story: Als ein Gast moechte ich mich registrieren
     @Test
     @InSequence(1)
@@ -332,4 +351,33 @@ public class RegistrierungResourceTest extends AbstractResourceTest {
         
         LOGGER.finer(ENDE);
     }
+    
+    // Story: Als ein Administrator moechte ich viele Kunden aus einer CSV-Datei importieren
+    //        und fuer fehlerhafte Zeilen eine Fehlermeldung erhalten
+    @Test
+    @InSequence(5)
+    public void importCsv() {
+        LOGGER.finer(BEGINN);
+        
+        // Given
+        
+        // When
+        final Response response = getHttpsClient(LOGINNAME_ADMIN, PASSWORD_ADMIN)
+                                  .target(REGISTRIERUNG_BULK_URI)
+                                  .request()
+                                  .accept(APPLICATION_JSON)
+                                  .post(entity(CSV_BULK, TEXT_CSV));
+        
+        // Then
+        assertThatResponse(response).hasStatusOk();
+        final ImportErgebnis ergebnis = response.readEntity(ImportErgebnis.class);
+        response.close();
+        
+        assertThat(ergebnis.getZeilen()).isEqualTo(BULK_ZEILEN);
+        assertThat(ergebnis.getImportiert()).isEqualTo(BULK_IMPORTIERT);
+        assertThat(ergebnis.getAnzahlFehler()).isEqualTo(BULK_ZEILEN - BULK_IMPORTIERT);
+        assertThat(ergebnis.getFehler()).hasSize((int) (BULK_ZEILEN - BULK_IMPORTIERT));
+        
+        LOGGER.finer(ENDE);
+    }
 }
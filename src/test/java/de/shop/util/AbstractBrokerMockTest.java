@@ -22,6 +22,8 @@ import de.shop.kundenverwaltung.util.AdresseBuilder;
 import de.shop.kundenverwaltung.util.IdentityBuilder;
 import de.shop.kundenverwaltung.util.KundeAssert;
 import de.shop.kundenverwaltung.util.PrivatkundeBuilder;
+import de.shop.util.persistence.FileStoreQueueMockTest;
+import de.shop.util.persistence.MediaCacheMockTest;
 import org.jboss.arquillian.container.test.api.Deployment;
 import org.jboss.arquillian.container.test.api.OverProtocol;
 import org.jboss.shrinkwrap.api.Archive;
@@ -40,7 +42,9 @@ public abstract class AbstractBrokerMockTest {
                                                      AdresseBuilder.class,
                                                      IdentityBuilder.class,
                                                      PrivatkundeBuilder.class,
-                                                     KundeAssert.class
+                                                     KundeAssert.class,
+                                                     FileStoreQueueMockTest.class,
+                                                     MediaCacheMockTest.class
                                                     };
 	
 	@Deployment
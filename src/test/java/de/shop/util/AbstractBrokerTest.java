@@ -27,6 +27,7 @@ import de.shop.bestellverwaltung.util.BestellungBuilder;
 import de.shop.bestellverwaltung.util.LieferungAssert;
 import de.shop.bestellverwaltung.util.LieferungenAssert;
 import de.shop.kundenverwaltung.business.KundenBrokerTest;
+import de.shop.kundenverwaltung.business.KundenImportBrokerTest;
 import de.shop.kundenverwaltung.business.ReklamationenBrokerTest;
 import de.shop.kundenverwaltung.util.AdresseBuilder;
 import de.shop.kundenverwaltung.util.IdentityBuilder;
@@ -36,6 +37,8 @@ import de.shop.kundenverwaltung.util.OptionalKundenAssert;
 import de.shop.kundenverwaltung.util.PrivatkundeBuilder;
 import de.shop.kundenverwaltung.util.ReklamationenAssert;
 import de.shop.registrierung.business.RegistrierungBrokerTest;
+import de.shop.util.persistence.FileContentBrokerTest;
+import de.shop.util.persistence.FileContentMigrationTest;
 import java.lang.invoke.MethodHandles;
 import java.util.logging.Logger;
 import javax.inject.Inject;
@@ -66,6 +69,7 @@ public abstract class AbstractBrokerTest {
                                                      ArtikelBuilder.class,
                                                      ArtikelAssert.class,
                                                      KundenBrokerTest.class,
+                                                     KundenImportBrokerTest.class,
                                                      PrivatkundeBuilder.class,
                                                      IdentityBuilder.class,
                                                      AdresseBuilder.class,
@@ -80,7 +84,9 @@ public abstract class AbstractBrokerTest {
                                                      BestellungAssert.class,
                                                      LieferungenBrokerTest.class,
                                                      LieferungAssert.class,
-                                                     LieferungenAssert.class};
+                                                     LieferungenAssert.class,
+                                                     FileContentBrokerTest.class,
+                                                     FileContentMigrationTest.class};
 	
 	@Inject
 	protected UserTransaction trans;
@@ -28,6 +28,7 @@ import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
 import static java.net.HttpURLConnection.HTTP_NOT_FOUND;
 import static java.net.HttpURLConnection.HTTP_NO_CONTENT;
 import static java.net.HttpURLConnection.HTTP_OK;
+import static java.net.HttpURLConnection.HTTP_PARTIAL;
 import static java.net.HttpURLConnection.HTTP_UNAUTHORIZED;
 import static java.net.HttpURLConnection.HTTP_UNSUPPORTED_TYPE;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -57,6 +58,10 @@ public class ResponseAssert extends AbstractAssert<ResponseAssert, Response> {
         return hasStatus(HTTP_OK, HTTP_NOT_FOUND);
     }
     
+    public ResponseAssert hasStatusPartialContent() {
+        return hasStatus(HTTP_PARTIAL);
+    }
+    
     public ResponseAssert hasStatusCreated() {
         return hasStatus(HTTP_CREATED);
     }
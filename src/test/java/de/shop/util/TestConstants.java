@@ -70,12 +70,22 @@ public final class TestConstants {
 	// Pfade und Pfad-Parameter
 	public static final String KUNDEN_URI = BASE_URI + "/kunden";
 	public static final String KUNDEN_PRIVAT_URI = KUNDEN_URI + "/privat";
+	public static final String KUNDEN_STREAM_URI = KUNDEN_URI + "/stream";
+	public static final String KUNDEN_STATISTIK_URI = KUNDEN_URI + "/statistik";
+	public static final String KUNDEN_STATISTIK_DATEIEN_URI = KUNDEN_STATISTIK_URI + "/dateien";
+	public static final String KUNDEN_PREFIX_NACHNAME_URI = KUNDEN_URI + "/prefix/nachname/{nachname}";
 	public static final String REGISTRIERUNG_URI = BASE_URI + "/registrierung";
 	public static final String REGISTRIERUNG_PRIVAT_URI = REGISTRIERUNG_URI + "/privat";
+	public static final String REGISTRIERUNG_BULK_URI = REGISTRIERUNG_URI + "/bulk";
 	public static final String KUNDEN_ID_URI = KUNDEN_URI + "/{" + KundenResource.ID_PATH_PARAM + "}";
 	public static final String KUNDEN_BESTELLUNGEN_ID_URI = KUNDEN_URI + "/bestellungen/{" + KundenResource.BESTELLUNGEN_ID_PATH_PARAM + "}";
 	public static final String KUNDEN_IMAGE_URI = KUNDEN_URI + "/image";
 	public static final String KUNDEN_IMAGE_ID_URI = KUNDEN_IMAGE_URI + "/{" + KundenResource.ID_PATH_PARAM + "}";
+	public static final String KUNDEN_UPLOADS_URI = KUNDEN_IMAGE_ID_URI + "/uploads";
+	public static final String KUNDEN_UPLOADS_ID_URI = KUNDEN_UPLOADS_URI + "/{" + KundenResource.UPLOAD_ID_PATH_PARAM + "}";
+	public static final String KUNDEN_UPLOADS_CHUNK_URI = KUNDEN_UPLOADS_ID_URI + "/{" + KundenResource.CHUNK_PATH_PARAM + "}";
+	public static final String KUNDEN_BASE64_URI = KUNDEN_URI + "/base64";
+	public static final String KUNDEN_BASE64_ID_URI = KUNDEN_BASE64_URI + "/{" + KundenResource.ID_PATH_PARAM + "}";
 	
 	public static final String BESTELLUNGEN_URI = BASE_URI + "/bestellungen";
 	public static final String BESTELLUNGEN_ID_URI = BESTELLUNGEN_URI + "/{" + BestellungenResource.ID_PATH_PARAM + "}";
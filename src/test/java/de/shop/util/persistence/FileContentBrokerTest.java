@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import de.shop.util.AbstractBrokerTest;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.transaction.HeuristicMixedException;
+import javax.transaction.HeuristicRollbackException;
+import javax.transaction.NotSupportedException;
+import javax.transaction.RollbackException;
+import javax.transaction.SystemException;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.ENDE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+
+/**
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@RunWith(Arquillian.class)
+public class FileContentBrokerTest extends AbstractBrokerTest {
+	private static final int ANZAHL_UPLOADS = 4;
+	private static final int GROESSE = 4096;
+	
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	@Inject
+	private FileContentBroker fileContentBroker;
+	
+	@Inject
+	private FileHelper fileHelper;
+	
+	@Inject
+	private ManagedExecutorService executor;
+	
+	@Inject
+	@DefaultEM
+	private EntityManager em;
+	
+    // Story: Als ein Kunde moechte ich ein Bild hochladen, auch wenn gleichzeitig dasselbe Bild
+    //        von einem anderen Kunden hochgeladen wird
+	@Test
+	@InSequence(1)
+	public void findOrCreateParallel() throws InterruptedException, ExecutionException, RollbackException,
+	                                          HeuristicMixedException, HeuristicRollbackException, SystemException,
+	                                          NotSupportedException {
+		LOGGER.finer("findOrCreateParallel " + BEGINN);
+		
+		// Given
+		final byte[] bytes = new byte[GROESSE];
+		new Random().nextBytes(bytes);
+		final CountDownLatch start = new CountDownLatch(1);
+		
+		// When
+		final List<Future<String>> futures = new ArrayList<>(ANZAHL_UPLOADS);
+		for (int i = 0; i < ANZAHL_UPLOADS; i++) {
+			futures.add(executor.submit(() -> {
+				try (final Upload upload = fileHelper.spool(new ByteArrayInputStream(bytes))) {
+					start.await();
+					trans.begin();
+					final FileContent content = fileContentBroker.findOrCreate(upload);
+					fileContentBroker.referenzHinzufuegen(content);
+					trans.commit();
+					return content.getChecksum();
+				}
+			}));
+		}
+		start.countDown();
+		
+		// Then
+		// Keiner der parallelen Uploads darf mit einer Exception abbrechen
+		final List<String> checksums = new ArrayList<>(ANZAHL_UPLOADS);
+		for (Future<String> future : futures) {
+			checksums.add(future.get());
+		}
+		assertThat(checksums).hasSize(ANZAHL_UPLOADS);
+		final String checksum = checksums.get(0);
+		assertThat(checksums).containsOnly(checksum);
+		
+		trans.begin();
+		final FileContent content = em.find(FileContent.class, checksum);
+		assertThat(content).isNotNull();
+		assertThat(content.getReferenzen()).isEqualTo(ANZAHL_UPLOADS);
+		
+		// Die Referenzen wieder entfernen, damit der Inhalt aufgeraeumt werden kann
+		for (int i = 0; i < ANZAHL_UPLOADS; i++) {
+			fileContentBroker.referenzEntfernen(content);
+		}
+		trans.commit();
+		
+		LOGGER.finer("findOrCreateParallel " + ENDE);
+	}
+	
+    // Story: Als ein Administrator moechte ich, dass bei einem abgebrochenen Upload kein Inhalt
+    //        im Dateisystem zurueckbleibt
+	@Test
+	@InSequence(2)
+	public void storeContentRollback() throws SystemException, NotSupportedException {
+		LOGGER.finer("storeContentRollback " + BEGINN);
+		
+		// Given
+		final byte[] bytes = new byte[GROESSE];
+		new Random().nextBytes(bytes);
+		
+		try (final Upload upload = fileHelper.spool(new ByteArrayInputStream(bytes))) {
+			final Path contentPath = fileHelper.getContentPath(upload.getChecksum());
+			
+			// When
+			trans.begin();
+			final FileContent content = fileContentBroker.findOrCreate(upload);
+			fileContentBroker.referenzHinzufuegen(content);
+			fileContentBroker.abspeichern(upload);
+			assertThat(Files.exists(contentPath)).isTrue();
+			trans.rollback();
+			
+			// Then
+			assertThat(Files.exists(contentPath)).isFalse();
+		}
+		
+		LOGGER.finer("storeContentRollback " + ENDE);
+	}
+	
+    // Story: Als ein Kunde moechte ich, dass mein Bild erhalten bleibt, wenn gleichzeitig dasselbe Bild
+    //        von einem anderen Kunden hochgeladen und dabei abgebrochen wird
+	@Test
+	@InSequence(3)
+	public void storeContentParallelRollback() throws InterruptedException, ExecutionException, IOException,
+	                                                  RollbackException, HeuristicMixedException,
+	                                                  HeuristicRollbackException, SystemException,
+	                                                  NotSupportedException {
+		LOGGER.finer("storeContentParallelRollback " + BEGINN);
+		
+		// Given
+		final byte[] bytes = new byte[GROESSE];
+		new Random().nextBytes(bytes);
+		final CountDownLatch abgespeichert = new CountDownLatch(1);
+		final CountDownLatch gefunden = new CountDownLatch(1);
+		
+		// Der abgebrochene Upload speichert den Inhalt ab und wartet, bis der parallele Upload ihn gefunden hat
+		final Future<?> abgebrochen = executor.submit(() -> {
+			try (final Upload upload = fileHelper.spool(new ByteArrayInputStream(bytes))) {
+				trans.begin();
+				final FileContent content = fileContentBroker.findOrCreate(upload);
+				fileContentBroker.referenzHinzufuegen(content);
+				fileContentBroker.abspeichern(upload);
+				abgespeichert.countDown();
+				gefunden.await();
+				trans.rollback();
+			}
+			return null;
+		});
+		
+		try (final Upload upload = fileHelper.spool(new ByteArrayInputStream(bytes))) {
+			final Path contentPath = fileHelper.getContentPath(upload.getChecksum());
+			abgespeichert.await();
+			
+			// When
+			trans.begin();
+			final FileContent content = fileContentBroker.findOrCreate(upload);
+			gefunden.countDown();
+			// Wartet auf das Rollback des anderen Uploads, weil dieser den Inhalt gesperrt hat
+			fileContentBroker.referenzHinzufuegen(content);
+			fileContentBroker.abspeichern(upload);
+			trans.commit();
+			abgebrochen.get();
+			
+			// Then
+			assertThat(Files.exists(contentPath)).isTrue();
+			assertThat(Files.size(contentPath)).isEqualTo(GROESSE);
+			
+			trans.begin();
+			final FileContent gespeichert = em.find(FileContent.class, upload.getChecksum());
+			assertThat(gespeichert.getReferenzen()).isEqualTo(1);
+			
+			// Die Referenz wieder entfernen, damit der Inhalt aufgeraeumt werden kann
+			fileContentBroker.referenzEntfernen(gespeichert);
+			trans.commit();
+		}
+		
+		LOGGER.finer("storeContentParallelRollback " + ENDE);
+	}
+	
+    // Story: Als ein Kunde erhalte ich einen Konflikt statt eines internen Fehlers, wenn der Inhalt meines
+    //        Uploads gleichzeitig aufgeraeumt wurde
+	@Test
+	@InSequence(4)
+	public void referenzHinzufuegenGeloescht() throws SystemException, NotSupportedException {
+		LOGGER.finer("referenzHinzufuegenGeloescht " + BEGINN);
+		
+		// Given
+		final byte[] bytes = new byte[GROESSE];
+		new Random().nextBytes(bytes);
+		
+		try (final Upload upload = fileHelper.spool(new ByteArrayInputStream(bytes))) {
+			// Verwaltungsdaten zu einem Inhalt, den es in der DB nicht (mehr) gibt
+			final FileContent content = new FileContent(upload);
+			
+			// When
+			trans.begin();
+			try {
+				fileContentBroker.referenzHinzufuegen(content);
+				fail("ConcurrentDeletedException erwartet");
+			} catch (ConcurrentDeletedException e) {
+				// Then
+				assertThat(e.getId()).isEqualTo(upload.getChecksum());
+			} finally {
+				trans.rollback();
+			}
+		}
+		
+		LOGGER.finer("referenzHinzufuegenGeloescht " + ENDE);
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import de.shop.util.AbstractBrokerTest;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.transaction.HeuristicMixedException;
+import javax.transaction.HeuristicRollbackException;
+import javax.transaction.NotSupportedException;
+import javax.transaction.RollbackException;
+import javax.transaction.SystemException;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.ENDE;
+import static javax.persistence.TemporalType.TIMESTAMP;
+import static javax.xml.bind.DatatypeConverter.printHexBinary;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+/**
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@RunWith(Arquillian.class)
+public class FileContentMigrationTest extends AbstractBrokerTest {
+	private static final int GROESSE = 4096;
+	private static final long TIMEOUT_SEKUNDEN = 30;
+	
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	@Inject
+	private FileContentMigration fileContentMigration;
+	
+	@Inject
+	private FileHelper fileHelper;
+	
+	@Inject
+	@DefaultEM
+	private EntityManager em;
+	
+    // Story: Als ein Administrator moechte ich, dass Altdaten beim Start aus der DB in das Dateisystem
+    //        ausgelagert werden
+	@Test
+	@InSequence(1)
+	public void migrieren() throws NoSuchAlgorithmException, IOException, InterruptedException, ExecutionException,
+	                               TimeoutException, RollbackException, HeuristicMixedException,
+	                               HeuristicRollbackException, SystemException, NotSupportedException {
+		LOGGER.finer("migrieren " + BEGINN);
+		
+		// Given
+		// Ein Inhalt als Blob in der DB wie vor dem Auslagern, ohne Referenz, damit er spaeter aufgeraeumt wird
+		final byte[] bytes = new byte[GROESSE];
+		new Random().nextBytes(bytes);
+		final String checksum = printHexBinary(MessageDigest.getInstance("SHA-256").digest(bytes))
+		                        .toLowerCase(Locale.ROOT);
+		final Date jetzt = new Date();
+		trans.begin();
+		em.createNativeQuery("INSERT INTO file_content"
+		                     + " (checksum, bytes, groesse, referenzen, freigegeben, erzeugt, aktualisiert)"
+		                     + " VALUES (:checksum, :bytes, :groesse, 0, :jetzt, :jetzt, :jetzt)")
+		  .setParameter("checksum", checksum)
+		  .setParameter("bytes", bytes)
+		  .setParameter("groesse", bytes.length)
+		  .setParameter("jetzt", jetzt, TIMESTAMP)
+		  .executeUpdate();
+		trans.commit();
+		final Path contentPath = fileHelper.getContentPath(checksum);
+		assertThat(Files.exists(contentPath)).isFalse();
+		
+		// When
+		fileContentMigration.migrieren().get(TIMEOUT_SEKUNDEN, TimeUnit.SECONDS);
+		
+		// Then
+		assertThat(Files.readAllBytes(contentPath)).isEqualTo(bytes);
+		trans.begin();
+		final FileContent content = em.find(FileContent.class, checksum);
+		assertThat(content).isNotNull();
+		assertThat(content.isInDb()).isFalse();
+		trans.commit();
+		
+		// When (2)
+		// Ein erneuter Aufruf findet nichts mehr zum Auslagern
+		fileContentMigration.migrieren().get(TIMEOUT_SEKUNDEN, TimeUnit.SECONDS);
+		
+		// Then (2)
+		assertThat(Files.readAllBytes(contentPath)).isEqualTo(bytes);
+		
+		LOGGER.finer("migrieren " + ENDE);
+	}
+}
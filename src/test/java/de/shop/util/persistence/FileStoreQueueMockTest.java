@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import de.shop.util.AbstractBrokerMockTest;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.inject.Instance;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.ENDE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+
+/**
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@RunWith(Arquillian.class)
+public class FileStoreQueueMockTest extends AbstractBrokerMockTest {
+	private static final String FILENAME = "Privatkunde_1.png";
+	private static final String CHECKSUM_ALT = "aa";
+	private static final String CHECKSUM_NEU = "bb";
+	
+	// Erster Versuch und 4 Wiederholungen mit 200, 400, 800, 1600 ms Wartezeit
+	private static final int MAX_VERSUCHE = 5;
+	private static final long[] WARTEZEITEN_MILLIS = { 0, 200, 400, 800, 1600 };
+	
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	@Mock
+	private Instance<FileHelper> fileHelperInstance;
+	
+	@Mock
+	private FileHelper fileHelper;
+	
+	@Mock
+	private Instance<ManagedScheduledExecutorService> executorInstance;
+	
+	@Mock
+	private ManagedScheduledExecutorService executor;
+	
+	// Eingeplante Auftraege werden nicht im Hintergrund, sondern durch den Test ausgefuehrt
+	private final Deque<Runnable> geplant = new ArrayDeque<>();
+	private final List<Long> wartezeiten = new ArrayList<>();
+	
+	// Story: Als ein Kunde moechte ich, dass bei mehrfachem Hochladen die neueste Datei abgespeichert wird
+	@Test
+	@InSequence(1)
+	public void zusammenfassen() throws IOException {
+		LOGGER.finer("zusammenfassen " + BEGINN);
+		
+		// Given
+		final FileStoreQueue fileStoreQueue = newFileStoreQueue();
+		
+		// When
+		fileStoreQueue.abspeichern(FILENAME, CHECKSUM_ALT);
+		fileStoreQueue.abspeichern(FILENAME, CHECKSUM_NEU);
+		ausfuehren();
+		
+		// Then
+		verify(fileHelper, never()).verlinken(CHECKSUM_ALT, FILENAME);
+		verify(fileHelper).verlinken(CHECKSUM_NEU, FILENAME);
+		assertThat(fileStoreQueue.getEingereiht()).isEqualTo(1);
+		assertThat(fileStoreQueue.getZusammengefasst()).isEqualTo(1);
+		assertThat(fileStoreQueue.getGeschrieben()).isEqualTo(1);
+		assertThat(fileStoreQueue.getWarteschlangenLaenge()).isZero();
+		
+		LOGGER.finer("zusammenfassen " + ENDE);
+	}
+	
+	// Story: Als ein Administrator moechte ich, dass bei voller Warteschlange sofort geschrieben wird
+	@Test
+	@InSequence(2)
+	public void direktSchreibenBeiVollerWarteschlange() throws IOException {
+		LOGGER.finer("direktSchreibenBeiVollerWarteschlange " + BEGINN);
+		
+		// Given
+		final FileStoreQueue fileStoreQueue = newFileStoreQueue();
+		for (int i = 0; i < fileStoreQueue.getMaxAuftraege(); i++) {
+			fileStoreQueue.abspeichern(FILENAME + i, CHECKSUM_ALT);
+		}
+		
+		// When
+		fileStoreQueue.abspeichern(FILENAME, CHECKSUM_NEU);
+		
+		// Then
+		// Der Aufrufer schreibt selbst, ohne dass ein eingeplanter Auftrag ausgefuehrt wurde
+		verify(fileHelper).verlinken(CHECKSUM_NEU, FILENAME);
+		verify(fileHelper, never()).verlinken(CHECKSUM_ALT, FILENAME + 0);
+		assertThat(fileStoreQueue.getDirektGeschrieben()).isEqualTo(1);
+		assertThat(fileStoreQueue.getWarteschlangenLaenge()).isEqualTo(fileStoreQueue.getMaxAuftraege());
+		assertThat(geplant).hasSize(fileStoreQueue.getMaxAuftraege());
+		
+		LOGGER.finer("direktSchreibenBeiVollerWarteschlange " + ENDE);
+	}
+	
+	// Story: Als ein Administrator moechte ich, dass ein dauerhaft fehlschlagender Auftrag
+	//        nach einigen Wiederholungen aufgegeben wird
+	@Test
+	@InSequence(3)
+	public void wiederholungenErschoepft() throws IOException {
+		LOGGER.finer("wiederholungenErschoepft " + BEGINN);
+		
+		// Given
+		final FileStoreQueue fileStoreQueue = newFileStoreQueue();
+		willThrow(new IOException("Dateisystem nicht verfuegbar")).given(fileHelper).verlinken(anyString(), anyString());
+		
+		// When
+		fileStoreQueue.abspeichern(FILENAME, CHECKSUM_NEU);
+		ausfuehren();
+		
+		// Then
+		verify(fileHelper, times(MAX_VERSUCHE)).verlinken(CHECKSUM_NEU, FILENAME);
+		assertThat(wartezeiten).hasSize(MAX_VERSUCHE);
+		for (int i = 0; i < MAX_VERSUCHE; i++) {
+			assertThat(wartezeiten.get(i)).isEqualTo(WARTEZEITEN_MILLIS[i]);
+		}
+		assertThat(fileStoreQueue.getWiederholt()).isEqualTo(MAX_VERSUCHE - 1);
+		assertThat(fileStoreQueue.getFehlgeschlagen()).isEqualTo(1);
+		assertThat(fileStoreQueue.getGeschrieben()).isZero();
+		assertThat(fileStoreQueue.getWarteschlangenLaenge()).isZero();
+		
+		LOGGER.finer("wiederholungenErschoepft " + ENDE);
+	}
+	
+	private FileStoreQueue newFileStoreQueue() {
+		given(fileHelperInstance.get()).willReturn(fileHelper);
+		given(executorInstance.get()).willReturn(executor);
+		given(executor.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).willAnswer(invocation -> {
+			geplant.add(invocation.getArgumentAt(0, Runnable.class));
+			wartezeiten.add(invocation.getArgumentAt(1, Long.class));
+			return null;
+		});
+		// new statt @Inject: die Mocks werden durch den Konstruktor injiziert
+		return new FileStoreQueue(fileHelperInstance, executorInstance);
+	}
+	
+	// Alle eingeplanten Auftraege einschliesslich der dabei eingeplanten Wiederholungen ausfuehren
+	private void ausfuehren() {
+		for (Runnable auftrag = geplant.poll(); auftrag != null; auftrag = geplant.poll()) {
+			auftrag.run();
+		}
+	}
+}
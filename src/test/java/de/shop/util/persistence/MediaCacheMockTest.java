@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2014 Juergen Zimmermann, Hochschule Karlsruhe
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package de.shop.util.persistence;
+
+import de.shop.util.AbstractBrokerMockTest;
+import de.shop.util.rest.CachedStreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.logging.Logger;
+import org.jboss.arquillian.junit.Arquillian;
+import org.jboss.arquillian.junit.InSequence;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+
+import static de.shop.util.TestConstants.BEGINN;
+import static de.shop.util.TestConstants.ENDE;
+import static de.shop.util.persistence.ImageSize.LARGE;
+import static de.shop.util.persistence.ImageSize.MEDIUM;
+import static de.shop.util.persistence.ImageSize.SMALL;
+import static de.shop.util.persistence.MediaCache.BLOCK_SIZE;
+import static de.shop.util.persistence.MediaCache.MAX_EINTRAG_SIZE;
+import static de.shop.util.persistence.MediaCache.SLAB_SIZE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+
+
+/**
+ * @author <a href="mailto:Juergen.Zimmermann@HS-Karlsruhe.de">J&uuml;rgen Zimmermann</a>
+ */
+@RunWith(Arquillian.class)
+public class MediaCacheMockTest extends AbstractBrokerMockTest {
+	private static final String CHECKSUM_A = "aa";
+	private static final String CHECKSUM_B = "bb";
+	
+	// Ein Slab zu 4 MB fasst genau 4 Eintraege zu 1 MB
+	private static final int EIN_SLAB = 1;
+	private static final int EINTRAEGE_PRO_SLAB = SLAB_SIZE / MAX_EINTRAG_SIZE;
+	
+	private static final Logger LOGGER = Logger.getLogger(MethodHandles.lookup().lookupClass().getName());
+	
+	@Mock
+	private File fileA;
+	
+	@Mock
+	private File fileB;
+	
+	private final Random random = new Random(0);
+	private final List<Path> dateien = new ArrayList<>();
+	
+	@After
+	public void after() throws IOException {
+		for (Path path : dateien) {
+			Files.deleteIfExists(path);
+		}
+	}
+	
+	// Story: Als ein Kunde moechte ich ein gecachtes Bild unveraendert herunterladen
+	@Test
+	@InSequence(1)
+	public void bloeckeLesenSchreiben() throws IOException {
+		LOGGER.finer("bloeckeLesenSchreiben " + BEGINN);
+		
+		// Given
+		final int length = 3 * BLOCK_SIZE + 123;
+		final byte[] bytes = neueBytes(length);
+		final Path path = neueDatei(bytes);
+		final MediaCache mediaCache = newMediaCache();
+		
+		// When
+		final Optional<MediaCache.Eintrag> eintragOpt = mediaCache.laden(fileA, null, path, length);
+		final Optional<MediaCache.Eintrag> gefundenOpt = mediaCache.find(fileA, null);
+		
+		// Then
+		assertThat(eintragOpt.isPresent()).isTrue();
+		assertThat(gefundenOpt.isPresent()).isTrue();
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		assertThat(gefundenOpt.get().writeTo(outputStream, 0, length)).isTrue();
+		assertThat(outputStream.toByteArray()).isEqualTo(bytes);
+		assertThat(mediaCache.getTreffer()).isEqualTo(1);
+		assertThat(mediaCache.getFehlschlaege()).isEqualTo(1);
+		assertThat(mediaCache.getResidentBytes()).isEqualTo(length);
+		assertThat(mediaCache.getAllocatedBytes()).isEqualTo(SLAB_SIZE);
+		
+		LOGGER.finer("bloeckeLesenSchreiben " + ENDE);
+	}
+	
+	// Story: Als ein Kunde moechte ich mit "Range" einen Teil eines gecachten Videos herunterladen
+	@Test
+	@InSequence(2)
+	public void rangeUeberBlockgrenzen() throws IOException {
+		LOGGER.finer("rangeUeberBlockgrenzen " + BEGINN);
+		
+		// Given
+		final int length = 4 * BLOCK_SIZE;
+		final byte[] bytes = neueBytes(length);
+		final Path path = neueDatei(bytes);
+		final MediaCache mediaCache = newMediaCache();
+		final MediaCache.Eintrag eintrag = mediaCache.laden(fileA, null, path, length).get();
+		// Beginnt 10 Bytes vor dem Ende des 1. Blocks und endet 10 Bytes nach dem Anfang des 4. Blocks
+		final int position = BLOCK_SIZE - 10;
+		final int count = 2 * BLOCK_SIZE + 20;
+		
+		// When
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		new CachedStreamingOutput(eintrag, position, count).write(outputStream);
+		
+		// Then
+		assertThat(outputStream.toByteArray()).isEqualTo(Arrays.copyOfRange(bytes, position, position + count));
+		
+		LOGGER.finer("rangeUeberBlockgrenzen " + ENDE);
+	}
+	
+	// Story: Als ein Administrator moechte ich, dass bei vollem Cache die am laengsten nicht mehr
+	//        angeforderte Datei verdraengt wird
+	@Test
+	@InSequence(3)
+	public void verdraengen() throws IOException {
+		LOGGER.finer("verdraengen " + BEGINN);
+		
+		// Given
+		final Path path = neueDatei(neueBytes(MAX_EINTRAG_SIZE));
+		final MediaCache mediaCache = newMediaCache();
+		fuellen(mediaCache, path);
+		// Das Original wird erneut angefordert, so dass SMALL am laengsten nicht mehr angefordert wurde
+		mediaCache.find(fileA, null);
+		
+		// When
+		final Optional<MediaCache.Eintrag> eintragOpt = mediaCache.laden(fileB, null, path, MAX_EINTRAG_SIZE);
+		
+		// Then
+		assertThat(eintragOpt.isPresent()).isTrue();
+		assertThat(mediaCache.find(fileA, SMALL).isPresent()).isFalse();
+		assertThat(mediaCache.find(fileA, null).isPresent()).isTrue();
+		assertThat(mediaCache.getVerdraengt()).isEqualTo(1);
+		assertThat(mediaCache.getAnzahlEintraege()).isEqualTo(EINTRAEGE_PRO_SLAB);
+		assertThat(mediaCache.getResidentBytes()).isEqualTo(SLAB_SIZE);
+		assertThat(mediaCache.getAllocatedBytes()).isEqualTo(SLAB_SIZE);
+		
+		LOGGER.finer("verdraengen " + ENDE);
+	}
+	
+	// Story: Als ein Administrator moechte ich, dass eine Datei, die gerade gesendet wird, nicht
+	//        nutzlos verdraengt wird
+	@Test
+	@InSequence(4)
+	public void gesendetenEintragNichtVerdraengen() throws IOException {
+		LOGGER.finer("gesendetenEintragNichtVerdraengen " + BEGINN);
+		
+		// Given
+		final byte[] bytes = neueBytes(MAX_EINTRAG_SIZE);
+		final Path path = neueDatei(bytes);
+		final MediaCache mediaCache = newMediaCache();
+		// Das Original wurde am laengsten nicht mehr angefordert, wird aber gerade gesendet
+		final MediaCache.Eintrag gesendet = fuellen(mediaCache, path).get(0);
+		final List<Optional<MediaCache.Eintrag>> geladen = new ArrayList<>();
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				if (geladen.isEmpty()) {
+					geladen.add(mediaCache.laden(fileB, null, path, MAX_EINTRAG_SIZE));
+				}
+				super.write(b, off, len);
+			}
+		};
+		
+		// When
+		final boolean geschrieben = gesendet.writeTo(outputStream, 0, MAX_EINTRAG_SIZE);
+		
+		// Then
+		assertThat(geschrieben).isTrue();
+		assertThat(outputStream.toByteArray()).isEqualTo(bytes);
+		assertThat(geladen).hasSize(1);
+		assertThat(geladen.get(0).isPresent()).isTrue();
+		assertThat(mediaCache.find(fileA, null).isPresent()).isTrue();
+		assertThat(mediaCache.find(fileA, SMALL).isPresent()).isFalse();
+		assertThat(mediaCache.getVerdraengt()).isEqualTo(1);
+		
+		LOGGER.finer("gesendetenEintragNichtVerdraengen " + ENDE);
+	}
+	
+	// Story: Als ein Kunde moechte ich eine Datei auch dann vollstaendig herunterladen, wenn sie
+	//        vor dem Senden aus dem Cache verdraengt wurde
+	@Test
+	@InSequence(5)
+	public void dateiNachVerdraengen() throws IOException {
+		LOGGER.finer("dateiNachVerdraengen " + BEGINN);
+		
+		// Given
+		final byte[] bytes = neueBytes(MAX_EINTRAG_SIZE);
+		final Path path = neueDatei(bytes);
+		final MediaCache mediaCache = newMediaCache();
+		final MediaCache.Eintrag eintrag = mediaCache.laden(fileB, null, path, MAX_EINTRAG_SIZE).get();
+		final CachedStreamingOutput streamingOutput = new CachedStreamingOutput(eintrag, 0, MAX_EINTRAG_SIZE);
+		fuellen(mediaCache, path);
+		
+		// When
+		final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		streamingOutput.write(outputStream);
+		
+		// Then
+		assertThat(mediaCache.find(fileB, null).isPresent()).isFalse();
+		assertThat(eintrag.writeTo(new ByteArrayOutputStream(), 0, MAX_EINTRAG_SIZE)).isFalse();
+		assertThat(outputStream.toByteArray()).isEqualTo(bytes);
+		
+		LOGGER.finer("dateiNachVerdraengen " + ENDE);
+	}
+	
+	// Story: Als ein Kunde moechte ich nach dem Hochladen eines neuen Bildes nicht das alte Bild aus dem Cache
+	//        herunterladen
+	@Test
+	@InSequence(6)
+	public void eintragZumInhalt() throws IOException {
+		LOGGER.finer("eintragZumInhalt " + BEGINN);
+		
+		// Given
+		final Path path = neueDatei(neueBytes(BLOCK_SIZE));
+		final MediaCache mediaCache = newMediaCache();
+		mediaCache.laden(fileA, null, path, BLOCK_SIZE);
+		
+		// When
+		// Nach dem Hochladen verweisen die Verwaltungsdaten auf einen anderen Inhalt
+		given(fileA.getChecksum()).willReturn(CHECKSUM_B);
+		final Optional<MediaCache.Eintrag> eintragOpt = mediaCache.find(fileA, null);
+		
+		// Then
+		assertThat(eintragOpt.isPresent()).isFalse();
+		assertThat(mediaCache.find(fileB, null).isPresent()).isFalse();
+		
+		LOGGER.finer("eintragZumInhalt " + ENDE);
+	}
+	
+	private MediaCache newMediaCache() {
+		given(fileA.getChecksum()).willReturn(CHECKSUM_A);
+		given(fileB.getChecksum()).willReturn(CHECKSUM_B);
+		return new MediaCache(EIN_SLAB);
+	}
+	
+	// Den Slab mit 4 Eintraegen zu 1 MB fuellen: zuerst das Original von fileA, danach SMALL, MEDIUM und LARGE
+	private List<MediaCache.Eintrag> fuellen(MediaCache mediaCache, Path path) {
+		final List<MediaCache.Eintrag> eintraege = new ArrayList<>();
+		for (ImageSize imageSize : new ImageSize[] { null, SMALL, MEDIUM, LARGE }) {
+			final Optional<MediaCache.Eintrag> eintragOpt = mediaCache.laden(fileA, imageSize, path, MAX_EINTRAG_SIZE);
+			assertThat(eintragOpt.isPresent()).isTrue();
+			eintraege.add(eintragOpt.get());
+		}
+		return eintraege;
+	}
+	
+	private byte[] neueBytes(int length) {
+		final byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+	
+	private Path neueDatei(byte[] bytes) throws IOException {
+		final Path path = Files.createTempFile("MediaCacheMockTest", ".bin");
+		dateien.add(path);
+		return Files.write(path, bytes);
+	}
+}